@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * An entry from the .debug_abbrev section describing the tag,
+ * the presence of children and the attributes of a debugging
+ * information entry.
+ */
+final class Abbreviation {
+
+	/** the maximum number of plans retained for different interests */
+	private static final int PLAN_LIMIT = 4;
+
+	private static boolean isOffsetForm(int form) {
+		switch (form) {
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_sec_offset:
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strp_sup:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private final AttributeReader[] attributes;
+
+	final long code;
+
+	/** the number of address-sized values, if the size of attributes is fixed */
+	private final int fixedAddresses;
+
+	/** the number of bytes in values of fixed size, if the size of attributes is fixed */
+	private final int fixedBytes;
+
+	/** the number of offset-sized values, if the size of attributes is fixed */
+	private final int fixedOffsets;
+
+	final boolean hasChildren;
+
+	/** the index of the DW_AT_sibling attribute, or -1 */
+	private final int siblingIndex;
+
+	/** the plans compiled so far, most recent last */
+	private volatile DecodingPlan[] plans;
+
+	final int tag;
+
+	Abbreviation(long code, long tag, boolean hasChildren, AttributeReader[] attributes) {
+		super();
+		this.attributes = attributes;
+		this.code = code;
+		this.hasChildren = hasChildren;
+		this.plans = new DecodingPlan[0];
+		this.tag = (int) tag;
+
+		int addresses = 0;
+		int bytes = 0;
+		int offsets = 0;
+		int sibling = -1;
+
+		for (int index = 0; index < attributes.length; ++index) {
+			AttributeReader attribute = attributes[index];
+			int size = DecodingPlan.fixedSize(attribute.form);
+
+			if (attribute.attribute == DwarfAttribute.DW_AT_sibling && sibling < 0) {
+				sibling = index;
+			}
+
+			if (bytes < 0) {
+				continue;
+			} else if (size >= 0) {
+				bytes += size;
+			} else if (attribute.form == DwarfForm.DW_FORM_addr) {
+				addresses += 1;
+			} else if (isOffsetForm(attribute.form)) {
+				offsets += 1;
+			} else {
+				// the size of this entry varies
+				bytes = -1;
+			}
+		}
+
+		this.fixedAddresses = addresses;
+		this.fixedBytes = bytes;
+		this.fixedOffsets = offsets;
+		this.siblingIndex = sibling;
+	}
+
+	/**
+	 * Answer the section offset of the sibling of this entry given by
+	 * its DW_AT_sibling attribute, or -1 if it has no such attribute.
+	 * The position of the data source is preserved.
+	 * 
+	 * @param data the data source, positioned anywhere within the unit
+	 * @param attributeOffset the section offset of the first attribute value
+	 * @param unitOffset the section offset of the enclosing unit
+	 */
+	long findSibling(DataSource data, long attributeOffset, long unitOffset) {
+		if (siblingIndex < 0) {
+			return -1;
+		}
+
+		long savedPosition = data.position();
+
+		try {
+			data.position(attributeOffset);
+
+			for (int index = 0; index < siblingIndex; ++index) {
+				DecodingPlan.skip(attributes[index].form, data);
+			}
+
+			switch (attributes[siblingIndex].form) {
+			case DwarfForm.DW_FORM_ref1:
+				return unitOffset + data.getU1();
+			case DwarfForm.DW_FORM_ref2:
+				return unitOffset + data.getU2();
+			case DwarfForm.DW_FORM_ref4:
+				return unitOffset + data.getU4();
+			case DwarfForm.DW_FORM_ref8:
+				return unitOffset + data.getU8();
+			case DwarfForm.DW_FORM_ref_udata:
+				return unitOffset + data.getUDATA();
+			case DwarfForm.DW_FORM_ref_addr:
+				return data.getOffset();
+			default:
+				return -1;
+			}
+		} finally {
+			data.position(savedPosition);
+		}
+	}
+
+	AttributeReader getAttribute(int index) {
+		return attributes[index];
+	}
+
+	int getAttributeCount() {
+		return attributes.length;
+	}
+
+	DecodingPlan getPlan(DwarfInterest interest) {
+		DecodingPlan[] known = plans;
+
+		for (DecodingPlan plan : known) {
+			if (plan.interest == interest || plan.interest.equals(interest)) {
+				return plan;
+			}
+		}
+
+		DecodingPlan plan = DecodingPlan.compile(attributes, tag, interest);
+		int retained = Math.min(known.length, PLAN_LIMIT - 1);
+		DecodingPlan[] updated = new DecodingPlan[retained + 1];
+
+		System.arraycopy(known, known.length - retained, updated, 0, retained);
+		updated[retained] = plan;
+
+		// plans are immutable; if a racing update is lost, the plan is simply compiled again later
+		plans = updated;
+
+		return plan;
+	}
+
+	void readAttributes(DwarfRequestor requestor, DataSource data) {
+		for (AttributeReader attribute : attributes) {
+			attribute.read(requestor, data);
+		}
+	}
+
+	/**
+	 * Advance past the attributes of an entry without decoding them.
+	 */
+	void skipAttributes(DataSource data) {
+		if (fixedBytes >= 0) {
+			data.skip(fixedBytes + fixedAddresses * data.addressSize() + fixedOffsets * data.offsetSize());
+		} else {
+			for (AttributeReader attribute : attributes) {
+				DecodingPlan.skip(attribute.form, data);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "abbrev(" + code + ") tag=" + tag;
+	}
+
+}
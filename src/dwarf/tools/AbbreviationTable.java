@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The abbreviations found at one offset of the .debug_abbrev section.
+ * Tables are immutable once read and may be shared by any number of
+ * units and threads.
+ */
+final class AbbreviationTable {
+
+	/**
+	 * Codes are considered dense enough for direct indexing if the largest
+	 * code is less than this multiple of the number of codes, plus 16.
+	 */
+	private static final int DENSITY_FACTOR = 2;
+
+	private static Abbreviation find(Abbreviation[] abbreviations, long code) {
+		Abbreviation abbreviation = null;
+		int lo = 0;
+		int hi = abbreviations.length;
+		int mid;
+
+		if (lo < code && code <= hi) {
+			// if codes are contiguous starting at 1,
+			// we'll find it on the first test
+			mid = (int) code - 1;
+		} else {
+			mid = hi / 2;
+		}
+
+		// do a binary search
+		for (; lo < hi; mid = (lo + hi) >>> 1) {
+			abbreviation = abbreviations[mid];
+
+			if (code == abbreviation.code) {
+				return abbreviation;
+			} else if (code > abbreviation.code) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return null;
+	}
+
+	private static Abbreviation[] indexByCode(Abbreviation[] sorted) {
+		if (sorted.length == 0) {
+			return null;
+		}
+
+		long maxCode = sorted[sorted.length - 1].code;
+
+		if (sorted[0].code < 0 || maxCode >= (long) sorted.length * DENSITY_FACTOR + 16) {
+			return null;
+		}
+
+		Abbreviation[] table = new Abbreviation[(int) maxCode + 1];
+
+		for (Abbreviation abbreviation : sorted) {
+			table[(int) abbreviation.code] = abbreviation;
+		}
+
+		return table;
+	}
+
+	static AbbreviationTable readFrom(DataSource data) {
+		List<Abbreviation> abbreviations = new ArrayList<>();
+		List<AttributeReader> attributes = new ArrayList<>();
+
+		while (data.hasRemaining()) {
+			long code = data.getUDATA();
+
+			if (code == 0) {
+				break;
+			}
+
+			long tag = data.getUDATA();
+			boolean hasChildren = data.getU1() != 0;
+
+			// attributes
+			for (;;) {
+				long name = data.getUDATA();
+				long form = data.getUDATA();
+
+				if (name == 0 || form == 0) {
+					break;
+				} else if ((0 < name && name <= Integer.MAX_VALUE) && (0 < form && form <= Integer.MAX_VALUE)) {
+					// the value of an implicit constant follows its form
+					long value = form == DwarfForm.DW_FORM_implicit_const ? data.getSDATA() : 0;
+
+					attributes.add(AttributeReader.create((int) name, (int) form, value));
+				} else {
+					throw new IllegalArgumentException("attribute=" + name + " form=" + form);
+				}
+			}
+
+			AttributeReader[] readers = attributes.toArray(new AttributeReader[attributes.size()]);
+
+			abbreviations.add(new Abbreviation(code, tag, hasChildren, readers));
+			attributes.clear();
+		}
+
+		Abbreviation[] list = abbreviations.toArray(new Abbreviation[abbreviations.size()]);
+
+		Arrays.sort(list, Comparator.comparingLong(abbreviation -> abbreviation.code));
+
+		return new AbbreviationTable(list);
+	}
+
+	/** abbreviations indexed by code, or null if codes are sparse */
+	private final Abbreviation[] byCode;
+
+	/** abbreviations sorted by code */
+	private final Abbreviation[] sorted;
+
+	private AbbreviationTable(Abbreviation[] sorted) {
+		super();
+		this.byCode = indexByCode(sorted);
+		this.sorted = sorted;
+	}
+
+	Abbreviation get(long code) {
+		Abbreviation[] table = byCode;
+
+		if (table != null) {
+			return (0 <= code && code < table.length) ? table[(int) code] : null;
+		}
+
+		return find(sorted, code);
+	}
+
+	int size() {
+		return sorted.length;
+	}
+
+}
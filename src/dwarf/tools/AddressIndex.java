@@ -0,0 +1,474 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An index of the code addresses described by a file. The ranges of each
+ * unit are taken from the .debug_aranges section when the file has one,
+ * and otherwise from the unit entries; the ranges of the subprograms and
+ * inlined subroutines of a unit are read when an address in that unit is
+ * first looked up. Ranges are held in sorted arrays, so a lookup is a pair
+ * of binary searches.
+ */
+public final class AddressIndex {
+
+	/**
+	 * A set of address ranges, flattened into consecutive segments that
+	 * are each labelled with the innermost range covering them. Ranges are
+	 * expected to nest, as the ranges of an inlined subroutine nest within
+	 * those of its caller; where they merely overlap, the range that
+	 * starts later is taken to be the inner one.
+	 */
+	static final class Intervals {
+
+		/**
+		 * Collects ranges, each with an associated value.
+		 */
+		static final class Builder {
+
+			private int count;
+
+			private long[] ends;
+
+			private long[] starts;
+
+			private long[] values;
+
+			Builder() {
+				super();
+				this.count = 0;
+				this.ends = new long[64];
+				this.starts = new long[64];
+				this.values = new long[64];
+			}
+
+			/**
+			 * Add the given ranges, pairs of start and end addresses,
+			 * all with the given value.
+			 */
+			void add(long[] ranges, long value) {
+				int capacity = count + ranges.length / 2;
+
+				if (capacity > starts.length) {
+					capacity = Math.max(capacity, starts.length * 2);
+					ends = Arrays.copyOf(ends, capacity);
+					starts = Arrays.copyOf(starts, capacity);
+					values = Arrays.copyOf(values, capacity);
+				}
+
+				for (int index = 0; index < ranges.length; index += 2) {
+					starts[count] = ranges[index];
+					ends[count] = ranges[index + 1];
+					values[count] = value;
+					count += 1;
+				}
+			}
+
+			Intervals build() {
+				return Intervals.build(starts, ends, values, count);
+			}
+
+		}
+
+		private static int emit(long[] segmentStarts, int[] segmentIntervals, int segments, long start,
+				int interval) {
+			if (segments > 0 && segmentStarts[segments - 1] == start) {
+				segmentIntervals[segments - 1] = interval;
+				return segments;
+			}
+
+			segmentStarts[segments] = start;
+			segmentIntervals[segments] = interval;
+
+			return segments + 1;
+		}
+
+		/**
+		 * Answer the intervals of the given ranges, each with an associated
+		 * value. Ranges with equal bounds keep their given order, with the
+		 * first being the outer one.
+		 */
+		private static Intervals build(long[] starts, long[] ends, long[] values, int count) {
+			Integer[] order = new Integer[count];
+
+			for (int index = 0; index < count; ++index) {
+				order[index] = Integer.valueOf(index);
+			}
+
+			Arrays.sort(order, (left, right) -> {
+				int a = left.intValue();
+				int b = right.intValue();
+				int result = Long.compareUnsigned(starts[a], starts[b]);
+
+				return result != 0 ? result : Long.compareUnsigned(ends[b], ends[a]);
+			});
+
+			long[] sortedEnds = new long[count];
+			long[] sortedValues = new long[count];
+			int[] parents = new int[count];
+			int[] stack = new int[count];
+			long[] segmentStarts = new long[count * 2];
+			int[] segmentIntervals = new int[count * 2];
+			int segments = 0;
+			int depth = 0;
+
+			for (int index = 0; index <= count; ++index) {
+				int source = index < count ? order[index].intValue() : -1;
+				long limit = index < count ? starts[source] : -1L;
+
+				// close the ranges that end before the next one starts
+				while (depth > 0 && Long.compareUnsigned(sortedEnds[stack[depth - 1]], limit) <= 0) {
+					long end = sortedEnds[stack[--depth]];
+
+					while (depth > 0 && Long.compareUnsigned(sortedEnds[stack[depth - 1]], end) <= 0) {
+						--depth;
+					}
+
+					segments = emit(segmentStarts, segmentIntervals, segments, end, depth > 0 ? stack[depth - 1] : -1);
+				}
+
+				if (index < count) {
+					sortedEnds[index] = ends[source];
+					sortedValues[index] = values[source];
+					parents[index] = depth > 0 ? stack[depth - 1] : -1;
+					segments = emit(segmentStarts, segmentIntervals, segments, starts[source], index);
+					stack[depth++] = index;
+				}
+			}
+
+			return new Intervals(Arrays.copyOf(segmentStarts, segments), Arrays.copyOf(segmentIntervals, segments),
+					parents, sortedValues);
+		}
+
+		/** the index of the interval enclosing each interval, or -1 */
+		private final int[] parents;
+
+		/** the innermost interval covering each segment, or -1 */
+		private final int[] segmentIntervals;
+
+		/** the start address of each segment, in ascending unsigned order */
+		private final long[] segmentStarts;
+
+		private final long[] values;
+
+		private Intervals(long[] segmentStarts, int[] segmentIntervals, int[] parents, long[] values) {
+			super();
+			this.parents = parents;
+			this.segmentIntervals = segmentIntervals;
+			this.segmentStarts = segmentStarts;
+			this.values = values;
+		}
+
+		/**
+		 * Answer the innermost interval containing the given address, or -1.
+		 */
+		int find(long address) {
+			int low = 0;
+			int high = segmentStarts.length - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				if (Long.compareUnsigned(segmentStarts[middle], address) <= 0) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return high >= 0 ? segmentIntervals[high] : -1;
+		}
+
+		/**
+		 * Answer the values of the given interval and those enclosing it,
+		 * innermost first. Adjacent duplicates are answered once.
+		 */
+		long[] getChain(int interval) {
+			int length = 0;
+
+			for (int index = interval; index >= 0; index = parents[index]) {
+				++length;
+			}
+
+			long[] chain = new long[length];
+			int count = 0;
+
+			for (int index = interval; index >= 0; index = parents[index]) {
+				if (count == 0 || chain[count - 1] != values[index]) {
+					chain[count++] = values[index];
+				}
+			}
+
+			return count == length ? chain : Arrays.copyOf(chain, count);
+		}
+
+		long getValue(int interval) {
+			return values[interval];
+		}
+
+		int size() {
+			return values.length;
+		}
+
+	}
+
+	private static final long[] NO_ENTRIES = new long[0];
+
+	/** the ranges of subprograms and inlined subroutines, by unit index */
+	private final AtomicReferenceArray<Intervals> entryRanges;
+
+	private final boolean fromAranges;
+
+	private final DwarfScanner scanner;
+
+	/** the ranges of units, whose values are unit indexes */
+	private final Intervals unitRanges;
+
+	private final UnitHeader[] units;
+
+	AddressIndex(DwarfScanner scanner) {
+		super();
+
+		ByteBuffer aranges = scanner.getArangesSection();
+		UnitHeader[] headers = scanner.getUnits();
+
+		this.entryRanges = new AtomicReferenceArray<>(headers.length);
+		this.fromAranges = aranges.limit() != 0;
+		this.scanner = scanner;
+		this.units = headers;
+		this.unitRanges = readUnitRanges(aranges);
+	}
+
+	/**
+	 * Answer the section offsets of the entries whose code contains the
+	 * given address: any inlined subroutines, innermost first, followed by
+	 * the subprogram that contains them. No entries are answered for an
+	 * address outside the code of all subprograms.
+	 */
+	public long[] findEntries(long address) {
+		int unitRange = unitRanges.find(address);
+
+		if (unitRange < 0) {
+			return NO_ENTRIES;
+		}
+
+		Intervals ranges = getEntryRanges((int) unitRanges.getValue(unitRange));
+		int entryRange = ranges.find(address);
+
+		return entryRange >= 0 ? ranges.getChain(entryRange) : NO_ENTRIES;
+	}
+
+	/**
+	 * Answer the entries containing each of the given addresses, as
+	 * {@link #findEntries(long)} would. Consecutive addresses in the same
+	 * unit share its ranges, and consecutive equal addresses share a result.
+	 */
+	public long[][] findEntries(long[] addresses) {
+		long[][] entries = new long[addresses.length][];
+		int unitIndex = -1;
+		Intervals ranges = null;
+
+		for (int index = 0; index < addresses.length; ++index) {
+			long address = addresses[index];
+
+			if (index > 0 && addresses[index - 1] == address) {
+				entries[index] = entries[index - 1];
+				continue;
+			}
+
+			int unitRange = unitRanges.find(address);
+
+			if (unitRange < 0) {
+				entries[index] = NO_ENTRIES;
+				continue;
+			}
+
+			int rangeUnit = (int) unitRanges.getValue(unitRange);
+
+			if (rangeUnit != unitIndex) {
+				unitIndex = rangeUnit;
+				ranges = getEntryRanges(unitIndex);
+			}
+
+			int entryRange = ranges.find(address);
+
+			entries[index] = entryRange >= 0 ? ranges.getChain(entryRange) : NO_ENTRIES;
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Answer the section offset of the unit whose code contains the given
+	 * address, or -1 if there is none.
+	 */
+	public long findUnit(long address) {
+		int unitRange = unitRanges.find(address);
+
+		return unitRange >= 0 ? units[(int) unitRanges.getValue(unitRange)].offset : -1;
+	}
+
+	/**
+	 * Answer the units containing each of the given addresses,
+	 * as {@link #findUnit(long)} would.
+	 */
+	public long[] findUnits(long[] addresses) {
+		long[] offsets = new long[addresses.length];
+
+		for (int index = 0; index < addresses.length; ++index) {
+			offsets[index] = findUnit(addresses[index]);
+		}
+
+		return offsets;
+	}
+
+	private Intervals getEntryRanges(int unitIndex) {
+		Intervals ranges = entryRanges.get(unitIndex);
+
+		if (ranges == null) {
+			// racing threads build equivalent ranges
+			ranges = readEntryRanges(units[unitIndex]);
+			entryRanges.set(unitIndex, ranges);
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Answer the number of unit ranges in this index.
+	 */
+	public int getUnitRangeCount() {
+		return unitRanges.size();
+	}
+
+	/**
+	 * Answer whether the ranges of units were read from .debug_aranges.
+	 */
+	public boolean isFromAranges() {
+		return fromAranges;
+	}
+
+	/**
+	 * Answer the ranges of the subprograms and inlined subroutines of the
+	 * given unit, whose values are the section offsets of their entries.
+	 * Aggregate types, which hold no code, are skipped.
+	 */
+	private Intervals readEntryRanges(UnitHeader unit) {
+		Intervals.Builder builder = new Intervals.Builder();
+
+		try (DieCursor cursor = scanner.openCursor(unit.offset)) {
+			long baseAddress = 0;
+
+			while (cursor.next()) {
+				int tag = cursor.tag();
+
+				if (cursor.depth() == 0) {
+					baseAddress = cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0);
+				} else if (tag == DwarfTag.DW_TAG_subprogram || tag == DwarfTag.DW_TAG_inlined_subroutine) {
+					builder.add(cursor.getRanges(baseAddress), cursor.offset());
+				} else if (DwarfIndexFile.isTypeTag(tag)) {
+					cursor.skipChildren();
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Answer the ranges of all units. The sets of .debug_aranges, if
+	 * any, are used for the units they describe; the ranges of other
+	 * units are read from their unit entries.
+	 */
+	private Intervals readUnitRanges(ByteBuffer aranges) {
+		Intervals.Builder builder = new Intervals.Builder();
+		boolean[] described = new boolean[units.length];
+		DataSource data = new DataSource(aranges).duplicate();
+
+		while (data.hasRemaining()) {
+			long setOffset = data.position();
+			long length = data.getU4();
+			int offsetSize = 4;
+
+			if (length == 0xFFFFFFFFL) {
+				length = data.getU8();
+				offsetSize = 8;
+			}
+
+			long setEnd = data.position() + length;
+
+			data.getU2(); // version
+
+			long infoOffset = offsetSize == 8 ? data.getU8() : data.getU4();
+			int addressSize = data.getU1();
+			int segmentSize = data.getU1();
+			int tupleSize = addressSize * 2 + segmentSize;
+			long tupleOffset = data.position() - setOffset;
+			DataSource tuples = new DataSource(data, addressSize, offsetSize, null);
+			int unitIndex = scanner.indexOfUnit(infoOffset);
+
+			described[unitIndex] = true;
+			tuples.position(setOffset + (tupleOffset + tupleSize - 1) / tupleSize * tupleSize);
+
+			while (tuples.position() + tupleSize <= setEnd) {
+				tuples.skip(segmentSize);
+
+				long start = tuples.getAddress();
+				long size = tuples.getAddress();
+
+				if (start == 0 && size == 0) {
+					break;
+				}
+
+				if (size != 0) {
+					builder.add(new long[] { start, start + size }, unitIndex);
+				}
+			}
+
+			data.position(setEnd);
+		}
+
+		if (units.length != 0) {
+			try (DieCursor cursor = scanner.openCursor(units[0].offset)) {
+				for (int unitIndex = 0; unitIndex < units.length; ++unitIndex) {
+					if (described[unitIndex]) {
+						continue;
+					}
+
+					cursor.reset(units[unitIndex].offset);
+
+					if (!cursor.next()) {
+						continue;
+					}
+
+					builder.add(cursor.getRanges(cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0)), unitIndex);
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+abstract class AttributeReader {
+
+	private static final class Address extends AttributeReader {
+
+		Address(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			long address;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_addr:
+				address = data.getAddress();
+				break;
+			default:
+				address = data.lookupAddress(readIndex(form, data));
+				break;
+			}
+
+			requestor.acceptAddress(attribute, form, address);
+		}
+
+	}
+
+	private static final class Block extends AttributeReader {
+
+		Block(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		final void read(DwarfRequestor requestor, DataSource data) {
+			long length;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_block:
+				length = data.getUDATA();
+				break;
+			case DwarfForm.DW_FORM_block1:
+				length = data.getU1();
+				break;
+			case DwarfForm.DW_FORM_block2:
+				length = data.getU2();
+				break;
+			case DwarfForm.DW_FORM_block4:
+				length = data.getU4();
+				break;
+			case DwarfForm.DW_FORM_data16:
+				length = 16;
+				break;
+			default:
+				throw unexpectedForm();
+			}
+
+			long offset = data.position();
+
+			requestor.acceptBlock(attribute, form, offset, data.getView(checkUInt(length)));
+		}
+
+	}
+
+	private static final class Constant extends AttributeReader {
+
+		Constant(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			long value;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_data1:
+				value = data.getU1();
+				break;
+			case DwarfForm.DW_FORM_data2:
+				value = data.getU2();
+				break;
+			case DwarfForm.DW_FORM_data4:
+				value = data.getU4();
+				break;
+			case DwarfForm.DW_FORM_data8:
+				value = data.getU8();
+				break;
+			case DwarfForm.DW_FORM_sdata:
+				value = data.getSDATA();
+				break;
+			case DwarfForm.DW_FORM_udata:
+				value = data.getUDATA();
+				break;
+			default:
+				throw unexpectedForm();
+			}
+
+			requestor.acceptConstant(attribute, form, value);
+		}
+
+	}
+
+	private static final class Expression extends AttributeReader {
+
+		Expression(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		final void read(DwarfRequestor requestor, DataSource data) {
+			long length;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_exprloc:
+				length = data.getUDATA();
+				break;
+			default:
+				throw unexpectedForm();
+			}
+
+			long offset = data.position();
+
+			requestor.acceptExpression(attribute, form, offset, data.getView(checkUInt(length)));
+		}
+
+	}
+
+	private static final class Flag extends AttributeReader {
+
+		Flag(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			boolean flag;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_flag:
+				flag = data.getU1() != 0;
+				break;
+			case DwarfForm.DW_FORM_flag_present:
+				flag = true;
+				break;
+			default:
+				throw unexpectedForm();
+			}
+
+			requestor.acceptFlag(attribute, form, flag);
+		}
+
+	}
+
+	private static final class ImplicitConstant extends AttributeReader {
+
+		/** the value, which is held in the abbreviation rather than the entry */
+		private final long value;
+
+		ImplicitConstant(int attribute, int form, long value) {
+			super(attribute, form);
+			this.value = value;
+		}
+
+		@Override
+		long getImplicitConstant() {
+			return value;
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			requestor.acceptConstant(attribute, form, value);
+		}
+
+	}
+
+	private static final class Indirect extends AttributeReader {
+
+		Indirect(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			int actualForm = checkUInt(data.getUDATA());
+			AttributeReader actualReader = create(attribute, actualForm);
+
+			actualReader.read(requestor, data);
+		}
+
+	}
+
+	private static final class Reference extends AttributeReader {
+
+		Reference(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			long offset;
+
+			switch (form) {
+			case DwarfForm.DW_FORM_ref1:
+				offset = data.getU1();
+				break;
+			case DwarfForm.DW_FORM_ref2:
+				offset = data.getU2();
+				break;
+			case DwarfForm.DW_FORM_ref4:
+				offset = data.getU4();
+				break;
+			case DwarfForm.DW_FORM_ref8:
+			case DwarfForm.DW_FORM_ref_sig8:
+			case DwarfForm.DW_FORM_ref_sup8:
+				offset = data.getU8();
+				break;
+			case DwarfForm.DW_FORM_ref_sup4:
+				offset = data.getU4();
+				break;
+			case DwarfForm.DW_FORM_loclistx:
+			case DwarfForm.DW_FORM_ref_udata:
+			case DwarfForm.DW_FORM_rnglistx:
+				offset = data.getUDATA();
+				break;
+			case DwarfForm.DW_FORM_ref_addr:
+			case DwarfForm.DW_FORM_sec_offset:
+				offset = data.getOffset();
+				break;
+			default:
+				throw unexpectedForm();
+			}
+
+			requestor.acceptReference(attribute, form, offset);
+		}
+
+	}
+
+	private static final class Str extends AttributeReader {
+
+		Str(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			switch (form) {
+			case DwarfForm.DW_FORM_line_strp:
+			case DwarfForm.DW_FORM_string:
+			case DwarfForm.DW_FORM_strp:
+			case DwarfForm.DW_FORM_strx:
+			case DwarfForm.DW_FORM_strx1:
+			case DwarfForm.DW_FORM_strx2:
+			case DwarfForm.DW_FORM_strx3:
+			case DwarfForm.DW_FORM_strx4:
+				readString(requestor, attribute, form, data);
+				break;
+			default:
+				throw unexpectedForm();
+			}
+		}
+
+	}
+
+	/**
+	 * This class allows us to parse abbreviations using unknown forms.
+	 * If the abbreviation is unused this poses no problem.
+	 * If it is used, we won't know how to handle the data associated
+	 * with the attribute and instead throw an exception.
+	 */
+	private static final class Unknown extends AttributeReader {
+
+		Unknown(int attribute, int form) {
+			super(attribute, form);
+		}
+
+		@Override
+		void read(DwarfRequestor requestor, DataSource data) {
+			throw new IllegalArgumentException("attribute=" + attribute + " form=" + form);
+		}
+
+	}
+
+	static int checkUInt(long value) {
+		if (0 <= value && value <= Integer.MAX_VALUE) {
+			return (int) value;
+		}
+
+		throw new IllegalArgumentException("Not U4: " + value);
+	}
+
+	static AttributeReader create(int attribute, int form) {
+		switch (form) {
+		case DwarfForm.DW_FORM_addr:
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_addrx4:
+			return new Address(attribute, form);
+
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_block1:
+		case DwarfForm.DW_FORM_block2:
+		case DwarfForm.DW_FORM_block4:
+		case DwarfForm.DW_FORM_data16:
+			return new Block(attribute, form);
+
+		case DwarfForm.DW_FORM_flag:
+		case DwarfForm.DW_FORM_flag_present:
+			return new Flag(attribute, form);
+
+		case DwarfForm.DW_FORM_data1:
+		case DwarfForm.DW_FORM_data2:
+		case DwarfForm.DW_FORM_data4:
+		case DwarfForm.DW_FORM_data8:
+		case DwarfForm.DW_FORM_sdata:
+		case DwarfForm.DW_FORM_udata:
+			return new Constant(attribute, form);
+
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_string:
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			return new Str(attribute, form);
+
+		case DwarfForm.DW_FORM_loclistx:
+		case DwarfForm.DW_FORM_ref1:
+		case DwarfForm.DW_FORM_ref2:
+		case DwarfForm.DW_FORM_ref4:
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_sig8:
+		case DwarfForm.DW_FORM_ref_sup4:
+		case DwarfForm.DW_FORM_ref_sup8:
+		case DwarfForm.DW_FORM_ref_udata:
+		case DwarfForm.DW_FORM_rnglistx:
+		case DwarfForm.DW_FORM_sec_offset:
+		case DwarfForm.DW_FORM_ref_addr:
+			return new Reference(attribute, form);
+
+		case DwarfForm.DW_FORM_exprloc:
+			return new Expression(attribute, form);
+
+		case DwarfForm.DW_FORM_indirect:
+			return new Indirect(attribute, form);
+
+		default:
+			return new Unknown(attribute, form);
+		}
+	}
+
+	/**
+	 * Create a reader for a DW_FORM_implicit_const attribute, whose value
+	 * is given in the abbreviation.
+	 */
+	static AttributeReader create(int attribute, int form, long value) {
+		if (form == DwarfForm.DW_FORM_implicit_const) {
+			return new ImplicitConstant(attribute, form, value);
+		}
+
+		return create(attribute, form);
+	}
+
+	/**
+	 * Read the index of a DW_FORM_addrx or DW_FORM_strx value.
+	 */
+	static long readIndex(int form, DataSource data) {
+		switch (form) {
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_strx:
+			return data.getUDATA();
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_strx1:
+			return data.getU1();
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_strx2:
+			return data.getU2();
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_strx3:
+			return data.getU3();
+		case DwarfForm.DW_FORM_addrx4:
+		case DwarfForm.DW_FORM_strx4:
+			return data.getU4();
+		default:
+			throw new IllegalStateException("form=" + form);
+		}
+	}
+
+	/**
+	 * Deliver a string value, as an offset if the requestor accepts string
+	 * offsets or as a string otherwise. The indexed DW_FORM_strx forms are
+	 * resolved to their .debug_str offset in either case.
+	 */
+	static void readString(DwarfRequestor requestor, int attribute, int form, DataSource data) {
+		long offset;
+
+		switch (form) {
+		case DwarfForm.DW_FORM_string:
+			if (requestor instanceof StringOffsetRequestor) {
+				offset = data.position();
+				data.skipString();
+				break;
+			}
+
+			requestor.acceptString(attribute, form, data.getString());
+			return;
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_strp:
+			offset = data.getOffset();
+			break;
+		default:
+			offset = data.lookupStringOffset(readIndex(form, data));
+			break;
+		}
+
+		if (requestor instanceof StringOffsetRequestor) {
+			((StringOffsetRequestor) requestor).acceptStringOffset(attribute, form, offset);
+		} else if (form == DwarfForm.DW_FORM_line_strp) {
+			requestor.acceptString(attribute, form, data.lookupLineString(offset));
+		} else {
+			requestor.acceptString(attribute, form, data.lookupString(offset));
+		}
+	}
+
+	final int attribute;
+
+	final int form;
+
+	AttributeReader(int attribute, int form) {
+		super();
+		this.attribute = attribute;
+		this.form = form;
+	}
+
+	/**
+	 * Answer the value of a DW_FORM_implicit_const attribute.
+	 */
+	long getImplicitConstant() {
+		throw unexpectedForm();
+	}
+
+	abstract void read(DwarfRequestor requestor, DataSource data);
+
+	final IllegalStateException unexpectedForm() {
+		return new IllegalStateException("form=" + form);
+	}
+
+}
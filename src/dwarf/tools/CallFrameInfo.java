@@ -0,0 +1,1054 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The call frame information of a file, from its .debug_frame and .eh_frame
+ * sections. Frame description entries (FDEs) are found by a binary search:
+ * in the sorted table of .eh_frame_hdr when the file has one, and otherwise
+ * in an index built by a single pass over the section. The instructions of
+ * an FDE are run once, when it is first looked up, and the resulting rows
+ * are cached, so unwinding many frames in the same code does not decode its
+ * entries again.
+ */
+public final class CallFrameInfo {
+
+	/**
+	 * Collects the rows produced by the call frame instructions of a CIE
+	 * and an FDE.
+	 */
+	private static final class Builder {
+
+		private long[] addresses;
+
+		private int cfaRegister;
+
+		private int[] cfaRegisters;
+
+		private long cfaValue;
+
+		private long[] cfaValues;
+
+		private int columns;
+
+		private int count;
+
+		/** the rules established by the instructions of the CIE */
+		private byte[] initialRules;
+
+		private long[] initialValues;
+
+		private long location;
+
+		private byte[][] rowRules;
+
+		private long[][] rowValues;
+
+		private byte[] rules;
+
+		private final Deque<Object[]> stack;
+
+		private long[] values;
+
+		Builder(int returnAddressRegister) {
+			super();
+			this.addresses = new long[8];
+			this.cfaRegister = 0;
+			this.cfaRegisters = new int[8];
+			this.cfaValue = 0;
+			this.cfaValues = new long[8];
+			this.columns = returnAddressRegister + 1;
+			this.count = 0;
+			this.initialRules = new byte[0];
+			this.initialValues = new long[0];
+			this.location = 0;
+			this.rowRules = new byte[8][];
+			this.rowValues = new long[8][];
+			this.rules = new byte[columns];
+			this.stack = new ArrayDeque<>();
+			this.values = new long[columns];
+		}
+
+		void advance(long address) {
+			emit();
+			location = address;
+		}
+
+		FrameTable build(long end, int returnAddressRegister, ByteBuffer section) {
+			emit();
+
+			byte[] flatRules = new byte[count * columns];
+			long[] flatValues = new long[count * columns];
+
+			for (int row = 0; row < count; ++row) {
+				System.arraycopy(rowRules[row], 0, flatRules, row * columns, rowRules[row].length);
+				System.arraycopy(rowValues[row], 0, flatValues, row * columns, rowValues[row].length);
+			}
+
+			return new FrameTable(Arrays.copyOf(addresses, count), end, Arrays.copyOf(cfaRegisters, count),
+					Arrays.copyOf(cfaValues, count), columns, flatRules, flatValues, returnAddressRegister, section);
+		}
+
+		private void emit() {
+			int row = count;
+
+			if (row > 0 && addresses[row - 1] == location) {
+				// a row with no code overwrites its predecessor
+				row -= 1;
+			} else if (row == addresses.length) {
+				int capacity = row * 2;
+
+				addresses = Arrays.copyOf(addresses, capacity);
+				cfaRegisters = Arrays.copyOf(cfaRegisters, capacity);
+				cfaValues = Arrays.copyOf(cfaValues, capacity);
+				rowRules = Arrays.copyOf(rowRules, capacity);
+				rowValues = Arrays.copyOf(rowValues, capacity);
+			}
+
+			addresses[row] = location;
+			cfaRegisters[row] = cfaRegister;
+			cfaValues[row] = cfaValue;
+			rowRules[row] = rules.clone();
+			rowValues[row] = values.clone();
+			count = row + 1;
+		}
+
+		private void ensureColumn(int register) {
+			if (register >= rules.length) {
+				rules = Arrays.copyOf(rules, register + 1);
+				values = Arrays.copyOf(values, register + 1);
+				columns = Math.max(columns, register + 1);
+			}
+		}
+
+		/**
+		 * Record the current rules as those to which DW_CFA_restore returns.
+		 */
+		void markInitial() {
+			initialRules = rules.clone();
+			initialValues = values.clone();
+		}
+
+		void remember() {
+			stack.push(new Object[] { Integer.valueOf(cfaRegister), Long.valueOf(cfaValue), rules.clone(),
+					values.clone() });
+		}
+
+		void restore(int register) {
+			if (register < initialRules.length) {
+				setRule(register, initialRules[register], initialValues[register]);
+			} else {
+				setRule(register, FrameTable.RULE_UNSPECIFIED, 0);
+			}
+		}
+
+		void restoreState() {
+			Object[] state = stack.pop();
+
+			cfaRegister = ((Integer) state[0]).intValue();
+			cfaValue = ((Long) state[1]).longValue();
+			rules = (byte[]) state[2];
+			values = (long[]) state[3];
+		}
+
+		void setCfa(int register, long value) {
+			cfaRegister = register;
+			cfaValue = value;
+		}
+
+		void setRule(int register, int rule, long value) {
+			ensureColumn(register);
+			rules[register] = (byte) rule;
+			values[register] = value;
+		}
+
+	}
+
+	/**
+	 * A common information entry: the properties shared by the FDEs that
+	 * refer to it.
+	 */
+	private static final class Cie {
+
+		final int addressSize;
+
+		final long codeAlignment;
+
+		final long dataAlignment;
+
+		final int fdeEncoding;
+
+		final boolean hasAugmentationData;
+
+		final long instructionsEnd;
+
+		final long instructionsStart;
+
+		final int returnAddressRegister;
+
+		final int segmentSize;
+
+		Cie(int addressSize, long codeAlignment, long dataAlignment, int fdeEncoding, boolean hasAugmentationData,
+				long instructionsStart, long instructionsEnd, int returnAddressRegister, int segmentSize) {
+			super();
+			this.addressSize = addressSize;
+			this.codeAlignment = codeAlignment;
+			this.dataAlignment = dataAlignment;
+			this.fdeEncoding = fdeEncoding;
+			this.hasAugmentationData = hasAugmentationData;
+			this.instructionsEnd = instructionsEnd;
+			this.instructionsStart = instructionsStart;
+			this.returnAddressRegister = returnAddressRegister;
+			this.segmentSize = segmentSize;
+		}
+
+	}
+
+	/**
+	 * The FDEs of a section, sorted by the first address each describes.
+	 */
+	private static final class Descriptions {
+
+		final long[] ends;
+
+		final long[] offsets;
+
+		final long[] starts;
+
+		Descriptions(long[] starts, long[] ends, long[] offsets) {
+			super();
+			this.ends = ends;
+			this.offsets = offsets;
+			this.starts = starts;
+		}
+
+		/**
+		 * Answer the index of the FDE describing the given address, or -1.
+		 */
+		int find(long address) {
+			int low = 0;
+			int high = starts.length - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				if (starts[middle] <= address) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return high >= 0 && address < ends[high] ? high : -1;
+		}
+
+	}
+
+	/**
+	 * The call frame information of either .debug_frame or .eh_frame.
+	 */
+	private static final class Section {
+
+		/** the virtual address of the section, for pc-relative pointers */
+		private final long address;
+
+		private final int addressSize;
+
+		private final ByteBuffer buffer;
+
+		private final Map<Long, Cie> cies;
+
+		private volatile Descriptions descriptions;
+
+		/** whether this is .eh_frame, with its variant encoding of CIE pointers */
+		private final boolean eh;
+
+		private final long hdrAddress;
+
+		/** the number of entries in the search table of .eh_frame_hdr, or zero */
+		private final int hdrCount;
+
+		private final ByteBuffer hdrSection;
+
+		private final int hdrTableEncoding;
+
+		private final long hdrTableStart;
+
+		private final Map<Long, FrameTable> tables;
+
+		Section(ByteBuffer buffer, boolean eh, long address, ByteBuffer hdr, long hdrAddress, int addressSize) {
+			super();
+			this.address = address;
+			this.addressSize = addressSize;
+			this.buffer = buffer;
+			this.cies = new ConcurrentHashMap<>();
+			this.descriptions = null;
+			this.eh = eh;
+			this.hdrAddress = hdrAddress;
+			this.hdrSection = hdr;
+			this.tables = new ConcurrentHashMap<>();
+
+			int count = 0;
+			int tableEncoding = DW_EH_PE_omit;
+			long tableStart = 0;
+
+			// .eh_frame_hdr: version, eh_frame_ptr_enc, fde_count_enc, table_enc
+			if (hdr.limit() >= 4 && buffer.hasRemaining()) {
+				DataSource data = new DataSource(new DataSource(hdr).duplicate(), addressSize, 4, null);
+				int version = data.getU1();
+				int framePointerEncoding = data.getU1();
+				int countEncoding = data.getU1();
+
+				tableEncoding = data.getU1();
+
+				long framePointer = readPointer(data, framePointerEncoding, hdrAddress, hdrAddress, addressSize);
+				long fdeCount = readPointer(data, countEncoding, hdrAddress, hdrAddress, addressSize);
+				int entrySize = getFixedSize(tableEncoding, addressSize);
+
+				if (version == 1 && framePointer == address && entrySize != 0 && 0 < fdeCount
+						&& fdeCount <= (data.limit() - data.position()) / (2 * entrySize)) {
+					count = (int) fdeCount;
+					tableStart = data.position();
+				}
+			}
+
+			this.hdrCount = count;
+			this.hdrTableEncoding = tableEncoding;
+			this.hdrTableStart = tableStart;
+		}
+
+		/**
+		 * Answer the FDE describing the given address, or null.
+		 */
+		FrameTable find(long pc) {
+			if (!buffer.hasRemaining()) {
+				return null;
+			}
+
+			if (hdrCount != 0) {
+				return findInHeader(pc);
+			}
+
+			Descriptions index = getDescriptions();
+			int found = index.find(pc);
+
+			return found >= 0 ? getTable(index.offsets[found]) : null;
+		}
+
+		private FrameTable findInHeader(long pc) {
+			DataSource data = new DataSource(new DataSource(hdrSection).duplicate(), addressSize, 4, null);
+			int entrySize = getFixedSize(hdrTableEncoding, addressSize);
+			int low = 0;
+			int high = hdrCount - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				data.position(hdrTableStart + 2L * entrySize * middle);
+
+				if (readPointer(data, hdrTableEncoding, hdrAddress, hdrAddress, addressSize) <= pc) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			if (high < 0) {
+				return null;
+			}
+
+			data.position(hdrTableStart + 2L * entrySize * high + entrySize);
+
+			long offset = readPointer(data, hdrTableEncoding, hdrAddress, hdrAddress, addressSize) - address;
+			FrameTable table = getTable(offset);
+
+			return table != null && table.getStart() <= pc && pc < table.getEnd() ? table : null;
+		}
+
+		private Cie getCie(long offset) {
+			Long key = Long.valueOf(offset);
+			Cie cie = cies.get(key);
+
+			if (cie == null) {
+				cie = readCie(open(offset));
+				cies.put(key, cie);
+			}
+
+			return cie;
+		}
+
+		Descriptions getDescriptions() {
+			Descriptions index = descriptions;
+
+			if (index == null) {
+				index = scan();
+				descriptions = index;
+			}
+
+			return index;
+		}
+
+		/**
+		 * Answer the rows of the FDE at the given offset, or null if there
+		 * is no FDE at that offset.
+		 */
+		FrameTable getTable(long offset) {
+			Long key = Long.valueOf(offset);
+			FrameTable table = tables.get(key);
+
+			if (table == null) {
+				if (offset < 0 || offset >= buffer.limit()) {
+					return null;
+				}
+
+				table = readTable(open(offset));
+
+				if (table == null) {
+					return null;
+				}
+
+				FrameTable existing = tables.putIfAbsent(key, table);
+
+				if (existing != null) {
+					table = existing;
+				}
+			}
+
+			return table;
+		}
+
+		private boolean isCie(long id, int offsetSize) {
+			if (eh) {
+				return id == 0;
+			}
+
+			return offsetSize == 8 ? id == -1L : id == 0xFFFFFFFFL;
+		}
+
+		private DataSource open(long offset) {
+			return new DataSource(new DataSource(buffer).duplicate(), addressSize, 4, null).position(offset);
+		}
+
+		private Cie readCie(DataSource data) {
+			long length = data.getU4();
+			int offsetSize = 4;
+
+			if (length == 0xFFFFFFFFL) {
+				length = data.getU8();
+				offsetSize = 8;
+			}
+
+			long end = data.position() + length;
+			long id = offsetSize == 8 ? data.getU8() : data.getU4();
+
+			if (!isCie(id, offsetSize)) {
+				throw new IllegalArgumentException("not a CIE: id=" + id);
+			}
+
+			int version = data.getU1();
+			String augmentation = data.getString();
+			int cieAddressSize = addressSize;
+			int segmentSize = 0;
+
+			if (augmentation.contains("eh")) {
+				data.skip(addressSize);
+			}
+
+			if (version >= 4) {
+				cieAddressSize = data.getU1();
+				segmentSize = data.getU1();
+			}
+
+			long codeAlignment = data.getUDATA();
+			long dataAlignment = data.getSDATA();
+			int returnAddressRegister = version == 1 ? data.getU1() : AttributeReader.checkUInt(data.getUDATA());
+			int fdeEncoding = DW_EH_PE_absptr;
+			boolean hasAugmentationData = augmentation.startsWith("z");
+
+			if (hasAugmentationData) {
+				long augmentationEnd = data.getUDATA();
+
+				augmentationEnd += data.position();
+
+				for (int index = 1; index < augmentation.length(); ++index) {
+					switch (augmentation.charAt(index)) {
+					case 'L':
+						data.getU1(); // LSDA encoding
+						break;
+					case 'P':
+						readPointer(data, data.getU1(), address, hdrAddress, addressSize);
+						break;
+					case 'R':
+						fdeEncoding = data.getU1();
+						break;
+					default:
+						// 'S' marks a signal frame; unknown letters end the known data
+						break;
+					}
+				}
+
+				data.position(augmentationEnd);
+			}
+
+			return new Cie(cieAddressSize, codeAlignment, dataAlignment, fdeEncoding, hasAugmentationData,
+					data.position(), end, returnAddressRegister, segmentSize);
+		}
+
+		/**
+		 * Read the header of the FDE at the position of the data, storing
+		 * the offset of its end and the bounds of the code it describes.
+		 * Answer its CIE, or null if the entry is not an FDE; the data is
+		 * left at its instructions.
+		 *
+		 * @param bounds receives the end offset (-1 for an entry of zero length),
+		 *               first address and end address
+		 */
+		private Cie readFdeHeader(DataSource data, long[] bounds) {
+			long length = data.getU4();
+			int offsetSize = 4;
+
+			if (length == 0xFFFFFFFFL) {
+				length = data.getU8();
+				offsetSize = 8;
+			}
+
+			long end = data.position() + length;
+
+			if (length == 0) {
+				bounds[0] = -1;
+				return null;
+			} else if (end > data.limit()) {
+				bounds[0] = data.limit();
+				return null;
+			}
+
+			bounds[0] = end;
+
+			long idPosition = data.position();
+			long id = offsetSize == 8 ? data.getU8() : data.getU4();
+
+			if (isCie(id, offsetSize)) {
+				return null;
+			}
+
+			Cie cie = getCie(eh ? idPosition - id : id);
+			long start;
+			long range;
+
+			if (eh) {
+				start = readPointer(data, cie.fdeEncoding, address, hdrAddress, addressSize);
+				range = readPointer(data, cie.fdeEncoding & 0x0F, address, hdrAddress, addressSize);
+			} else {
+				data.skip(cie.segmentSize);
+				start = readAddress(data, cie.addressSize);
+				range = readAddress(data, cie.addressSize);
+			}
+
+			if (cie.hasAugmentationData) {
+				long augmentationLength = data.getUDATA();
+
+				data.skip((int) augmentationLength);
+			}
+
+			bounds[1] = start;
+			bounds[2] = start + range;
+
+			return cie;
+		}
+
+		private FrameTable readTable(DataSource data) {
+			long[] bounds = new long[3];
+			Cie cie = readFdeHeader(data, bounds);
+
+			if (cie == null) {
+				return null;
+			}
+
+			Builder builder = new Builder(cie.returnAddressRegister);
+			DataSource cieData = open(cie.instructionsStart);
+
+			execute(cieData, cie.instructionsEnd, cie, builder);
+			builder.markInitial();
+			builder.location = bounds[1];
+			execute(data, bounds[0], cie, builder);
+
+			return builder.build(bounds[2], cie.returnAddressRegister, buffer);
+		}
+
+		private void execute(DataSource data, long end, Cie cie, Builder builder) {
+			while (data.position() < end) {
+				int opcode = data.getU1();
+				int register;
+
+				switch (opcode & 0xC0) {
+				case DW_CFA_advance_loc:
+					builder.advance(builder.location + (opcode & 0x3F) * cie.codeAlignment);
+					continue;
+				case DW_CFA_offset:
+					builder.setRule(opcode & 0x3F, FrameTable.RULE_OFFSET, data.getUDATA() * cie.dataAlignment);
+					continue;
+				case DW_CFA_restore:
+					builder.restore(opcode & 0x3F);
+					continue;
+				default:
+					break;
+				}
+
+				switch (opcode) {
+				case DW_CFA_nop:
+					break;
+				case DW_CFA_set_loc:
+					if (eh) {
+						builder.advance(readPointer(data, cie.fdeEncoding, address, hdrAddress, addressSize));
+					} else {
+						builder.advance(readAddress(data, cie.addressSize));
+					}
+					break;
+				case DW_CFA_advance_loc1:
+					builder.advance(builder.location + data.getU1() * cie.codeAlignment);
+					break;
+				case DW_CFA_advance_loc2:
+					builder.advance(builder.location + data.getU2() * cie.codeAlignment);
+					break;
+				case DW_CFA_advance_loc4:
+					builder.advance(builder.location + data.getU4() * cie.codeAlignment);
+					break;
+				case DW_CFA_offset_extended:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_OFFSET, data.getUDATA() * cie.dataAlignment);
+					break;
+				case DW_CFA_restore_extended:
+					builder.restore(readRegister(data));
+					break;
+				case DW_CFA_undefined:
+					builder.setRule(readRegister(data), FrameTable.RULE_UNDEFINED, 0);
+					break;
+				case DW_CFA_same_value:
+					builder.setRule(readRegister(data), FrameTable.RULE_SAME_VALUE, 0);
+					break;
+				case DW_CFA_register:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_REGISTER, readRegister(data));
+					break;
+				case DW_CFA_remember_state:
+					builder.remember();
+					break;
+				case DW_CFA_restore_state:
+					builder.restoreState();
+					break;
+				case DW_CFA_def_cfa:
+					register = readRegister(data);
+					builder.setCfa(register, data.getUDATA());
+					break;
+				case DW_CFA_def_cfa_register:
+					builder.setCfa(readRegister(data), builder.cfaRegister < 0 ? 0 : builder.cfaValue);
+					break;
+				case DW_CFA_def_cfa_offset:
+					builder.cfaValue = data.getUDATA();
+					break;
+				case DW_CFA_def_cfa_expression:
+					builder.setCfa(-1, skipExpression(data));
+					break;
+				case DW_CFA_expression:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_EXPRESSION, skipExpression(data));
+					break;
+				case DW_CFA_offset_extended_sf:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_OFFSET, data.getSDATA() * cie.dataAlignment);
+					break;
+				case DW_CFA_def_cfa_sf:
+					register = readRegister(data);
+					builder.setCfa(register, data.getSDATA() * cie.dataAlignment);
+					break;
+				case DW_CFA_def_cfa_offset_sf:
+					builder.cfaValue = data.getSDATA() * cie.dataAlignment;
+					break;
+				case DW_CFA_val_offset:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_VAL_OFFSET, data.getUDATA() * cie.dataAlignment);
+					break;
+				case DW_CFA_val_offset_sf:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_VAL_OFFSET, data.getSDATA() * cie.dataAlignment);
+					break;
+				case DW_CFA_val_expression:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_VAL_EXPRESSION, skipExpression(data));
+					break;
+				case DW_CFA_GNU_window_save:
+					break;
+				case DW_CFA_GNU_args_size:
+					data.getUDATA();
+					break;
+				case DW_CFA_GNU_negative_offset_extended:
+					register = readRegister(data);
+					builder.setRule(register, FrameTable.RULE_OFFSET, -data.getUDATA() * cie.dataAlignment);
+					break;
+				default:
+					throw new IllegalArgumentException("DW_CFA=" + opcode);
+				}
+			}
+		}
+
+		/**
+		 * Index the FDEs of the section by a single pass over its entries.
+		 */
+		private Descriptions scan() {
+			DataSource data = open(0);
+			long[] bounds = new long[3];
+			long[] ends = new long[64];
+			long[] offsets = new long[64];
+			long[] starts = new long[64];
+			int count = 0;
+
+			while (data.hasRemaining()) {
+				long offset = data.position();
+				Cie cie = readFdeHeader(data, bounds);
+
+				if (cie != null && bounds[1] < bounds[2]) {
+					if (count == starts.length) {
+						ends = Arrays.copyOf(ends, count * 2);
+						offsets = Arrays.copyOf(offsets, count * 2);
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+
+					ends[count] = bounds[2];
+					offsets[count] = offset;
+					starts[count] = bounds[1];
+					count += 1;
+				}
+
+				if (bounds[0] >= 0) {
+					data.position(bounds[0]);
+				} else if (eh) {
+					// a zero length terminates .eh_frame
+					break;
+				} else {
+					data.position(offset + 4);
+				}
+			}
+
+			Integer[] order = new Integer[count];
+
+			for (int index = 0; index < count; ++index) {
+				order[index] = Integer.valueOf(index);
+			}
+
+			long[] unsortedStarts = starts;
+
+			Arrays.sort(order, (left, right) -> Long.compare(unsortedStarts[left.intValue()],
+					unsortedStarts[right.intValue()]));
+
+			long[] sortedEnds = new long[count];
+			long[] sortedOffsets = new long[count];
+			long[] sortedStarts = new long[count];
+
+			for (int index = 0; index < count; ++index) {
+				int entry = order[index].intValue();
+
+				sortedEnds[index] = ends[entry];
+				sortedOffsets[index] = offsets[entry];
+				sortedStarts[index] = starts[entry];
+			}
+
+			return new Descriptions(sortedStarts, sortedEnds, sortedOffsets);
+		}
+
+	}
+
+	static final int DW_CFA_advance_loc = 0x40;
+
+	static final int DW_CFA_advance_loc1 = 0x02;
+
+	static final int DW_CFA_advance_loc2 = 0x03;
+
+	static final int DW_CFA_advance_loc4 = 0x04;
+
+	static final int DW_CFA_def_cfa = 0x0c;
+
+	static final int DW_CFA_def_cfa_expression = 0x0f;
+
+	static final int DW_CFA_def_cfa_offset = 0x0e;
+
+	static final int DW_CFA_def_cfa_offset_sf = 0x13;
+
+	static final int DW_CFA_def_cfa_register = 0x0d;
+
+	static final int DW_CFA_def_cfa_sf = 0x12;
+
+	static final int DW_CFA_expression = 0x10;
+
+	static final int DW_CFA_GNU_args_size = 0x2e;
+
+	static final int DW_CFA_GNU_negative_offset_extended = 0x2f;
+
+	static final int DW_CFA_GNU_window_save = 0x2d;
+
+	static final int DW_CFA_nop = 0x00;
+
+	static final int DW_CFA_offset = 0x80;
+
+	static final int DW_CFA_offset_extended = 0x05;
+
+	static final int DW_CFA_offset_extended_sf = 0x11;
+
+	static final int DW_CFA_register = 0x09;
+
+	static final int DW_CFA_remember_state = 0x0a;
+
+	static final int DW_CFA_restore = 0xc0;
+
+	static final int DW_CFA_restore_extended = 0x06;
+
+	static final int DW_CFA_restore_state = 0x0b;
+
+	static final int DW_CFA_same_value = 0x08;
+
+	static final int DW_CFA_set_loc = 0x01;
+
+	static final int DW_CFA_undefined = 0x07;
+
+	static final int DW_CFA_val_expression = 0x16;
+
+	static final int DW_CFA_val_offset = 0x14;
+
+	static final int DW_CFA_val_offset_sf = 0x15;
+
+	static final int DW_EH_PE_absptr = 0x00;
+
+	static final int DW_EH_PE_aligned = 0x50;
+
+	static final int DW_EH_PE_datarel = 0x30;
+
+	static final int DW_EH_PE_omit = 0xff;
+
+	static final int DW_EH_PE_pcrel = 0x10;
+
+	static final int DW_EH_PE_sdata2 = 0x0a;
+
+	static final int DW_EH_PE_sdata4 = 0x0b;
+
+	static final int DW_EH_PE_sdata8 = 0x0c;
+
+	static final int DW_EH_PE_sleb128 = 0x09;
+
+	static final int DW_EH_PE_udata2 = 0x02;
+
+	static final int DW_EH_PE_udata4 = 0x03;
+
+	static final int DW_EH_PE_udata8 = 0x04;
+
+	static final int DW_EH_PE_uleb128 = 0x01;
+
+	/**
+	 * Answer the size of a pointer of the given encoding, or zero if
+	 * its size varies.
+	 */
+	static int getFixedSize(int encoding, int addressSize) {
+		switch (encoding & 0x0F) {
+		case DW_EH_PE_absptr:
+			return encoding == DW_EH_PE_omit ? 0 : addressSize;
+		case DW_EH_PE_udata2:
+		case DW_EH_PE_sdata2:
+			return 2;
+		case DW_EH_PE_udata4:
+		case DW_EH_PE_sdata4:
+			return 4;
+		case DW_EH_PE_udata8:
+		case DW_EH_PE_sdata8:
+			return 8;
+		default:
+			return 0;
+		}
+	}
+
+	private static long readAddress(DataSource data, int size) {
+		switch (size) {
+		case 2:
+			return data.getU2();
+		case 4:
+			return data.getU4();
+		case 8:
+			return data.getU8();
+		default:
+			throw new IllegalArgumentException("address size=" + size);
+		}
+	}
+
+	/**
+	 * Read a pointer of the given DW_EH_PE_ encoding.
+	 *
+	 * @param sectionAddress the virtual address of the data, for pc-relative pointers
+	 * @param dataAddress the base of data-relative pointers
+	 */
+	static long readPointer(DataSource data, int encoding, long sectionAddress, long dataAddress,
+			int addressSize) {
+		if (encoding == DW_EH_PE_omit) {
+			return 0;
+		}
+
+		long base;
+
+		switch (encoding & 0x70) {
+		case DW_EH_PE_pcrel:
+			base = sectionAddress + data.position();
+			break;
+		case DW_EH_PE_datarel:
+			base = dataAddress;
+			break;
+		case DW_EH_PE_aligned:
+			data.skip((int) (-data.position() & (addressSize - 1)));
+			base = 0;
+			break;
+		default:
+			// textrel and funcrel have no base known here
+			base = 0;
+			break;
+		}
+
+		long value;
+
+		switch (encoding & 0x0F) {
+		case DW_EH_PE_absptr:
+			value = readAddress(data, addressSize);
+			break;
+		case DW_EH_PE_uleb128:
+			value = data.getUDATA();
+			break;
+		case DW_EH_PE_udata2:
+			value = data.getU2();
+			break;
+		case DW_EH_PE_udata4:
+			value = data.getU4();
+			break;
+		case DW_EH_PE_udata8:
+			value = data.getU8();
+			break;
+		case DW_EH_PE_sleb128:
+			value = data.getSDATA();
+			break;
+		case DW_EH_PE_sdata2:
+			value = (short) data.getU2();
+			break;
+		case DW_EH_PE_sdata4:
+			value = (int) data.getU4();
+			break;
+		case DW_EH_PE_sdata8:
+			value = data.getU8();
+			break;
+		default:
+			throw new IllegalArgumentException("pointer encoding=" + encoding);
+		}
+
+		value += base;
+
+		return addressSize == 4 ? value & 0xFFFFFFFFL : value;
+	}
+
+	private static int readRegister(DataSource data) {
+		return AttributeReader.checkUInt(data.getUDATA());
+	}
+
+	/**
+	 * Skip a length-prefixed expression, answering the offset of its length.
+	 */
+	private static long skipExpression(DataSource data) {
+		long offset = data.position();
+
+		data.skip(AttributeReader.checkUInt(data.getUDATA()));
+
+		return offset;
+	}
+
+	private final Section debugFrame;
+
+	private final Section ehFrame;
+
+	CallFrameInfo(ByteBuffer debugFrame, ByteBuffer ehFrame, long ehFrameAddress, ByteBuffer ehFrameHdr,
+			long ehFrameHdrAddress, int addressSize) {
+		super();
+		this.debugFrame = new Section(debugFrame, false, 0, ByteBuffer.allocate(0), 0, addressSize);
+		this.ehFrame = new Section(ehFrame, true, ehFrameAddress, ehFrameHdr, ehFrameHdrAddress, addressSize);
+	}
+
+	/**
+	 * Answer the rows describing the code at the given address, from
+	 * .debug_frame if it describes the address and otherwise from .eh_frame,
+	 * or null if neither does.
+	 */
+	public FrameTable findTable(long pc) {
+		FrameTable table = debugFrame.find(pc);
+
+		return table != null ? table : ehFrame.find(pc);
+	}
+
+	/**
+	 * Answer the rows describing the code at each of the given addresses,
+	 * as by {@link #findTable(long)}. Consecutive addresses in the same
+	 * code share a single lookup.
+	 */
+	public FrameTable[] findTables(long[] pcs) {
+		FrameTable[] tables = new FrameTable[pcs.length];
+		FrameTable previous = null;
+
+		for (int index = 0; index < pcs.length; ++index) {
+			long pc = pcs[index];
+
+			if (previous == null || pc < previous.getStart() || pc >= previous.getEnd()) {
+				previous = findTable(pc);
+			}
+
+			tables[index] = previous;
+		}
+
+		return tables;
+	}
+
+	/**
+	 * Answer the number of non-empty FDEs in .debug_frame and .eh_frame.
+	 */
+	public int getDescriptionCount() {
+		return debugFrame.getDescriptions().starts.length + ehFrame.getDescriptions().starts.length;
+	}
+
+	/**
+	 * Answer the rows of the FDE at the given index, counting those of
+	 * .debug_frame, in address order, before those of .eh_frame.
+	 */
+	public FrameTable getTable(int index) {
+		Descriptions descriptions = debugFrame.getDescriptions();
+
+		if (index < descriptions.offsets.length) {
+			return debugFrame.getTable(descriptions.offsets[index]);
+		}
+
+		return ehFrame.getTable(ehFrame.getDescriptions().offsets[index - descriptions.offsets.length]);
+	}
+
+}
@@ -20,17 +20,56 @@
  *******************************************************************************/
 package dwarf.tools;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
-import java.util.Optional;
-import java.util.function.LongFunction;
 
 final class DataSource {
 
+	/** the high bit of each byte of a word: the continuation bits of LEB128 digits */
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/** used for strings of 7-bit characters, which need no UTF-8 decoding */
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	/** the low bit of each byte of a word */
+	private static final long LOW_BITS = 0x0101010101010101L;
+
 	static final Charset UTF8 = Charset.forName("UTF-8");
 
+	/**
+	 * Gather the low seven bits of each byte of a little-endian word into a
+	 * contiguous value of up to 56 bits.
+	 */
+	private static long compactDigits(long word) {
+		long value = word & 0x7F7F7F7F7F7F7F7FL;
+
+		value = (value & 0x007F007F007F007FL) | ((value & 0x7F007F007F007F00L) >>> 1);
+		value = (value & 0x00003FFF00003FFFL) | ((value & 0x3FFF00003FFF0000L) >>> 2);
+		value = (value & 0x000000000FFFFFFFL) | ((value & 0x0FFFFFFF00000000L) >>> 4);
+
+		return value;
+	}
+
+	private static long getSDATA(ByteBuffer data) {
+		long result = 0;
+
+		for (int shift = 0;; shift += 7) {
+			byte digit = data.get();
+
+			result |= ((long) (digit & 0x7F)) << shift;
+
+			if (digit >= 0) {
+				// extend the sign from the top bit of the last digit
+				if (shift + 7 < 64 && (digit & 0x40) != 0) {
+					result |= -(1L << (shift + 7));
+				}
+
+				return result;
+			}
+		}
+	}
+
 	private static long getU4(ByteBuffer data) {
 		return data.getInt() & ((1L << 32) - 1);
 	}
@@ -53,85 +92,145 @@ final class DataSource {
 		}
 	}
 
+	private static boolean isAscii(byte[] bytes) {
+		for (byte ch : bytes) {
+			if (ch < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	private final int addressSize;
 
 	private final ByteBuffer buffer;
 
+	/** the values held outside the section, or null */
+	private final IndirectData indirect;
+
+	private final boolean littleEndian;
+
 	private final int offsetSize;
 
-	private final LongFunction<String> stringLookup;
+	private final boolean wideAddresses;
+
+	private final boolean wideOffsets;
+
+	/** a little-endian view of the buffer for reading LEB128 values a word at a time */
+	private final ByteBuffer words;
 
 	DataSource(ByteBuffer data) {
-		this(data, 0, 0, offset -> "");
+		this(data, 0, 0, null);
 	}
 
-	private DataSource(ByteBuffer data, int addressSize, int offsetSize, LongFunction<String> stringLookup) {
+	private DataSource(ByteBuffer data, int addressSize, int offsetSize, IndirectData indirect) {
 		super();
 		this.addressSize = addressSize;
 		this.buffer = data;
+		this.indirect = indirect;
+		this.littleEndian = data.order() == ByteOrder.LITTLE_ENDIAN;
 		this.offsetSize = offsetSize;
-		this.stringLookup = stringLookup;
+		this.wideAddresses = addressSize == 8;
+		this.wideOffsets = offsetSize == 8;
+		this.words = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	DataSource(DataSource data, int addressSize, int offsetSize, IndirectData indirect) {
+		this(data.buffer, addressSize, offsetSize, indirect);
+	}
+
+	int addressSize() {
+		return addressSize;
 	}
 
-	DataSource(DataSource data, int addressSize, int offsetSize, LongFunction<String> stringLookup) {
-		this(data.buffer, addressSize, offsetSize, stringLookup);
+	private IndirectData checkIndirect() {
+		if (indirect == null) {
+			throw new IllegalStateException("not unit data");
+		}
+
+		return indirect;
 	}
 
 	long getAddress() {
-		return getRef(addressSize);
+		return wideAddresses ? buffer.getLong() : getNarrowRef(addressSize);
 	}
 
 	void getBlock(byte[] block) {
 		buffer.get(block);
 	}
 
-	long getOffset() {
-		return getRef(offsetSize);
+	/**
+	 * Answer a read-only view of the next length bytes and advance past them.
+	 */
+	ByteBuffer getView(int length) {
+		int start = buffer.position();
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+
+		view.limit(start + length);
+		buffer.position(start + length);
+
+		return view.slice().order(buffer.order());
 	}
 
-	private long getRef(int refSize) {
-		switch (refSize) {
-		case 4:
+	private long getNarrowRef(int refSize) {
+		if (refSize == 4) {
 			return getU4();
-		case 8:
-			return getU8();
-		default:
-			throw new IllegalStateException();
 		}
+
+		throw new IllegalStateException();
+	}
+
+	long getOffset() {
+		return wideOffsets ? buffer.getLong() : getNarrowRef(offsetSize);
 	}
 
 	long getSDATA() {
-		long result = 0;
+		byte first = buffer.get();
 
-		for (int shift = 0;; shift += 7) {
-			byte digit = buffer.get();
+		if (first >= 0) {
+			return ((long) first << 57) >> 57;
+		}
 
-			result |= ((long) (digit & 0x7F)) << shift;
+		int start = buffer.position() - 1;
 
-			if (digit >= 0) {
-				if (shift < 64 && (digit & 0x40) != 0) {
-					result |= -(1L << shift);
-				}
+		if (buffer.limit() - start >= Long.BYTES) {
+			long word = words.getLong(start);
 
-				return result;
+			if ((word & 0x8000) == 0) {
+				buffer.position(start + 2);
+				return (((word & 0x7F) | ((word >>> 1) & 0x3F80)) << 50) >> 50;
+			}
+
+			long stops = ~word & HIGH_BITS;
+
+			if (stops != 0) {
+				int length = (Long.numberOfTrailingZeros(stops) >>> 3) + 1;
+				int unused = Long.SIZE - 7 * length;
+
+				buffer.position(start + length);
+				return (compactDigits(word & (stops ^ (stops - 1))) << unused) >> unused;
 			}
 		}
+
+		// near the end of the buffer, or nine or more digits
+		buffer.position(start);
+
+		return getSDATA(buffer);
 	}
 
 	String getString() {
-		ByteArrayOutputStream content = new ByteArrayOutputStream();
-
-		while (hasRemaining()) {
-			byte ch = (byte) getU1();
+		int end = indexOfTerminator();
+		byte[] content = new byte[end - buffer.position()];
 
-			if (ch == 0) {
-				break;
-			}
+		buffer.get(content);
 
-			content.write(ch);
+		if (buffer.hasRemaining()) {
+			// skip the terminator
+			buffer.get();
 		}
 
-		return new String(content.toByteArray(), DataSource.UTF8);
+		return new String(content, isAscii(content) ? LATIN1 : UTF8);
 	}
 
 	int getU1() {
@@ -145,7 +244,7 @@ final class DataSource {
 	int getU3() {
 		int result = getU2();
 
-		if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+		if (littleEndian) {
 			result += getU1() << 16;
 		} else {
 			result <<= 8;
@@ -164,13 +263,72 @@ final class DataSource {
 	}
 
 	long getUDATA() {
+		byte first = buffer.get();
+
+		if (first >= 0) {
+			return first;
+		}
+
+		int start = buffer.position() - 1;
+
+		if (buffer.limit() - start >= Long.BYTES) {
+			long word = words.getLong(start);
+
+			if ((word & 0x8000) == 0) {
+				buffer.position(start + 2);
+				return (word & 0x7F) | ((word >>> 1) & 0x3F80);
+			}
+
+			long stops = ~word & HIGH_BITS;
+
+			if (stops != 0) {
+				buffer.position(start + (Long.numberOfTrailingZeros(stops) >>> 3) + 1);
+				return compactDigits(word & (stops ^ (stops - 1)));
+			}
+		}
+
+		// near the end of the buffer, or nine or more digits
+		buffer.position(start);
+
 		return getUDATA(buffer);
 	}
 
+	/**
+	 * Answer the index of the NUL byte terminating the string at the current
+	 * position, or the limit if there is none. The bytes are examined eight
+	 * at a time while enough remain.
+	 */
+	private int indexOfTerminator() {
+		int index = buffer.position();
+		int limit = buffer.limit();
+
+		for (; limit - index >= Long.BYTES; index += Long.BYTES) {
+			long word = words.getLong(index);
+			long zeros = (word - LOW_BITS) & ~word & HIGH_BITS;
+
+			if (zeros != 0) {
+				// the lowest flagged byte is always a true zero
+				return index + (Long.numberOfTrailingZeros(zeros) >>> 3);
+			}
+		}
+
+		for (; index < limit; ++index) {
+			if (buffer.get(index) == 0) {
+				break;
+			}
+		}
+
+		return index;
+	}
+
 	boolean hasRemaining() {
 		return buffer.hasRemaining();
 	}
 
+	long limit() {
+		return buffer.limit();
+	}
+
 	DataSource limit(long offset) {
 		if (buffer.position() <= offset && offset <= buffer.limit()) {
 			buffer.limit((int) offset);
@@ -180,8 +338,38 @@ final class DataSource {
 		}
 	}
 
+	/**
+	 * Answer the address at the given index in the unit's part of .debug_addr.
+	 */
+	long lookupAddress(long index) {
+		return checkIndirect().getAddress(index);
+	}
+
+	/**
+	 * Answer the string at the given offset in .debug_line_str.
+	 */
+	String lookupLineString(long offset) {
+		String string = checkIndirect().getLineString(offset);
+
+		return string != null ? string : "";
+	}
+
 	String lookupString(long offset) {
-		return Optional.ofNullable(stringLookup.apply(offset)).orElse("");
+		String string = indirect != null ? indirect.getString(offset) : null;
+
+		return string != null ? string : "";
+	}
+
+	/**
+	 * Answer the .debug_str offset at the given index in the unit's part
+	 * of .debug_str_offsets.
+	 */
+	long lookupStringOffset(long index) {
+		return checkIndirect().getStringOffset(index);
+	}
+
+	int offsetSize() {
+		return offsetSize;
 	}
 
 	long position() {
@@ -197,8 +385,47 @@ final class DataSource {
 		throw new IllegalArgumentException("position=" + offset);
 	}
 
+	void skip(int count) {
+		buffer.position(buffer.position() + count);
+	}
+
+	void skipAddress() {
+		skip(addressSize);
+	}
+
+	void skipOffset() {
+		skip(offsetSize);
+	}
+
+	void skipString() {
+		int end = indexOfTerminator();
+
+		buffer.position(end < buffer.limit() ? end + 1 : end);
+	}
+
+	void skipUDATA() {
+		if (buffer.get() >= 0) {
+			return;
+		}
+
+		int start = buffer.position() - 1;
+
+		if (buffer.limit() - start >= Long.BYTES) {
+			long stops = ~words.getLong(start) & HIGH_BITS;
+
+			if (stops != 0) {
+				buffer.position(start + (Long.numberOfTrailingZeros(stops) >>> 3) + 1);
+				return;
+			}
+		}
+
+		while (buffer.get() < 0) {
+			continue;
+		}
+	}
+
 	DataSource duplicate() {
-		return new DataSource(buffer.duplicate().order(buffer.order()), addressSize, offsetSize, stringLookup);
+		return new DataSource(buffer.duplicate().order(buffer.order()), addressSize, offsetSize, indirect);
 	}
 
 }
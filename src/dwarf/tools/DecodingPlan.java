@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A decoder specialized for the exact sequence of (attribute, form) pairs
+ * of one abbreviation. Each attribute is compiled to an operation that
+ * reads its form directly, avoiding both the virtual call through
+ * {@link AttributeReader} and the second dispatch on the form within
+ * the reader. Forms without a dedicated operation, including
+ * DW_FORM_indirect, are delegated to the interpreter.
+ * <p>
+ * Attributes outside the interest of a requestor are compiled to operations
+ * that advance past the value, according to the size rule of its form, without
+ * decoding or delivering it. Adjacent fixed-size values are skipped together.
+ */
+final class DecodingPlan {
+
+	private static final int OP_ADDRESS = 0;
+
+	private static final int OP_BLOCK = 1;
+
+	private static final int OP_BLOCK1 = 2;
+
+	private static final int OP_BLOCK2 = 3;
+
+	private static final int OP_BLOCK4 = 4;
+
+	private static final int OP_DATA1 = 5;
+
+	private static final int OP_DATA2 = 6;
+
+	private static final int OP_DATA4 = 7;
+
+	private static final int OP_DATA8 = 8;
+
+	private static final int OP_EXPRLOC = 9;
+
+	private static final int OP_FLAG = 10;
+
+	private static final int OP_FLAG_PRESENT = 11;
+
+	private static final int OP_INTERPRET = 12;
+
+	private static final int OP_REF1 = 13;
+
+	private static final int OP_REF2 = 14;
+
+	private static final int OP_REF4 = 15;
+
+	private static final int OP_REF8 = 16;
+
+	private static final int OP_REF_OFFSET = 17;
+
+	private static final int OP_REF_UDATA = 18;
+
+	private static final int OP_SDATA = 19;
+
+	private static final int OP_STRING = 20;
+
+	private static final int OP_STRP = 21;
+
+	private static final int OP_UDATA = 22;
+
+	/** skip a number of bytes given by the attribute slot */
+	private static final int OP_SKIP = 23;
+
+	private static final int OP_SKIP_ADDRESS = 24;
+
+	private static final int OP_SKIP_BLOCK = 25;
+
+	private static final int OP_SKIP_BLOCK1 = 26;
+
+	private static final int OP_SKIP_BLOCK2 = 27;
+
+	private static final int OP_SKIP_BLOCK4 = 28;
+
+	private static final int OP_SKIP_INDIRECT = 29;
+
+	private static final int OP_SKIP_OFFSET = 30;
+
+	private static final int OP_SKIP_STRING = 31;
+
+	private static final int OP_SKIP_UDATA = 32;
+
+	static DecodingPlan compile(AttributeReader[] readers, int tag, DwarfInterest interest) {
+		int capacity = readers.length;
+		int[] attributes = new int[capacity];
+		int[] forms = new int[capacity];
+		int[] operations = new int[capacity];
+		AttributeReader[] fallbacks = new AttributeReader[capacity];
+		int count = 0;
+
+		for (AttributeReader reader : readers) {
+			int form = reader.form;
+			int operation;
+
+			if (interest.wantsAttribute(tag, reader.attribute)) {
+				operation = operationFor(form);
+			} else {
+				int size = fixedSize(form);
+
+				if (size >= 0) {
+					if (count > 0 && operations[count - 1] == OP_SKIP) {
+						// merge with the preceding skip
+						attributes[count - 1] += size;
+					} else if (size > 0) {
+						attributes[count] = size;
+						operations[count] = OP_SKIP;
+						count += 1;
+					}
+					continue;
+				}
+
+				operation = skipOperationFor(form);
+			}
+
+			attributes[count] = reader.attribute;
+			forms[count] = form;
+			operations[count] = operation;
+			fallbacks[count] = reader;
+			count += 1;
+		}
+
+		return new DecodingPlan(Arrays.copyOf(attributes, count), Arrays.copyOf(forms, count),
+				Arrays.copyOf(operations, count), Arrays.copyOf(fallbacks, count), interest);
+	}
+
+	/**
+	 * Answer the size of values of the given form if it is the same
+	 * for all units, or -1 if it depends on the unit or the value.
+	 */
+	static int fixedSize(int form) {
+		switch (form) {
+		case DwarfForm.DW_FORM_flag_present:
+		case DwarfForm.DW_FORM_implicit_const:
+			return 0;
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_data1:
+		case DwarfForm.DW_FORM_flag:
+		case DwarfForm.DW_FORM_ref1:
+		case DwarfForm.DW_FORM_strx1:
+			return 1;
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_data2:
+		case DwarfForm.DW_FORM_ref2:
+		case DwarfForm.DW_FORM_strx2:
+			return 2;
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_strx3:
+			return 3;
+		case DwarfForm.DW_FORM_addrx4:
+		case DwarfForm.DW_FORM_data4:
+		case DwarfForm.DW_FORM_ref4:
+		case DwarfForm.DW_FORM_ref_sup4:
+		case DwarfForm.DW_FORM_strx4:
+			return 4;
+		case DwarfForm.DW_FORM_data8:
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_sig8:
+		case DwarfForm.DW_FORM_ref_sup8:
+			return 8;
+		case DwarfForm.DW_FORM_data16:
+			return 16;
+		default:
+			return -1;
+		}
+	}
+
+	private static int operationFor(int form) {
+		switch (form) {
+		case DwarfForm.DW_FORM_addr:
+			return OP_ADDRESS;
+		case DwarfForm.DW_FORM_block:
+			return OP_BLOCK;
+		case DwarfForm.DW_FORM_block1:
+			return OP_BLOCK1;
+		case DwarfForm.DW_FORM_block2:
+			return OP_BLOCK2;
+		case DwarfForm.DW_FORM_block4:
+			return OP_BLOCK4;
+		case DwarfForm.DW_FORM_data1:
+			return OP_DATA1;
+		case DwarfForm.DW_FORM_data2:
+			return OP_DATA2;
+		case DwarfForm.DW_FORM_data4:
+			return OP_DATA4;
+		case DwarfForm.DW_FORM_data8:
+			return OP_DATA8;
+		case DwarfForm.DW_FORM_exprloc:
+			return OP_EXPRLOC;
+		case DwarfForm.DW_FORM_flag:
+			return OP_FLAG;
+		case DwarfForm.DW_FORM_flag_present:
+			return OP_FLAG_PRESENT;
+		case DwarfForm.DW_FORM_ref1:
+			return OP_REF1;
+		case DwarfForm.DW_FORM_ref2:
+			return OP_REF2;
+		case DwarfForm.DW_FORM_ref4:
+			return OP_REF4;
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_sig8:
+			return OP_REF8;
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_sec_offset:
+			return OP_REF_OFFSET;
+		case DwarfForm.DW_FORM_ref_udata:
+			return OP_REF_UDATA;
+		case DwarfForm.DW_FORM_sdata:
+			return OP_SDATA;
+		case DwarfForm.DW_FORM_string:
+			return OP_STRING;
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			return OP_STRP;
+		case DwarfForm.DW_FORM_udata:
+			return OP_UDATA;
+		default:
+			return OP_INTERPRET;
+		}
+	}
+
+	private static void readView(DwarfRequestor requestor, int attribute, int form, DataSource data,
+			long length) {
+		long offset = data.position();
+		ByteBuffer view = data.getView(AttributeReader.checkUInt(length));
+
+		if (form == DwarfForm.DW_FORM_exprloc) {
+			requestor.acceptExpression(attribute, form, offset, view);
+		} else {
+			requestor.acceptBlock(attribute, form, offset, view);
+		}
+	}
+
+	/**
+	 * Advance past a value of the given form.
+	 */
+	static void skip(int form, DataSource data) {
+		int size = fixedSize(form);
+
+		if (size >= 0) {
+			data.skip(size);
+		} else if (!skipVariable(skipOperationFor(form), data)) {
+			throw new IllegalArgumentException("form=" + form);
+		}
+	}
+
+	private static int skipOperationFor(int form) {
+		switch (form) {
+		case DwarfForm.DW_FORM_addr:
+			return OP_SKIP_ADDRESS;
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_exprloc:
+			return OP_SKIP_BLOCK;
+		case DwarfForm.DW_FORM_block1:
+			return OP_SKIP_BLOCK1;
+		case DwarfForm.DW_FORM_block2:
+			return OP_SKIP_BLOCK2;
+		case DwarfForm.DW_FORM_block4:
+			return OP_SKIP_BLOCK4;
+		case DwarfForm.DW_FORM_indirect:
+			return OP_SKIP_INDIRECT;
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_sec_offset:
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strp_sup:
+			return OP_SKIP_OFFSET;
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_loclistx:
+		case DwarfForm.DW_FORM_ref_udata:
+		case DwarfForm.DW_FORM_rnglistx:
+		case DwarfForm.DW_FORM_sdata:
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_udata:
+			return OP_SKIP_UDATA;
+		case DwarfForm.DW_FORM_string:
+			return OP_SKIP_STRING;
+		default:
+			// the interpreter will report the unknown form if it is used
+			return OP_INTERPRET;
+		}
+	}
+
+	/**
+	 * Perform a skip operation for a value whose size is not fixed.
+	 * 
+	 * @return true if the operation was a skip operation
+	 */
+	private static boolean skipVariable(int operation, DataSource data) {
+		switch (operation) {
+		case OP_SKIP_ADDRESS:
+			data.skipAddress();
+			break;
+		case OP_SKIP_BLOCK:
+			data.skip(AttributeReader.checkUInt(data.getUDATA()));
+			break;
+		case OP_SKIP_BLOCK1:
+			data.skip(data.getU1());
+			break;
+		case OP_SKIP_BLOCK2:
+			data.skip(data.getU2());
+			break;
+		case OP_SKIP_BLOCK4:
+			data.skip(AttributeReader.checkUInt(data.getU4()));
+			break;
+		case OP_SKIP_INDIRECT:
+			skip(AttributeReader.checkUInt(data.getUDATA()), data);
+			break;
+		case OP_SKIP_OFFSET:
+			data.skipOffset();
+			break;
+		case OP_SKIP_STRING:
+			data.skipString();
+			break;
+		case OP_SKIP_UDATA:
+			data.skipUDATA();
+			break;
+		default:
+			return false;
+		}
+
+		return true;
+	}
+
+	/** the attribute of each operation, or the number of bytes for OP_SKIP */
+	private final int[] attributes;
+
+	private final int[] forms;
+
+	final DwarfInterest interest;
+
+	private final int[] operations;
+
+	private final AttributeReader[] readers;
+
+	private DecodingPlan(int[] attributes, int[] forms, int[] operations, AttributeReader[] readers,
+			DwarfInterest interest) {
+		super();
+		this.attributes = attributes;
+		this.forms = forms;
+		this.interest = interest;
+		this.operations = operations;
+		this.readers = readers;
+	}
+
+	void decode(DwarfRequestor requestor, DataSource data) {
+		final int[] attributes = this.attributes;
+		final int[] forms = this.forms;
+		final int[] operations = this.operations;
+
+		for (int index = 0, count = operations.length; index < count; ++index) {
+			int attribute = attributes[index];
+			int form = forms[index];
+
+			switch (operations[index]) {
+			case OP_ADDRESS:
+				requestor.acceptAddress(attribute, form, data.getAddress());
+				break;
+			case OP_BLOCK:
+				readView(requestor, attribute, form, data, data.getUDATA());
+				break;
+			case OP_BLOCK1:
+				readView(requestor, attribute, form, data, data.getU1());
+				break;
+			case OP_BLOCK2:
+				readView(requestor, attribute, form, data, data.getU2());
+				break;
+			case OP_BLOCK4:
+				readView(requestor, attribute, form, data, data.getU4());
+				break;
+			case OP_DATA1:
+				requestor.acceptConstant(attribute, form, data.getU1());
+				break;
+			case OP_DATA2:
+				requestor.acceptConstant(attribute, form, data.getU2());
+				break;
+			case OP_DATA4:
+				requestor.acceptConstant(attribute, form, data.getU4());
+				break;
+			case OP_DATA8:
+				requestor.acceptConstant(attribute, form, data.getU8());
+				break;
+			case OP_EXPRLOC:
+				readView(requestor, attribute, form, data, data.getUDATA());
+				break;
+			case OP_FLAG:
+				requestor.acceptFlag(attribute, form, data.getU1() != 0);
+				break;
+			case OP_FLAG_PRESENT:
+				requestor.acceptFlag(attribute, form, true);
+				break;
+			case OP_REF1:
+				requestor.acceptReference(attribute, form, data.getU1());
+				break;
+			case OP_REF2:
+				requestor.acceptReference(attribute, form, data.getU2());
+				break;
+			case OP_REF4:
+				requestor.acceptReference(attribute, form, data.getU4());
+				break;
+			case OP_REF8:
+				requestor.acceptReference(attribute, form, data.getU8());
+				break;
+			case OP_REF_OFFSET:
+				requestor.acceptReference(attribute, form, data.getOffset());
+				break;
+			case OP_REF_UDATA:
+				requestor.acceptReference(attribute, form, data.getUDATA());
+				break;
+			case OP_SDATA:
+				requestor.acceptConstant(attribute, form, data.getSDATA());
+				break;
+			case OP_STRING:
+			case OP_STRP:
+				AttributeReader.readString(requestor, attribute, form, data);
+				break;
+			case OP_UDATA:
+				requestor.acceptConstant(attribute, form, data.getUDATA());
+				break;
+			case OP_SKIP:
+				data.skip(attribute);
+				break;
+			case OP_INTERPRET:
+				readers[index].read(requestor, data);
+				break;
+			default:
+				if (!skipVariable(operations[index], data)) {
+					throw new IllegalStateException("operation=" + operations[index]);
+				}
+				break;
+			}
+		}
+	}
+
+}
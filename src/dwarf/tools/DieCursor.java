@@ -0,0 +1,693 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cursor over the debugging information entries of one unit, visiting
+ * them in section order. Unlike a {@link DwarfRequestor}, which receives
+ * every entry of every unit, a cursor is driven by its user: it may skip
+ * the children of an entry, read only the attributes it needs and stop
+ * at any time.
+ * <p>
+ * Attribute values are located only when one is requested. Moving from
+ * one entry to the next does not allocate, and a cursor may be reused
+ * for other units with {@link #reset(long)}. A cursor must be used by
+ * one thread at a time, but any number of cursors may be open on the
+ * same scanner.
+ */
+public final class DieCursor implements AutoCloseable {
+
+	private AbbreviationTable abbreviations;
+
+	/** the actual forms of the attributes of the current entry */
+	private int[] attributeForms;
+
+	/** the section offset of the first attribute value of the current entry */
+	private long attributeOffset;
+
+	/** the section offsets of the attribute values of the current entry */
+	private long[] attributePositions;
+
+	/** whether the attribute forms and positions describe the current entry */
+	private boolean attributesLocated;
+
+	/** whether the children of the current entry follow it */
+	private boolean childrenPending;
+
+	private DataSource data;
+
+	private int depth;
+
+	/** the abbreviation of the current entry, or null */
+	private Abbreviation entry;
+
+	/** the section offset of the entry following the current one, or -1 if not yet known */
+	private long nextOffset;
+
+	private long offset;
+
+	private final DwarfScanner scanner;
+
+	private UnitHeader unit;
+
+	DieCursor(DwarfScanner scanner) {
+		super();
+		this.abbreviations = null;
+		this.attributeForms = new int[8];
+		this.attributeOffset = -1;
+		this.attributePositions = new long[8];
+		this.attributesLocated = false;
+		this.childrenPending = false;
+		this.data = null;
+		this.depth = 0;
+		this.entry = null;
+		this.nextOffset = -1;
+		this.offset = -1;
+		this.scanner = scanner;
+		this.unit = null;
+	}
+
+	private Abbreviation checkEntry() {
+		if (entry == null) {
+			throw new IllegalStateException("no current entry");
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Release the unit; {@link #next()} will answer false until the cursor
+	 * is reset.
+	 */
+	@Override
+	public void close() {
+		this.abbreviations = null;
+		this.data = null;
+		this.entry = null;
+		this.unit = null;
+	}
+
+	/**
+	 * Answer the nesting depth of the current entry: zero for the unit
+	 * entry itself, one for its children, and so on.
+	 */
+	public int depth() {
+		checkEntry();
+		return depth;
+	}
+
+	/**
+	 * Answer the address value of the given attribute of the current entry,
+	 * or the default value if the entry has no such attribute.
+	 */
+	public long getAddress(int attribute, long defaultValue) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return defaultValue;
+		}
+
+		DataSource value = valueOf(index);
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_addr:
+			return value.getAddress();
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_addrx4:
+			return value.lookupAddress(AttributeReader.readIndex(attributeForms[index], value));
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer a read-only view of the block or expression value of the given
+	 * attribute of the current entry, or null if the entry has no such attribute.
+	 */
+	public ByteBuffer getBlock(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		DataSource value = valueOf(index);
+		int length = attributeForms[index] == DwarfForm.DW_FORM_data16 ? 16 : readBlockLength(index, value);
+
+		return value.getView(length);
+	}
+
+	/**
+	 * Answer the constant value of the given attribute of the current entry,
+	 * or the default value if the entry has no such attribute. Values are
+	 * extended as they are delivered to {@link DwarfRequestor#acceptConstant}.
+	 */
+	public long getConstant(int attribute, long defaultValue) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return defaultValue;
+		}
+
+		DataSource value = valueOf(index);
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_data1:
+			return value.getU1();
+		case DwarfForm.DW_FORM_data2:
+			return value.getU2();
+		case DwarfForm.DW_FORM_data4:
+			return value.getU4();
+		case DwarfForm.DW_FORM_data8:
+			return value.getU8();
+		case DwarfForm.DW_FORM_implicit_const:
+			return entry.getAttribute(index).getImplicitConstant();
+		case DwarfForm.DW_FORM_sdata:
+			return value.getSDATA();
+		case DwarfForm.DW_FORM_udata:
+			return value.getUDATA();
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the decoded expression that is the value of the given attribute
+	 * of the current entry, or null if the entry has no such attribute.
+	 * Decoded expressions are cached by the scanner.
+	 */
+	public DwarfExpression getExpression(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		DataSource value = valueOf(index);
+		int length = readBlockLength(index, value);
+
+		return scanner.getExpression(value.position(), length);
+	}
+
+	/**
+	 * Answer the flag value of the given attribute of the current entry;
+	 * an absent flag is false.
+	 */
+	public boolean getFlag(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return false;
+		}
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_flag:
+			return valueOf(index).getU1() != 0;
+		case DwarfForm.DW_FORM_flag_present:
+			return true;
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the form of the given attribute of the current entry,
+	 * or -1 if the entry has no such attribute. Indirect forms are
+	 * resolved to the form actually used.
+	 */
+	public int getForm(int attribute) {
+		int index = indexOf(attribute);
+
+		return index < 0 ? -1 : attributeForms[index];
+	}
+
+	/**
+	 * Answer the expression describing where the value of the given
+	 * attribute, such as DW_AT_location, of the current entry is while the
+	 * code at the given address runs: the expression itself, which applies
+	 * everywhere, or that of the entry of its location list that includes
+	 * the address. Answer null if the entry has no such attribute or no
+	 * location at the address.
+	 */
+	public DwarfExpression getLocation(int attribute, long address) {
+		DwarfLocationList list = getLocationList(attribute);
+
+		if (list != null) {
+			return list.getLocation(address);
+		}
+
+		return hasAttribute(attribute) ? getExpression(attribute) : null;
+	}
+
+	/**
+	 * Answer the location list that is the value of the given attribute of
+	 * the current entry, or null if the entry has no such attribute or its
+	 * value is a single expression. Location lists are cached by the scanner.
+	 */
+	public DwarfLocationList getLocationList(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		int form = attributeForms[index];
+
+		switch (form) {
+		case DwarfForm.DW_FORM_data4:
+		case DwarfForm.DW_FORM_data8:
+			// before DWARF 4, these forms also served as section offsets
+			if (unit.version >= 4) {
+				return null;
+			}
+			return scanner.readLocations(unit, form, getConstant(attribute, 0));
+		case DwarfForm.DW_FORM_loclistx:
+		case DwarfForm.DW_FORM_sec_offset:
+			return scanner.readLocations(unit, form, getReference(attribute));
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Answer the offset of the current member entry from the start of its
+	 * structure, given by DW_AT_data_member_location as a constant or as an
+	 * expression, or the default value if the entry has no such attribute.
+	 * The common expression DW_OP_plus_uconst is read without decoding.
+	 */
+	public long getMemberOffset(long defaultValue) {
+		int attribute = DwarfAttribute.DW_AT_data_member_location;
+
+		switch (getForm(attribute)) {
+		case -1:
+			return defaultValue;
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_block1:
+		case DwarfForm.DW_FORM_block2:
+		case DwarfForm.DW_FORM_block4:
+		case DwarfForm.DW_FORM_exprloc:
+			long offset = getSimpleOperand(attribute, DwarfOperation.DW_OP_plus_uconst, -1);
+
+			return offset >= 0 ? offset : getExpression(attribute).evaluate(DwarfExpression.Context.NULL, 0);
+		default:
+			return getConstant(attribute, defaultValue);
+		}
+	}
+
+	/**
+	 * Answer the code addresses of the current entry, as pairs of start and
+	 * end addresses, given by DW_AT_low_pc and DW_AT_high_pc, which may be
+	 * an offset from the former, or by DW_AT_ranges. Entries without code
+	 * answer no ranges.
+	 *
+	 * @param baseAddress the low_pc of the unit, or zero
+	 */
+	public long[] getRanges(long baseAddress) {
+		int index = indexOf(DwarfAttribute.DW_AT_ranges);
+
+		if (index >= 0) {
+			long value = getReference(DwarfAttribute.DW_AT_ranges);
+
+			return scanner.readRanges(unit, attributeForms[index], value, baseAddress).clone();
+		}
+
+		int highForm = getForm(DwarfAttribute.DW_AT_high_pc);
+
+		if (highForm < 0 || !hasAttribute(DwarfAttribute.DW_AT_low_pc)) {
+			return RangeLists.NO_RANGES;
+		}
+
+		long low = getAddress(DwarfAttribute.DW_AT_low_pc, 0);
+		long high;
+
+		switch (highForm) {
+		case DwarfForm.DW_FORM_addr:
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_addrx4:
+			high = getAddress(DwarfAttribute.DW_AT_high_pc, low);
+			break;
+		default:
+			high = low + getConstant(DwarfAttribute.DW_AT_high_pc, 0);
+			break;
+		}
+
+		return Long.compareUnsigned(low, high) < 0 ? new long[] { low, high } : RangeLists.NO_RANGES;
+	}
+
+	/**
+	 * Answer the reference value of the given attribute of the current entry,
+	 * or -1 if the entry has no such attribute. Unit-relative references are
+	 * made relative to the start of the .debug_info section; references of
+	 * other forms, including the indices of DW_FORM_loclistx and
+	 * DW_FORM_rnglistx values, are answered as they appear.
+	 */
+	public long getReference(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return -1;
+		}
+
+		DataSource value = valueOf(index);
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_ref1:
+			return unit.offset + value.getU1();
+		case DwarfForm.DW_FORM_ref2:
+			return unit.offset + value.getU2();
+		case DwarfForm.DW_FORM_ref4:
+			return unit.offset + value.getU4();
+		case DwarfForm.DW_FORM_ref8:
+			return unit.offset + value.getU8();
+		case DwarfForm.DW_FORM_ref_udata:
+			return unit.offset + value.getUDATA();
+		case DwarfForm.DW_FORM_ref_sig8:
+		case DwarfForm.DW_FORM_ref_sup8:
+			return value.getU8();
+		case DwarfForm.DW_FORM_ref_sup4:
+			return value.getU4();
+		case DwarfForm.DW_FORM_loclistx:
+		case DwarfForm.DW_FORM_rnglistx:
+			return value.getUDATA();
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_sec_offset:
+			return value.getOffset();
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	DwarfScanner getScanner() {
+		return scanner;
+	}
+
+	/**
+	 * Answer the operand of the expression that is the value of the given
+	 * attribute of the current entry if it consists of the given single
+	 * operation, DW_OP_plus_uconst or DW_OP_fbreg, and otherwise the default
+	 * value; the expression is read in place, without decoding or caching.
+	 */
+	public long getSimpleOperand(int attribute, int opcode, long defaultValue) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return defaultValue;
+		}
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_block1:
+		case DwarfForm.DW_FORM_block2:
+		case DwarfForm.DW_FORM_block4:
+		case DwarfForm.DW_FORM_exprloc:
+			DataSource value = valueOf(index);
+
+			return DwarfExpression.getSimpleOperand(value, readBlockLength(index, value), opcode, defaultValue);
+		default:
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Answer the string value of the given attribute of the current entry,
+	 * or null if the entry has no such attribute.
+	 */
+	public String getString(int attribute) {
+		int index = indexOf(attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		DataSource value = valueOf(index);
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_line_strp:
+			return value.lookupLineString(value.getOffset());
+		case DwarfForm.DW_FORM_string:
+			return value.getString();
+		case DwarfForm.DW_FORM_strp:
+			return value.lookupString(value.getOffset());
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			return value.lookupString(value.lookupStringOffset(AttributeReader.readIndex(attributeForms[index], value)));
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer whether the current entry has the given attribute.
+	 */
+	public boolean hasAttribute(int attribute) {
+		return indexOf(attribute) >= 0;
+	}
+
+	/**
+	 * Answer whether the current entry has children.
+	 */
+	public boolean hasChildren() {
+		return checkEntry().hasChildren;
+	}
+
+	private int indexOf(int attribute) {
+		Abbreviation current = checkEntry();
+		int count = current.getAttributeCount();
+
+		for (int index = 0; index < count; ++index) {
+			if (current.getAttribute(index).attribute == attribute) {
+				if (!attributesLocated) {
+					locateAttributes(current);
+				}
+
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Record the actual form and the position of each attribute value
+	 * of the current entry.
+	 */
+	private void locateAttributes(Abbreviation current) {
+		int count = current.getAttributeCount();
+
+		if (attributePositions.length < count) {
+			int capacity = Math.max(count, attributePositions.length * 2);
+
+			attributeForms = new int[capacity];
+			attributePositions = new long[capacity];
+		}
+
+		data.position(attributeOffset);
+
+		for (int index = 0; index < count; ++index) {
+			int form = current.getAttribute(index).form;
+
+			if (form == DwarfForm.DW_FORM_indirect) {
+				form = AttributeReader.checkUInt(data.getUDATA());
+			}
+
+			attributeForms[index] = form;
+			attributePositions[index] = data.position();
+			DecodingPlan.skip(form, data);
+		}
+
+		if (nextOffset < 0) {
+			nextOffset = data.position();
+		}
+
+		attributesLocated = true;
+	}
+
+	/**
+	 * Advance to the next entry in section order, answering false if there
+	 * are no more entries in the unit. The children of an entry, unless
+	 * skipped, follow it at a depth one greater.
+	 */
+	public boolean next() {
+		if (data == null) {
+			return false;
+		}
+
+		if (entry != null) {
+			positionAfterEntry(entry);
+
+			if (childrenPending) {
+				depth += 1;
+			}
+
+			entry = null;
+		}
+
+		while (data.hasRemaining()) {
+			long tagOffset = data.position();
+			long code = data.getUDATA();
+
+			if (code == 0) {
+				// the end of a list of siblings
+				if (depth > 0) {
+					depth -= 1;
+				}
+			} else {
+				Abbreviation found = abbreviations.get(code);
+
+				if (found != null) {
+					this.attributeOffset = data.position();
+					this.attributesLocated = false;
+					this.childrenPending = found.hasChildren;
+					this.entry = found;
+					this.nextOffset = -1;
+					this.offset = tagOffset;
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Answer the section offset of the current entry.
+	 */
+	public long offset() {
+		checkEntry();
+		return offset;
+	}
+
+	private void positionAfterEntry(Abbreviation current) {
+		if (nextOffset >= 0) {
+			data.position(nextOffset);
+		} else {
+			data.position(attributeOffset);
+			current.skipAttributes(data);
+			nextOffset = data.position();
+		}
+	}
+
+	/**
+	 * Read the length of the block value of the given attribute, leaving
+	 * the value at its first byte.
+	 */
+	private int readBlockLength(int index, DataSource value) {
+		long length;
+
+		switch (attributeForms[index]) {
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_exprloc:
+			length = value.getUDATA();
+			break;
+		case DwarfForm.DW_FORM_block1:
+			length = value.getU1();
+			break;
+		case DwarfForm.DW_FORM_block2:
+			length = value.getU2();
+			break;
+		case DwarfForm.DW_FORM_block4:
+			length = value.getU4();
+			break;
+		default:
+			throw unexpectedForm(index);
+		}
+
+		return AttributeReader.checkUInt(length);
+	}
+
+	/**
+	 * Position this cursor before the first entry of the unit that begins
+	 * at the given section offset.
+	 * 
+	 * @param unitOffset the section offset of a unit
+	 */
+	public void reset(long unitOffset) {
+		UnitHeader header = scanner.getUnit(unitOffset);
+
+		reset(header, header.dieOffset);
+	}
+
+	/**
+	 * Position this cursor before the entry at the given section offset
+	 * within the given unit; that entry will have depth zero.
+	 */
+	void reset(UnitHeader header, long entryOffset) {
+		this.abbreviations = scanner.getAbbreviations(header.abbrevOffset);
+		this.data = scanner.getUnitData(header).position(entryOffset);
+		this.depth = 0;
+		this.entry = null;
+		this.unit = header;
+	}
+
+	/**
+	 * Skip the children, if any, of the current entry: the next entry
+	 * will be its sibling or a sibling of one of its ancestors.
+	 */
+	public void skipChildren() {
+		Abbreviation current = checkEntry();
+
+		if (childrenPending) {
+			positionAfterEntry(current);
+			DwarfScanner.skipChildren(data, abbreviations, current, attributeOffset, unit.offset);
+
+			this.childrenPending = false;
+			this.nextOffset = data.position();
+		}
+	}
+
+	/**
+	 * Answer the tag of the current entry.
+	 */
+	public int tag() {
+		return checkEntry().tag;
+	}
+
+	/**
+	 * Answer the section offset of the unit being visited.
+	 */
+	public long unitOffset() {
+		if (unit == null) {
+			throw new IllegalStateException("closed");
+		}
+
+		return unit.offset;
+	}
+
+	private IllegalStateException unexpectedForm(int index) {
+		return new IllegalStateException("form=" + attributeForms[index]);
+	}
+
+	private DataSource valueOf(int index) {
+		return data.position(attributePositions[index]);
+	}
+
+}
@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An index of the debugging information entries of a file, mapping the
+ * section offset of each entry to its unit and tag. With an index, the
+ * targets of references can be found and decoded on demand, so walks of
+ * the type graph cost in proportion to the entries visited.
+ * <p>
+ * Indexes are built by a {@link Builder} that observes a scan in section
+ * order, or by {@link DwarfScanner#buildIndex()}. An index is immutable
+ * and may be shared between threads.
+ */
+public final class DieIndex {
+
+	/**
+	 * Records the entries delivered by a scan while forwarding all
+	 * events to another requestor. Entries within subtrees that the
+	 * other requestor declines are not indexed.
+	 */
+	public static final class Builder implements DwarfRequestor {
+
+		private int count;
+
+		private final DwarfInterest interest;
+
+		private long[] offsets;
+
+		private final DwarfScanner scanner;
+
+		private int[] tags;
+
+		private final DwarfRequestor target;
+
+		private int unitIndex;
+
+		private int[] unitIndexes;
+
+		/**
+		 * Create a builder for entries delivered by the given scanner.
+		 * 
+		 * @param scanner the scanner whose units will be scanned
+		 * @param target the receiver of all events
+		 */
+		public Builder(DwarfScanner scanner, DwarfRequestor target) {
+			this(scanner, target, target.getInterest());
+		}
+
+		Builder(DwarfScanner scanner, DwarfRequestor target, DwarfInterest interest) {
+			super();
+			this.count = 0;
+			this.interest = interest;
+			this.offsets = new long[1024];
+			this.scanner = scanner;
+			this.tags = new int[1024];
+			this.target = target;
+			this.unitIndex = -1;
+			this.unitIndexes = new int[1024];
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			target.acceptAddress(attribute, form, address);
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			target.acceptBlock(attribute, form, data);
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			target.acceptBlock(attribute, form, offset, data);
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			target.acceptConstant(attribute, form, value);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			target.acceptExpression(attribute, form, expression);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			target.acceptExpression(attribute, form, offset, expression);
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			target.acceptFlag(attribute, form, flag);
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			target.acceptReference(attribute, form, offset);
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			target.acceptString(attribute, form, string);
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			target.beginTag(tag, offset, hasChildren);
+		}
+
+		/**
+		 * Answer an index of the entries delivered so far.
+		 */
+		public DieIndex build() {
+			return new DieIndex(scanner, Arrays.copyOf(offsets, count), Arrays.copyOf(tags, count),
+					Arrays.copyOf(unitIndexes, count));
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			target.endTag(tag, hasChildren);
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			unitIndex = scanner.indexOfUnit(offset);
+			target.enterCompilationUnit(offset);
+		}
+
+		@Override
+		public boolean enterTag(int tag, long offset, boolean hasChildren) {
+			if (count != 0 && offset <= offsets[count - 1]) {
+				throw new IllegalStateException("entries must be delivered in section order");
+			}
+
+			if (count == offsets.length) {
+				int capacity = count * 2;
+
+				offsets = Arrays.copyOf(offsets, capacity);
+				tags = Arrays.copyOf(tags, capacity);
+				unitIndexes = Arrays.copyOf(unitIndexes, capacity);
+			}
+
+			offsets[count] = offset;
+			tags[count] = tag;
+			unitIndexes[count] = unitIndex;
+			count += 1;
+
+			return target.enterTag(tag, offset, hasChildren);
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			target.exitCompilationUnit(offset);
+		}
+
+		@Override
+		public DwarfInterest getInterest() {
+			return interest;
+		}
+
+	}
+
+	/** the section offsets of the entries, in ascending order */
+	private final long[] offsets;
+
+	private final DwarfScanner scanner;
+
+	private final int[] tags;
+
+	/** the index of the unit of each entry in the scanner's table of units */
+	private final int[] unitIndexes;
+
+	private final UnitHeader[] units;
+
+	DieIndex(DwarfScanner scanner, long[] offsets, int[] tags, int[] unitIndexes) {
+		super();
+		this.offsets = offsets;
+		this.scanner = scanner;
+		this.tags = tags;
+		this.unitIndexes = unitIndexes;
+		this.units = scanner.getUnits();
+	}
+
+	/**
+	 * Answer whether an entry begins at the given section offset.
+	 */
+	public boolean contains(long offset) {
+		return indexOf(offset) >= 0;
+	}
+
+	/**
+	 * Deliver the entry at the given section offset to the requestor,
+	 * followed by its children if requested, just as a scan would.
+	 * 
+	 * @param offset the section offset of an indexed entry
+	 * @param requestor the receiver of the events
+	 * @param withChildren whether the children of the entry should be delivered
+	 */
+	public void decode(long offset, DwarfRequestor requestor, boolean withChildren) {
+		scanner.scanEntry(requestor, units[unitIndexes[checkIndex(offset)]], offset, withChildren);
+	}
+
+	private int checkIndex(long offset) {
+		int index = indexOf(offset);
+
+		if (index < 0) {
+			throw new IllegalArgumentException("offset=" + offset);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Answer the section offset of the entry with the given index.
+	 * 
+	 * @param index an index between zero and {@link #size()}
+	 */
+	public long getOffset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * Answer the tag of the entry at the given section offset,
+	 * or -1 if no entry begins there.
+	 */
+	public int getTag(long offset) {
+		int index = indexOf(offset);
+
+		return index < 0 ? -1 : tags[index];
+	}
+
+	/**
+	 * Answer the section offset of the unit containing the entry at the
+	 * given section offset, or -1 if no entry begins there.
+	 */
+	public long getUnitOffset(long offset) {
+		int index = indexOf(offset);
+
+		return index < 0 ? -1 : units[unitIndexes[index]].offset;
+	}
+
+	private int indexOf(long offset) {
+		return Arrays.binarySearch(offsets, offset);
+	}
+
+	/**
+	 * Answer a cursor positioned before the entry at the given section
+	 * offset. Walking the cursor visits that entry at depth zero, then its
+	 * children, and continues with the rest of its unit.
+	 */
+	public DieCursor openCursor(long offset) {
+		DieCursor cursor = new DieCursor(scanner);
+
+		seek(cursor, offset);
+
+		return cursor;
+	}
+
+	/**
+	 * Answer the section offset of the entry referred to by a reference,
+	 * as delivered to {@link DwarfRequestor#acceptReference}, or -1 if the
+	 * form is not a reference to an indexed entry.
+	 * 
+	 * @param unitOffset the section offset of the unit containing the reference
+	 * @param form the form of the reference
+	 * @param value the value of the reference
+	 */
+	public long resolveReference(long unitOffset, int form, long value) {
+		long target;
+
+		switch (form) {
+		case DwarfForm.DW_FORM_ref1:
+		case DwarfForm.DW_FORM_ref2:
+		case DwarfForm.DW_FORM_ref4:
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_udata:
+			target = unitOffset + value;
+			break;
+		case DwarfForm.DW_FORM_ref_addr:
+			target = value;
+			break;
+		default:
+			return -1;
+		}
+
+		return contains(target) ? target : -1;
+	}
+
+	/**
+	 * Position a cursor, which must have been opened on the same scanner,
+	 * before the entry at the given section offset, as if it had been
+	 * returned by {@link #openCursor(long)}.
+	 */
+	public void seek(DieCursor cursor, long offset) {
+		if (cursor.getScanner() != scanner) {
+			throw new IllegalArgumentException("cursor of another scanner");
+		}
+
+		cursor.reset(units[unitIndexes[checkIndex(offset)]], offset);
+	}
+
+	/**
+	 * Answer the number of indexed entries.
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+}
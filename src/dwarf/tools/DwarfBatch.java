@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Scans many files concurrently on a bounded pool of threads.
+ * <p>
+ * Each file is charged against a memory budget according to its size
+ * before it is opened, so that several large files are not mapped at once;
+ * a file larger than the whole budget is scanned alone. A failure to scan
+ * one file is recorded in its result and does not affect the others.
+ */
+public final class DwarfBatch {
+
+	/**
+	 * The work to be done for each file.
+	 */
+	public interface Task<T> {
+
+		T scan(DwarfScanner scanner) throws IOException;
+
+	}
+
+	/**
+	 * The outcome of the task for one file.
+	 */
+	public static final class Result<T> {
+
+		private final Throwable failure;
+
+		private final String fileName;
+
+		private final long time;
+
+		private final T value;
+
+		Result(String fileName, T value, Throwable failure, long time) {
+			super();
+			this.failure = failure;
+			this.fileName = fileName;
+			this.time = time;
+			this.value = value;
+		}
+
+		/**
+		 * Answer the exception or error that ended the task, or null if it
+		 * succeeded.
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * Answer the time, in nanoseconds, spent opening and scanning the file,
+		 * excluding any time waiting for the memory budget.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Answer the value produced by the task, or null if it failed.
+		 */
+		public T getValue() {
+			return value;
+		}
+
+		public boolean isSuccess() {
+			return failure == null;
+		}
+
+	}
+
+	/** the granularity of the memory budget */
+	private static final int PERMIT_SIZE = 1 << 20;
+
+	/** the permits available, or null if the memory budget is unlimited */
+	private final Semaphore budget;
+
+	private final int budgetPermits;
+
+	private final int parallelism;
+
+	/**
+	 * Create a batch that scans at most the given number of files at once.
+	 *
+	 * @param parallelism the number of threads
+	 * @param memoryBudget the largest total size, in bytes, of the files
+	 *        being scanned at once, or zero for no limit
+	 */
+	public DwarfBatch(int parallelism, long memoryBudget) {
+		super();
+		this.budgetPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / PERMIT_SIZE));
+		this.budget = memoryBudget > 0 ? new Semaphore(budgetPermits, true) : null;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	private int getPermits(String fileName) {
+		long size;
+
+		try {
+			size = Files.size(Paths.get(fileName));
+		} catch (IOException | RuntimeException e) {
+			// the failure will be reported when the file is opened
+			size = 0;
+		}
+
+		return (int) Math.min(budgetPermits, (size + PERMIT_SIZE - 1) / PERMIT_SIZE);
+	}
+
+	private <T> Result<T> run(String fileName, Task<T> task) {
+		int permits = budget != null ? getPermits(fileName) : 0;
+
+		try {
+			if (permits != 0) {
+				budget.acquire(permits);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result<>(fileName, null, e, 0);
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			T value = task.scan(new DwarfScanner(fileName));
+
+			return new Result<>(fileName, value, null, System.nanoTime() - start);
+		} catch (Throwable e) {
+			// errors such as InternalError, from a fault reading a truncated
+			// mapped file, or StackOverflowError concern only this file
+			return new Result<>(fileName, null, e, System.nanoTime() - start);
+		} finally {
+			if (permits != 0) {
+				budget.release(permits);
+			}
+		}
+	}
+
+	/**
+	 * Apply a task to each of the given files, answering the results
+	 * in the same order as the files.
+	 */
+	public <T> List<Result<T>> scanAll(List<String> fileNames, Task<T> task) {
+		List<Result<T>> results = new ArrayList<>(fileNames.size());
+
+		scanAll(fileNames, task, results::add);
+
+		return results;
+	}
+
+	/**
+	 * Apply a task to each of the given files, delivering the results to
+	 * the consumer on the calling thread in the same order as the files.
+	 * Only a few more results than there are threads are held at once
+	 * waiting to be delivered. The memory budget covers only the files being
+	 * scanned, not the values of results, so a task whose value grows with
+	 * its file should keep that value out of the heap, as in a file.
+	 */
+	public <T> void scanAll(List<String> fileNames, Task<T> task, Consumer<? super Result<T>> consumer) {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+		try {
+			// limit the number of results waiting to be delivered
+			int window = parallelism * 2;
+			Deque<Future<Result<T>>> pending = new ArrayDeque<>(window);
+			int next = 0;
+
+			while (next < fileNames.size() || !pending.isEmpty()) {
+				while (next < fileNames.size() && pending.size() < window) {
+					String fileName = fileNames.get(next++);
+
+					pending.add(executor.submit(() -> run(fileName, task)));
+				}
+
+				consumer.accept(DwarfScanner.await(pending.remove()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -20,7 +20,15 @@
  *******************************************************************************/
 package dwarf.tools;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class DwarfDumper {
 
@@ -201,15 +209,21 @@ public class DwarfDumper {
 				return "pure";
 			case DwarfAttribute.DW_AT_recursive:
 				return "recursive";
+			case DwarfAttribute.DW_AT_str_offsets_base:
+				return "str_offsets_base";
+			case DwarfAttribute.DW_AT_addr_base:
+				return "addr_base";
+			case DwarfAttribute.DW_AT_rnglists_base:
+				return "rnglists_base";
+			case DwarfAttribute.DW_AT_dwo_name:
+				return "dwo_name";
+			case DwarfAttribute.DW_AT_loclists_base:
+				return "loclists_base";
 			default:
 				return Integer.toString(attribute);
 			}
 		}
 
-		private static void beginAttribute(int attribute, int form) {
-			System.out.printf("  AT_%-12s FORM_%s ", attributeName(attribute), formName(form));
-		}
-
 		private static String formName(int form) {
 			switch (form) {
 			case DwarfForm.DW_FORM_addr:
@@ -262,6 +276,42 @@ public class DwarfDumper {
 				return "flag_present";
 			case DwarfForm.DW_FORM_ref_sig8:
 				return "ref_sig8";
+			case DwarfForm.DW_FORM_strx:
+				return "strx";
+			case DwarfForm.DW_FORM_addrx:
+				return "addrx";
+			case DwarfForm.DW_FORM_ref_sup4:
+				return "ref_sup4";
+			case DwarfForm.DW_FORM_strp_sup:
+				return "strp_sup";
+			case DwarfForm.DW_FORM_data16:
+				return "data16";
+			case DwarfForm.DW_FORM_line_strp:
+				return "line_strp";
+			case DwarfForm.DW_FORM_implicit_const:
+				return "implicit_const";
+			case DwarfForm.DW_FORM_loclistx:
+				return "loclistx";
+			case DwarfForm.DW_FORM_rnglistx:
+				return "rnglistx";
+			case DwarfForm.DW_FORM_ref_sup8:
+				return "ref_sup8";
+			case DwarfForm.DW_FORM_strx1:
+				return "strx1";
+			case DwarfForm.DW_FORM_strx2:
+				return "strx2";
+			case DwarfForm.DW_FORM_strx3:
+				return "strx3";
+			case DwarfForm.DW_FORM_strx4:
+				return "strx4";
+			case DwarfForm.DW_FORM_addrx1:
+				return "addrx1";
+			case DwarfForm.DW_FORM_addrx2:
+				return "addrx2";
+			case DwarfForm.DW_FORM_addrx3:
+				return "addrx3";
+			case DwarfForm.DW_FORM_addrx4:
+				return "addrx4";
 			default:
 				return Integer.toString(form);
 			}
@@ -383,63 +433,84 @@ public class DwarfDumper {
 				return "condition";
 			case DwarfTag.DW_TAG_shared_type:
 				return "shared_type";
+			case DwarfTag.DW_TAG_skeleton_unit:
+				return "skeleton_unit";
 			default:
 				return Integer.toString(tag);
 			}
 		}
 
+		private final PrintStream out;
+
 		private int tagDepth;
 
-		Requestor() {
+		Requestor(PrintStream out) {
 			super();
+			this.out = out;
 			this.tagDepth = 0;
 		}
 
 		@Override
 		public void acceptAddress(int attribute, int form, long address) {
 			beginAttribute(attribute, form);
-			System.out.printf("address 0x%x%n", address);
+			out.printf("address 0x%x%n", address);
 		}
 
 		@Override
 		public void acceptBlock(int attribute, int form, byte[] data) {
 			beginAttribute(attribute, form);
-			System.out.printf("block length %d%n", data.length);
+			out.printf("block length %d%n", data.length);
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			beginAttribute(attribute, form);
+			out.printf("block length %d%n", data.remaining());
 		}
 
 		@Override
 		public void acceptConstant(int attribute, int form, long value) {
 			beginAttribute(attribute, form);
-			System.out.printf("const %d%n", value);
+			out.printf("const %d%n", value);
 		}
 
 		@Override
 		public void acceptExpression(int attribute, int form, byte[] expression) {
 			beginAttribute(attribute, form);
-			System.out.printf("expression length %d%n", expression.length);
+			out.printf("expression length %d%n", expression.length);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			beginAttribute(attribute, form);
+			out.printf("expression length %d%n", expression.remaining());
 		}
 
 		@Override
 		public void acceptFlag(int attribute, int form, boolean flag) {
 			beginAttribute(attribute, form);
-			System.out.printf("flag %s%n", flag ? "Y" : "N");
+			out.printf("flag %s%n", flag ? "Y" : "N");
 		}
 
 		@Override
 		public void acceptReference(int attribute, int form, long offset) {
 			beginAttribute(attribute, form);
-			System.out.printf("ref 0x%x%n", offset);
+			out.printf("ref 0x%x%n", offset);
 		}
 
 		@Override
 		public void acceptString(int attribute, int form, String string) {
 			beginAttribute(attribute, form);
-			System.out.printf("string %s%n", string);
+			out.printf("string %s%n", string);
+		}
+
+		private void beginAttribute(int attribute, int form) {
+			out.printf("  AT_%-12s FORM_%s ", attributeName(attribute), formName(form));
 		}
 
 		@Override
 		public void beginTag(int tag, long offset, boolean hasChildren) {
-			System.out.printf("<%x><%x> TAG_%s children=%s%n", //
+			out.printf("<%x><%x> TAG_%s children=%s%n", //
 					tagDepth, offset, tagName(tag), hasChildren ? "Y" : "N");
 			tagDepth += 1;
 		}
@@ -447,7 +518,7 @@ public class DwarfDumper {
 		@Override
 		public void endTag(int tag, boolean hasChildren) {
 			tagDepth -= 1;
-			System.out.printf("<%x><<<< TAG_%s children=%s%n", //
+			out.printf("<%x><<<< TAG_%s children=%s%n", //
 					tagDepth, tagName(tag), hasChildren ? "Y" : "N");
 		}
 
@@ -463,16 +534,85 @@ public class DwarfDumper {
 
 	}
 
-	public static void main(String[] args) {
-		DwarfRequestor requestor = new Requestor();
+	/**
+	 * Write the dump of the given file to a new file in the given directory,
+	 * answering the path of that file.
+	 */
+	private static Path dumpToFile(DwarfScanner scanner, Path directory) throws IOException {
+		Path dump = Files.createTempFile(directory, "dump", ".txt");
+
+		try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(dump)))) {
+			scanner.scanUnits(new Requestor(out));
+
+			if (out.checkError()) {
+				throw new IOException("cannot write " + dump);
+			}
+		}
+
+		return dump;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int parallelism = 1;
+		long memoryBudget = 0;
+		int index = 0;
+
+		for (; index + 1 < args.length && args[index].startsWith("-"); index += 2) {
+			switch (args[index]) {
+			case "-j":
+				parallelism = Integer.parseInt(args[index + 1]);
+				break;
+			case "-m":
+				memoryBudget = Long.parseLong(args[index + 1]) << 20;
+				break;
+			default:
+				System.err.println("Usage: DwarfDumper [-j threads] [-m megabytes] file...");
+				return;
+			}
+		}
+
+		List<String> fileNames = Arrays.asList(args).subList(index, args.length);
+
+		if (parallelism <= 1) {
+			DwarfRequestor requestor = new Requestor(System.out);
+
+			for (String fileName : fileNames) {
+				try {
+					DwarfScanner dumper = new DwarfScanner(fileName);
+
+					dumper.scanUnits(requestor);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		} else {
+			// dump files concurrently, but print them in order; each dump, many
+			// times the size of its file, is held on disk rather than in memory
+			DwarfBatch batch = new DwarfBatch(parallelism, memoryBudget);
+			Path directory = Files.createTempDirectory("dwarf-dump");
 
-		for (String fileName : args) {
 			try {
-				DwarfScanner dumper = new DwarfScanner(fileName);
+				batch.scanAll(fileNames, scanner -> dumpToFile(scanner, directory), result -> {
+					if (result.isSuccess()) {
+						try {
+							Files.copy(result.getValue(), System.out);
+							Files.delete(result.getValue());
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					} else {
+						result.getFailure().printStackTrace();
+					}
+				});
+			} finally {
+				// remove the dumps of files whose tasks failed
+				try (Stream<Path> files = Files.list(directory)) {
+					for (Path file : (Iterable<Path>) files::iterator) {
+						Files.deleteIfExists(file);
+					}
+				}
 
-				dumper.scanUnits(requestor);
-			} catch (IOException e) {
-				e.printStackTrace();
+				Files.delete(directory);
 			}
 		}
 	}
@@ -0,0 +1,833 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A DWARF expression, decoded once into arrays of operations and their
+ * operands so it can be evaluated repeatedly without decoding its bytes
+ * again. Literal, constant and address operations are all decoded to
+ * DW_OP_constu, register operations to DW_OP_regx and DW_OP_bregx, and
+ * branch targets to operation indices.
+ *
+ * An expression consisting of a single DW_OP_plus_uconst or DW_OP_fbreg,
+ * as most member offsets and local variables are described, is evaluated
+ * without allocating.
+ *
+ * Evaluation rejects, with UnsupportedOperationException, the typed
+ * operations (DW_OP_const_type, DW_OP_convert, DW_OP_deref_type,
+ * DW_OP_regval_type, DW_OP_reinterpret and DW_OP_xderef_type), procedure
+ * calls (DW_OP_call2, DW_OP_call4 and DW_OP_call_ref), DW_OP_xderef,
+ * DW_OP_xderef_size, GNU operations that DWARF 5 did not standardize other
+ * than DW_OP_GNU_uninit, and unknown vendor operations. It fails the same
+ * way when the context lacks the state an operation needs.
+ *
+ * @see DwarfScanner#getExpression(long, int)
+ */
+public final class DwarfExpression {
+
+	/**
+	 * Supplies the state of the program an expression describes. By default,
+	 * each method fails; a context need implement only what its expressions
+	 * use.
+	 */
+	public interface Context {
+
+		Context NULL = new Context() {
+			// no state available
+		};
+
+		/**
+		 * Answer the canonical frame address of the current frame, for
+		 * DW_OP_call_frame_cfa.
+		 */
+		default long getCallFrameAddress() {
+			throw new UnsupportedOperationException("DW_OP_call_frame_cfa");
+		}
+
+		/**
+		 * Answer the value the given location, evaluated in the frame of the
+		 * caller, had on entry to the current subprogram, for DW_OP_entry_value.
+		 */
+		default long getEntryValue(DwarfExpression location) {
+			throw new UnsupportedOperationException("DW_OP_entry_value");
+		}
+
+		/**
+		 * Answer the frame base of the current subprogram, for DW_OP_fbreg.
+		 */
+		default long getFrameBase() {
+			throw new UnsupportedOperationException("DW_OP_fbreg");
+		}
+
+		/**
+		 * Answer the address of the object being described,
+		 * for DW_OP_push_object_address.
+		 */
+		default long getObjectAddress() {
+			throw new UnsupportedOperationException("DW_OP_push_object_address");
+		}
+
+		default long getRegister(int register) {
+			throw new UnsupportedOperationException("register=" + register);
+		}
+
+		/**
+		 * Answer the address of the given offset within the thread-local
+		 * storage of the current thread, for DW_OP_form_tls_address.
+		 */
+		default long getThreadLocalAddress(long offset) {
+			throw new UnsupportedOperationException("DW_OP_form_tls_address");
+		}
+
+		/**
+		 * Answer the unsigned value of the given size at the given address.
+		 */
+		default long readMemory(long address, int size) {
+			throw new UnsupportedOperationException("DW_OP_deref");
+		}
+
+	}
+
+	/**
+	 * Collects the pieces of a location.
+	 */
+	private static final class Pieces {
+
+		private long[] bitOffsets;
+
+		private long[] bitSizes;
+
+		private int count;
+
+		private ByteBuffer[] implicitValues;
+
+		private int[] kinds;
+
+		private long[] pointerOffsets;
+
+		private long[] values;
+
+		Pieces() {
+			super();
+			this.bitOffsets = new long[4];
+			this.bitSizes = new long[4];
+			this.count = 0;
+			this.implicitValues = new ByteBuffer[4];
+			this.kinds = new int[4];
+			this.pointerOffsets = new long[4];
+			this.values = new long[4];
+		}
+
+		void add(int kind, long value, ByteBuffer implicitValue, long pointerOffset, long bitSize, long bitOffset) {
+			if (count == kinds.length) {
+				int capacity = count * 2;
+
+				bitOffsets = Arrays.copyOf(bitOffsets, capacity);
+				bitSizes = Arrays.copyOf(bitSizes, capacity);
+				implicitValues = Arrays.copyOf(implicitValues, capacity);
+				kinds = Arrays.copyOf(kinds, capacity);
+				pointerOffsets = Arrays.copyOf(pointerOffsets, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+
+			bitOffsets[count] = bitOffset;
+			bitSizes[count] = bitSize;
+			implicitValues[count] = implicitValue;
+			kinds[count] = kind;
+			pointerOffsets[count] = pointerOffset;
+			values[count] = value;
+			count += 1;
+		}
+
+		DwarfLocation build() {
+			return new DwarfLocation(Arrays.copyOf(kinds, count), Arrays.copyOf(values, count),
+					Arrays.copyOf(bitSizes, count), Arrays.copyOf(bitOffsets, count),
+					Arrays.copyOf(implicitValues, count), Arrays.copyOf(pointerOffsets, count));
+		}
+
+	}
+
+	private static final ByteBuffer[] NO_BLOCKS = new ByteBuffer[0];
+
+	private static void checkDepth(int depth, int required, int opcode) {
+		if (depth < required) {
+			throw new IllegalStateException("stack underflow: DW_OP=" + opcode);
+		}
+	}
+
+	/**
+	 * Decode the given expression, whose addresses are of the given size.
+	 * Operations that refer to .debug_addr cannot be decoded this way.
+	 */
+	public static DwarfExpression decode(ByteBuffer expression, int addressSize) {
+		DataSource data = new DataSource(new DataSource(expression.slice().order(expression.order())), addressSize,
+				4, null);
+
+		return decode(data, expression.remaining());
+	}
+
+	/**
+	 * Decode the expression of the given length at the position of the data,
+	 * which decodes addresses and offsets as the referring unit does.
+	 */
+	static DwarfExpression decode(DataSource data, int length) {
+		long start = data.position();
+		long end = start + length;
+		int[] opcodes = new int[Math.max(1, length)];
+		long[] operands = new long[opcodes.length];
+		long[] operands2 = new long[opcodes.length];
+		int[] positions = new int[opcodes.length + 1];
+		ByteBuffer[] blocks = NO_BLOCKS;
+		int count = 0;
+		boolean unknown = false;
+
+		while (!unknown && data.position() < end) {
+			int opcode = data.getU1();
+			long operand = 0;
+			long operand2 = 0;
+
+			positions[count] = (int) (data.position() - 1 - start);
+
+			if (DwarfOperation.DW_OP_lit0 <= opcode && opcode <= DwarfOperation.DW_OP_lit31) {
+				operand = opcode - DwarfOperation.DW_OP_lit0;
+				opcode = DwarfOperation.DW_OP_constu;
+			} else if (DwarfOperation.DW_OP_reg0 <= opcode && opcode <= DwarfOperation.DW_OP_reg31) {
+				operand = opcode - DwarfOperation.DW_OP_reg0;
+				opcode = DwarfOperation.DW_OP_regx;
+			} else if (DwarfOperation.DW_OP_breg0 <= opcode && opcode <= DwarfOperation.DW_OP_breg31) {
+				operand = opcode - DwarfOperation.DW_OP_breg0;
+				operand2 = data.getSDATA();
+				opcode = DwarfOperation.DW_OP_bregx;
+			} else {
+				opcode = toStandard(opcode);
+
+				switch (opcode) {
+				case DwarfOperation.DW_OP_addr:
+					operand = data.getAddress();
+					opcode = DwarfOperation.DW_OP_constu;
+					break;
+				case DwarfOperation.DW_OP_addrx:
+				case DwarfOperation.DW_OP_constx:
+				case DwarfOperation.DW_OP_GNU_addr_index:
+				case DwarfOperation.DW_OP_GNU_const_index:
+					operand = data.lookupAddress(data.getUDATA());
+					opcode = DwarfOperation.DW_OP_constu;
+					break;
+				case DwarfOperation.DW_OP_const1u:
+				case DwarfOperation.DW_OP_pick:
+				case DwarfOperation.DW_OP_deref_size:
+				case DwarfOperation.DW_OP_xderef_size:
+					operand = data.getU1();
+					break;
+				case DwarfOperation.DW_OP_const1s:
+					operand = (byte) data.getU1();
+					break;
+				case DwarfOperation.DW_OP_const2u:
+				case DwarfOperation.DW_OP_call2:
+					operand = data.getU2();
+					break;
+				case DwarfOperation.DW_OP_const2s:
+				case DwarfOperation.DW_OP_skip:
+				case DwarfOperation.DW_OP_bra:
+					operand = (short) data.getU2();
+					break;
+				case DwarfOperation.DW_OP_const4u:
+				case DwarfOperation.DW_OP_call4:
+				case DwarfOperation.DW_OP_GNU_parameter_ref:
+					operand = data.getU4();
+					break;
+				case DwarfOperation.DW_OP_const4s:
+					operand = (int) data.getU4();
+					break;
+				case DwarfOperation.DW_OP_const8u:
+				case DwarfOperation.DW_OP_const8s:
+					operand = data.getU8();
+					break;
+				case DwarfOperation.DW_OP_constu:
+				case DwarfOperation.DW_OP_plus_uconst:
+				case DwarfOperation.DW_OP_regx:
+				case DwarfOperation.DW_OP_piece:
+				case DwarfOperation.DW_OP_convert:
+				case DwarfOperation.DW_OP_reinterpret:
+					operand = data.getUDATA();
+					break;
+				case DwarfOperation.DW_OP_consts:
+				case DwarfOperation.DW_OP_fbreg:
+					operand = data.getSDATA();
+					break;
+				case DwarfOperation.DW_OP_bregx:
+					operand = data.getUDATA();
+					operand2 = data.getSDATA();
+					break;
+				case DwarfOperation.DW_OP_bit_piece:
+				case DwarfOperation.DW_OP_regval_type:
+					operand = data.getUDATA();
+					operand2 = data.getUDATA();
+					break;
+				case DwarfOperation.DW_OP_deref_type:
+				case DwarfOperation.DW_OP_xderef_type:
+					operand = data.getU1();
+					operand2 = data.getUDATA();
+					break;
+				case DwarfOperation.DW_OP_call_ref:
+				case DwarfOperation.DW_OP_GNU_variable_value:
+					operand = data.getOffset();
+					break;
+				case DwarfOperation.DW_OP_implicit_pointer:
+					operand = data.getOffset();
+					operand2 = data.getSDATA();
+					break;
+				case DwarfOperation.DW_OP_implicit_value:
+				case DwarfOperation.DW_OP_entry_value:
+				case DwarfOperation.DW_OP_const_type:
+					if (opcode == DwarfOperation.DW_OP_const_type) {
+						operand2 = data.getUDATA();
+						operand = data.getU1();
+					} else {
+						operand = data.getUDATA();
+					}
+
+					if (blocks.length == 0) {
+						blocks = new ByteBuffer[opcodes.length];
+					}
+
+					blocks[count] = data.getView(AttributeReader.checkUInt(operand));
+					break;
+				case DwarfOperation.DW_OP_deref:
+				case DwarfOperation.DW_OP_dup:
+				case DwarfOperation.DW_OP_drop:
+				case DwarfOperation.DW_OP_over:
+				case DwarfOperation.DW_OP_swap:
+				case DwarfOperation.DW_OP_rot:
+				case DwarfOperation.DW_OP_xderef:
+				case DwarfOperation.DW_OP_abs:
+				case DwarfOperation.DW_OP_and:
+				case DwarfOperation.DW_OP_div:
+				case DwarfOperation.DW_OP_minus:
+				case DwarfOperation.DW_OP_mod:
+				case DwarfOperation.DW_OP_mul:
+				case DwarfOperation.DW_OP_neg:
+				case DwarfOperation.DW_OP_not:
+				case DwarfOperation.DW_OP_or:
+				case DwarfOperation.DW_OP_plus:
+				case DwarfOperation.DW_OP_shl:
+				case DwarfOperation.DW_OP_shr:
+				case DwarfOperation.DW_OP_shra:
+				case DwarfOperation.DW_OP_xor:
+				case DwarfOperation.DW_OP_eq:
+				case DwarfOperation.DW_OP_ge:
+				case DwarfOperation.DW_OP_gt:
+				case DwarfOperation.DW_OP_le:
+				case DwarfOperation.DW_OP_lt:
+				case DwarfOperation.DW_OP_ne:
+				case DwarfOperation.DW_OP_nop:
+				case DwarfOperation.DW_OP_push_object_address:
+				case DwarfOperation.DW_OP_form_tls_address:
+				case DwarfOperation.DW_OP_call_frame_cfa:
+				case DwarfOperation.DW_OP_stack_value:
+				case DwarfOperation.DW_OP_GNU_uninit:
+					break;
+				default:
+					// the operands of vendor operations are unknown, so decoding
+					// stops here and evaluation fails if it reaches this operation
+					unknown = true;
+					break;
+				}
+			}
+
+			if (DwarfOperation.DW_OP_const1u <= opcode && opcode <= DwarfOperation.DW_OP_consts) {
+				opcode = DwarfOperation.DW_OP_constu;
+			}
+
+			opcodes[count] = opcode;
+			operands[count] = operand;
+			operands2[count] = operand2;
+			count += 1;
+		}
+
+		positions[count] = length;
+
+		// resolve the byte offsets of branches to operation indices
+		for (int index = 0; index < count; ++index) {
+			int opcode = opcodes[index];
+
+			if (opcode == DwarfOperation.DW_OP_skip || opcode == DwarfOperation.DW_OP_bra) {
+				long target = positions[index + 1] + operands[index];
+				int found = Arrays.binarySearch(positions, 0, count + 1, (int) target);
+
+				if (found < 0 && unknown && target > positions[count - 1]) {
+					found = count - 1;
+				} else if (target < 0 || target > length || found < 0) {
+					throw new IllegalArgumentException("branch target=" + target);
+				}
+
+				operands[index] = found;
+			}
+		}
+
+		return new DwarfExpression(Arrays.copyOf(opcodes, count), Arrays.copyOf(operands, count),
+				Arrays.copyOf(operands2, count), blocks.length != 0 ? Arrays.copyOf(blocks, count) : blocks,
+				data.addressSize());
+	}
+
+	/**
+	 * Answer the operand of the given expression if it consists of the given
+	 * single operation, DW_OP_plus_uconst or DW_OP_fbreg, and otherwise the
+	 * default value. The position of the expression is not changed.
+	 */
+	public static long getSimpleOperand(ByteBuffer expression, int opcode, long defaultValue) {
+		int index = expression.position();
+		int limit = expression.limit();
+
+		if (limit - index < 2 || (expression.get(index) & 0xFF) != opcode) {
+			return defaultValue;
+		}
+
+		long value = 0;
+		int shift = 0;
+		int digit;
+
+		index += 1;
+
+		do {
+			if (index == limit || shift >= 64) {
+				return defaultValue;
+			}
+
+			digit = expression.get(index++);
+			value |= (long) (digit & 0x7F) << shift;
+			shift += 7;
+		} while (digit < 0);
+
+		if (index != limit) {
+			return defaultValue;
+		}
+
+		if (opcode == DwarfOperation.DW_OP_fbreg && shift < 64 && (digit & 0x40) != 0) {
+			value |= -1L << shift;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Answer the operand of the expression of the given length at the
+	 * position of the data if it consists of the given single operation,
+	 * and otherwise the default value.
+	 */
+	static long getSimpleOperand(DataSource data, int length, int opcode, long defaultValue) {
+		if (length < 2) {
+			return defaultValue;
+		}
+
+		long end = data.position() + length;
+
+		if (data.getU1() != opcode) {
+			return defaultValue;
+		}
+
+		long value = opcode == DwarfOperation.DW_OP_fbreg ? data.getSDATA() : data.getUDATA();
+
+		return data.position() == end ? value : defaultValue;
+	}
+
+	/**
+	 * Answer the standard operation equivalent to the given GNU extension,
+	 * or the given operation if there is none.
+	 */
+	private static int toStandard(int opcode) {
+		switch (opcode) {
+		case DwarfOperation.DW_OP_GNU_const_type:
+			return DwarfOperation.DW_OP_const_type;
+		case DwarfOperation.DW_OP_GNU_convert:
+			return DwarfOperation.DW_OP_convert;
+		case DwarfOperation.DW_OP_GNU_deref_type:
+			return DwarfOperation.DW_OP_deref_type;
+		case DwarfOperation.DW_OP_GNU_entry_value:
+			return DwarfOperation.DW_OP_entry_value;
+		case DwarfOperation.DW_OP_GNU_implicit_pointer:
+			return DwarfOperation.DW_OP_implicit_pointer;
+		case DwarfOperation.DW_OP_GNU_push_tls_address:
+			return DwarfOperation.DW_OP_form_tls_address;
+		case DwarfOperation.DW_OP_GNU_regval_type:
+			return DwarfOperation.DW_OP_regval_type;
+		case DwarfOperation.DW_OP_GNU_reinterpret:
+			return DwarfOperation.DW_OP_reinterpret;
+		default:
+			return opcode;
+		}
+	}
+
+	private final int addressSize;
+
+	/** the block operand of each operation, or empty if none has one */
+	private final ByteBuffer[] blocks;
+
+	private final int[] opcodes;
+
+	private final long[] operands;
+
+	/** the second operand of each operation */
+	private final long[] operands2;
+
+	private DwarfExpression(int[] opcodes, long[] operands, long[] operands2, ByteBuffer[] blocks, int addressSize) {
+		super();
+		this.addressSize = addressSize;
+		this.blocks = blocks;
+		this.opcodes = opcodes;
+		this.operands = operands;
+		this.operands2 = operands2;
+	}
+
+	private long applyBinary(int opcode, long second, long top) {
+		switch (opcode) {
+		case DwarfOperation.DW_OP_and:
+			return second & top;
+		case DwarfOperation.DW_OP_div:
+			if (top == 0) {
+				throw new ArithmeticException("DW_OP_div by zero");
+			}
+			return signed(second) / signed(top);
+		case DwarfOperation.DW_OP_minus:
+			return second - top;
+		case DwarfOperation.DW_OP_mod:
+			if (top == 0) {
+				throw new ArithmeticException("DW_OP_mod by zero");
+			}
+			return addressSize == 4 ? second % top : Long.remainderUnsigned(second, top);
+		case DwarfOperation.DW_OP_mul:
+			return second * top;
+		case DwarfOperation.DW_OP_or:
+			return second | top;
+		case DwarfOperation.DW_OP_plus:
+			return second + top;
+		case DwarfOperation.DW_OP_shl:
+			return Long.compareUnsigned(top, 64) >= 0 ? 0 : second << top;
+		case DwarfOperation.DW_OP_shr:
+			return Long.compareUnsigned(top, 64) >= 0 ? 0 : second >>> top;
+		case DwarfOperation.DW_OP_shra:
+			return signed(second) >> (Long.compareUnsigned(top, 64) >= 0 ? 63 : top);
+		case DwarfOperation.DW_OP_xor:
+			return second ^ top;
+		case DwarfOperation.DW_OP_eq:
+			return signed(second) == signed(top) ? 1 : 0;
+		case DwarfOperation.DW_OP_ge:
+			return signed(second) >= signed(top) ? 1 : 0;
+		case DwarfOperation.DW_OP_gt:
+			return signed(second) > signed(top) ? 1 : 0;
+		case DwarfOperation.DW_OP_le:
+			return signed(second) <= signed(top) ? 1 : 0;
+		case DwarfOperation.DW_OP_lt:
+			return signed(second) < signed(top) ? 1 : 0;
+		default:
+			return signed(second) != signed(top) ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Evaluate this expression, answering the value on the top of the
+	 * stack: an address for an expression that describes a memory location,
+	 * or a value for one ending with DW_OP_stack_value.
+	 *
+	 * @throws IllegalStateException if the location is a register, an
+	 *         implicit value or pointer, or composite
+	 * @throws UnsupportedOperationException if evaluation reaches an
+	 *         operation that is not supported
+	 */
+	public long evaluate(Context context) {
+		if (opcodes.length == 1 && opcodes[0] == DwarfOperation.DW_OP_fbreg) {
+			return mask(context.getFrameBase() + operands[0]);
+		}
+
+		return execute(context, null, 0, null);
+	}
+
+	/**
+	 * Evaluate this expression with the given value pushed on the stack,
+	 * as the address of a structure is pushed when evaluating
+	 * DW_AT_data_member_location, answering the value on the top of the
+	 * stack.
+	 *
+	 * @throws IllegalStateException if the location is a register, an
+	 *         implicit value or pointer, or composite
+	 * @throws UnsupportedOperationException if evaluation reaches an
+	 *         operation that is not supported
+	 */
+	public long evaluate(Context context, long initialValue) {
+		if (opcodes.length == 1 && opcodes[0] == DwarfOperation.DW_OP_plus_uconst) {
+			return mask(initialValue + operands[0]);
+		}
+
+		return execute(context, new long[] { initialValue }, 1, null);
+	}
+
+	/**
+	 * Evaluate this expression as a location description, which may name a
+	 * register, a value or be made of pieces.
+	 *
+	 * @throws UnsupportedOperationException if evaluation reaches an
+	 *         operation that is not supported
+	 */
+	public DwarfLocation evaluateLocation(Context context) {
+		Pieces pieces = new Pieces();
+
+		execute(context, null, 0, pieces);
+
+		return pieces.build();
+	}
+
+	private long execute(Context context, long[] initial, int initialDepth, Pieces pieces) {
+		long[] stack = initial != null ? Arrays.copyOf(initial, 16) : new long[16];
+		int depth = initialDepth;
+		int kind = DwarfLocation.KIND_MEMORY;
+		long register = 0;
+		ByteBuffer implicitValue = null;
+		long pointer = 0;
+		long pointerOffset = 0;
+		int count = opcodes.length;
+
+		for (int index = 0; index < count; ++index) {
+			int opcode = opcodes[index];
+			long operand = operands[index];
+			long value;
+
+			if (depth + 1 >= stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+
+			switch (opcode) {
+			case DwarfOperation.DW_OP_constu:
+				stack[depth++] = mask(operand);
+				break;
+			case DwarfOperation.DW_OP_regx:
+				kind = DwarfLocation.KIND_REGISTER;
+				register = operand;
+				break;
+			case DwarfOperation.DW_OP_bregx:
+				stack[depth++] = mask(context.getRegister((int) operand) + operands2[index]);
+				break;
+			case DwarfOperation.DW_OP_fbreg:
+				stack[depth++] = mask(context.getFrameBase() + operand);
+				break;
+			case DwarfOperation.DW_OP_entry_value:
+				stack[depth++] = mask(context.getEntryValue(decode(blocks[index], addressSize)));
+				break;
+			case DwarfOperation.DW_OP_call_frame_cfa:
+				stack[depth++] = context.getCallFrameAddress();
+				break;
+			case DwarfOperation.DW_OP_push_object_address:
+				stack[depth++] = context.getObjectAddress();
+				break;
+			case DwarfOperation.DW_OP_form_tls_address:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = context.getThreadLocalAddress(stack[depth - 1]);
+				break;
+			case DwarfOperation.DW_OP_dup:
+				checkDepth(depth, 1, opcode);
+				stack[depth] = stack[depth - 1];
+				depth += 1;
+				break;
+			case DwarfOperation.DW_OP_drop:
+				checkDepth(depth, 1, opcode);
+				depth -= 1;
+				break;
+			case DwarfOperation.DW_OP_over:
+				checkDepth(depth, 2, opcode);
+				stack[depth] = stack[depth - 2];
+				depth += 1;
+				break;
+			case DwarfOperation.DW_OP_pick:
+				checkDepth(depth, (int) operand + 1, opcode);
+				stack[depth] = stack[depth - 1 - (int) operand];
+				depth += 1;
+				break;
+			case DwarfOperation.DW_OP_swap:
+				checkDepth(depth, 2, opcode);
+				value = stack[depth - 1];
+				stack[depth - 1] = stack[depth - 2];
+				stack[depth - 2] = value;
+				break;
+			case DwarfOperation.DW_OP_rot:
+				checkDepth(depth, 3, opcode);
+				value = stack[depth - 1];
+				stack[depth - 1] = stack[depth - 2];
+				stack[depth - 2] = stack[depth - 3];
+				stack[depth - 3] = value;
+				break;
+			case DwarfOperation.DW_OP_deref:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = context.readMemory(stack[depth - 1], addressSize);
+				break;
+			case DwarfOperation.DW_OP_deref_size:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = context.readMemory(stack[depth - 1], (int) operand);
+				break;
+			case DwarfOperation.DW_OP_abs:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = mask(Math.abs(signed(stack[depth - 1])));
+				break;
+			case DwarfOperation.DW_OP_neg:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = mask(-stack[depth - 1]);
+				break;
+			case DwarfOperation.DW_OP_not:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = mask(~stack[depth - 1]);
+				break;
+			case DwarfOperation.DW_OP_plus_uconst:
+				checkDepth(depth, 1, opcode);
+				stack[depth - 1] = mask(stack[depth - 1] + operand);
+				break;
+			case DwarfOperation.DW_OP_and:
+			case DwarfOperation.DW_OP_div:
+			case DwarfOperation.DW_OP_minus:
+			case DwarfOperation.DW_OP_mod:
+			case DwarfOperation.DW_OP_mul:
+			case DwarfOperation.DW_OP_or:
+			case DwarfOperation.DW_OP_plus:
+			case DwarfOperation.DW_OP_shl:
+			case DwarfOperation.DW_OP_shr:
+			case DwarfOperation.DW_OP_shra:
+			case DwarfOperation.DW_OP_xor:
+			case DwarfOperation.DW_OP_eq:
+			case DwarfOperation.DW_OP_ge:
+			case DwarfOperation.DW_OP_gt:
+			case DwarfOperation.DW_OP_le:
+			case DwarfOperation.DW_OP_lt:
+			case DwarfOperation.DW_OP_ne:
+				checkDepth(depth, 2, opcode);
+				depth -= 1;
+				stack[depth - 1] = mask(applyBinary(opcode, stack[depth - 1], stack[depth]));
+				break;
+			case DwarfOperation.DW_OP_skip:
+				index = (int) operand - 1;
+				break;
+			case DwarfOperation.DW_OP_bra:
+				checkDepth(depth, 1, opcode);
+				depth -= 1;
+
+				if (stack[depth] != 0) {
+					index = (int) operand - 1;
+				}
+				break;
+			case DwarfOperation.DW_OP_GNU_uninit:
+				// marks the value as uninitialized, which doesn't change it
+			case DwarfOperation.DW_OP_nop:
+				break;
+			case DwarfOperation.DW_OP_stack_value:
+				kind = DwarfLocation.KIND_VALUE;
+				break;
+			case DwarfOperation.DW_OP_implicit_value:
+				kind = DwarfLocation.KIND_IMPLICIT;
+				implicitValue = blocks[index];
+				break;
+			case DwarfOperation.DW_OP_implicit_pointer:
+				kind = DwarfLocation.KIND_IMPLICIT_POINTER;
+				pointer = operand;
+				pointerOffset = operands2[index];
+				break;
+			case DwarfOperation.DW_OP_piece:
+			case DwarfOperation.DW_OP_bit_piece:
+				if (pieces == null) {
+					throw new IllegalStateException("composite location");
+				}
+
+				long bitSize = opcode == DwarfOperation.DW_OP_piece ? operand * 8 : operand;
+				long bitOffset = opcode == DwarfOperation.DW_OP_piece ? 0 : operands2[index];
+
+				if (kind == DwarfLocation.KIND_REGISTER) {
+					value = register;
+				} else if (kind == DwarfLocation.KIND_IMPLICIT_POINTER) {
+					value = pointer;
+				} else if (kind == DwarfLocation.KIND_IMPLICIT) {
+					value = 0;
+				} else if (depth == 0) {
+					kind = DwarfLocation.KIND_EMPTY;
+					value = 0;
+				} else {
+					value = stack[--depth];
+				}
+
+				pieces.add(kind, value, implicitValue, pointerOffset, bitSize, bitOffset);
+				kind = DwarfLocation.KIND_MEMORY;
+				implicitValue = null;
+				pointerOffset = 0;
+				break;
+			default:
+				throw new UnsupportedOperationException("DW_OP=" + opcode);
+			}
+		}
+
+		if (pieces != null) {
+			if (pieces.count == 0) {
+				if (kind == DwarfLocation.KIND_REGISTER) {
+					pieces.add(kind, register, null, 0, -1, 0);
+				} else if (kind == DwarfLocation.KIND_IMPLICIT_POINTER) {
+					pieces.add(kind, pointer, null, pointerOffset, -1, 0);
+				} else if (kind == DwarfLocation.KIND_IMPLICIT) {
+					pieces.add(kind, 0, implicitValue, 0, -1, 0);
+				} else if (depth == 0) {
+					pieces.add(DwarfLocation.KIND_EMPTY, 0, null, 0, -1, 0);
+				} else {
+					pieces.add(kind, stack[depth - 1], null, 0, -1, 0);
+				}
+			}
+
+			return 0;
+		}
+
+		if (kind == DwarfLocation.KIND_REGISTER || kind == DwarfLocation.KIND_IMPLICIT
+				|| kind == DwarfLocation.KIND_IMPLICIT_POINTER) {
+			throw new IllegalStateException("not a memory location or value");
+		}
+
+		checkDepth(depth, 1, DwarfOperation.DW_OP_nop);
+
+		return stack[depth - 1];
+	}
+
+	/**
+	 * Answer the number of operations of this expression.
+	 */
+	public int getOperationCount() {
+		return opcodes.length;
+	}
+
+	/**
+	 * Answer the operand of this expression if it consists of the given
+	 * single operation, and otherwise the default value.
+	 */
+	public long getSimpleOperand(int opcode, long defaultValue) {
+		return opcodes.length == 1 && opcodes[0] == opcode ? operands[0] : defaultValue;
+	}
+
+	private long mask(long value) {
+		return addressSize == 4 ? value & 0xFFFFFFFFL : value;
+	}
+
+	private long signed(long value) {
+		return addressSize == 4 ? (int) value : value;
+	}
+
+}
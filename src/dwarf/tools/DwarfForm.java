@@ -24,6 +24,7 @@ package dwarf.tools;
  * Dwarf form codes.
  *
  * Source: http://www.dwarfstd.org/doc/DWARF4.pdf
+ * and http://www.dwarfstd.org/doc/DWARF5.pdf
  */
 public interface DwarfForm {
 
@@ -51,6 +52,24 @@ public interface DwarfForm {
 	int DW_FORM_sec_offset = 0x17;
 	int DW_FORM_exprloc = 0x18;
 	int DW_FORM_flag_present = 0x19;
+	int DW_FORM_strx = 0x1a;
+	int DW_FORM_addrx = 0x1b;
+	int DW_FORM_ref_sup4 = 0x1c;
+	int DW_FORM_strp_sup = 0x1d;
+	int DW_FORM_data16 = 0x1e;
+	int DW_FORM_line_strp = 0x1f;
 	int DW_FORM_ref_sig8 = 0x20;
+	int DW_FORM_implicit_const = 0x21;
+	int DW_FORM_loclistx = 0x22;
+	int DW_FORM_rnglistx = 0x23;
+	int DW_FORM_ref_sup8 = 0x24;
+	int DW_FORM_strx1 = 0x25;
+	int DW_FORM_strx2 = 0x26;
+	int DW_FORM_strx3 = 0x27;
+	int DW_FORM_strx4 = 0x28;
+	int DW_FORM_addrx1 = 0x29;
+	int DW_FORM_addrx2 = 0x2a;
+	int DW_FORM_addrx3 = 0x2b;
+	int DW_FORM_addrx4 = 0x2c;
 
 }
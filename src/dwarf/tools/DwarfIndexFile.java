@@ -0,0 +1,774 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A side-car file holding an index of the debugging information of an
+ * ELF file: the table of units, the offset, unit and tag of each entry,
+ * the entries with each name, and the size and underlying type of each
+ * type entry. Once written, the file is memory-mapped by later runs and
+ * queries are answered from it without decoding the .debug_info section.
+ * <p>
+ * The file records the size of the ELF file and its build-id or, failing
+ * that, a hash of its content. A file that does not match, or that was
+ * written by a different version of this class, is rebuilt when opened.
+ * To keep opening cheap, the hash is trusted without being computed again
+ * while the size, modification time and file key of the ELF file are those
+ * recorded with it.
+ */
+public final class DwarfIndexFile {
+
+	/**
+	 * The size, modification time and identity of an ELF file, which can be
+	 * read without reading the file.
+	 */
+	private static final class FileStamp {
+
+		final long fileKey;
+
+		final long modified;
+
+		final long size;
+
+		FileStamp(Path path) throws IOException {
+			super();
+
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			Object key = attributes.fileKey();
+
+			this.fileKey = key != null ? key.hashCode() : 0;
+			this.modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+			this.size = attributes.size();
+		}
+
+		boolean matches(ByteBuffer data) {
+			return data.getLong(FILE_SIZE) == size && data.getLong(MODIFIED) == modified
+					&& data.getLong(FILE_KEY) == fileKey;
+		}
+
+		void put(ByteBuffer data) {
+			data.putLong(FILE_SIZE, size);
+			data.putLong(MODIFIED, modified);
+			data.putLong(FILE_KEY, fileKey);
+		}
+
+	}
+
+	/**
+	 * The positions of the tables of an index file, which follow from the
+	 * number of entries in each.
+	 */
+	private static final class Layout {
+
+		private static int align(long position) {
+			long aligned = (position + 7) & ~7L;
+
+			if (aligned > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("index too large");
+			}
+
+			return (int) aligned;
+		}
+
+		final int entryCount;
+
+		final int entryOffsets;
+
+		final int nameCount;
+
+		final int names;
+
+		final int pool;
+
+		final int poolSize;
+
+		final int size;
+
+		final int tags;
+
+		final int typeCount;
+
+		final int types;
+
+		final int unitCount;
+
+		final int unitIndexes;
+
+		final int units;
+
+		Layout(int keyLength, int unitCount, int entryCount, int nameCount, int typeCount, int poolSize) {
+			super();
+			this.entryCount = entryCount;
+			this.nameCount = nameCount;
+			this.poolSize = poolSize;
+			this.typeCount = typeCount;
+			this.unitCount = unitCount;
+
+			this.units = align(align(KEY + (long) keyLength) + COUNTS_SIZE);
+			this.entryOffsets = align(units + (long) unitCount * UNIT_SIZE);
+			this.tags = align(entryOffsets + (long) entryCount * 8);
+			this.unitIndexes = align(tags + (long) entryCount * 4);
+			this.names = align(unitIndexes + (long) entryCount * 4);
+			this.types = align(names + (long) nameCount * NAME_SIZE);
+			this.pool = align(types + (long) typeCount * TYPE_SIZE);
+			this.size = align(pool + (long) poolSize);
+		}
+
+	}
+
+	/**
+	 * A name of an entry, while an index file is being written.
+	 */
+	private static final class Name {
+
+		final byte[] bytes;
+
+		final long offset;
+
+		final int poolOffset;
+
+		Name(byte[] bytes, long offset, int poolOffset) {
+			super();
+			this.bytes = bytes;
+			this.offset = offset;
+			this.poolOffset = poolOffset;
+		}
+
+	}
+
+	/** the size of the five counts following the key */
+	private static final int COUNTS_SIZE = 20;
+
+	/** the offset of the hash of the file key, such as the inode, of the ELF file */
+	private static final int FILE_KEY = 24;
+
+	/** the offset of the size of the ELF file */
+	private static final int FILE_SIZE = 8;
+
+	/** the offset of the key, whose length precedes it */
+	private static final int KEY = 36;
+
+	private static final int KEY_BUILD_ID = 1;
+
+	private static final int KEY_CONTENT_HASH = 2;
+
+	private static final int MAGIC = 0x58495744; // "DWIX"
+
+	/** the offset of the modification time of the ELF file, in nanoseconds */
+	private static final int MODIFIED = 16;
+
+	/** the size of a name: the entry offset, then the pool offset and length of the name */
+	private static final int NAME_SIZE = 16;
+
+	/** the size of a type summary: the entry offset, byte size and type offset */
+	private static final int TYPE_SIZE = 24;
+
+	/** the size of a unit header: eight longs */
+	private static final int UNIT_SIZE = 64;
+
+	private static final int VERSION = 3;
+
+	private static int compareName(ByteBuffer data, int start, int length, byte[] name) {
+		int common = Math.min(length, name.length);
+
+		for (int index = 0; index < common; ++index) {
+			int difference = (data.get(start + index) & 0xFF) - (name[index] & 0xFF);
+
+			if (difference != 0) {
+				return difference;
+			}
+		}
+
+		return length - name.length;
+	}
+
+	private static int compareNames(byte[] left, byte[] right) {
+		int common = Math.min(left.length, right.length);
+
+		for (int index = 0; index < common; ++index) {
+			int difference = (left[index] & 0xFF) - (right[index] & 0xFF);
+
+			if (difference != 0) {
+				return difference;
+			}
+		}
+
+		return left.length - right.length;
+	}
+
+	/**
+	 * Answer the key identifying the content of the scanned file: its
+	 * build-id if it has one, or a hash of all its bytes otherwise.
+	 */
+	private static byte[] contentKey(DwarfScanner scanner) throws IOException {
+		byte[] buildId = scanner.getBuildId();
+		byte[] id;
+		int kind;
+
+		if (buildId != null) {
+			id = buildId;
+			kind = KEY_BUILD_ID;
+		} else {
+			MessageDigest digest;
+
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+
+			try (FileChannel channel = FileChannel.open(scanner.getPath())) {
+				long size = channel.size();
+
+				for (long position = 0; position < size;) {
+					long length = Math.min(size - position, 1 << 30);
+
+					digest.update(channel.map(MapMode.READ_ONLY, position, length));
+					position += length;
+				}
+			}
+
+			id = digest.digest();
+			kind = KEY_CONTENT_HASH;
+		}
+
+		byte[] key = new byte[id.length + 1];
+
+		key[0] = (byte) kind;
+		System.arraycopy(id, 0, key, 1, id.length);
+
+		return key;
+	}
+
+	static boolean isTypeTag(int tag) {
+		switch (tag) {
+		case DwarfTag.DW_TAG_array_type:
+		case DwarfTag.DW_TAG_base_type:
+		case DwarfTag.DW_TAG_class_type:
+		case DwarfTag.DW_TAG_const_type:
+		case DwarfTag.DW_TAG_enumeration_type:
+		case DwarfTag.DW_TAG_pointer_type:
+		case DwarfTag.DW_TAG_ptr_to_member_type:
+		case DwarfTag.DW_TAG_reference_type:
+		case DwarfTag.DW_TAG_restrict_type:
+		case DwarfTag.DW_TAG_rvalue_reference_type:
+		case DwarfTag.DW_TAG_structure_type:
+		case DwarfTag.DW_TAG_subroutine_type:
+		case DwarfTag.DW_TAG_typedef:
+		case DwarfTag.DW_TAG_union_type:
+		case DwarfTag.DW_TAG_unspecified_type:
+		case DwarfTag.DW_TAG_volatile_type:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Answer the index file for the given scanner at the given path. If the
+	 * file is missing, or does not describe the scanned file, it is rebuilt
+	 * with a scan and written before being mapped.
+	 * 
+	 * @param scanner the scanner of the ELF file to be indexed
+	 * @param indexPath the location of the index file
+	 */
+	public static DwarfIndexFile open(DwarfScanner scanner, Path indexPath) throws IOException {
+		FileStamp stamp = new FileStamp(scanner.getPath());
+		// without a build-id, the content is hashed only if the stamp differs
+		byte[] key = scanner.getBuildId() != null ? contentKey(scanner) : null;
+		DwarfIndexFile index = load(scanner, indexPath, key, stamp);
+		boolean built = false;
+
+		if (index == null && key == null) {
+			key = contentKey(scanner);
+			index = load(scanner, indexPath, key, stamp);
+
+			if (index != null) {
+				// the file was touched or copied, but not changed
+				writeStamp(indexPath, stamp);
+			}
+		}
+
+		if (index == null) {
+			write(scanner, indexPath, key, stamp);
+			index = load(scanner, indexPath, key, stamp);
+			built = true;
+
+			if (index == null) {
+				throw new IOException("Unreadable index: " + indexPath);
+			}
+		}
+
+		index.built = built;
+		scanner.setUnits(index.readUnits());
+
+		return index;
+	}
+
+	/**
+	 * Answer the index file at the given path if it describes the scanned
+	 * file, or null. With no key, an index keyed by a hash of the content
+	 * is accepted if it was written or checked with the same stamp.
+	 */
+	private static DwarfIndexFile load(DwarfScanner scanner, Path indexPath, byte[] key, FileStamp stamp)
+			throws IOException {
+		if (!Files.isRegularFile(indexPath)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(indexPath)) {
+			long size = channel.size();
+
+			if (size < KEY + COUNTS_SIZE || size > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			ByteBuffer data = channel.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+			int keyLength = data.getInt(KEY - 4);
+
+			if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getLong(FILE_SIZE) != stamp.size
+					|| keyLength <= 0 || Layout.align(KEY + (long) keyLength) + COUNTS_SIZE > size) {
+				return null;
+			}
+
+			if (key == null) {
+				if (data.get(KEY) != KEY_CONTENT_HASH || !stamp.matches(data)) {
+					return null;
+				}
+			} else {
+				if (keyLength != key.length) {
+					return null;
+				}
+
+				for (int index = 0; index < key.length; ++index) {
+					if (data.get(KEY + index) != key[index]) {
+						return null;
+					}
+				}
+			}
+
+			int counts = Layout.align(KEY + (long) keyLength);
+			Layout layout = new Layout(keyLength, data.getInt(counts), data.getInt(counts + 4),
+					data.getInt(counts + 8), data.getInt(counts + 12), data.getInt(counts + 16));
+
+			if (layout.size != size) {
+				return null;
+			}
+
+			return new DwarfIndexFile(scanner, data, layout);
+		}
+	}
+
+	private static void write(DwarfScanner scanner, Path indexPath, byte[] key, FileStamp stamp)
+			throws IOException {
+		DwarfModel model = new DwarfModel(scanner, DwarfInterest.attributes(
+				DwarfAttribute.DW_AT_byte_size,
+				DwarfAttribute.DW_AT_name,
+				DwarfAttribute.DW_AT_type));
+
+		scanner.scanUnits(model);
+
+		UnitHeader[] units = scanner.getUnits();
+		int entryCount = model.getEntryCount();
+		Map<String, Name> poolNames = new HashMap<>();
+		List<Name> names = new ArrayList<>();
+		List<Integer> typeEntries = new ArrayList<>();
+		int poolSize = 0;
+
+		for (int entry = 0; entry < entryCount; ++entry) {
+			String name = model.getString(entry, DwarfAttribute.DW_AT_name);
+
+			if (name != null) {
+				Name pooled = poolNames.get(name);
+
+				if (pooled == null) {
+					pooled = new Name(name.getBytes(DataSource.UTF8), -1, poolSize);
+					poolNames.put(name, pooled);
+					poolSize += pooled.bytes.length;
+				}
+
+				names.add(new Name(pooled.bytes, model.getOffset(entry), pooled.poolOffset));
+			}
+
+			if (isTypeTag(model.getTag(entry))) {
+				typeEntries.add(Integer.valueOf(entry));
+			}
+		}
+
+		byte[] pool = new byte[poolSize];
+
+		for (Name pooled : poolNames.values()) {
+			System.arraycopy(pooled.bytes, 0, pool, pooled.poolOffset, pooled.bytes.length);
+		}
+
+		names.sort((left, right) -> {
+			int difference = compareNames(left.bytes, right.bytes);
+
+			return difference != 0 ? difference : Long.compare(left.offset, right.offset);
+		});
+
+		Layout layout = new Layout(key.length, units.length, entryCount, names.size(), typeEntries.size(), poolSize);
+		ByteBuffer data = ByteBuffer.allocate(layout.size).order(ByteOrder.LITTLE_ENDIAN);
+		int counts = Layout.align(KEY + (long) key.length);
+
+		data.putInt(0, MAGIC);
+		data.putInt(4, VERSION);
+		stamp.put(data);
+		data.putInt(KEY - 4, key.length);
+		data.position(KEY);
+		data.put(key);
+		data.putInt(counts, units.length);
+		data.putInt(counts + 4, entryCount);
+		data.putInt(counts + 8, names.size());
+		data.putInt(counts + 12, typeEntries.size());
+		data.putInt(counts + 16, poolSize);
+
+		for (int index = 0; index < units.length; ++index) {
+			UnitHeader unit = units[index];
+			int position = layout.units + index * UNIT_SIZE;
+
+			data.putLong(position, unit.offset);
+			data.putLong(position + 8, unit.end);
+			data.putLong(position + 16, unit.abbrevOffset);
+			data.putLong(position + 24, unit.dieOffset);
+			data.putLong(position + 32, unit.version);
+			data.putLong(position + 40, unit.addressSize);
+			data.putLong(position + 48, unit.offsetSize);
+			data.putLong(position + 56, unit.unitType);
+		}
+
+		for (int entry = 0; entry < entryCount; ++entry) {
+			data.putLong(layout.entryOffsets + entry * 8, model.getOffset(entry));
+			data.putInt(layout.tags + entry * 4, model.getTag(entry));
+			data.putInt(layout.unitIndexes + entry * 4, model.getUnit(entry));
+		}
+
+		for (int index = 0; index < names.size(); ++index) {
+			Name name = names.get(index);
+			int position = layout.names + index * NAME_SIZE;
+
+			data.putLong(position, name.offset);
+			data.putInt(position + 8, name.poolOffset);
+			data.putInt(position + 12, name.bytes.length);
+		}
+
+		for (int index = 0; index < typeEntries.size(); ++index) {
+			int entry = typeEntries.get(index).intValue();
+			int position = layout.types + index * TYPE_SIZE;
+			long byteSize = -1;
+
+			switch (model.getForm(entry, DwarfAttribute.DW_AT_byte_size)) {
+			case DwarfForm.DW_FORM_data1:
+			case DwarfForm.DW_FORM_data2:
+			case DwarfForm.DW_FORM_data4:
+			case DwarfForm.DW_FORM_data8:
+			case DwarfForm.DW_FORM_implicit_const:
+			case DwarfForm.DW_FORM_sdata:
+			case DwarfForm.DW_FORM_udata:
+				byteSize = model.getConstant(entry, DwarfAttribute.DW_AT_byte_size, -1);
+				break;
+			default:
+				break;
+			}
+
+			data.putLong(position, model.getOffset(entry));
+			data.putLong(position + 8, byteSize);
+			data.putLong(position + 16, model.getForm(entry, DwarfAttribute.DW_AT_type) == DwarfForm.DW_FORM_ref_sig8
+					? -1 : model.getReference(entry, DwarfAttribute.DW_AT_type));
+		}
+
+		data.position(layout.pool);
+		data.put(pool);
+		data.clear();
+
+		// write to a temporary file, then replace any existing index at once
+		Path directory = indexPath.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, indexPath.getFileName().toString(), ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+			}
+
+			try {
+				Files.move(temporary, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Record the given stamp in an index file found by its hash to describe
+	 * the same content, so the hash need not be computed again.
+	 */
+	private static void writeStamp(Path indexPath, FileStamp stamp) {
+		ByteBuffer data = ByteBuffer.allocate(KEY - 4).order(ByteOrder.LITTLE_ENDIAN);
+
+		stamp.put(data);
+		data.position(FILE_SIZE);
+
+		try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+			while (data.hasRemaining()) {
+				channel.write(data, data.position());
+			}
+		} catch (IOException e) {
+			// the index is still usable; the file is hashed again next time
+		}
+	}
+
+	private boolean built;
+
+	private final ByteBuffer data;
+
+	private final Layout layout;
+
+	private final DwarfScanner scanner;
+
+	private DwarfIndexFile(DwarfScanner scanner, ByteBuffer data, Layout layout) {
+		super();
+		this.built = false;
+		this.data = data;
+		this.layout = layout;
+		this.scanner = scanner;
+	}
+
+	/**
+	 * Answer the section offsets of the entries with the given name,
+	 * in ascending order.
+	 */
+	public long[] findEntries(String name) {
+		byte[] bytes = name.getBytes(DataSource.UTF8);
+		int low = 0;
+		int high = layout.nameCount;
+
+		// find the first name not less than the one wanted
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (compareNameAt(middle, bytes) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		int end = low;
+
+		while (end < layout.nameCount && compareNameAt(end, bytes) == 0) {
+			end += 1;
+		}
+
+		long[] offsets = new long[end - low];
+
+		for (int index = low; index < end; ++index) {
+			offsets[index - low] = data.getLong(layout.names + index * NAME_SIZE);
+		}
+
+		return offsets;
+	}
+
+	private int compareNameAt(int index, byte[] name) {
+		int position = layout.names + index * NAME_SIZE;
+
+		return compareName(data, layout.pool + data.getInt(position + 8), data.getInt(position + 12), name);
+	}
+
+	/**
+	 * Answer the DW_AT_byte_size of the type entry at the given section
+	 * offset, or -1 if it is not a type or has no constant size.
+	 */
+	public long getByteSize(long offset) {
+		int index = indexOfType(offset);
+
+		return index < 0 ? -1 : data.getLong(layout.types + index * TYPE_SIZE + 8);
+	}
+
+	/**
+	 * Answer the number of indexed entries.
+	 */
+	public int getEntryCount() {
+		return layout.entryCount;
+	}
+
+	/**
+	 * Answer the section offset of the entry with the given index.
+	 * 
+	 * @param index an index between zero and {@link #getEntryCount()}
+	 */
+	public long getEntryOffset(int index) {
+		if (index < 0 || index >= layout.entryCount) {
+			throw new IndexOutOfBoundsException("index=" + index);
+		}
+
+		return data.getLong(layout.entryOffsets + index * 8);
+	}
+
+	/**
+	 * Answer the tag of the entry at the given section offset,
+	 * or -1 if no entry begins there.
+	 */
+	public int getTag(long offset) {
+		int index = indexOfEntry(offset);
+
+		return index < 0 ? -1 : data.getInt(layout.tags + index * 4);
+	}
+
+	/**
+	 * Answer the section offset of the type of the type entry at the given
+	 * section offset, or -1 if it is not a type or has no DW_AT_type.
+	 */
+	public long getType(long offset) {
+		int index = indexOfType(offset);
+
+		return index < 0 ? -1 : data.getLong(layout.types + index * TYPE_SIZE + 16);
+	}
+
+	/**
+	 * Answer the section offset of the unit containing the entry at the
+	 * given section offset, or -1 if no entry begins there.
+	 */
+	public long getUnitOffset(long offset) {
+		int index = indexOfEntry(offset);
+
+		if (index < 0) {
+			return -1;
+		}
+
+		int unit = data.getInt(layout.unitIndexes + index * 4);
+
+		return data.getLong(layout.units + unit * UNIT_SIZE);
+	}
+
+	/**
+	 * Answer the section offsets of all units, in section order.
+	 */
+	public long[] getUnitOffsets() {
+		long[] offsets = new long[layout.unitCount];
+
+		for (int index = 0; index < offsets.length; ++index) {
+			offsets[index] = data.getLong(layout.units + index * UNIT_SIZE);
+		}
+
+		return offsets;
+	}
+
+	private int indexOf(int start, int count, int stride, long offset) {
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long value = data.getLong(start + middle * stride);
+
+			if (value < offset) {
+				low = middle + 1;
+			} else if (value > offset) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	private int indexOfEntry(long offset) {
+		return indexOf(layout.entryOffsets, layout.entryCount, 8, offset);
+	}
+
+	private int indexOfType(long offset) {
+		return indexOf(layout.types, layout.typeCount, TYPE_SIZE, offset);
+	}
+
+	private UnitHeader[] readUnits() {
+		UnitHeader[] units = new UnitHeader[layout.unitCount];
+
+		for (int index = 0; index < units.length; ++index) {
+			int position = layout.units + index * UNIT_SIZE;
+
+			units[index] = new UnitHeader(
+					data.getLong(position),
+					data.getLong(position + 8),
+					(int) data.getLong(position + 32),
+					(int) data.getLong(position + 56),
+					data.getLong(position + 16),
+					(int) data.getLong(position + 40),
+					(int) data.getLong(position + 48),
+					data.getLong(position + 24));
+		}
+
+		return units;
+	}
+
+	/**
+	 * Answer a {@link DieIndex} of the entries, for decoding them on demand.
+	 */
+	public DieIndex toDieIndex() {
+		int count = layout.entryCount;
+		long[] offsets = new long[count];
+		int[] tags = new int[count];
+		int[] unitIndexes = new int[count];
+
+		ByteBuffer view = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		view.position(layout.entryOffsets);
+		view.asLongBuffer().get(offsets);
+		view.position(layout.tags);
+		view.asIntBuffer().get(tags);
+		view.position(layout.unitIndexes);
+		view.asIntBuffer().get(unitIndexes);
+
+		return new DieIndex(scanner, offsets, tags, unitIndexes);
+	}
+
+	/**
+	 * Answer whether the index file was built when it was opened, rather
+	 * than found up to date.
+	 */
+	public boolean wasBuilt() {
+		return built;
+	}
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The tags and attributes a requestor wants to receive. Attributes of
+ * tags outside the set of interesting tags, and attributes outside the
+ * set of interesting attributes, are skipped by the scanner without
+ * being decoded or delivered. The begin and end events of every tag are
+ * always delivered so the nesting of entries is preserved.
+ * <p>
+ * An interest may also want only the children of the interesting tags.
+ * The scanner then skips the children of other tags without decoding them.
+ * Unlike a requestor declining children through
+ * {@link DwarfRequestor#enterTag(int, long, boolean)}, this is known before
+ * the scan. It therefore also saves work when units are decoded
+ * concurrently and their events are recorded for the requestor.
+ */
+public final class DwarfInterest {
+
+	/**
+	 * Interest in every tag and every attribute.
+	 */
+	public static final DwarfInterest ALL = new DwarfInterest(null, null, false);
+
+	/**
+	 * Answer an interest in the given attributes of all tags.
+	 * 
+	 * @param attributes the interesting DW_AT_* values
+	 */
+	public static DwarfInterest attributes(int... attributes) {
+		return new DwarfInterest(null, toBits(attributes), false);
+	}
+
+	/**
+	 * Answer an interest in the given attributes of the given tags.
+	 * 
+	 * @param tags the interesting DW_TAG_* values, or null for all tags
+	 * @param attributes the interesting DW_AT_* values, or null for all attributes
+	 */
+	public static DwarfInterest of(int[] tags, int[] attributes) {
+		if (tags == null && attributes == null) {
+			return ALL;
+		}
+
+		return new DwarfInterest(toBits(tags), toBits(attributes), false);
+	}
+
+	private static boolean isUnit(int tag) {
+		return tag == DwarfTag.DW_TAG_compile_unit || tag == DwarfTag.DW_TAG_partial_unit
+				|| tag == DwarfTag.DW_TAG_skeleton_unit || tag == DwarfTag.DW_TAG_type_unit;
+	}
+
+	private static BitSet toBits(int[] values) {
+		if (values == null) {
+			return null;
+		}
+
+		BitSet bits = new BitSet();
+
+		for (int value : values) {
+			if (value < 0) {
+				throw new IllegalArgumentException("value=" + value);
+			}
+
+			bits.set(value);
+		}
+
+		return bits;
+	}
+
+	/** the interesting attributes, or null if all are interesting */
+	private final BitSet attributes;
+
+	/** whether only the children of unit entries and interesting tags are wanted */
+	private final boolean childrenOfTagsOnly;
+
+	/** the interesting tags, or null if all are interesting */
+	private final BitSet tags;
+
+	private DwarfInterest(BitSet tags, BitSet attributes, boolean childrenOfTagsOnly) {
+		super();
+		this.attributes = attributes;
+		this.childrenOfTagsOnly = childrenOfTagsOnly;
+		this.tags = tags;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof DwarfInterest)) {
+			return false;
+		}
+
+		DwarfInterest that = (DwarfInterest) other;
+
+		return Objects.equals(tags, that.tags) && Objects.equals(attributes, that.attributes)
+				&& childrenOfTagsOnly == that.childrenOfTagsOnly;
+	}
+
+	@Override
+	public int hashCode() {
+		return (Objects.hashCode(tags) * 31 + Objects.hashCode(attributes)) * 31 + (childrenOfTagsOnly ? 1 : 0);
+	}
+
+	/**
+	 * Answer whether every attribute of every tag is interesting.
+	 */
+	public boolean isAll() {
+		return tags == null && attributes == null;
+	}
+
+	/**
+	 * Answer whether the given attribute of the given tag is interesting.
+	 */
+	public boolean wantsAttribute(int tag, int attribute) {
+		return wantsTag(tag) && (attributes == null || attributes.get(attribute));
+	}
+
+	/**
+	 * Answer whether the children of the given tag are wanted.
+	 */
+	public boolean wantsChildren(int tag) {
+		return !childrenOfTagsOnly || wantsTag(tag) || isUnit(tag);
+	}
+
+	/**
+	 * Answer whether the attributes of the given tag are interesting.
+	 */
+	public boolean wantsTag(int tag) {
+		return tags == null || tags.get(tag);
+	}
+
+	/**
+	 * Answer an interest in the same tags and attributes that wants only
+	 * the children of unit entries and of the interesting tags.
+	 */
+	public DwarfInterest withChildrenOfTagsOnly() {
+		return new DwarfInterest(tags, attributes, true);
+	}
+
+}
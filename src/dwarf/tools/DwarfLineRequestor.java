@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * A requestor that receives the rows of a line number program as its state
+ * machine produces them. Rows are delivered in program order: by address
+ * within each sequence, but sequences may appear in any order.
+ *
+ * @see DwarfScanner#scanLines(long, DwarfLineRequestor)
+ */
+public interface DwarfLineRequestor {
+
+	int ROW_IS_STMT = 0x01;
+	int ROW_BASIC_BLOCK = 0x02;
+	int ROW_END_SEQUENCE = 0x04;
+	int ROW_PROLOGUE_END = 0x08;
+	int ROW_EPILOGUE_BEGIN = 0x10;
+
+	/**
+	 * Accept the path of a file, before any row that refers to it. Relative
+	 * paths are resolved against their include directory and the
+	 * compilation directory of the unit.
+	 *
+	 * @param index the value of the file register that refers to the file:
+	 *              from one before DWARF 5, and from zero since
+	 */
+	void acceptFile(int index, String path);
+
+	/**
+	 * Accept a row of the line number matrix.
+	 *
+	 * @param flags a combination of the ROW_ values
+	 */
+	void acceptRow(long address, int file, int line, int column, int flags);
+
+}
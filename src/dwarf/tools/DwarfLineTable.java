@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.Arrays;
+
+/**
+ * The line number matrix of one unit, held in parallel primitive arrays
+ * whose rows are sorted by address, so the row describing an address is
+ * found by a binary search.
+ *
+ * @see DwarfScanner#getLineTable(long)
+ */
+public final class DwarfLineTable {
+
+	/**
+	 * Collects the rows of a line number program. Sequences are kept whole
+	 * and ordered by their first address when the table is built.
+	 */
+	static final class Builder implements DwarfLineRequestor {
+
+		private long[] addresses;
+
+		private int[] columns;
+
+		private int count;
+
+		private String[] fileNames;
+
+		private int[] files;
+
+		private byte[] flags;
+
+		private int[] lines;
+
+		/** the index of the first row of each sequence */
+		private int[] sequenceStarts;
+
+		private int sequences;
+
+		Builder() {
+			super();
+			this.addresses = new long[256];
+			this.columns = new int[256];
+			this.count = 0;
+			this.fileNames = new String[16];
+			this.files = new int[256];
+			this.flags = new byte[256];
+			this.lines = new int[256];
+			this.sequenceStarts = new int[16];
+			this.sequences = 0;
+		}
+
+		@Override
+		public void acceptFile(int index, String path) {
+			if (index >= fileNames.length) {
+				fileNames = Arrays.copyOf(fileNames, Math.max(index + 1, fileNames.length * 2));
+			}
+
+			fileNames[index] = path;
+		}
+
+		@Override
+		public void acceptRow(long address, int file, int line, int column, int rowFlags) {
+			if (count == addresses.length) {
+				int capacity = count * 2;
+
+				addresses = Arrays.copyOf(addresses, capacity);
+				columns = Arrays.copyOf(columns, capacity);
+				files = Arrays.copyOf(files, capacity);
+				flags = Arrays.copyOf(flags, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+			}
+
+			if (count == 0 || (flags[count - 1] & ROW_END_SEQUENCE) != 0) {
+				if (sequences == sequenceStarts.length) {
+					sequenceStarts = Arrays.copyOf(sequenceStarts, sequences * 2);
+				}
+
+				sequenceStarts[sequences++] = count;
+			}
+
+			addresses[count] = address;
+			columns[count] = column;
+			files[count] = file;
+			flags[count] = (byte) rowFlags;
+			lines[count] = line;
+			count += 1;
+		}
+
+		DwarfLineTable build() {
+			Integer[] order = new Integer[sequences];
+
+			for (int index = 0; index < sequences; ++index) {
+				order[index] = Integer.valueOf(index);
+			}
+
+			Arrays.sort(order, (left, right) -> Long.compare(addresses[sequenceStarts[left.intValue()]],
+					addresses[sequenceStarts[right.intValue()]]));
+
+			long[] sortedAddresses = new long[count];
+			int[] sortedColumns = new int[count];
+			int[] sortedFiles = new int[count];
+			byte[] sortedFlags = new byte[count];
+			int[] sortedLines = new int[count];
+			int row = 0;
+
+			for (Integer sequence : order) {
+				int start = sequenceStarts[sequence.intValue()];
+				int end = sequence.intValue() + 1 < sequences ? sequenceStarts[sequence.intValue() + 1] : count;
+				int length = end - start;
+
+				System.arraycopy(addresses, start, sortedAddresses, row, length);
+				System.arraycopy(columns, start, sortedColumns, row, length);
+				System.arraycopy(files, start, sortedFiles, row, length);
+				System.arraycopy(flags, start, sortedFlags, row, length);
+				System.arraycopy(lines, start, sortedLines, row, length);
+				row += length;
+			}
+
+			return new DwarfLineTable(sortedAddresses, sortedColumns, sortedFiles, sortedFlags, sortedLines,
+					fileNames);
+		}
+
+	}
+
+	private final long[] addresses;
+
+	private final int[] columns;
+
+	private final String[] fileNames;
+
+	private final int[] files;
+
+	private final byte[] flags;
+
+	private final int[] lines;
+
+	private DwarfLineTable(long[] addresses, int[] columns, int[] files, byte[] flags, int[] lines,
+			String[] fileNames) {
+		super();
+		this.addresses = addresses;
+		this.columns = columns;
+		this.fileNames = fileNames;
+		this.files = files;
+		this.flags = flags;
+		this.lines = lines;
+	}
+
+	/**
+	 * Answer the row describing the given address: the last row at or
+	 * before it, unless that row ends a sequence. Answer -1 if no row
+	 * describes the address.
+	 */
+	public int find(long address) {
+		int low = 0;
+		int high = addresses.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (addresses[middle] <= address) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		if (high < 0 || (flags[high] & DwarfLineRequestor.ROW_END_SEQUENCE) != 0) {
+			return -1;
+		}
+
+		return high;
+	}
+
+	public long getAddress(int row) {
+		return addresses[row];
+	}
+
+	public int getColumn(int row) {
+		return columns[row];
+	}
+
+	/**
+	 * Answer the path of the file of the given row, or null if the
+	 * program names no such file.
+	 */
+	public String getFileName(int row) {
+		int file = files[row];
+
+		return file < fileNames.length ? fileNames[file] : null;
+	}
+
+	/**
+	 * Answer the flags of the given row, a combination of the ROW_ values
+	 * of {@link DwarfLineRequestor}.
+	 */
+	public int getFlags(int row) {
+		return flags[row];
+	}
+
+	public int getLine(int row) {
+		return lines[row];
+	}
+
+	public int getRowCount() {
+		return addresses.length;
+	}
+
+	/**
+	 * Answer the path of the file with the given index in the file table
+	 * of the program, as used by DW_AT_decl_file and DW_AT_call_file,
+	 * or null if the program names no such file.
+	 */
+	public String lookupFileName(int file) {
+		return file >= 0 && file < fileNames.length ? fileNames[file] : null;
+	}
+
+}
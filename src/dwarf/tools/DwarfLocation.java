@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The result of evaluating a location expression: a single location, or
+ * the pieces of a composite location, each of which is in memory, in a
+ * register, a computed value, a literal value, an implicit pointer or
+ * absent altogether.
+ *
+ * @see DwarfExpression#evaluateLocation(DwarfExpression.Context)
+ */
+public final class DwarfLocation {
+
+	/** the piece has been optimized away */
+	public static final int KIND_EMPTY = 0;
+
+	/** the piece is at the address given by its value */
+	public static final int KIND_MEMORY = 1;
+
+	/** the piece is in the register given by its value */
+	public static final int KIND_REGISTER = 2;
+
+	/** the piece is not stored anywhere; its value is given */
+	public static final int KIND_VALUE = 3;
+
+	/** the piece is not stored anywhere; its bytes are given */
+	public static final int KIND_IMPLICIT = 4;
+
+	/**
+	 * the piece is not stored anywhere; it points into the object described
+	 * by the entry at the section offset given by its value
+	 */
+	public static final int KIND_IMPLICIT_POINTER = 5;
+
+	private final long[] bitOffsets;
+
+	private final long[] bitSizes;
+
+	private final ByteBuffer[] implicitValues;
+
+	private final int[] kinds;
+
+	private final long[] pointerOffsets;
+
+	private final long[] values;
+
+	DwarfLocation(int[] kinds, long[] values, long[] bitSizes, long[] bitOffsets, ByteBuffer[] implicitValues,
+			long[] pointerOffsets) {
+		super();
+		this.bitOffsets = bitOffsets;
+		this.bitSizes = bitSizes;
+		this.implicitValues = implicitValues;
+		this.kinds = kinds;
+		this.pointerOffsets = pointerOffsets;
+		this.values = values;
+	}
+
+	/**
+	 * Answer the offset, in bits, of the given piece within the register
+	 * or memory holding it; only DW_OP_bit_piece gives a non-zero offset.
+	 */
+	public long getBitOffset(int piece) {
+		return bitOffsets[piece];
+	}
+
+	/**
+	 * Answer the size, in bits, of the given piece, or -1 if the location
+	 * is not composite.
+	 */
+	public long getBitSize(int piece) {
+		return bitSizes[piece];
+	}
+
+	/**
+	 * Answer a read-only view of the bytes of a KIND_IMPLICIT piece,
+	 * or null for other kinds.
+	 */
+	public ByteBuffer getImplicitValue(int piece) {
+		ByteBuffer value = implicitValues[piece];
+
+		return value != null ? value.duplicate().order(value.order()) : null;
+	}
+
+	/**
+	 * Answer the kind, one of the KIND_ values, of the given piece.
+	 */
+	public int getKind(int piece) {
+		return kinds[piece];
+	}
+
+	public int getPieceCount() {
+		return kinds.length;
+	}
+
+	/**
+	 * Answer the offset, in bytes, into the object a KIND_IMPLICIT_POINTER
+	 * piece points to, or zero for other kinds.
+	 */
+	public long getPointerOffset(int piece) {
+		return pointerOffsets[piece];
+	}
+
+	/**
+	 * Answer the address, register, value or entry offset of the given
+	 * piece, according to its kind.
+	 */
+	public long getValue(int piece) {
+		return values[piece];
+	}
+
+	/**
+	 * Answer whether the location is made of pieces.
+	 */
+	public boolean isComposite() {
+		return kinds.length != 1 || bitSizes[0] >= 0;
+	}
+
+}
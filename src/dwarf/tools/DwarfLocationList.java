@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.Arrays;
+
+/**
+ * A location list: the locations of a variable over ranges of code
+ * addresses, held in parallel primitive arrays sorted by start address,
+ * so the location at an address is found by a binary search. Entries are
+ * expected not to overlap, as compilers emit them. The expression of each
+ * entry is decoded when it is first asked for.
+ *
+ * @see DieCursor#getLocation(int, long)
+ */
+public final class DwarfLocationList {
+
+	/**
+	 * Collects the entries of a location list.
+	 */
+	static final class Builder {
+
+		private int count;
+
+		private int defaultLength;
+
+		private long defaultOffset;
+
+		private long[] ends;
+
+		private int[] lengths;
+
+		private long[] offsets;
+
+		private long[] starts;
+
+		Builder() {
+			super();
+			this.count = 0;
+			this.defaultLength = 0;
+			this.defaultOffset = -1;
+			this.ends = new long[8];
+			this.lengths = new int[8];
+			this.offsets = new long[8];
+			this.starts = new long[8];
+		}
+
+		/**
+		 * Add an entry whose expression has the given length and begins at
+		 * the given section offset; empty ranges are dropped.
+		 */
+		void add(long start, long end, long offset, int length) {
+			if (Long.compareUnsigned(start, end) >= 0) {
+				return;
+			}
+
+			if (count == starts.length) {
+				int capacity = count * 2;
+
+				ends = Arrays.copyOf(ends, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+			}
+
+			ends[count] = end;
+			lengths[count] = length;
+			offsets[count] = offset;
+			starts[count] = start;
+			count += 1;
+		}
+
+		/**
+		 * Build the list, whose expressions will be decoded from the given
+		 * data as the referring unit decodes them.
+		 */
+		DwarfLocationList build(DataSource data) {
+			boolean sorted = true;
+
+			for (int index = 1; index < count && sorted; ++index) {
+				sorted = Long.compareUnsigned(starts[index - 1], starts[index]) <= 0;
+			}
+
+			if (sorted) {
+				return new DwarfLocationList(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count),
+						Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), defaultOffset, defaultLength,
+						data);
+			}
+
+			Integer[] order = new Integer[count];
+
+			for (int index = 0; index < count; ++index) {
+				order[index] = Integer.valueOf(index);
+			}
+
+			Arrays.sort(order, (left, right) -> Long.compareUnsigned(starts[left.intValue()], starts[right.intValue()]));
+
+			long[] sortedEnds = new long[count];
+			int[] sortedLengths = new int[count];
+			long[] sortedOffsets = new long[count];
+			long[] sortedStarts = new long[count];
+
+			for (int index = 0; index < count; ++index) {
+				int entry = order[index].intValue();
+
+				sortedEnds[index] = ends[entry];
+				sortedLengths[index] = lengths[entry];
+				sortedOffsets[index] = offsets[entry];
+				sortedStarts[index] = starts[entry];
+			}
+
+			return new DwarfLocationList(sortedStarts, sortedEnds, sortedOffsets, sortedLengths, defaultOffset,
+					defaultLength, data);
+		}
+
+		/**
+		 * Record the expression of the location that applies where no entry
+		 * does (DW_LLE_default_location).
+		 */
+		void setDefault(long offset, int length) {
+			defaultLength = length;
+			defaultOffset = offset;
+		}
+
+	}
+
+	private final DataSource data;
+
+	private volatile DwarfExpression defaultExpression;
+
+	private final int defaultLength;
+
+	/** the section offset of the default expression, or -1 if there is none */
+	private final long defaultOffset;
+
+	private final long[] ends;
+
+	/** the decoded expression of each entry, or null until it is asked for */
+	private final DwarfExpression[] expressions;
+
+	private final int[] lengths;
+
+	/** the section offset of the expression of each entry */
+	private final long[] offsets;
+
+	private final long[] starts;
+
+	DwarfLocationList(long[] starts, long[] ends, long[] offsets, int[] lengths, long defaultOffset,
+			int defaultLength, DataSource data) {
+		super();
+		this.data = data;
+		this.defaultExpression = null;
+		this.defaultLength = defaultLength;
+		this.defaultOffset = defaultOffset;
+		this.ends = ends;
+		this.expressions = new DwarfExpression[starts.length];
+		this.lengths = lengths;
+		this.offsets = offsets;
+		this.starts = starts;
+	}
+
+	private DwarfExpression decode(long offset, int length) {
+		return DwarfExpression.decode(data.duplicate().position(offset), length);
+	}
+
+	/**
+	 * Answer the entry whose range includes the given address,
+	 * or -1 if there is none.
+	 */
+	public int find(long address) {
+		int low = 0;
+		int high = starts.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (Long.compareUnsigned(starts[middle], address) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return high >= 0 && Long.compareUnsigned(address, ends[high]) < 0 ? high : -1;
+	}
+
+	/**
+	 * Answer the expression of the location that applies where no entry
+	 * does, or null if the list has none.
+	 */
+	public DwarfExpression getDefault() {
+		DwarfExpression expression = defaultExpression;
+
+		if (expression == null && defaultOffset >= 0) {
+			expression = decode(defaultOffset, defaultLength);
+			defaultExpression = expression;
+		}
+
+		return expression;
+	}
+
+	/**
+	 * Answer the address following the range of the given entry.
+	 */
+	public long getEnd(int entry) {
+		return ends[entry];
+	}
+
+	public int getEntryCount() {
+		return starts.length;
+	}
+
+	/**
+	 * Answer the expression of the given entry, decoding it on first use.
+	 */
+	public DwarfExpression getExpression(int entry) {
+		DwarfExpression expression = expressions[entry];
+
+		if (expression == null) {
+			// racing threads decode equivalent expressions
+			expression = decode(offsets[entry], lengths[entry]);
+			expressions[entry] = expression;
+		}
+
+		return expression;
+	}
+
+	/**
+	 * Answer the expression describing the location at the given address:
+	 * that of the entry including the address, or the default location,
+	 * or null if the variable has no location there.
+	 */
+	public DwarfExpression getLocation(long address) {
+		int entry = find(address);
+
+		return entry >= 0 ? getExpression(entry) : getDefault();
+	}
+
+	/**
+	 * Answer the first address of the range of the given entry.
+	 */
+	public long getStart(int entry) {
+		return starts[entry];
+	}
+
+}
@@ -0,0 +1,644 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A requestor that keeps the entries it receives as a tree in compact,
+ * columnar form. Entries are identified by their index, in the order they
+ * were delivered; the tag, section offset, parent, first child and next
+ * sibling of each entry are held in primitive arrays. Attribute values are
+ * held in a single pool shared by all entries, with strings and blocks kept
+ * as offsets into the mapped sections, which are decoded only on request.
+ * <p>
+ * A model is built by a scan that delivers units in order, for example:
+ * 
+ * <pre>
+ * DwarfModel model = new DwarfModel(scanner);
+ * 
+ * scanner.scanUnits(model);
+ * model.trimToSize();
+ * </pre>
+ * 
+ * A model must not be used while it is being built, but may then be
+ * queried by any number of threads.
+ */
+public final class DwarfModel implements StringOffsetRequestor {
+
+	/** the number of bits of a block view holding its length */
+	private static final int BLOCK_LENGTH_BITS = 24;
+
+	/** the largest section offset of a block held as a section view */
+	private static final long BLOCK_OFFSET_LIMIT = 1L << 39;
+
+	private static int[] grow(int[] array, int size) {
+		return size < array.length ? array : Arrays.copyOf(array, size + (size >> 1) + 16);
+	}
+
+	private static long[] grow(long[] array, int size) {
+		return size < array.length ? array : Arrays.copyOf(array, size + (size >> 1) + 16);
+	}
+
+	/** the attribute and form of each value in the pool, as attribute << 16 | form */
+	private int[] attributeCodes;
+
+	private int attributeCount;
+
+	/** the index in the pool of the first attribute of each entry */
+	private int[] attributeStarts;
+
+	private long[] attributeValues;
+
+	private int count;
+
+	/** the number of open entries, plus one for the unit */
+	private int depth;
+
+	private int[] firstChildren;
+
+	private final DwarfInterest interest;
+
+	/** the last child received for each open entry */
+	private int[] lastChildren;
+
+	private int[] nextSiblings;
+
+	/** strings and blocks that were delivered as objects rather than as offsets */
+	private final List<Object> objects;
+
+	private long[] offsets;
+
+	/** the open entries; the entry at depth zero stands for the unit */
+	private int[] openEntries;
+
+	private int[] parents;
+
+	private final DwarfScanner scanner;
+
+	private int[] tags;
+
+	private int unitCount;
+
+	/** the index of the first entry of each unit */
+	private int[] unitFirstEntries;
+
+	private long[] unitOffsets;
+
+	/**
+	 * Create an empty model that will hold every attribute of every entry.
+	 * 
+	 * @param scanner the scanner that will deliver the entries
+	 */
+	public DwarfModel(DwarfScanner scanner) {
+		this(scanner, DwarfInterest.ALL);
+	}
+
+	/**
+	 * Create an empty model that will hold the given attributes of every entry.
+	 * 
+	 * @param scanner the scanner that will deliver the entries
+	 * @param interest the attributes to be held
+	 */
+	public DwarfModel(DwarfScanner scanner, DwarfInterest interest) {
+		super();
+		this.attributeCodes = new int[0];
+		this.attributeCount = 0;
+		this.attributeStarts = new int[0];
+		this.attributeValues = new long[0];
+		this.count = 0;
+		this.depth = 0;
+		this.firstChildren = new int[0];
+		this.interest = interest;
+		this.lastChildren = new int[8];
+		this.nextSiblings = new int[0];
+		this.objects = new ArrayList<>();
+		this.offsets = new long[0];
+		this.openEntries = new int[8];
+		this.parents = new int[0];
+		this.scanner = scanner;
+		this.tags = new int[0];
+		this.unitCount = 0;
+		this.unitFirstEntries = new int[0];
+		this.unitOffsets = new long[0];
+	}
+
+	@Override
+	public void acceptAddress(int attribute, int form, long address) {
+		addAttribute(attribute, form, address);
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, byte[] data) {
+		addObject(attribute, form, data.clone());
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+		int length = data.remaining();
+
+		if (offset < BLOCK_OFFSET_LIMIT && length < (1 << BLOCK_LENGTH_BITS)) {
+			addAttribute(attribute, form, (offset << BLOCK_LENGTH_BITS) | length);
+		} else {
+			byte[] block = new byte[length];
+
+			data.duplicate().get(block);
+			addObject(attribute, form, block);
+		}
+	}
+
+	@Override
+	public void acceptConstant(int attribute, int form, long value) {
+		addAttribute(attribute, form, value);
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, byte[] expression) {
+		acceptBlock(attribute, form, expression);
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+		acceptBlock(attribute, form, offset, expression);
+	}
+
+	@Override
+	public void acceptFlag(int attribute, int form, boolean flag) {
+		addAttribute(attribute, form, flag ? 1 : 0);
+	}
+
+	@Override
+	public void acceptReference(int attribute, int form, long offset) {
+		addAttribute(attribute, form, offset);
+	}
+
+	@Override
+	public void acceptString(int attribute, int form, String string) {
+		addObject(attribute, form, string);
+	}
+
+	@Override
+	public void acceptStringOffset(int attribute, int form, long offset) {
+		addAttribute(attribute, form, offset);
+	}
+
+	private void addAttribute(int attribute, int form, long value) {
+		int index = attributeCount++;
+
+		attributeCodes = grow(attributeCodes, index);
+		attributeValues = grow(attributeValues, index);
+
+		attributeCodes[index] = (attribute << 16) | (form & 0xFFFF);
+		attributeValues[index] = value;
+	}
+
+	private void addObject(int attribute, int form, Object value) {
+		objects.add(value);
+
+		// objects are identified by negative values
+		addAttribute(attribute, form, -objects.size());
+	}
+
+	@Override
+	public void beginTag(int tag, long offset, boolean hasChildren) {
+		int entry = count++;
+		int parent = openEntries[depth];
+		int previous = lastChildren[depth];
+
+		attributeStarts = grow(attributeStarts, entry);
+		firstChildren = grow(firstChildren, entry);
+		nextSiblings = grow(nextSiblings, entry);
+		offsets = grow(offsets, entry);
+		parents = grow(parents, entry);
+		tags = grow(tags, entry);
+
+		attributeStarts[entry] = attributeCount;
+		firstChildren[entry] = -1;
+		nextSiblings[entry] = -1;
+		offsets[entry] = offset;
+		parents[entry] = parent;
+		tags[entry] = tag;
+
+		if (previous >= 0) {
+			nextSiblings[previous] = entry;
+		} else if (parent >= 0) {
+			firstChildren[parent] = entry;
+		}
+
+		lastChildren[depth] = entry;
+
+		if (hasChildren) {
+			depth += 1;
+			lastChildren = grow(lastChildren, depth);
+			openEntries = grow(openEntries, depth);
+			lastChildren[depth] = -1;
+			openEntries[depth] = entry;
+		}
+	}
+
+	@Override
+	public void endTag(int tag, boolean hasChildren) {
+		if (hasChildren && depth > 0) {
+			depth -= 1;
+		}
+	}
+
+	@Override
+	public void enterCompilationUnit(long offset) {
+		int unit = unitCount++;
+
+		unitFirstEntries = grow(unitFirstEntries, unit);
+		unitOffsets = grow(unitOffsets, unit);
+
+		unitFirstEntries[unit] = count;
+		unitOffsets[unit] = offset;
+
+		depth = 0;
+		lastChildren[0] = -1;
+		openEntries[0] = -1;
+	}
+
+	/**
+	 * Answer the indices of the entries with the given tag, in order.
+	 */
+	public IntStream entries(int tag) {
+		return IntStream.range(0, count).filter(entry -> tags[entry] == tag);
+	}
+
+	@Override
+	public void exitCompilationUnit(long offset) {
+		return;
+	}
+
+	/**
+	 * Answer the index in the pool of the given attribute of an entry, or -1.
+	 */
+	private int findAttribute(int entry, int attribute) {
+		int end = entry + 1 < count ? attributeStarts[entry + 1] : attributeCount;
+
+		for (int index = attributeStarts[entry]; index < end; ++index) {
+			if ((attributeCodes[index] >>> 16) == attribute) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Answer the index of the entry at the given section offset, or -1
+	 * if there is no such entry.
+	 */
+	public int findEntry(long offset) {
+		int index = Arrays.binarySearch(offsets, 0, count, offset);
+
+		return index < 0 ? -1 : index;
+	}
+
+	private int formAt(int index) {
+		return attributeCodes[index] & 0xFFFF;
+	}
+
+	/**
+	 * Answer the address value of the given attribute of an entry,
+	 * or the default value if the entry has no such attribute.
+	 */
+	public long getAddress(int entry, int attribute, long defaultValue) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return defaultValue;
+		}
+
+		switch (formAt(index)) {
+		case DwarfForm.DW_FORM_addr:
+		case DwarfForm.DW_FORM_addrx:
+		case DwarfForm.DW_FORM_addrx1:
+		case DwarfForm.DW_FORM_addrx2:
+		case DwarfForm.DW_FORM_addrx3:
+		case DwarfForm.DW_FORM_addrx4:
+			return attributeValues[index];
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the attribute at the given position among those held for an entry.
+	 * 
+	 * @see #getAttributeCount(int)
+	 */
+	public int getAttribute(int entry, int position) {
+		return attributeCodes[attributeStarts[entry] + position] >>> 16;
+	}
+
+	/**
+	 * Answer the number of attributes held for an entry.
+	 */
+	public int getAttributeCount(int entry) {
+		int end = entry + 1 < count ? attributeStarts[entry + 1] : attributeCount;
+
+		return end - attributeStarts[entry];
+	}
+
+	/**
+	 * Answer a read-only view of the block or expression value of the given
+	 * attribute of an entry, or null if the entry has no such attribute.
+	 */
+	public ByteBuffer getBlock(int entry, int attribute) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		switch (formAt(index)) {
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_block1:
+		case DwarfForm.DW_FORM_block2:
+		case DwarfForm.DW_FORM_block4:
+		case DwarfForm.DW_FORM_data16:
+		case DwarfForm.DW_FORM_exprloc:
+			break;
+		default:
+			throw unexpectedForm(index);
+		}
+
+		long value = attributeValues[index];
+
+		if (value < 0) {
+			return ByteBuffer.wrap((byte[]) objects.get((int) (-value - 1))).asReadOnlyBuffer();
+		}
+
+		int length = (int) (value & ((1 << BLOCK_LENGTH_BITS) - 1));
+
+		return scanner.getInfoView(value >>> BLOCK_LENGTH_BITS, length);
+	}
+
+	/**
+	 * Answer the constant value of the given attribute of an entry,
+	 * or the default value if the entry has no such attribute.
+	 */
+	public long getConstant(int entry, int attribute, long defaultValue) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return defaultValue;
+		}
+
+		switch (formAt(index)) {
+		case DwarfForm.DW_FORM_data1:
+		case DwarfForm.DW_FORM_data2:
+		case DwarfForm.DW_FORM_data4:
+		case DwarfForm.DW_FORM_data8:
+		case DwarfForm.DW_FORM_implicit_const:
+		case DwarfForm.DW_FORM_sdata:
+		case DwarfForm.DW_FORM_udata:
+			return attributeValues[index];
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the number of entries in the model.
+	 */
+	public int getEntryCount() {
+		return count;
+	}
+
+	/**
+	 * Answer the index of the first child of an entry, or -1 if it has none.
+	 */
+	public int getFirstChild(int entry) {
+		return firstChildren[entry];
+	}
+
+	/**
+	 * Answer the flag value of the given attribute of an entry;
+	 * an absent flag is false.
+	 */
+	public boolean getFlag(int entry, int attribute) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return false;
+		}
+
+		switch (formAt(index)) {
+		case DwarfForm.DW_FORM_flag:
+		case DwarfForm.DW_FORM_flag_present:
+			return attributeValues[index] != 0;
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the form of the given attribute of an entry,
+	 * or -1 if the entry has no such attribute.
+	 */
+	public int getForm(int entry, int attribute) {
+		int index = findAttribute(entry, attribute);
+
+		return index < 0 ? -1 : formAt(index);
+	}
+
+	@Override
+	public DwarfInterest getInterest() {
+		return interest;
+	}
+
+	/**
+	 * Answer the index of the next sibling of an entry, or -1 if it has none.
+	 */
+	public int getNextSibling(int entry) {
+		return nextSiblings[entry];
+	}
+
+	/**
+	 * Answer the section offset of an entry.
+	 */
+	public long getOffset(int entry) {
+		return offsets[entry];
+	}
+
+	/**
+	 * Answer the index of the parent of an entry, or -1 for the top-level
+	 * entry of a unit.
+	 */
+	public int getParent(int entry) {
+		return parents[entry];
+	}
+
+	/**
+	 * Answer the reference value of the given attribute of an entry, or -1
+	 * if the entry has no such attribute. Unit-relative references are
+	 * made relative to the start of the .debug_info section; references of
+	 * other forms are answered as they appear.
+	 * 
+	 * @see #findEntry(long)
+	 */
+	public long getReference(int entry, int attribute) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return -1;
+		}
+
+		switch (formAt(index)) {
+		case DwarfForm.DW_FORM_ref1:
+		case DwarfForm.DW_FORM_ref2:
+		case DwarfForm.DW_FORM_ref4:
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_udata:
+			return unitOffsets[getUnit(entry)] + attributeValues[index];
+		case DwarfForm.DW_FORM_loclistx:
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_ref_sig8:
+		case DwarfForm.DW_FORM_ref_sup4:
+		case DwarfForm.DW_FORM_ref_sup8:
+		case DwarfForm.DW_FORM_rnglistx:
+		case DwarfForm.DW_FORM_sec_offset:
+			return attributeValues[index];
+		default:
+			throw unexpectedForm(index);
+		}
+	}
+
+	/**
+	 * Answer the string value of the given attribute of an entry,
+	 * or null if the entry has no such attribute.
+	 */
+	public String getString(int entry, int attribute) {
+		int index = findAttribute(entry, attribute);
+
+		if (index < 0) {
+			return null;
+		}
+
+		int form = formAt(index);
+
+		switch (form) {
+		case DwarfForm.DW_FORM_line_strp:
+		case DwarfForm.DW_FORM_string:
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			break;
+		default:
+			throw unexpectedForm(index);
+		}
+
+		long value = attributeValues[index];
+
+		if (value < 0) {
+			return (String) objects.get((int) (-value - 1));
+		}
+
+		return scanner.getString(form, value);
+	}
+
+	/**
+	 * Answer the tag of an entry.
+	 */
+	public int getTag(int entry) {
+		return tags[entry];
+	}
+
+	/**
+	 * Answer the index of the unit containing an entry.
+	 */
+	public int getUnit(int entry) {
+		int index = Arrays.binarySearch(unitFirstEntries, 0, unitCount, entry);
+
+		if (index < 0) {
+			// the unit starting before the entry
+			return -index - 2;
+		}
+
+		// skip units without entries
+		while (index + 1 < unitCount && unitFirstEntries[index + 1] == entry) {
+			index += 1;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Answer the number of units in the model.
+	 */
+	public int getUnitCount() {
+		return unitCount;
+	}
+
+	/**
+	 * Answer the section offset of a unit.
+	 */
+	public long getUnitOffset(int unit) {
+		return unitOffsets[unit];
+	}
+
+	/**
+	 * Answer the index of the top-level entry of a unit, or -1 if it has none.
+	 */
+	public int getUnitRoot(int unit) {
+		int entry = unitFirstEntries[unit];
+		int end = unit + 1 < unitCount ? unitFirstEntries[unit + 1] : count;
+
+		return entry < end ? entry : -1;
+	}
+
+	/**
+	 * Answer whether an entry has the given attribute.
+	 */
+	public boolean hasAttribute(int entry, int attribute) {
+		return findAttribute(entry, attribute) >= 0;
+	}
+
+	/**
+	 * Release the unused capacity of the arrays of this model.
+	 */
+	public void trimToSize() {
+		attributeCodes = Arrays.copyOf(attributeCodes, attributeCount);
+		attributeStarts = Arrays.copyOf(attributeStarts, count);
+		attributeValues = Arrays.copyOf(attributeValues, attributeCount);
+		firstChildren = Arrays.copyOf(firstChildren, count);
+		nextSiblings = Arrays.copyOf(nextSiblings, count);
+		offsets = Arrays.copyOf(offsets, count);
+		parents = Arrays.copyOf(parents, count);
+		tags = Arrays.copyOf(tags, count);
+		unitFirstEntries = Arrays.copyOf(unitFirstEntries, unitCount);
+		unitOffsets = Arrays.copyOf(unitOffsets, unitCount);
+	}
+
+	private IllegalStateException unexpectedForm(int index) {
+		return new IllegalStateException("form=" + formAt(index));
+	}
+
+}
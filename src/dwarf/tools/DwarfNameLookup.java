@@ -0,0 +1,480 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the entries with a given name using whichever accelerator tables
+ * the file provides, so a lookup need not scan all of .debug_info. The
+ * entries found are those at file or namespace scope, other than
+ * declarations: entries nested in subprograms, types or enumerations are
+ * not found, nor are the entries of units themselves.
+ * <p>
+ * Producers differ in what their tables index (gcc's pubnames, for
+ * example, include some declarations and omit enumerators), so the tables
+ * are used only to choose the units holding the name, which are then
+ * walked; the names of each unit are read on its first visit and retained.
+ * The tables are consulted in this order:
+ * <ul>
+ * <li>.debug_names, which maps names to entries;</li>
+ * <li>.gdb_index, which maps names to units;</li>
+ * <li>.debug_pubnames and .debug_pubtypes, or their GNU variants, which map
+ * names to entries within units.</li>
+ * </ul>
+ * For a name found in none of them, the units are chosen by an index file
+ * supplied by the caller or, failing that, the names of all units are read
+ * on the first such lookup. A lookup answers the same entries whichever
+ * tables the file has, provided the tables name every unit defining a
+ * name. A lookup may be shared between threads.
+ */
+public final class DwarfNameLookup {
+
+	/**
+	 * The hash table of a .gdb_index section, mapping names to the
+	 * compilation units that define them.
+	 */
+	private static final class GdbIndex {
+
+		private static final int VERSION_MAXIMUM = 8;
+
+		/** earlier versions hash names differently */
+		private static final int VERSION_MINIMUM = 5;
+
+		/**
+		 * Answer the hash of a name used by .gdb_index, which ignores the case
+		 * of ASCII letters.
+		 */
+		private static int hash(byte[] name) {
+			int hash = 0;
+
+			for (byte b : name) {
+				int c = b & 0xFF;
+
+				if ('A' <= c && c <= 'Z') {
+					c += 'a' - 'A';
+				}
+
+				hash = hash * 67 + c - 113;
+			}
+
+			return hash;
+		}
+
+		static GdbIndex readFrom(ByteBuffer section) {
+			ByteBuffer data = section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int version = data.getInt(0);
+
+			if (version < VERSION_MINIMUM || version > VERSION_MAXIMUM) {
+				return null;
+			}
+
+			int unitList = data.getInt(4);
+			int typeUnitList = data.getInt(8);
+			int symbolTable = data.getInt(16);
+			int constantPool = data.getInt(20);
+			long[] units = new long[(typeUnitList - unitList) / 16];
+
+			for (int index = 0; index < units.length; ++index) {
+				units[index] = data.getLong(unitList + index * 16);
+			}
+
+			return new GdbIndex(data, units, symbolTable, (constantPool - symbolTable) / 8, constantPool);
+		}
+
+		private final int constantPool;
+
+		private final ByteBuffer data;
+
+		private final int slotCount;
+
+		private final int symbolTable;
+
+		/** the offsets in .debug_info of the compilation units */
+		private final long[] units;
+
+		private GdbIndex(ByteBuffer data, long[] units, int symbolTable, int slotCount, int constantPool) {
+			super();
+			this.constantPool = constantPool;
+			this.data = data;
+			this.slotCount = slotCount;
+			this.symbolTable = symbolTable;
+			this.units = units;
+		}
+
+		/**
+		 * Answer the offsets of the compilation units defining the given name.
+		 * Type units, which are held in .debug_types, are omitted.
+		 */
+		long[] findUnits(String name) {
+			if (slotCount == 0 || Integer.bitCount(slotCount) != 1) {
+				return NONE;
+			}
+
+			byte[] bytes = name.getBytes(DataSource.UTF8);
+			int hash = hash(bytes);
+			int mask = slotCount - 1;
+			int step = ((hash * 17) & mask) | 1;
+
+			for (int slot = hash & mask;; slot = (slot + step) & mask) {
+				int position = symbolTable + slot * 8;
+				int nameOffset = data.getInt(position);
+				int vectorOffset = data.getInt(position + 4);
+
+				if (nameOffset == 0 && vectorOffset == 0) {
+					return NONE;
+				}
+
+				if (matches(constantPool + nameOffset, bytes)) {
+					return readUnits(constantPool + vectorOffset);
+				}
+			}
+		}
+
+		private boolean matches(int position, byte[] name) {
+			if (position + name.length >= data.limit()) {
+				return false;
+			}
+
+			for (int index = 0; index < name.length; ++index) {
+				if (data.get(position + index) != name[index]) {
+					return false;
+				}
+			}
+
+			return data.get(position + name.length) == 0;
+		}
+
+		private long[] readUnits(int position) {
+			int count = data.getInt(position);
+			long[] found = new long[count];
+			int size = 0;
+
+			for (int index = 0; index < count; ++index) {
+				// the low 24 bits hold the unit index; the rest describe the symbol
+				int unit = data.getInt(position + 4 + index * 4) & 0xFFFFFF;
+
+				if (unit < units.length) {
+					found[size++] = units[unit];
+				}
+			}
+
+			return Arrays.copyOf(found, size);
+		}
+
+	}
+
+	static final long[] NONE = new long[0];
+
+	private static final String[] PUB_SECTIONS = {
+			".debug_pubnames",
+			".debug_pubtypes",
+			".debug_gnu_pubnames",
+			".debug_gnu_pubtypes" };
+
+	private static void add(Map<String, List<Long>> entries, String name, long offset) {
+		entries.computeIfAbsent(name, key -> new ArrayList<>(1)).add(Long.valueOf(offset));
+	}
+
+	private static boolean isUnit(int tag) {
+		return tag == DwarfTag.DW_TAG_compile_unit || tag == DwarfTag.DW_TAG_partial_unit
+				|| tag == DwarfTag.DW_TAG_type_unit || tag == DwarfTag.DW_TAG_skeleton_unit;
+	}
+
+	/**
+	 * Add the units of the names of a .debug_pubnames or .debug_pubtypes
+	 * section, where each set of names follows a header identifying its
+	 * unit. The GNU variants of those sections add a byte of flags to each
+	 * name.
+	 */
+	private static void readPubNames(ByteBuffer section, boolean gnu, Map<String, List<Long>> units) {
+		DataSource sets = new DataSource(section);
+
+		while (sets.hasRemaining()) {
+			long length = sets.getU4();
+			int offsetSize = 4;
+
+			if (length == 0xFFFFFFFFL) {
+				length = sets.getU8();
+				offsetSize = 8;
+			}
+
+			long end = sets.position() + length;
+			DataSource data = new DataSource(sets.duplicate(), 0, offsetSize, null);
+
+			data.getU2(); // version
+
+			long unitOffset = data.getOffset();
+
+			data.getOffset(); // unit length
+
+			for (;;) {
+				long offset = data.getOffset();
+
+				if (offset == 0) {
+					break;
+				}
+
+				if (gnu) {
+					data.skip(1);
+				}
+
+				add(units, data.getString(), unitOffset);
+			}
+
+			sets.position(end);
+		}
+	}
+
+	private static Map<String, long[]> toArrays(Map<String, List<Long>> entries) {
+		Map<String, long[]> arrays = new HashMap<>(entries.size() * 2);
+
+		for (Map.Entry<String, List<Long>> entry : entries.entrySet()) {
+			// some producers repeat names
+			long[] array = entry.getValue().stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+
+			arrays.put(entry.getKey(), array);
+		}
+
+		return arrays;
+	}
+
+	private final GdbIndex gdbIndex;
+
+	/** the fallback index supplied by the caller, or null */
+	private final DwarfIndexFile indexFile;
+
+	private final DwarfNames names;
+
+	/** the units of the names of the pubnames and pubtypes sections, or null if there are none */
+	private final Map<String, long[]> pubUnits;
+
+	/** the fallback index built with a walk of all units, or null until needed */
+	private volatile Map<String, long[]> scannedEntries;
+
+	private final DwarfScanner scanner;
+
+	private final List<String> sources;
+
+	/** the names of the units visited for .gdb_index lookups */
+	private final Map<Long, Map<String, long[]>> unitNames;
+
+	/**
+	 * Create a lookup for the given scanner, using the given index file,
+	 * if not null, for names absent from the accelerator tables.
+	 */
+	public DwarfNameLookup(DwarfScanner scanner, DwarfIndexFile indexFile) {
+		super();
+
+		List<String> present = new ArrayList<>();
+		DwarfNames debugNames = scanner.getNameIndex();
+		ByteBuffer gdbSection = scanner.getLookupSection(".gdb_index");
+		GdbIndex gdb = gdbSection != null ? GdbIndex.readFrom(gdbSection) : null;
+		Map<String, List<Long>> pub = new HashMap<>();
+
+		if (debugNames != null) {
+			present.add(".debug_names");
+		}
+
+		if (gdb != null) {
+			present.add(".gdb_index");
+		}
+
+		for (String name : PUB_SECTIONS) {
+			ByteBuffer section = scanner.getLookupSection(name);
+
+			if (section != null) {
+				readPubNames(section, name.startsWith(".debug_gnu_"), pub);
+				present.add(name);
+			}
+		}
+
+		this.gdbIndex = gdb;
+		this.indexFile = indexFile;
+		this.names = debugNames;
+		this.pubUnits = pub.isEmpty() ? null : toArrays(pub);
+		this.scannedEntries = null;
+		this.scanner = scanner;
+		this.sources = present;
+		this.unitNames = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Answer the section offsets of the entries at file or namespace scope
+	 * with the given name, in ascending order, in the units chosen by the
+	 * first source that knows the name and has such entries.
+	 */
+	public long[] findEntries(String name) {
+		long[] found;
+
+		if (names != null && (found = findInUnits(name, getUnits(names.findEntries(name)))).length != 0) {
+			return found;
+		}
+
+		if (gdbIndex != null && (found = findInUnits(name, gdbIndex.findUnits(name))).length != 0) {
+			return found;
+		}
+
+		if (pubUnits != null && (found = findInUnits(name, pubUnits.getOrDefault(name, NONE))).length != 0) {
+			return found;
+		}
+
+		if (indexFile != null) {
+			return findInUnits(name, getUnits(indexFile.findEntries(name)));
+		}
+
+		found = getScannedEntries().get(name);
+
+		return found != null ? found.clone() : NONE;
+	}
+
+	/**
+	 * Answer the section offsets of the entries with the given name
+	 * in the given units. The names of each unit are read on its first
+	 * visit and retained for later lookups.
+	 */
+	private long[] findInUnits(String name, long[] unitOffsets) {
+		long[] units = Arrays.stream(unitOffsets).sorted().distinct().toArray();
+		long[] found = NONE;
+
+		for (long unitOffset : units) {
+			long[] offsets = unitNames
+					.computeIfAbsent(Long.valueOf(unitOffset), key -> readNames(new long[] { key.longValue() }))
+					.get(name);
+
+			if (offsets != null) {
+				int size = found.length;
+
+				found = Arrays.copyOf(found, size + offsets.length);
+				System.arraycopy(offsets, 0, found, size, offsets.length);
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Answer the section offsets of the units holding the entries with the
+	 * given name, in ascending order.
+	 */
+	public long[] findUnits(String name) {
+		return Arrays.stream(getUnits(findEntries(name))).sorted().distinct().toArray();
+	}
+
+	private Map<String, long[]> getScannedEntries() {
+		Map<String, long[]> entries = scannedEntries;
+
+		if (entries == null) {
+			synchronized (this) {
+				entries = scannedEntries;
+
+				if (entries == null) {
+					entries = readNames(scanner.getUnitOffsets());
+					scannedEntries = entries;
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Answer the units containing the given entries, in the same order.
+	 */
+	private long[] getUnits(long[] entries) {
+		long[] units = new long[entries.length];
+
+		for (int index = 0; index < entries.length; ++index) {
+			units[index] = scanner.getUnitContaining(entries[index]).offset;
+		}
+
+		return units;
+	}
+
+	/**
+	 * Answer the names of the accelerator sections used by this lookup,
+	 * in the order they are consulted.
+	 */
+	public String[] getSources() {
+		return sources.toArray(new String[sources.size()]);
+	}
+
+	/**
+	 * Answer whether the file has any accelerator tables.
+	 */
+	public boolean hasAccelerators() {
+		return !sources.isEmpty();
+	}
+
+	/**
+	 * Answer the named entries at file or namespace scope of the given
+	 * units, other than declarations. A definition completing a declaration
+	 * at that scope in its unit (through DW_AT_specification) has the
+	 * declaration's name.
+	 */
+	private Map<String, long[]> readNames(long[] unitOffsets) {
+		Map<String, List<Long>> entries = new HashMap<>();
+
+		if (unitOffsets.length != 0) {
+			try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+				for (long unitOffset : unitOffsets) {
+					Map<Long, String> declarations = new HashMap<>();
+
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						int tag = cursor.tag();
+
+						if (isUnit(tag)) {
+							continue;
+						}
+
+						String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+						if (name == null) {
+							name = declarations.get(Long.valueOf(cursor.getReference(DwarfAttribute.DW_AT_specification)));
+						}
+
+						if (name != null && cursor.getFlag(DwarfAttribute.DW_AT_declaration)) {
+							declarations.put(Long.valueOf(cursor.offset()), name);
+						} else if (name != null) {
+							add(entries, name, cursor.offset());
+						}
+
+						if (tag != DwarfTag.DW_TAG_namespace) {
+							cursor.skipChildren();
+						}
+					}
+				}
+			}
+		}
+
+		return toArrays(entries);
+	}
+
+}
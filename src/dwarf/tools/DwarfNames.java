@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The name indexes of the .debug_names section of a DWARF 5 file. Each
+ * index is a hash table mapping names to the entries that define them,
+ * so the entries for a name can be found without scanning .debug_info.
+ * <p>
+ * Indexes are read by {@link DwarfScanner#getNameIndex()}; the hash tables
+ * themselves are read in place on each lookup. An instance is immutable
+ * and may be shared between threads.
+ */
+public final class DwarfNames {
+
+	/**
+	 * The layout of the index entries with one abbreviation code.
+	 */
+	private static final class EntryForm {
+
+		final int[] forms;
+
+		final int[] indexAttributes;
+
+		final int tag;
+
+		EntryForm(int tag, int[] indexAttributes, int[] forms) {
+			super();
+			this.forms = forms;
+			this.indexAttributes = indexAttributes;
+			this.tag = tag;
+		}
+
+	}
+
+	/**
+	 * One name index, usually covering one or more compilation units.
+	 */
+	private static final class NameTable {
+
+		long bucketCount;
+
+		/** the section offset of the array of buckets */
+		long buckets;
+
+		/** the offsets in .debug_info of the compilation units */
+		long[] compileUnits;
+
+		/** the section offset of the array of entry offsets */
+		long entryOffsets;
+
+		final Map<Long, EntryForm> entryForms;
+
+		/** the section offset of the entry pool */
+		long entryPool;
+
+		/** the section offset of the array of hashes */
+		long hashes;
+
+		long nameCount;
+
+		int offsetSize;
+
+		/** the section offset of the array of string offsets */
+		long stringOffsets;
+
+		/** the offsets in .debug_info of the local type units */
+		long[] typeUnits;
+
+		NameTable() {
+			super();
+			this.entryForms = new HashMap<>();
+		}
+
+	}
+
+	private static final int DW_IDX_compile_unit = 1;
+
+	private static final int DW_IDX_die_offset = 3;
+
+	private static final int DW_IDX_type_unit = 2;
+
+	/** the only version of the .debug_names format */
+	private static final int VERSION = 5;
+
+	private static String fold(String name) {
+		StringBuilder folded = null;
+
+		for (int index = 0; index < name.length();) {
+			int codePoint = name.codePointAt(index);
+			int foldedPoint = Character.toLowerCase(Character.toUpperCase(codePoint));
+
+			if (folded == null && foldedPoint != codePoint) {
+				folded = new StringBuilder(name.length());
+				folded.append(name, 0, index);
+			}
+
+			if (folded != null) {
+				folded.appendCodePoint(foldedPoint);
+			}
+
+			index += Character.charCount(codePoint);
+		}
+
+		return folded != null ? folded.toString() : name;
+	}
+
+	private static long getEntryOffset(NameTable table, DataSource data, long index) {
+		return data.position(table.entryOffsets + index * table.offsetSize).getOffset();
+	}
+
+	/**
+	 * Answer the hash of a name used by .debug_names: the DJB hash of the
+	 * UTF-8 encoding of the name after case folding.
+	 */
+	static int hash(String name) {
+		int hash = 5381;
+
+		for (byte b : fold(name).getBytes(StandardCharsets.UTF_8)) {
+			hash = hash * 33 + (b & 0xFF);
+		}
+
+		return hash;
+	}
+
+	static DwarfNames readFrom(DwarfScanner scanner, ByteBuffer section) {
+		DataSource data = new DataSource(section);
+		List<NameTable> tables = new ArrayList<>();
+
+		for (long start = 0; start < section.limit();) {
+			DataSource header = data.duplicate().position(start);
+			long length = header.getU4();
+
+			if (length == 0xFFFFFFFFL) {
+				length = header.getU8();
+			}
+
+			tables.add(readTable(data, start));
+			start = header.position() + length;
+		}
+
+		return new DwarfNames(scanner, data, tables.toArray(new NameTable[tables.size()]));
+	}
+
+	private static long[] readOffsets(DataSource data, long count) {
+		long[] offsets = new long[AttributeReader.checkUInt(count)];
+
+		for (int index = 0; index < offsets.length; ++index) {
+			offsets[index] = data.getOffset();
+		}
+
+		return offsets;
+	}
+
+	private static NameTable readTable(DataSource section, long start) {
+		NameTable table = new NameTable();
+		DataSource header = section.duplicate().position(start);
+		long length = header.getU4();
+		int offsetSize = 4;
+
+		if (length == 0xFFFFFFFFL) {
+			length = header.getU8();
+			offsetSize = 8;
+		}
+
+		DataSource data = new DataSource(header, 0, offsetSize, null);
+		long end = data.position() + length;
+		int version = data.getU2();
+
+		if (version != VERSION) {
+			throw new IllegalArgumentException("version=" + version);
+		}
+
+		data.skip(2); // padding
+
+		long compileUnitCount = data.getU4();
+		long localTypeUnitCount = data.getU4();
+		long foreignTypeUnitCount = data.getU4();
+
+		table.bucketCount = data.getU4();
+		table.nameCount = data.getU4();
+
+		long abbrevTableSize = data.getU4();
+		long augmentationSize = data.getU4();
+
+		data.skip(AttributeReader.checkUInt((augmentationSize + 3) & ~3L));
+
+		table.compileUnits = readOffsets(data, compileUnitCount);
+		table.typeUnits = readOffsets(data, localTypeUnitCount);
+		data.skip(AttributeReader.checkUInt(foreignTypeUnitCount * 8));
+
+		table.buckets = data.position();
+		table.hashes = table.buckets + table.bucketCount * 4;
+		table.stringOffsets = table.hashes + (table.bucketCount != 0 ? table.nameCount * 4 : 0);
+		table.entryOffsets = table.stringOffsets + table.nameCount * offsetSize;
+		table.offsetSize = offsetSize;
+
+		long abbreviations = table.entryOffsets + table.nameCount * offsetSize;
+
+		table.entryPool = abbreviations + abbrevTableSize;
+
+		if (table.entryPool > end) {
+			throw new IllegalArgumentException("name index at " + start + " overruns its length");
+		}
+
+		data.position(abbreviations);
+
+		List<Integer> attributes = new ArrayList<>();
+		List<Integer> forms = new ArrayList<>();
+
+		while (data.position() < table.entryPool) {
+			long code = data.getUDATA();
+
+			if (code == 0) {
+				break;
+			}
+
+			int tag = AttributeReader.checkUInt(data.getUDATA());
+
+			for (;;) {
+				int attribute = AttributeReader.checkUInt(data.getUDATA());
+				int form = AttributeReader.checkUInt(data.getUDATA());
+
+				if (attribute == 0 && form == 0) {
+					break;
+				}
+
+				attributes.add(Integer.valueOf(attribute));
+				forms.add(Integer.valueOf(form));
+			}
+
+			table.entryForms.put(Long.valueOf(code), new EntryForm(tag, toArray(attributes), toArray(forms)));
+			attributes.clear();
+			forms.clear();
+		}
+
+		return table;
+	}
+
+	private static long readValue(int form, DataSource data) {
+		switch (form) {
+		case DwarfForm.DW_FORM_data1:
+		case DwarfForm.DW_FORM_ref1:
+			return data.getU1();
+		case DwarfForm.DW_FORM_data2:
+		case DwarfForm.DW_FORM_ref2:
+			return data.getU2();
+		case DwarfForm.DW_FORM_data4:
+		case DwarfForm.DW_FORM_ref4:
+			return data.getU4();
+		case DwarfForm.DW_FORM_data8:
+		case DwarfForm.DW_FORM_ref8:
+			return data.getU8();
+		case DwarfForm.DW_FORM_ref_udata:
+		case DwarfForm.DW_FORM_udata:
+			return data.getUDATA();
+		case DwarfForm.DW_FORM_flag_present:
+			return 1;
+		default:
+			DecodingPlan.skip(form, data);
+			return -1;
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+
+		for (int index = 0; index < array.length; ++index) {
+			array[index] = list.get(index).intValue();
+		}
+
+		return array;
+	}
+
+	private final DwarfScanner scanner;
+
+	private final DataSource section;
+
+	private final NameTable[] tables;
+
+	private DwarfNames(DwarfScanner scanner, DataSource section, NameTable[] tables) {
+		super();
+		this.scanner = scanner;
+		this.section = section;
+		this.tables = tables;
+	}
+
+	/**
+	 * Add the section offsets of the entries, with the given tag, in the
+	 * series of index entries at the given offset in the entry pool.
+	 */
+	private void addEntries(NameTable table, DataSource data, long entryOffset, int tag, List<Long> found) {
+		data.position(table.entryPool + entryOffset);
+
+		for (;;) {
+			long code = data.getUDATA();
+
+			if (code == 0) {
+				break;
+			}
+
+			EntryForm form = table.entryForms.get(Long.valueOf(code));
+
+			if (form == null) {
+				throw new IllegalArgumentException("abbreviation code=" + code);
+			}
+
+			long unitOffset = -1;
+			long dieOffset = -1;
+
+			if (table.compileUnits.length + table.typeUnits.length == 1) {
+				// the unit need not be given if there is only one
+				unitOffset = table.compileUnits.length != 0 ? table.compileUnits[0] : table.typeUnits[0];
+			}
+
+			for (int index = 0; index < form.forms.length; ++index) {
+				long value = readValue(form.forms[index], data);
+
+				switch (form.indexAttributes[index]) {
+				case DW_IDX_compile_unit:
+					unitOffset = value < table.compileUnits.length ? table.compileUnits[(int) value] : -1;
+					break;
+				case DW_IDX_die_offset:
+					dieOffset = value;
+					break;
+				case DW_IDX_type_unit:
+					// foreign type units, which follow the local ones, are not in this file
+					unitOffset = value < table.typeUnits.length ? table.typeUnits[(int) value] : -1;
+					break;
+				default:
+					break;
+				}
+			}
+
+			if (unitOffset >= 0 && dieOffset >= 0 && (tag < 0 || tag == form.tag)) {
+				found.add(Long.valueOf(unitOffset + dieOffset));
+			}
+		}
+	}
+
+	/**
+	 * Answer the section offsets, in .debug_info, of the entries
+	 * indexed under the given name.
+	 *
+	 * @see DwarfScanner#openCursor(long)
+	 * @see DieIndex#findEntry(long)
+	 */
+	public long[] findEntries(String name) {
+		return findEntries(name, -1);
+	}
+
+	/**
+	 * Answer the section offsets, in .debug_info, of the entries with the
+	 * given tag indexed under the given name; a negative tag matches any.
+	 */
+	public long[] findEntries(String name, int tag) {
+		int hash = hash(name);
+		List<Long> found = new ArrayList<>();
+
+		for (NameTable table : tables) {
+			DataSource data = new DataSource(section.duplicate(), 0, table.offsetSize, null);
+
+			if (table.bucketCount == 0) {
+				// without a hash table, every name must be compared
+				for (long index = 0; index < table.nameCount; ++index) {
+					if (name.equals(getName(table, data, index))) {
+						addEntries(table, data, getEntryOffset(table, data, index), tag, found);
+					}
+				}
+
+				continue;
+			}
+
+			long bucket = Integer.toUnsignedLong(hash) % table.bucketCount;
+			long first = data.position(table.buckets + bucket * 4).getU4();
+
+			if (first == 0) {
+				continue;
+			}
+
+			// the names of a bucket are contiguous, starting from 1
+			for (long index = first - 1; index < table.nameCount; ++index) {
+				long entryHash = data.position(table.hashes + index * 4).getU4();
+
+				if (entryHash % table.bucketCount != bucket) {
+					break;
+				}
+
+				if (entryHash == Integer.toUnsignedLong(hash) && name.equals(getName(table, data, index))) {
+					addEntries(table, data, getEntryOffset(table, data, index), tag, found);
+				}
+			}
+		}
+
+		long[] offsets = new long[found.size()];
+
+		for (int index = 0; index < offsets.length; ++index) {
+			offsets[index] = found.get(index).longValue();
+		}
+
+		return offsets;
+	}
+
+	private String getName(NameTable table, DataSource data, long index) {
+		long offset = data.position(table.stringOffsets + index * table.offsetSize).getOffset();
+
+		return scanner.getString(DwarfForm.DW_FORM_strp, offset);
+	}
+
+	/**
+	 * Answer the number of names in all indexes.
+	 */
+	public long getNameCount() {
+		long count = 0;
+
+		for (NameTable table : tables) {
+			count += table.nameCount;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Answer the distinct names in all indexes.
+	 */
+	public String[] getNames() {
+		List<String> names = new ArrayList<>();
+
+		for (NameTable table : tables) {
+			DataSource data = new DataSource(section.duplicate(), 0, table.offsetSize, null);
+
+			for (long index = 0; index < table.nameCount; ++index) {
+				names.add(getName(table, data, index));
+			}
+		}
+
+		return names.stream().distinct().toArray(String[]::new);
+	}
+
+	/**
+	 * Answer the number of name indexes.
+	 */
+	public int getTableCount() {
+		return tables.length;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * Dwarf expression operation codes.
+ *
+ * Source: http://www.dwarfstd.org/doc/DWARF4.pdf
+ * and http://www.dwarfstd.org/doc/DWARF5.pdf
+ */
+public interface DwarfOperation {
+
+	int DW_OP_addr = 0x03;
+	int DW_OP_deref = 0x06;
+	int DW_OP_const1u = 0x08;
+	int DW_OP_const1s = 0x09;
+	int DW_OP_const2u = 0x0a;
+	int DW_OP_const2s = 0x0b;
+	int DW_OP_const4u = 0x0c;
+	int DW_OP_const4s = 0x0d;
+	int DW_OP_const8u = 0x0e;
+	int DW_OP_const8s = 0x0f;
+	int DW_OP_constu = 0x10;
+	int DW_OP_consts = 0x11;
+	int DW_OP_dup = 0x12;
+	int DW_OP_drop = 0x13;
+	int DW_OP_over = 0x14;
+	int DW_OP_pick = 0x15;
+	int DW_OP_swap = 0x16;
+	int DW_OP_rot = 0x17;
+	int DW_OP_xderef = 0x18;
+	int DW_OP_abs = 0x19;
+	int DW_OP_and = 0x1a;
+	int DW_OP_div = 0x1b;
+	int DW_OP_minus = 0x1c;
+	int DW_OP_mod = 0x1d;
+	int DW_OP_mul = 0x1e;
+	int DW_OP_neg = 0x1f;
+	int DW_OP_not = 0x20;
+	int DW_OP_or = 0x21;
+	int DW_OP_plus = 0x22;
+	int DW_OP_plus_uconst = 0x23;
+	int DW_OP_shl = 0x24;
+	int DW_OP_shr = 0x25;
+	int DW_OP_shra = 0x26;
+	int DW_OP_xor = 0x27;
+	int DW_OP_bra = 0x28;
+	int DW_OP_eq = 0x29;
+	int DW_OP_ge = 0x2a;
+	int DW_OP_gt = 0x2b;
+	int DW_OP_le = 0x2c;
+	int DW_OP_lt = 0x2d;
+	int DW_OP_ne = 0x2e;
+	int DW_OP_skip = 0x2f;
+	int DW_OP_lit0 = 0x30;
+	int DW_OP_lit31 = 0x4f;
+	int DW_OP_reg0 = 0x50;
+	int DW_OP_reg31 = 0x6f;
+	int DW_OP_breg0 = 0x70;
+	int DW_OP_breg31 = 0x8f;
+	int DW_OP_regx = 0x90;
+	int DW_OP_fbreg = 0x91;
+	int DW_OP_bregx = 0x92;
+	int DW_OP_piece = 0x93;
+	int DW_OP_deref_size = 0x94;
+	int DW_OP_xderef_size = 0x95;
+	int DW_OP_nop = 0x96;
+	int DW_OP_push_object_address = 0x97;
+	int DW_OP_call2 = 0x98;
+	int DW_OP_call4 = 0x99;
+	int DW_OP_call_ref = 0x9a;
+	int DW_OP_form_tls_address = 0x9b;
+	int DW_OP_call_frame_cfa = 0x9c;
+	int DW_OP_bit_piece = 0x9d;
+	int DW_OP_implicit_value = 0x9e;
+	int DW_OP_stack_value = 0x9f;
+	int DW_OP_implicit_pointer = 0xa0;
+	int DW_OP_addrx = 0xa1;
+	int DW_OP_constx = 0xa2;
+	int DW_OP_entry_value = 0xa3;
+	int DW_OP_const_type = 0xa4;
+	int DW_OP_regval_type = 0xa5;
+	int DW_OP_deref_type = 0xa6;
+	int DW_OP_xderef_type = 0xa7;
+	int DW_OP_convert = 0xa8;
+	int DW_OP_reinterpret = 0xa9;
+	int DW_OP_GNU_push_tls_address = 0xe0;
+	int DW_OP_GNU_uninit = 0xf0;
+	int DW_OP_GNU_implicit_pointer = 0xf2;
+	int DW_OP_GNU_entry_value = 0xf3;
+	int DW_OP_GNU_const_type = 0xf4;
+	int DW_OP_GNU_regval_type = 0xf5;
+	int DW_OP_GNU_deref_type = 0xf6;
+	int DW_OP_GNU_convert = 0xf7;
+	int DW_OP_GNU_reinterpret = 0xf9;
+	int DW_OP_GNU_parameter_ref = 0xfa;
+	int DW_OP_GNU_addr_index = 0xfb;
+	int DW_OP_GNU_const_index = 0xfc;
+	int DW_OP_GNU_variable_value = 0xfd;
+
+}
@@ -20,6 +20,8 @@
  *******************************************************************************/
 package dwarf.tools;
 
+import java.nio.ByteBuffer;
+
 public interface DwarfRequestor {
 
 	/**
@@ -40,20 +42,82 @@ public interface DwarfRequestor {
 
 	void endTag(int tag, boolean hasChildren);
 
+	/**
+	 * Begin a tag, answering whether its children should be scanned.
+	 * If not, the scanner skips past the children of the tag without
+	 * delivering any events for them; the attributes of the tag itself
+	 * and its end event are still delivered. Children declined this way
+	 * are still decoded by concurrent scans; see
+	 * {@link DwarfInterest#withChildrenOfTagsOnly()}.
+	 * 
+	 * @param tag the tag of the entry
+	 * @param offset section offset of the entry
+	 * @param hasChildren whether the entry has children
+	 * @return true to scan the children of the tag, or false to skip them
+	 */
+	default boolean enterTag(int tag, long offset, boolean hasChildren) {
+		beginTag(tag, offset, hasChildren);
+		return true;
+	}
+
 	void acceptAddress(int attribute, int form, long address);
 
 	void acceptBlock(int attribute, int form, byte[] data);
 
+	/**
+	 * Accept a block without copying it from the section. By default,
+	 * the block is copied and passed to {@link #acceptBlock(int, int, byte[])}.
+	 * 
+	 * @param attribute the attribute
+	 * @param form the form of the value
+	 * @param offset section offset of the first byte of the block
+	 * @param data a read-only view of the block: its remaining bytes
+	 */
+	default void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+		byte[] block = new byte[data.remaining()];
+
+		data.get(block);
+
+		acceptBlock(attribute, form, block);
+	}
+
 	void acceptConstant(int attribute, int form, long value);
 
 	void acceptExpression(int attribute, int form, byte[] expression);
 
+	/**
+	 * Accept an expression without copying it from the section. By default,
+	 * the expression is copied and passed to {@link #acceptExpression(int, int, byte[])}.
+	 * 
+	 * @param attribute the attribute
+	 * @param form the form of the value
+	 * @param offset section offset of the first byte of the expression
+	 * @param expression a read-only view of the expression: its remaining bytes
+	 */
+	default void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+		byte[] bytes = new byte[expression.remaining()];
+
+		expression.get(bytes);
+
+		acceptExpression(attribute, form, bytes);
+	}
+
 	void acceptFlag(int attribute, int form, boolean flag);
 
 	void acceptReference(int attribute, int form, long offset);
 
 	void acceptString(int attribute, int form, String string);
 
+	/**
+	 * Answer the tags and attributes this requestor wants to receive.
+	 * The scanner skips other attributes without decoding them.
+	 * 
+	 * @return the interest of this requestor
+	 */
+	default DwarfInterest getInterest() {
+		return DwarfInterest.ALL;
+	}
+
 	DwarfRequestor NULL = new DwarfRequestor() {
 
 		@Override
@@ -86,6 +150,11 @@ public interface DwarfRequestor {
 			return;
 		}
 
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			return;
+		}
+
 		@Override
 		public void acceptConstant(int attribute, int form, long value) {
 			return;
@@ -96,6 +165,11 @@ public interface DwarfRequestor {
 			return;
 		}
 
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			return;
+		}
+
 		@Override
 		public void acceptFlag(int attribute, int form, boolean flag) {
 			return;
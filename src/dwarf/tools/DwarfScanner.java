@@ -25,450 +25,59 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.LongFunction;
 
+/**
+ * Scans the debugging information entries of an ELF file.
+ * <p>
+ * The mapped sections are shared, read-only and never repositioned: each scan
+ * works on its own views of them. Parsed abbreviations and strings are cached
+ * in structures that are safe for concurrent use, so a single scanner may be
+ * used by any number of threads at once.
+ */
 public class DwarfScanner {
 
-	private static final class Abbreviation {
+	public static final int VERSION_MAXIMUM = 5;
 
-		private static Abbreviation find(Abbreviation[] abbreviations, long code) {
-			Abbreviation abbreviation = null;
-			int lo = 0;
-			int hi = abbreviations.length;
-			int mid;
-
-			if (lo < code && code <= hi) {
-				// if codes are contiguous starting at 1,
-				// we'll find it on the first test
-				mid = (int) code - 1;
-			} else {
-				mid = hi / 2;
-			}
-
-			// do a binary search
-			for (; lo < hi; mid = (lo + hi) >>> 1) {
-				abbreviation = abbreviations[mid];
-
-				if (code == abbreviation.code) {
-					return abbreviation;
-				} else if (code > abbreviation.code) {
-					lo = mid + 1;
-				} else {
-					hi = mid;
-				}
-			}
-
-			return null;
-		}
-
-		static LongFunction<Abbreviation> readFrom(DataSource data) {
-			List<Abbreviation> abbreviations = new ArrayList<>();
-
-			while (data.hasRemaining()) {
-				long code = data.getUDATA();
-
-				if (code == 0) {
-					break;
-				}
-
-				long tag = data.getUDATA();
-				boolean hasChildren = data.getU1() != 0;
-				Abbreviation entry = new Abbreviation(code, tag, hasChildren);
-
-				// attributes
-				for (;;) {
-					long name = data.getUDATA();
-					long form = data.getUDATA();
-
-					if (name != 0 && form != 0) {
-						entry.addAttribute(name, form);
-					} else {
-						break;
-					}
-				}
-
-				abbreviations.add(entry);
-			}
-
-			Abbreviation[] list = abbreviations.toArray(new Abbreviation[abbreviations.size()]);
-
-			Arrays.sort(list, Comparator.comparingLong(abbreviation -> abbreviation.code));
-
-			return code -> find(list, code);
-		}
-
-		private final List<AttributeReader> attributes;
-
-		private final long code;
-
-		final boolean hasChildren;
+	public static final int VERSION_MINIMUM = 2;
 
-		final int tag;
+	private static final int SHT_NOBITS = 8;
 
-		private Abbreviation(long code, long tag, boolean hasChildren) {
-			super();
-			this.attributes = new LinkedList<>();
-			this.code = code;
-			this.hasChildren = hasChildren;
-			this.tag = (int) tag;
-		}
+	static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
 
-		private void addAttribute(long attribute, long form) {
-			if ((0 < attribute && attribute <= Integer.MAX_VALUE) && (0 < form && form <= Integer.MAX_VALUE)) {
-				attributes.add(AttributeReader.create((int) attribute, (int) form));
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
 			} else {
-				throw new IllegalArgumentException("attribute=" + attribute + " form=" + form);
-			}
-		}
-
-		void readAttributes(DwarfRequestor requestor, DataSource data) {
-			for (AttributeReader attribute : attributes) {
-				attribute.read(requestor, data);
+				throw new IllegalStateException(cause);
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
 		}
-
-		@Override
-		public String toString() {
-			return "abbrev(" + code + ") tag=" + tag;
-		}
-
 	}
 
-	private abstract static class AttributeReader {
-
-		private static final class Address extends AttributeReader {
-
-			Address(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				long address = data.getAddress();
-
-				requestor.acceptAddress(attribute, form, address);
-			}
-
-		}
-
-		private static final class Block extends AttributeReader {
-
-			Block(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			final void read(DwarfRequestor requestor, DataSource data) {
-				long length;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_block:
-					length = data.getUDATA();
-					break;
-				case DwarfForm.DW_FORM_block1:
-					length = data.getU1();
-					break;
-				case DwarfForm.DW_FORM_block2:
-					length = data.getU2();
-					break;
-				case DwarfForm.DW_FORM_block4:
-					length = data.getU4();
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				byte[] block = new byte[checkUInt(length)];
-
-				data.getBlock(block);
-
-				requestor.acceptBlock(attribute, form, block);
-			}
-
-		}
-
-		private static final class Constant extends AttributeReader {
-
-			Constant(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				long value;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_data1:
-					value = data.getU1();
-					break;
-				case DwarfForm.DW_FORM_data2:
-					value = data.getU2();
-					break;
-				case DwarfForm.DW_FORM_data4:
-					value = data.getU4();
-					break;
-				case DwarfForm.DW_FORM_data8:
-					value = data.getU8();
-					break;
-				case DwarfForm.DW_FORM_sdata:
-					value = data.getSDATA();
-					break;
-				case DwarfForm.DW_FORM_udata:
-					value = data.getUDATA();
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				requestor.acceptConstant(attribute, form, value);
-			}
-
-		}
-
-		private static final class Expression extends AttributeReader {
-
-			Expression(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			final void read(DwarfRequestor requestor, DataSource data) {
-				long length;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_exprloc:
-					length = data.getUDATA();
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				byte[] expression = new byte[checkUInt(length)];
-
-				data.getBlock(expression);
-
-				requestor.acceptExpression(attribute, form, expression);
-			}
-
-		}
-
-		private static final class Flag extends AttributeReader {
-
-			Flag(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				boolean flag;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_flag:
-					flag = data.getU1() != 0;
-					break;
-				case DwarfForm.DW_FORM_flag_present:
-					flag = true;
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				requestor.acceptFlag(attribute, form, flag);
-			}
-
-		}
-
-		private static final class Indirect extends AttributeReader {
-
-			Indirect(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				int actualForm = checkUInt(data.getUDATA());
-				AttributeReader actualReader = create(attribute, actualForm);
-
-				actualReader.read(requestor, data);
-			}
-
-		}
-
-		private static final class Reference extends AttributeReader {
-
-			Reference(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				long offset;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_ref1:
-					offset = data.getU1();
-					break;
-				case DwarfForm.DW_FORM_ref2:
-					offset = data.getU2();
-					break;
-				case DwarfForm.DW_FORM_ref4:
-					offset = data.getU4();
-					break;
-				case DwarfForm.DW_FORM_ref8:
-				case DwarfForm.DW_FORM_ref_sig8:
-					offset = data.getU8();
-					break;
-				case DwarfForm.DW_FORM_ref_udata:
-					offset = data.getUDATA();
-					break;
-				case DwarfForm.DW_FORM_ref_addr:
-				case DwarfForm.DW_FORM_sec_offset:
-					offset = data.getOffset();
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				requestor.acceptReference(attribute, form, offset);
-			}
-
-		}
-
-		private static final class Str extends AttributeReader {
-
-			Str(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				String string;
-
-				switch (form) {
-				case DwarfForm.DW_FORM_string:
-					string = data.getString();
-					break;
-				case DwarfForm.DW_FORM_strp:
-					string = data.lookupString(data.getOffset());
-					break;
-				default:
-					throw unexpectedForm();
-				}
-
-				requestor.acceptString(attribute, form, string);
-			}
-
-		}
-
-		/**
-		 * This class allows us to parse abbreviations using unknown forms.
-		 * If the abbreviation is unused this poses no problem.
-		 * If it is used, we won't know how to handle the data associated
-		 * with the attribute and instead throw an exception.
-		 */
-		private static final class Unknown extends AttributeReader {
-
-			Unknown(int attribute, int form) {
-				super(attribute, form);
-			}
-
-			@Override
-			void read(DwarfRequestor requestor, DataSource data) {
-				throw new IllegalArgumentException("attribute=" + attribute + " form=" + form);
-			}
-
-		}
-
-		static int checkUInt(long value) {
-			if (0 <= value && value <= Integer.MAX_VALUE) {
-				return (int) value;
-			}
-
-			throw new IllegalArgumentException("Not U4: " + value);
-		}
-
-		static AttributeReader create(int attribute, int form) {
-			switch (form) {
-			case DwarfForm.DW_FORM_addr:
-				return new Address(attribute, form);
-
-			case DwarfForm.DW_FORM_block:
-			case DwarfForm.DW_FORM_block1:
-			case DwarfForm.DW_FORM_block2:
-			case DwarfForm.DW_FORM_block4:
-				return new Block(attribute, form);
-
-			case DwarfForm.DW_FORM_flag:
-			case DwarfForm.DW_FORM_flag_present:
-				return new Flag(attribute, form);
-
-			case DwarfForm.DW_FORM_data1:
-			case DwarfForm.DW_FORM_data2:
-			case DwarfForm.DW_FORM_data4:
-			case DwarfForm.DW_FORM_data8:
-			case DwarfForm.DW_FORM_sdata:
-			case DwarfForm.DW_FORM_udata:
-				return new Constant(attribute, form);
-
-			case DwarfForm.DW_FORM_string:
-			case DwarfForm.DW_FORM_strp:
-				return new Str(attribute, form);
-
-			case DwarfForm.DW_FORM_ref1:
-			case DwarfForm.DW_FORM_ref2:
-			case DwarfForm.DW_FORM_ref4:
-			case DwarfForm.DW_FORM_ref8:
-			case DwarfForm.DW_FORM_ref_sig8:
-			case DwarfForm.DW_FORM_ref_udata:
-			case DwarfForm.DW_FORM_sec_offset:
-			case DwarfForm.DW_FORM_ref_addr:
-				return new Reference(attribute, form);
-
-			case DwarfForm.DW_FORM_exprloc:
-				return new Expression(attribute, form);
-
-			case DwarfForm.DW_FORM_indirect:
-				return new Indirect(attribute, form);
-
-			default:
-				return new Unknown(attribute, form);
-			}
-		}
-
-		final int attribute;
-
-		final int form;
-
-		AttributeReader(int attribute, int form) {
-			super();
-			this.attribute = attribute;
-			this.form = form;
-		}
-
-		abstract void read(DwarfRequestor requestor, DataSource data);
-
-		final IllegalStateException unexpectedForm() {
-			return new IllegalStateException("form=" + form);
-		}
-
-	}
-
-	public static final int VERSION_MAXIMUM = 4;
-
-	public static final int VERSION_MINIMUM = 2;
-
 	private static String getName(ByteBuffer nameData, int sh_name) {
 		if (0 <= sh_name && sh_name < nameData.limit()) {
 			StringBuilder buffer = new StringBuilder();
@@ -489,8 +98,14 @@ public class DwarfScanner {
 		}
 	}
 
-	private static Map<String, ByteBuffer> getSections(FileChannel channel, Set<String> wantedSections)
-			throws IOException {
+	/**
+	 * Answer the contents of the wanted sections of an ELF file, by name,
+	 * recording the address of each in the given map. Sections that occupy
+	 * no space in the file, such as the allocated sections of a separate
+	 * debug file, are treated as missing.
+	 */
+	private static Map<String, ByteBuffer> getSections(FileChannel channel, Set<String> wantedSections,
+			Map<String, Long> sectionAddresses) throws IOException {
 		final Map<String, ByteBuffer> sectionMap = new HashMap<>();
 		final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, 64);
 		final boolean format32;
@@ -564,20 +179,24 @@ public class DwarfScanner {
 			final int nameIndex = sectDescs.getInt(sectStart + 0x0);
 			final String name = getName(sectionNames, nameIndex);
 
-			if (wantedSections.contains(name)) {
+			if (wantedSections.contains(name) && sectDescs.getInt(sectStart + 0x4) != SHT_NOBITS) {
+				final long sectAddress;
 				final long sectOffset;
 				final long sectSize;
 
 				if (format32) {
+					sectAddress = sectDescs.getInt(sectStart + 0x0C) & 0xFFFFFFFFL;
 					sectOffset = sectDescs.getInt(sectStart + 0x10);
 					sectSize = sectDescs.getInt(sectStart + 0x14);
 				} else {
+					sectAddress = sectDescs.getLong(sectStart + 0x10);
 					sectOffset = sectDescs.getLong(sectStart + 0x18);
 					sectSize = sectDescs.getLong(sectStart + 0x20);
 				}
 
 				final ByteBuffer sectionData = channel.map(MapMode.READ_ONLY, sectOffset, sectSize).order(order);
 
+				sectionAddresses.put(name, Long.valueOf(sectAddress));
 				sectionMap.put(name, sectionData);
 			}
 		}
@@ -585,7 +204,56 @@ public class DwarfScanner {
 		return sectionMap;
 	}
 
-	private static void scanTags(DwarfRequestor requestor, DataSource data, LongFunction<Abbreviation> abbreviations) {
+	private static void decodeAttributes(DwarfRequestor requestor, DataSource data, Abbreviation entry,
+			DwarfInterest interest, boolean compiled) {
+		if (compiled || !interest.isAll()) {
+			entry.getPlan(interest).decode(requestor, data);
+		} else {
+			entry.readAttributes(requestor, data);
+		}
+	}
+
+	/**
+	 * Answer the descriptor of the NT_GNU_BUILD_ID note, or null.
+	 */
+	private static byte[] readBuildId(ByteBuffer notes) {
+		ByteBuffer data = notes.duplicate().order(notes.order());
+
+		while (data.remaining() >= 12) {
+			int nameSize = data.getInt();
+			int descSize = data.getInt();
+			int type = data.getInt();
+			int nameStart = data.position();
+			long descStart = nameStart + ((nameSize + 3L) & ~3L);
+			long next = descStart + ((descSize + 3L) & ~3L);
+
+			if (nameSize < 0 || descSize < 0 || next > data.limit()) {
+				break;
+			}
+
+			if (type == 3 && nameSize == 4 && getName(data, nameStart).equals("GNU")) {
+				byte[] buildId = new byte[descSize];
+
+				data.position((int) descStart);
+				data.get(buildId);
+
+				return buildId;
+			}
+
+			data.position((int) next);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Deliver the entries from the current position of the data source.
+	 * 
+	 * @param subtree whether to stop after the first entry and its children,
+	 *                rather than at the end of the data
+	 */
+	private static void scanTags(DwarfRequestor requestor, DataSource data, AbbreviationTable abbreviations,
+			long unitOffset, DwarfInterest interest, boolean compiled, boolean subtree) {
 		Stack<Abbreviation> tagStack = new Stack<>();
 
 		while (data.hasRemaining()) {
@@ -593,16 +261,22 @@ public class DwarfScanner {
 			long code = data.getUDATA();
 
 			if (code != 0) {
-				Abbreviation entry = abbreviations.apply(code);
+				Abbreviation entry = abbreviations.get(code);
 
 				if (entry != null) {
-					requestor.beginTag(entry.tag, tagOffset, entry.hasChildren);
+					boolean scanChildren = requestor.enterTag(entry.tag, tagOffset, entry.hasChildren)
+							&& interest.wantsChildren(entry.tag);
+					long attributeOffset = data.position();
 
-					entry.readAttributes(requestor, data);
+					decodeAttributes(requestor, data, entry, interest, compiled);
 
-					if (entry.hasChildren) {
+					if (entry.hasChildren && scanChildren) {
 						tagStack.push(entry);
 					} else {
+						if (entry.hasChildren) {
+							skipChildren(data, abbreviations, entry, attributeOffset, unitOffset);
+						}
+
 						requestor.endTag(entry.tag, entry.hasChildren);
 					}
 				}
@@ -613,6 +287,10 @@ public class DwarfScanner {
 					requestor.endTag(entry.tag, entry.hasChildren);
 				}
 			}
+
+			if (subtree && tagStack.isEmpty()) {
+				break;
+			}
 		}
 
 		while (!tagStack.isEmpty()) {
@@ -622,100 +300,1047 @@ public class DwarfScanner {
 		}
 	}
 
+	/**
+	 * Advance past the children of an entry whose attributes have been read.
+	 * If the entry has a usable DW_AT_sibling attribute, we jump directly to
+	 * the sibling; otherwise the children are walked without decoding them.
+	 */
+	static void skipChildren(DataSource data, AbbreviationTable abbreviations, Abbreviation entry,
+			long attributeOffset, long unitOffset) {
+		long sibling = entry.findSibling(data, attributeOffset, unitOffset);
+
+		if (data.position() < sibling && sibling <= data.limit()) {
+			data.position(sibling);
+			return;
+		}
+
+		for (int depth = 1; depth > 0 && data.hasRemaining();) {
+			long code = data.getUDATA();
+
+			if (code == 0) {
+				depth -= 1;
+			} else {
+				Abbreviation child = abbreviations.get(code);
+
+				if (child != null) {
+					child.skipAttributes(data);
+
+					if (child.hasChildren) {
+						depth += 1;
+					}
+				}
+			}
+		}
+	}
+
+	private final Map<Long, AbbreviationTable> abbreviationCache;
+
+	private final LongAdder abbreviationCacheHits;
+
+	private final LongAdder abbreviationCacheMisses;
+
 	private final DataSource abbrevSection;
 
+	private volatile AddressIndex addressIndex;
+
+	private final ByteBuffer addrSection;
+
+	private final ByteBuffer arangesSection;
+
+	private final byte[] buildId;
+
+	private volatile CallFrameInfo callFrameInfo;
+
+	private volatile boolean compiledDecoding;
+
+	private final ByteBuffer debugFrameSection;
+
+	/** the address of .eh_frame, to which its pointers may be relative */
+	private final long ehFrameAddress;
+
+	/** the address of .eh_frame_hdr, to which its pointers may be relative */
+	private final long ehFrameHdrAddress;
+
+	private final ByteBuffer ehFrameHdrSection;
+
+	private final ByteBuffer ehFrameSection;
+
+	/** decoded expressions, by the .debug_info offset of their first byte */
+	private final Map<Long, DwarfExpression> expressions;
+
 	private final DataSource infoSection;
 
-	private final LongFunction<String> stringAccessor;
+	/** the accelerator sections other than .debug_names, by name */
+	private final Map<String, ByteBuffer> lookupSections;
+
+	private final DataSource lineSection;
+
+	private final StringTable lineStringTable;
+
+	/** the line number tables built so far, by unit offset */
+	private final Map<Long, DwarfLineTable> lineTables;
+
+	/**
+	 * decoded location lists, by section offset; the offsets of lists in
+	 * .debug_loclists are complemented to keep them apart from .debug_loc
+	 */
+	private final Map<Long, DwarfLocationList> locationListCache;
+
+	private final DataSource locationListsSection;
+
+	private final DataSource locationsSection;
+
+	private volatile DwarfNames nameIndex;
+
+	private volatile DwarfNameLookup nameLookup;
+
+	private final ByteBuffer namesSection;
+
+	private final Path path;
+
+	/**
+	 * decoded range lists, as based at the low_pc of their units, by section
+	 * offset; the offsets of lists in .debug_rnglists are complemented
+	 */
+	private final Map<Long, long[]> rangeListCache;
+
+	private final DataSource rangeListsSection;
+
+	private final DataSource rangesSection;
+
+	private final boolean splitObject;
+
+	private final DataSource stringData;
+
+	private final ByteBuffer stringOffsetsSection;
+
+	private volatile StringTable stringTable;
+
+	private volatile UnitHeader[] units;
 
 	public DwarfScanner(String fileName) throws IOException {
 		super();
 
-		ByteBuffer empty = ByteBuffer.allocate(0);
+		ByteBuffer empty = ByteBuffer.allocate(0).asReadOnlyBuffer();
 		ByteBuffer abbrev = empty;
+		ByteBuffer addresses = empty;
+		ByteBuffer aranges = empty;
+		ByteBuffer debugFrame = empty;
+		ByteBuffer ehFrame = empty;
+		ByteBuffer ehFrameHdr = empty;
 		ByteBuffer info = empty;
+		ByteBuffer line = empty;
+		ByteBuffer lineStrings = empty;
+		ByteBuffer locationLists = empty;
+		ByteBuffer locations = empty;
+		ByteBuffer names = empty;
+		ByteBuffer rangeLists = empty;
+		ByteBuffer ranges = empty;
 		ByteBuffer strings = empty;
+		ByteBuffer stringOffsets = empty;
+		Map<String, ByteBuffer> lookups = new HashMap<>();
+		Map<String, Long> sectionAddresses = new HashMap<>();
+		byte[] noteBuildId = null;
+		boolean split = false;
 
 		try (FileChannel channel = FileChannel.open(Paths.get(fileName))) {
 			final Set<String> wantedSections = new HashSet<>();
 
 			wantedSections.add(".debug_abbrev");
+			wantedSections.add(".debug_addr");
+			wantedSections.add(".debug_aranges");
+			wantedSections.add(".debug_frame");
 			wantedSections.add(".debug_info");
+			wantedSections.add(".debug_line");
+			wantedSections.add(".debug_line_str");
+			wantedSections.add(".debug_loc");
+			wantedSections.add(".debug_loclists");
+			wantedSections.add(".debug_names");
+			wantedSections.add(".debug_ranges");
+			wantedSections.add(".debug_rnglists");
 			wantedSections.add(".debug_str");
-
-			Map<String, ByteBuffer> sectionMap = getSections(channel, wantedSections);
+			wantedSections.add(".debug_str_offsets");
+			wantedSections.add(".eh_frame");
+			wantedSections.add(".eh_frame_hdr");
+			wantedSections.add(".note.gnu.build-id");
+
+			// accelerator tables
+			wantedSections.add(".debug_gnu_pubnames");
+			wantedSections.add(".debug_gnu_pubtypes");
+			wantedSections.add(".debug_pubnames");
+			wantedSections.add(".debug_pubtypes");
+			wantedSections.add(".gdb_index");
+
+			// the sections of split DWARF objects
+			wantedSections.add(".debug_abbrev.dwo");
+			wantedSections.add(".debug_info.dwo");
+			wantedSections.add(".debug_line.dwo");
+			wantedSections.add(".debug_loclists.dwo");
+			wantedSections.add(".debug_rnglists.dwo");
+			wantedSections.add(".debug_str.dwo");
+			wantedSections.add(".debug_str_offsets.dwo");
+
+			Map<String, ByteBuffer> sectionMap = getSections(channel, wantedSections, sectionAddresses);
 
 			for (Map.Entry<String, ByteBuffer> entry : sectionMap.entrySet()) {
 				String name = entry.getKey();
 
+				if (name.endsWith(".dwo")) {
+					name = name.substring(0, name.length() - 4);
+
+					if (sectionMap.containsKey(name)) {
+						continue;
+					}
+
+					split |= name.equals(".debug_info");
+				}
+
 				switch (name) {
 				case ".debug_abbrev":
 					abbrev = entry.getValue();
 					break;
+				case ".debug_addr":
+					addresses = entry.getValue();
+					break;
+				case ".debug_aranges":
+					aranges = entry.getValue();
+					break;
+				case ".debug_frame":
+					debugFrame = entry.getValue();
+					break;
 				case ".debug_info":
 					info = entry.getValue();
 					break;
+				case ".debug_line":
+					line = entry.getValue();
+					break;
+				case ".debug_line_str":
+					lineStrings = entry.getValue();
+					break;
+				case ".debug_loc":
+					locations = entry.getValue();
+					break;
+				case ".debug_loclists":
+					locationLists = entry.getValue();
+					break;
+				case ".debug_names":
+					names = entry.getValue();
+					break;
+				case ".debug_ranges":
+					ranges = entry.getValue();
+					break;
+				case ".debug_rnglists":
+					rangeLists = entry.getValue();
+					break;
 				case ".debug_str":
 					strings = entry.getValue();
 					break;
+				case ".debug_str_offsets":
+					stringOffsets = entry.getValue();
+					break;
+				case ".eh_frame":
+					ehFrame = entry.getValue();
+					break;
+				case ".eh_frame_hdr":
+					ehFrameHdr = entry.getValue();
+					break;
+				case ".note.gnu.build-id":
+					noteBuildId = readBuildId(entry.getValue());
+					break;
 				default:
+					lookups.put(name, entry.getValue());
 					break;
 				}
 			}
 		}
 
-		Map<Long, String> stringCache = new HashMap<>();
-		DataSource stringData = new DataSource(strings);
-		Function<Long, String> stringReader = offset -> stringData.duplicate().position(offset.longValue()).getString();
-
+		this.abbreviationCache = new ConcurrentHashMap<>();
+		this.abbreviationCacheHits = new LongAdder();
+		this.abbreviationCacheMisses = new LongAdder();
 		this.abbrevSection = new DataSource(abbrev);
+		this.addressIndex = null;
+		this.addrSection = addresses;
+		this.arangesSection = aranges;
+		this.buildId = noteBuildId;
+		this.callFrameInfo = null;
+		this.compiledDecoding = false;
+		this.debugFrameSection = debugFrame;
+		this.ehFrameAddress = sectionAddresses.getOrDefault(".eh_frame", Long.valueOf(0)).longValue();
+		this.ehFrameHdrAddress = sectionAddresses.getOrDefault(".eh_frame_hdr", Long.valueOf(0)).longValue();
+		this.ehFrameHdrSection = ehFrameHdr;
+		this.ehFrameSection = ehFrame;
+		this.expressions = new ConcurrentHashMap<>();
 		this.infoSection = new DataSource(info);
-		this.stringAccessor = offset -> stringCache.computeIfAbsent(Long.valueOf(offset), stringReader);
+		this.lineSection = new DataSource(line);
+		this.lineStringTable = new StringTable(new DataSource(lineStrings), 0);
+		this.lineTables = new ConcurrentHashMap<>();
+		this.locationListCache = new ConcurrentHashMap<>();
+		this.locationListsSection = new DataSource(locationLists);
+		this.locationsSection = new DataSource(locations);
+		this.lookupSections = lookups;
+		this.nameIndex = null;
+		this.nameLookup = null;
+		this.namesSection = names;
+		this.path = Paths.get(fileName);
+		this.rangeListCache = new ConcurrentHashMap<>();
+		this.rangeListsSection = new DataSource(rangeLists);
+		this.rangesSection = new DataSource(ranges);
+		this.splitObject = split;
+		this.stringData = new DataSource(strings);
+		this.stringOffsetsSection = stringOffsets;
+		this.stringTable = new StringTable(this.stringData, 0);
+		this.units = null;
 	}
 
-	public void scanUnits(DwarfRequestor requestor) {
-		DataSource data = infoSection.duplicate();
+	/**
+	 * Answer an index of the offsets of all entries, built with a scan
+	 * that decodes no attributes.
+	 */
+	public DieIndex buildIndex() {
+		DieIndex.Builder builder = new DieIndex.Builder(this, DwarfRequestor.NULL, DwarfInterest.attributes());
 
-		while (data.hasRemaining()) {
-			DataSource unit = data.duplicate();
-			long unitOffset = unit.position();
-			long unitLength = unit.getU4();
-			int offsetSize = 4;
-			long abbrevOffset = 0;
-
-			if (unitLength == 0 || unitLength == 0xFFFFFFFFL) {
-				unitLength = unit.getU8();
-				offsetSize = 8;
+		scanUnits(builder);
+
+		return builder.build();
+	}
+
+	AbbreviationTable getAbbreviations(long abbrevOffset) {
+		Long key = Long.valueOf(abbrevOffset);
+		AbbreviationTable table = abbreviationCache.get(key);
+
+		if (table != null) {
+			abbreviationCacheHits.increment();
+		} else {
+			table = abbreviationCache.computeIfAbsent(key, offset -> {
+				abbreviationCacheMisses.increment();
+				return AbbreviationTable.readFrom(abbrevSection.duplicate().position(offset.longValue()));
+			});
+		}
+
+		return table;
+	}
+
+	/**
+	 * Answer the number of units whose abbreviations were found
+	 * already parsed in the cache.
+	 */
+	public long getAbbreviationCacheHits() {
+		return abbreviationCacheHits.sum();
+	}
+
+	/**
+	 * Answer the number of abbreviation tables that had to be parsed.
+	 */
+	public long getAbbreviationCacheMisses() {
+		return abbreviationCacheMisses.sum();
+	}
+
+	/**
+	 * Answer the index of the code addresses of units, subprograms and
+	 * inlined subroutines. The index is built on first use.
+	 */
+	public AddressIndex getAddressIndex() {
+		AddressIndex index = addressIndex;
+
+		if (index == null) {
+			index = new AddressIndex(this);
+			addressIndex = index;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Answer the .debug_aranges section, which is empty if the file has none.
+	 */
+	ByteBuffer getArangesSection() {
+		return arangesSection;
+	}
+
+	/**
+	 * Answer the base address of the range and location lists of the given
+	 * unit: the low_pc of its unit entry, or zero.
+	 */
+	long getBaseAddress(UnitHeader unit) {
+		if (!unit.hasBaseAddress()) {
+			try (DieCursor cursor = openCursor(unit.offset)) {
+				unit.setBaseAddress(cursor.next() ? cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0) : 0);
+			}
+		}
+
+		return unit.getBaseAddress();
+	}
+
+	/**
+	 * Answer the build-id recorded in the .note.gnu.build-id section,
+	 * or null if there is none.
+	 */
+	public byte[] getBuildId() {
+		return buildId != null ? buildId.clone() : null;
+	}
+
+	/**
+	 * Answer the call frame information of the .eh_frame and .debug_frame
+	 * sections. Frame descriptions are indexed on first use.
+	 */
+	public CallFrameInfo getCallFrameInfo() {
+		CallFrameInfo info = callFrameInfo;
+
+		if (info == null) {
+			UnitHeader[] headers = getUnits();
+			int addressSize = headers.length != 0 ? headers[0].addressSize : 8;
+
+			info = new CallFrameInfo(debugFrameSection, ehFrameSection, ehFrameAddress, ehFrameHdrSection,
+					ehFrameHdrAddress, addressSize);
+			callFrameInfo = info;
+		}
+
+		return info;
+	}
+
+	/**
+	 * Answer the decoded form of the expression of the given length at the
+	 * given .debug_info offset, as delivered to
+	 * {@link DwarfRequestor#acceptExpression(int, int, long, ByteBuffer)}.
+	 * Expressions are decoded on first use and cached by offset.
+	 */
+	public DwarfExpression getExpression(long offset, int length) {
+		Long key = Long.valueOf(offset);
+		DwarfExpression expression = expressions.get(key);
+
+		if (expression == null) {
+			UnitHeader unit = getUnitContaining(offset);
+
+			// racing threads decode equivalent expressions
+			expression = DwarfExpression.decode(getUnitView(infoSection.duplicate().position(offset), unit), length);
+			expressions.put(key, expression);
+		}
+
+		return expression;
+	}
+
+	/**
+	 * Answer a read-only view of part of the .debug_info section.
+	 */
+	ByteBuffer getInfoView(long offset, int length) {
+		return infoSection.duplicate().position(offset).getView(length);
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Answer the name indexes of the .debug_names section, or null if the
+	 * file has none. The indexes are read on first use.
+	 */
+	public DwarfNames getNameIndex() {
+		DwarfNames names = nameIndex;
+
+		if (names == null && namesSection.limit() != 0) {
+			names = DwarfNames.readFrom(this, namesSection);
+			nameIndex = names;
+		}
+
+		return names;
+	}
+
+	/**
+	 * Answer a lookup of entries by name using the accelerator tables of
+	 * the file, falling back to an index built with a walk of all units.
+	 */
+	public DwarfNameLookup getNameLookup() {
+		DwarfNameLookup lookup = nameLookup;
+
+		if (lookup == null) {
+			lookup = new DwarfNameLookup(this, null);
+			nameLookup = lookup;
+		}
+
+		return lookup;
+	}
+
+	/**
+	 * Answer the byte order of the file.
+	 */
+	ByteOrder getByteOrder() {
+		return infoSection.duplicate().getView(0).order();
+	}
+
+	/**
+	 * Answer the line number table of the unit that begins at the given
+	 * section offset, or null if the unit has no line number program.
+	 * Tables are built on first use and cached.
+	 */
+	public DwarfLineTable getLineTable(long unitOffset) {
+		Long key = Long.valueOf(unitOffset);
+		DwarfLineTable table = lineTables.get(key);
+
+		if (table == null) {
+			DwarfLineTable.Builder builder = new DwarfLineTable.Builder();
+
+			if (!scanLines(unitOffset, builder)) {
+				return null;
+			}
+
+			// racing threads build equivalent tables
+			table = builder.build();
+			lineTables.put(key, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Answer the location list of a location attribute value, as delivered
+	 * to {@link DwarfRequestor#acceptReference(int, int, long)}, of the unit
+	 * that begins at the given section offset: an offset in .debug_loc or,
+	 * for DWARF 5 units, an offset in .debug_loclists or an index in the
+	 * unit's offset table there. Lists are decoded on first use and cached.
+	 */
+	public DwarfLocationList getLocationList(long unitOffset, int form, long value) {
+		return readLocations(getUnit(unitOffset), form, value);
+	}
+
+	/**
+	 * Answer the accelerator section with the given name,
+	 * or null if the file has no such section.
+	 */
+	ByteBuffer getLookupSection(String name) {
+		return lookupSections.get(name);
+	}
+
+	/**
+	 * Answer the address ranges, as pairs of start and end addresses, of a
+	 * DW_AT_ranges value, as delivered to
+	 * {@link DwarfRequestor#acceptReference(int, int, long)}, of the unit
+	 * that begins at the given section offset. Lists are decoded on first
+	 * use and cached.
+	 */
+	public long[] getRanges(long unitOffset, int form, long value) {
+		UnitHeader unit = getUnit(unitOffset);
+
+		return readRanges(unit, form, value, getBaseAddress(unit)).clone();
+	}
+
+	/**
+	 * Answer the string at the given offset in the section holding strings
+	 * of the given form: .debug_str for DW_FORM_strp and, once resolved,
+	 * the DW_FORM_strx forms; .debug_line_str for DW_FORM_line_strp;
+	 * and .debug_info for inline strings.
+	 */
+	String getString(int form, long offset) {
+		switch (form) {
+		case DwarfForm.DW_FORM_line_strp:
+			return lineStringTable.get(offset);
+		case DwarfForm.DW_FORM_strp:
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			return stringTable.get(offset);
+		default:
+			return infoSection.duplicate().position(offset).getString();
+		}
+	}
+
+	/**
+	 * Answer the number of strings evicted from the .debug_str cache.
+	 */
+	public long getStringCacheEvictions() {
+		return stringTable.getEvictions();
+	}
+
+	/**
+	 * Answer the number of .debug_str lookups satisfied by the cache.
+	 */
+	public long getStringCacheHits() {
+		return stringTable.getHits();
+	}
+
+	/**
+	 * Answer the number of .debug_str lookups that required decoding a string.
+	 */
+	public long getStringCacheMisses() {
+		return stringTable.getMisses();
+	}
+
+	/**
+	 * Answer the unit that begins at the given section offset.
+	 */
+	UnitHeader getUnit(long unitOffset) {
+		return getUnits()[indexOfUnit(unitOffset)];
+	}
+
+	/**
+	 * Answer the unit that contains the given section offset.
+	 */
+	UnitHeader getUnitContaining(long offset) {
+		UnitHeader[] headers = getUnits();
+		int low = 0;
+		int high = headers.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			UnitHeader header = headers[middle];
+
+			if (offset < header.offset) {
+				high = middle - 1;
+			} else if (offset >= header.end) {
+				low = middle + 1;
+			} else {
+				return header;
+			}
+		}
+
+		throw new IllegalArgumentException("offset=" + offset);
+	}
+
+	/**
+	 * Answer a private view of the entries of the given unit.
+	 */
+	DataSource getUnitData(UnitHeader unit) {
+		return getUnitView(infoSection.duplicate().position(unit.dieOffset).limit(unit.end), unit);
+	}
+
+	/**
+	 * Answer a view of the given data that decodes values as the given unit does.
+	 */
+	private DataSource getUnitView(DataSource data, UnitHeader unit) {
+		if (unit.version >= 5 && !unit.hasBases()) {
+			readBases(unit);
+		}
+
+		IndirectData indirect = new IndirectData(stringTable, lineStringTable, stringOffsetsSection, addrSection,
+				splitObject, unit);
+
+		return new DataSource(data, unit.addressSize, unit.offsetSize, indirect);
+	}
+
+	/**
+	 * Answer the section offsets of all units, in section order.
+	 */
+	public long[] getUnitOffsets() {
+		UnitHeader[] headers = getUnits();
+		long[] offsets = new long[headers.length];
+
+		for (int index = 0; index < headers.length; ++index) {
+			offsets[index] = headers[index].offset;
+		}
+
+		return offsets;
+	}
+
+	UnitHeader[] getUnits() {
+		UnitHeader[] headers = units;
+
+		if (headers == null) {
+			List<UnitHeader> list = new ArrayList<>();
+			DataSource data = infoSection.duplicate();
+
+			while (data.hasRemaining()) {
+				list.add(UnitHeader.readFrom(data, VERSION_MINIMUM, VERSION_MAXIMUM));
+			}
+
+			headers = list.toArray(new UnitHeader[list.size()]);
+			units = headers;
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Answer the index of the unit that begins at the given section offset.
+	 */
+	int indexOfUnit(long unitOffset) {
+		UnitHeader[] headers = getUnits();
+		int low = 0;
+		int high = headers.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long offset = headers[middle].offset;
+
+			if (offset < unitOffset) {
+				low = middle + 1;
+			} else if (offset > unitOffset) {
+				high = middle - 1;
+			} else {
+				return middle;
 			}
+		}
+
+		throw new IllegalArgumentException("unit offset=" + unitOffset);
+	}
+
+	/**
+	 * Answer whether this file is a split DWARF object, whose units are read
+	 * from its .dwo sections. The addresses such units refer to by index are
+	 * held in the .debug_addr section of the executable, not of this file, so
+	 * the indices themselves are answered in their place.
+	 */
+	public boolean isSplitObject() {
+		return splitObject;
+	}
+
+	/**
+	 * Decode every string of the .debug_str section in a single sequential
+	 * pass, so later lookups are served from the cache.
+	 */
+	public void loadStrings() {
+		stringTable.loadAll();
+	}
+
+	/**
+	 * Answer a cursor positioned before the first entry of the unit that
+	 * begins at the given section offset.
+	 * 
+	 * @param unitOffset the section offset of a unit
+	 * @see #getUnitOffsets()
+	 */
+	public DieCursor openCursor(long unitOffset) {
+		DieCursor cursor = new DieCursor(this);
+
+		cursor.reset(unitOffset);
+
+		return cursor;
+	}
+
+	/**
+	 * Answer the index file for this scanner at the given path, building
+	 * and writing it first if it is missing or out of date.
+	 * 
+	 * @see DwarfIndexFile#open(DwarfScanner, Path)
+	 */
+	public DwarfIndexFile openIndexFile(Path indexPath) throws IOException {
+		return DwarfIndexFile.open(this, indexPath);
+	}
+
+	/**
+	 * Record the bases of a DWARF 5 unit in the .debug_addr,
+	 * .debug_str_offsets, .debug_rnglists and .debug_loclists sections.
+	 * They are given by attributes of the first entry, which may themselves
+	 * need the bases to be decoded, so are found by a pass over that entry
+	 * that decodes nothing else. In split units, the attributes are absent
+	 * and the bases are the start of each table after its header.
+	 */
+	private void readBases(UnitHeader unit) {
+		long headerSize = unit.offsetSize == 8 ? 16 : 8;
+		long listHeaderSize = unit.offsetSize == 8 ? 20 : 12;
+		long addrBase = headerSize;
+		long strOffsetsBase = headerSize;
+		long rnglistsBase = listHeaderSize;
+		long loclistsBase = listHeaderSize;
+		DataSource data = new DataSource(infoSection.duplicate().position(unit.dieOffset).limit(unit.end),
+				unit.addressSize, unit.offsetSize, null);
+		Abbreviation entry = data.hasRemaining() ? getAbbreviations(unit.abbrevOffset).get(data.getUDATA()) : null;
+
+		for (int index = 0, count = entry != null ? entry.getAttributeCount() : 0; index < count; ++index) {
+			AttributeReader reader = entry.getAttribute(index);
+			int form = reader.form;
+
+			if (form == DwarfForm.DW_FORM_indirect) {
+				form = AttributeReader.checkUInt(data.getUDATA());
+			}
+
+			if (form != DwarfForm.DW_FORM_sec_offset) {
+				DecodingPlan.skip(form, data);
+			} else if (reader.attribute == DwarfAttribute.DW_AT_addr_base) {
+				addrBase = data.getOffset();
+			} else if (reader.attribute == DwarfAttribute.DW_AT_str_offsets_base) {
+				strOffsetsBase = data.getOffset();
+			} else if (reader.attribute == DwarfAttribute.DW_AT_rnglists_base) {
+				rnglistsBase = data.getOffset();
+			} else if (reader.attribute == DwarfAttribute.DW_AT_loclists_base) {
+				loclistsBase = data.getOffset();
+			} else {
+				data.skipOffset();
+			}
+		}
+
+		unit.setBases(addrBase, strOffsetsBase, rnglistsBase, loclistsBase);
+	}
+
+	/**
+	 * Answer the location list of a location attribute value of the given
+	 * unit, decoding it on first use.
+	 */
+	DwarfLocationList readLocations(UnitHeader unit, int form, long value) {
+		DataSource data;
+		Long key;
+
+		if (unit.version < 5) {
+			data = new DataSource(locationsSection.duplicate(), unit.addressSize, unit.offsetSize, null);
+			key = Long.valueOf(value);
+		} else {
+			long offset = value;
+
+			data = getUnitView(locationListsSection.duplicate(), unit);
+
+			if (form == DwarfForm.DW_FORM_loclistx) {
+				long base = unit.getLoclistsBase();
+
+				offset = base + data.position(base + value * unit.offsetSize).getOffset();
+			}
+
+			data.position(offset);
+			key = Long.valueOf(~offset);
+		}
+
+		DwarfLocationList list = locationListCache.get(key);
+
+		if (list == null) {
+			long baseAddress = getBaseAddress(unit);
+
+			if (unit.version < 5) {
+				list = LocationLists.readLocations(data.position(value), baseAddress);
+			} else {
+				list = LocationLists.readLocationList(data, baseAddress);
+			}
+
+			// racing threads decode equivalent lists
+			locationListCache.put(key, list);
+		}
+
+		return list;
+	}
 
-			long nextUnit = unit.position() + unitLength;
+	/**
+	 * Answer the address ranges, as pairs of start and end addresses, of a
+	 * DW_AT_ranges value of the given unit: an offset in .debug_ranges or,
+	 * for DWARF 5 units, an offset in .debug_rnglists or an index in the
+	 * unit's offset table there. Lists based at the unit's own low_pc are
+	 * cached, so the answer must not be modified.
+	 *
+	 * @param baseAddress the low_pc of the unit, or zero
+	 */
+	long[] readRanges(UnitHeader unit, int form, long value, long baseAddress) {
+		DataSource data;
+		Long key;
+
+		if (unit.version < 5) {
+			data = new DataSource(rangesSection.duplicate(), unit.addressSize, unit.offsetSize, null);
+			data.position(value);
+			key = Long.valueOf(value);
+		} else {
+			long offset = value;
 
-			unit.limit(nextUnit);
-			data.position(nextUnit);
+			data = getUnitView(rangeListsSection.duplicate(), unit);
 
-			int version = unit.getU2();
+			if (form == DwarfForm.DW_FORM_rnglistx) {
+				long base = unit.getRnglistsBase();
 
-			if (version < VERSION_MINIMUM || version > VERSION_MAXIMUM) {
-				throw new IllegalArgumentException("version=" + version);
+				offset = base + data.position(base + value * unit.offsetSize).getOffset();
 			}
 
-			if (offsetSize == 8) {
-				abbrevOffset = unit.getU8();
+			data.position(offset);
+			key = Long.valueOf(~offset);
+		}
+
+		boolean cacheable = baseAddress == getBaseAddress(unit);
+		long[] ranges = cacheable ? rangeListCache.get(key) : null;
+
+		if (ranges == null) {
+			if (unit.version < 5) {
+				ranges = RangeLists.readRanges(data, baseAddress);
 			} else {
-				abbrevOffset = unit.getU4();
+				ranges = RangeLists.readRangeList(data, baseAddress);
+			}
+
+			if (cacheable) {
+				rangeListCache.put(key, ranges);
+			}
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Deliver the files and rows of the line number program of the unit
+	 * that begins at the given section offset, answering whether the unit
+	 * has such a program.
+	 */
+	public boolean scanLines(long unitOffset, DwarfLineRequestor requestor) {
+		long lineOffset;
+		String compDir;
+
+		try (DieCursor cursor = openCursor(unitOffset)) {
+			if (!cursor.next()) {
+				return false;
+			}
+
+			switch (cursor.getForm(DwarfAttribute.DW_AT_stmt_list)) {
+			case DwarfForm.DW_FORM_data4:
+			case DwarfForm.DW_FORM_data8:
+				lineOffset = cursor.getConstant(DwarfAttribute.DW_AT_stmt_list, 0);
+				break;
+			case DwarfForm.DW_FORM_sec_offset:
+				lineOffset = cursor.getReference(DwarfAttribute.DW_AT_stmt_list);
+				break;
+			default:
+				return false;
 			}
 
-			int addressSize = unit.getU1();
+			compDir = cursor.getString(DwarfAttribute.DW_AT_comp_dir);
+		}
+
+		LineProgram.run(getUnitView(lineSection.duplicate(), getUnit(unitOffset)).position(lineOffset), compDir,
+				requestor);
+
+		return true;
+	}
+
+	/**
+	 * Deliver the entry at the given section offset and, optionally,
+	 * its children.
+	 */
+	void scanEntry(DwarfRequestor requestor, UnitHeader unit, long offset, boolean withChildren) {
+		AbbreviationTable abbreviations = getAbbreviations(unit.abbrevOffset);
+		DataSource data = getUnitData(unit).position(offset);
+		DwarfInterest interest = requestor.getInterest();
+
+		if (withChildren) {
+			scanTags(requestor, data, abbreviations, unit.offset, interest, compiledDecoding, true);
+		} else {
+			Abbreviation entry = abbreviations.get(data.getUDATA());
+
+			if (entry == null) {
+				throw new IllegalArgumentException("offset=" + offset);
+			}
+
+			requestor.enterTag(entry.tag, offset, entry.hasChildren);
+			decodeAttributes(requestor, data, entry, interest, compiledDecoding);
+			requestor.endTag(entry.tag, entry.hasChildren);
+		}
+	}
+
+	private void scanUnit(DwarfRequestor requestor, UnitHeader unit, DwarfInterest interest) {
+		requestor.enterCompilationUnit(unit.offset);
 
-			requestor.enterCompilationUnit(unitOffset);
+		AbbreviationTable abbreviations = getAbbreviations(unit.abbrevOffset);
+		DataSource source = getUnitData(unit);
 
-			DataSource abbrevs = abbrevSection.duplicate().position(abbrevOffset);
-			LongFunction<Abbreviation> abbreviations = Abbreviation.readFrom(abbrevs);
-			DataSource source = new DataSource(unit, addressSize, offsetSize, stringAccessor);
+		scanTags(requestor, source, abbreviations, unit.offset, interest, compiledDecoding, false);
 
-			scanTags(requestor, source, abbreviations);
+		requestor.exitCompilationUnit(unit.offset);
+	}
+
+	public void scanUnits(DwarfRequestor requestor) {
+		DwarfInterest interest = requestor.getInterest();
+
+		for (UnitHeader unit : getUnits()) {
+			scanUnit(requestor, unit, interest);
+		}
+	}
+
+	/**
+	 * Scan units concurrently, delivering all events to the given requestor
+	 * on the calling thread in the same order as {@link #scanUnits(DwarfRequestor)}.
+	 * Units are decoded before the requestor sees their events, so children
+	 * it declines through {@link DwarfRequestor#enterTag(int, long, boolean)}
+	 * are decoded and then discarded; only children its interest does not
+	 * want are skipped without being decoded.
+	 * 
+	 * @param requestor the receiver of all events
+	 * @param parallelism the maximum number of units decoded at once
+	 */
+	public void scanUnits(DwarfRequestor requestor, int parallelism) {
+		UnitHeader[] headers = getUnits();
+
+		if (parallelism <= 1 || headers.length <= 1) {
+			scanUnits(requestor);
+			return;
+		}
+
+		DwarfInterest interest = requestor.getInterest();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			// limit the number of decoded units waiting to be replayed
+			int window = parallelism * 2;
+			Deque<Future<EventRecorder>> pending = new ArrayDeque<>(window);
+			int next = 0;
+
+			while (next < headers.length || !pending.isEmpty()) {
+				while (next < headers.length && pending.size() < window) {
+					UnitHeader unit = headers[next++];
+
+					pending.add(pool.submit(() -> {
+						EventRecorder recorder = new EventRecorder();
+
+						scanUnit(recorder, unit, interest);
+
+						return recorder;
+					}));
+				}
+
+				await(pending.remove()).replay(requestor);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Scan units concurrently, delivering the events of each unit to its
+	 * own requestor, obtained from the given factory. Events for a unit
+	 * are delivered on the thread that decodes it.
+	 * 
+	 * @param requestorFactory maps unit section offsets to requestors
+	 * @param parallelism the maximum number of units decoded at once
+	 */
+	public void scanUnits(LongFunction<? extends DwarfRequestor> requestorFactory, int parallelism) {
+		UnitHeader[] headers = getUnits();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+		try {
+			List<Future<?>> tasks = new ArrayList<>(headers.length);
+
+			for (UnitHeader unit : headers) {
+				tasks.add(pool.submit(() -> {
+					DwarfRequestor requestor = requestorFactory.apply(unit.offset);
+
+					scanUnit(requestor, unit, requestor.getInterest());
+				}));
+			}
+
+			for (Future<?> task : tasks) {
+				await(task);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Select the engine used to decode attributes. By default, attributes
+	 * are interpreted one at a time; compiled decoding specializes a decoder
+	 * for each abbreviation on first use. Both deliver identical events.
+	 * 
+	 * @param compiled whether compiled decoders should be used
+	 */
+	public void setCompiledDecoding(boolean compiled) {
+		this.compiledDecoding = compiled;
+	}
+
+	/**
+	 * Bound the number of strings retained from the .debug_str section.
+	 * Any strings already cached are discarded.
+	 * 
+	 * @param maximumEntries the maximum number of entries, or zero for no limit
+	 */
+	public void setStringCacheLimit(int maximumEntries) {
+		this.stringTable = new StringTable(stringData, maximumEntries);
+	}
 
-			requestor.exitCompilationUnit(unitOffset);
+	/**
+	 * Supply the table of units, as read from an index file, if it
+	 * has not already been read from the .debug_info section.
+	 */
+	void setUnits(UnitHeader[] headers) {
+		if (units == null) {
+			units = headers;
 		}
 	}
 
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running symbolization service, listening on a loopback socket,
+ * that keeps the libraries it has been asked about open between requests
+ * in a {@link DwarfSymbolizer}.
+ * <p>
+ * Requests and responses are lines of UTF-8 text whose fields are
+ * separated by tabs. A request
+ *
+ * <pre>
+ * symbolize	library	address...
+ * </pre>
+ *
+ * with hexadecimal addresses is answered, for each address in turn, by a
+ * line for each of its frames, innermost first,
+ *
+ * <pre>
+ * address	function	file	line	inlined
+ * </pre>
+ *
+ * where unknown functions and files are given as "??", and the last field
+ * is "inlined" or empty; an address with no frames is answered by a single
+ * line with unknown values. A request
+ *
+ * <pre>
+ * stats
+ * </pre>
+ *
+ * is answered by lines giving the name and value of each statistic,
+ * including percentiles of the latency of recent symbolize requests in
+ * microseconds. Each response ends with an empty line; a request that
+ * fails is answered by a single line holding "error" and a message.
+ */
+public final class DwarfSymbolServer implements Closeable {
+
+	/** the number of recent requests whose latencies give the percentiles */
+	private static final int LATENCY_WINDOW = 4096;
+
+	private static final String UNKNOWN = "??";
+
+	private static long parseAddress(String text) {
+		String digits = text.startsWith("0x") || text.startsWith("0X") ? text.substring(2) : text;
+
+		return Long.parseUnsignedLong(digits, 16);
+	}
+
+	private static void writeFrames(Writer out, String address, DwarfSymbolizer.Frame[] frames) throws IOException {
+		if (frames.length == 0) {
+			out.write(address);
+			out.write("\t" + UNKNOWN + "\t" + UNKNOWN + "\t0\t\n");
+			return;
+		}
+
+		for (DwarfSymbolizer.Frame frame : frames) {
+			out.write(address);
+			out.write('\t');
+			out.write(frame.getFunction() != null ? frame.getFunction() : UNKNOWN);
+			out.write('\t');
+			out.write(frame.getFileName() != null ? frame.getFileName() : UNKNOWN);
+			out.write('\t');
+			out.write(Integer.toString(frame.getLine()));
+			out.write('\t');
+			out.write(frame.isInlined() ? "inlined" : "");
+			out.write('\n');
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int parallelism = 4;
+		long memoryBudget = 0;
+		int port = 0;
+
+		for (int index = 0; index < args.length; index += 2) {
+			switch (index + 1 < args.length ? args[index] : "") {
+			case "-j":
+				parallelism = Integer.parseInt(args[index + 1]);
+				break;
+			case "-m":
+				memoryBudget = Long.parseLong(args[index + 1]) << 20;
+				break;
+			case "-p":
+				port = Integer.parseInt(args[index + 1]);
+				break;
+			default:
+				System.err.println("Usage: DwarfSymbolServer [-j threads] [-m megabytes] [-p port]");
+				return;
+			}
+		}
+
+		DwarfSymbolServer server = new DwarfSymbolServer(port, parallelism, memoryBudget);
+
+		System.out.printf("listening on port %d%n", Integer.valueOf(server.getPort()));
+		server.serve();
+	}
+
+	private long addressCount;
+
+	/** the connections being served, guarded by itself */
+	private final Set<Socket> connections;
+
+	private final ExecutorService executor;
+
+	/** the latencies, in nanoseconds, of recent requests, used circularly */
+	private final long[] latencies;
+
+	private long requestCount;
+
+	private final ServerSocket socket;
+
+	private final DwarfSymbolizer symbolizer;
+
+	/**
+	 * Create a server listening on the given port of the loopback address.
+	 *
+	 * @param port the port, or zero for any free port
+	 * @param parallelism the number of connections served at once
+	 * @param memoryBudget the memory budget of the symbolizer
+	 * @see DwarfSymbolizer#DwarfSymbolizer(long)
+	 */
+	public DwarfSymbolServer(int port, int parallelism, long memoryBudget) throws IOException {
+		super();
+		this.addressCount = 0;
+		this.connections = new HashSet<>();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		this.latencies = new long[LATENCY_WINDOW];
+		this.requestCount = 0;
+		this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.symbolizer = new DwarfSymbolizer(memoryBudget);
+	}
+
+	/**
+	 * Answer whether the given connection may be served: connections
+	 * accepted after the server is closed are not.
+	 */
+	private boolean addConnection(Socket connection) {
+		synchronized (connections) {
+			return !socket.isClosed() && connections.add(connection);
+		}
+	}
+
+	/**
+	 * Stop accepting connections and end those being served.
+	 */
+	@Override
+	public void close() throws IOException {
+		List<Socket> open;
+
+		socket.close();
+
+		synchronized (connections) {
+			open = new ArrayList<>(connections);
+			connections.clear();
+		}
+
+		// a thread blocked reading from a socket isn't interrupted, but is
+		// released when the socket is closed
+		for (Socket connection : open) {
+			connection.close();
+		}
+
+		executor.shutdownNow();
+	}
+
+	public synchronized long getAddressCount() {
+		return addressCount;
+	}
+
+	/**
+	 * Answer the latency, in nanoseconds, below which the given percentage
+	 * of recent symbolize requests were answered, or zero if there have
+	 * been none.
+	 */
+	public long getLatencyPercentile(double percentage) {
+		long[] sorted;
+
+		synchronized (this) {
+			sorted = Arrays.copyOf(latencies, (int) Math.min(requestCount, LATENCY_WINDOW));
+		}
+
+		if (sorted.length == 0) {
+			return 0;
+		}
+
+		Arrays.sort(sorted);
+
+		int rank = (int) Math.ceil(percentage / 100 * sorted.length) - 1;
+
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+	}
+
+	public int getPort() {
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * Answer the number of symbolize requests answered successfully.
+	 */
+	public synchronized long getRequestCount() {
+		return requestCount;
+	}
+
+	public DwarfSymbolizer getSymbolizer() {
+		return symbolizer;
+	}
+
+	private synchronized void recordRequest(int addresses, long latency) {
+		latencies[(int) (requestCount % LATENCY_WINDOW)] = latency;
+		addressCount += addresses;
+		requestCount += 1;
+	}
+
+	private void respond(String request, Writer out) throws IOException {
+		String[] fields = request.split("\t");
+
+		switch (fields[0]) {
+		case "stats":
+			writeStatistics(out);
+			break;
+		case "symbolize":
+			if (fields.length < 2) {
+				throw new IllegalArgumentException("missing library");
+			}
+
+			long start = System.nanoTime();
+			long[] addresses = new long[fields.length - 2];
+
+			for (int index = 0; index < addresses.length; ++index) {
+				addresses[index] = parseAddress(fields[index + 2]);
+			}
+
+			DwarfSymbolizer.Frame[][] frames = symbolizer.symbolize(fields[1], addresses);
+
+			for (int index = 0; index < addresses.length; ++index) {
+				writeFrames(out, fields[index + 2], frames[index]);
+			}
+
+			recordRequest(addresses.length, System.nanoTime() - start);
+			break;
+		default:
+			throw new IllegalArgumentException("unknown request: " + fields[0]);
+		}
+	}
+
+	/**
+	 * Accept and serve connections until the server is closed.
+	 */
+	public void serve() throws IOException {
+		try {
+			for (;;) {
+				Socket connection = socket.accept();
+
+				if (!addConnection(connection)) {
+					connection.close();
+					break;
+				}
+
+				// responses are flushed whole; don't hold back their last segment
+				connection.setTcpNoDelay(true);
+				executor.execute(() -> serve(connection));
+			}
+		} catch (SocketException e) {
+			if (!socket.isClosed()) {
+				throw e;
+			}
+		}
+	}
+
+	private void serve(Socket connection) {
+		try (Socket client = connection;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+			for (String request; (request = in.readLine()) != null;) {
+				if (request.isEmpty()) {
+					continue;
+				}
+
+				// a failed request must not leave a partial response
+				StringWriter response = new StringWriter();
+
+				try {
+					respond(request, response);
+				} catch (IOException | RuntimeException e) {
+					response = new StringWriter();
+					response.write("error\t" + e + "\n");
+				}
+
+				response.write('\n');
+				out.write(response.toString());
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client has gone, or the server was closed; nothing more can
+			// be answered
+			return;
+		} finally {
+			synchronized (connections) {
+				connections.remove(connection);
+			}
+		}
+	}
+
+	/**
+	 * Start serving connections on a daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(() -> {
+			try {
+				serve();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}, "DwarfSymbolServer");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void writeStatistics(Writer out) throws IOException {
+		List<String> lines = new ArrayList<>();
+
+		lines.add("requests\t" + getRequestCount());
+		lines.add("addresses\t" + getAddressCount());
+		lines.add("libraries\t" + symbolizer.getLibraryCount());
+		lines.add("charge\t" + symbolizer.getCharge());
+		lines.add("hits\t" + symbolizer.getHits());
+		lines.add("misses\t" + symbolizer.getMisses());
+		lines.add("evictions\t" + symbolizer.getEvictions());
+
+		for (int percentage : new int[] { 50, 90, 99, 100 }) {
+			lines.add("p" + percentage + "_us\t" + getLatencyPercentile(percentage) / 1000);
+		}
+
+		for (String line : lines) {
+			out.write(line);
+			out.write('\n');
+		}
+	}
+
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps code addresses of libraries to the functions, inlined calls and
+ * source lines that contain them. The scanners of recently used libraries,
+ * with their mapped sections, address indexes and line tables, are kept
+ * open between requests.
+ * <p>
+ * Each open library is charged against a memory budget according to the
+ * size of its file, as {@link DwarfBatch} charges files; when the budget is
+ * exceeded, the least recently used libraries are dropped, and their
+ * mappings are released when they are garbage collected. A library whose
+ * file has been modified since it was opened is opened again.
+ */
+public final class DwarfSymbolizer {
+
+	/**
+	 * A function containing an address, and the source position within it:
+	 * that of the address itself for the innermost frame, and otherwise
+	 * that of the call of the next inner frame.
+	 */
+	public static final class Frame {
+
+		private final String fileName;
+
+		private final String function;
+
+		private final boolean inlined;
+
+		private final int line;
+
+		Frame(String function, String fileName, int line, boolean inlined) {
+			super();
+			this.fileName = fileName;
+			this.function = function;
+			this.inlined = inlined;
+			this.line = line;
+		}
+
+		/**
+		 * Answer the path of the source file, or null if it is unknown.
+		 */
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * Answer the name of the function, or null if it is unknown.
+		 */
+		public String getFunction() {
+			return function;
+		}
+
+		/**
+		 * Answer the source line, or zero if it is unknown.
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Answer whether the function was inlined into that of the next
+		 * outer frame.
+		 */
+		public boolean isInlined() {
+			return inlined;
+		}
+
+	}
+
+	/**
+	 * An open library.
+	 */
+	private static final class Library {
+
+		final long charge;
+
+		final FileTime modified;
+
+		/** the names of functions by entry offset; unnamed functions map to "" */
+		final Map<Long, String> names;
+
+		final DwarfScanner scanner;
+
+		Library(DwarfScanner scanner, long charge, FileTime modified) {
+			super();
+			this.charge = charge;
+			this.modified = modified;
+			this.names = new ConcurrentHashMap<>();
+			this.scanner = scanner;
+		}
+
+	}
+
+	/** the largest number of entries followed to find the name of a function */
+	private static final int MAX_NAME_REFERENCES = 8;
+
+	private static final Frame[] NO_FRAMES = new Frame[0];
+
+	private static long getEntryReference(DieCursor cursor, int attribute) {
+		switch (cursor.getForm(attribute)) {
+		case DwarfForm.DW_FORM_ref1:
+		case DwarfForm.DW_FORM_ref2:
+		case DwarfForm.DW_FORM_ref4:
+		case DwarfForm.DW_FORM_ref8:
+		case DwarfForm.DW_FORM_ref_addr:
+		case DwarfForm.DW_FORM_ref_udata:
+			return cursor.getReference(attribute);
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Answer the name of the function whose entry is at the given offset,
+	 * taken from the entry or from the entries of its abstract origin or
+	 * specification, or null if it has none.
+	 */
+	private static String getFunction(Library library, DieCursor cursor, long offset) {
+		Long key = Long.valueOf(offset);
+		String name = library.names.get(key);
+
+		if (name == null) {
+			long entry = offset;
+
+			name = "";
+
+			for (int count = 0; count < MAX_NAME_REFERENCES && entry >= 0; ++count) {
+				seek(cursor, entry);
+
+				String entryName = cursor.getString(DwarfAttribute.DW_AT_name);
+
+				if (entryName == null) {
+					entryName = cursor.getString(DwarfAttribute.DW_AT_linkage_name);
+				}
+
+				if (entryName != null) {
+					name = entryName;
+					break;
+				}
+
+				entry = getEntryReference(cursor, DwarfAttribute.DW_AT_abstract_origin);
+
+				if (entry < 0) {
+					entry = getEntryReference(cursor, DwarfAttribute.DW_AT_specification);
+				}
+			}
+
+			library.names.put(key, name);
+		}
+
+		return name.isEmpty() ? null : name;
+	}
+
+	private static void seek(DieCursor cursor, long offset) {
+		cursor.reset(cursor.getScanner().getUnitContaining(offset), offset);
+		cursor.next();
+	}
+
+	private static Frame[] symbolize(Library library, DieCursor cursor, long address, long unitOffset,
+			long[] entries) {
+		if (unitOffset < 0) {
+			return NO_FRAMES;
+		}
+
+		DwarfLineTable table = library.scanner.getLineTable(unitOffset);
+		int row = table != null ? table.find(address) : -1;
+		String fileName = row >= 0 ? table.getFileName(row) : null;
+		int line = row >= 0 ? table.getLine(row) : 0;
+
+		if (entries.length == 0) {
+			return new Frame[] { new Frame(null, fileName, line, false) };
+		}
+
+		Frame[] frames = new Frame[entries.length];
+
+		// entries are innermost first; each inlined call gives the position of the outer frame
+		for (int depth = 0; depth < entries.length; ++depth) {
+			long offset = entries[depth];
+			String callFileName = null;
+			int callLine = 0;
+
+			seek(cursor, offset);
+
+			boolean inlined = cursor.tag() == DwarfTag.DW_TAG_inlined_subroutine;
+
+			if (inlined) {
+				if (table != null) {
+					callFileName = table.lookupFileName((int) cursor.getConstant(DwarfAttribute.DW_AT_call_file, -1));
+				}
+
+				callLine = (int) cursor.getConstant(DwarfAttribute.DW_AT_call_line, 0);
+			}
+
+			frames[depth] = new Frame(getFunction(library, cursor, offset), fileName, line, inlined);
+			fileName = callFileName;
+			line = callLine;
+		}
+
+		return frames;
+	}
+
+	private long charged;
+
+	private long evictions;
+
+	private long hits;
+
+	private final Map<String, Library> libraries;
+
+	private final long memoryBudget;
+
+	private long misses;
+
+	/**
+	 * Create a symbolizer that keeps libraries open while the total size
+	 * of their files is within the given budget.
+	 *
+	 * @param memoryBudget the largest total size, in bytes, of the files of
+	 *        the open libraries, or zero for no limit; the most recently
+	 *        used library is kept open even if it alone exceeds the budget
+	 */
+	public DwarfSymbolizer(long memoryBudget) {
+		super();
+		this.charged = 0;
+		this.evictions = 0;
+		this.hits = 0;
+		this.libraries = new LinkedHashMap<>(16, 0.75f, true);
+		this.memoryBudget = memoryBudget;
+		this.misses = 0;
+	}
+
+	/**
+	 * Drop the least recently used libraries, other than the given one,
+	 * until the budget is met.
+	 */
+	private void evict(String keep) {
+		Iterator<Map.Entry<String, Library>> entries = libraries.entrySet().iterator();
+
+		while (memoryBudget > 0 && charged > memoryBudget && entries.hasNext()) {
+			Map.Entry<String, Library> entry = entries.next();
+
+			if (!entry.getKey().equals(keep)) {
+				charged -= entry.getValue().charge;
+				evictions += 1;
+				entries.remove();
+			}
+		}
+	}
+
+	/**
+	 * Answer the total size of the files of the open libraries.
+	 */
+	public synchronized long getCharge() {
+		return charged;
+	}
+
+	/**
+	 * Answer the number of libraries dropped to meet the memory budget.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Answer the number of requests for a library that was already open.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized int getLibraryCount() {
+		return libraries.size();
+	}
+
+	/**
+	 * Answer the number of requests for a library that had to be opened.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private Library open(String fileName) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath().normalize();
+		String key = path.toString();
+		FileTime modified = Files.getLastModifiedTime(path);
+
+		synchronized (this) {
+			Library library = libraries.get(key);
+
+			if (library != null && library.modified.equals(modified)) {
+				hits += 1;
+				return library;
+			}
+		}
+
+		// racing threads open equivalent libraries
+		Library library = new Library(new DwarfScanner(key), Files.size(path), modified);
+
+		synchronized (this) {
+			Library previous = libraries.put(key, library);
+
+			if (previous != null) {
+				charged -= previous.charge;
+			}
+
+			charged += library.charge;
+			misses += 1;
+			evict(key);
+		}
+
+		return library;
+	}
+
+	/**
+	 * Answer the frames containing each of the given addresses of the given
+	 * library, innermost first: one for each inlined call and one for the
+	 * subprogram containing them. An address outside all subprograms but
+	 * within a unit answers a single frame with no function; an address
+	 * outside all units answers no frames.
+	 */
+	public Frame[][] symbolize(String fileName, long[] addresses) throws IOException {
+		Library library = open(fileName);
+		AddressIndex index = library.scanner.getAddressIndex();
+		long[] sorted = addresses.clone();
+
+		// lookups in address order share the ranges of each unit
+		Arrays.sort(sorted);
+
+		long[][] entries = index.findEntries(sorted);
+		long[] units = index.findUnits(sorted);
+		Frame[][] sortedFrames = new Frame[sorted.length][];
+
+		try (DieCursor cursor = new DieCursor(library.scanner)) {
+			for (int position = 0; position < sorted.length; ++position) {
+				if (position > 0 && sorted[position - 1] == sorted[position]) {
+					sortedFrames[position] = sortedFrames[position - 1];
+				} else {
+					sortedFrames[position] = symbolize(library, cursor, sorted[position], units[position], entries[position]);
+				}
+			}
+		}
+
+		Frame[][] frames = new Frame[addresses.length][];
+
+		for (int position = 0; position < addresses.length; ++position) {
+			frames[position] = sortedFrames[Arrays.binarySearch(sorted, addresses[position])];
+		}
+
+		return frames;
+	}
+
+}
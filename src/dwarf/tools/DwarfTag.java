@@ -24,6 +24,7 @@ package dwarf.tools;
  * Dwarf tag values.
  *
  * Source: http://www.dwarfstd.org/doc/DWARF4.pdf
+ * and http://www.dwarfstd.org/doc/DWARF5.pdf
  */
 public interface DwarfTag {
 
@@ -87,6 +88,14 @@ public interface DwarfTag {
 	int DW_TAG_type_unit = 0x41;
 	int DW_TAG_rvalue_reference_type = 0x42;
 	int DW_TAG_template_alias = 0x43;
+	int DW_TAG_coarray_type = 0x44;
+	int DW_TAG_generic_subrange = 0x45;
+	int DW_TAG_dynamic_type = 0x46;
+	int DW_TAG_atomic_type = 0x47;
+	int DW_TAG_call_site = 0x48;
+	int DW_TAG_call_site_parameter = 0x49;
+	int DW_TAG_skeleton_unit = 0x4a;
+	int DW_TAG_immutable_type = 0x4b;
 
 	int DW_TAG_lo_user = 0x4080;
 	int DW_TAG_hi_user = 0xffff;
@@ -0,0 +1,1154 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the layouts of structures, unions and classes, the constants of
+ * enumerations, and typedefs from the units of one or more files, writing
+ * them to a stream as they are found, either as a compact binary blob or
+ * as JSON.
+ * <p>
+ * Only the type entries of the unit being scanned are held; when the unit
+ * ends, its types are rendered and written, and the entries are discarded.
+ * A type identical to one already written, from any unit of any file, is
+ * not written again, so the state kept between units is a 64-bit hash for
+ * each distinct type written (and, for the binary format, its strings).
+ * The rendered names of the types of partial units, which other units may
+ * refer to (as dwz arranges), are kept until the file ends; a type in any
+ * other unit cannot be found from outside it and is rendered as "?", and
+ * counted. Types local to subprograms are not extracted.
+ * <p>
+ * Member types are rendered as C declarators, such as "struct J9Object*",
+ * "const char*", "U_8[16]" or "void (*)()". Members of anonymous
+ * structures and unions that have no name themselves are flattened into
+ * the enclosing type; base classes appear as members with empty names.
+ * The bit offsets of bitfields are given as DW_AT_data_bit_offset gives
+ * them, from the start of the enclosing type, and their byte offsets are
+ * those of the bytes holding their first bits, whatever DWARF version
+ * described them.
+ * <p>
+ * The binary format is a sequence of records, introduced by the int MAGIC
+ * and the short VERSION. Each record begins with one of the RECORD_ bytes;
+ * all values are big-endian and strings are referred to by their index in
+ * order of the RECORD_STRING records, which precede their first use.
+ * <ul>
+ * <li>RECORD_STRING: length (int), UTF-8 bytes</li>
+ * <li>RECORD_STRUCTURE: tag (short), name, size (long), member count
+ * (int), then for each member: name, type, byte offset (long), bit size
+ * (int, zero unless a bitfield), bit offset (long)</li>
+ * <li>RECORD_ENUMERATION: name, size (long), constant count (int), then
+ * for each constant: name, value (long)</li>
+ * <li>RECORD_TYPEDEF: name, type</li>
+ * <li>RECORD_END</li>
+ * </ul>
+ * The JSON format is an array of objects with a "kind" of "struct",
+ * "union", "class", "enum" or "typedef", holding the same values.
+ */
+public final class DwarfTypeExtractor implements Closeable {
+
+	private static final class BinaryOutput implements Output {
+
+		private final DataOutputStream out;
+
+		/** the index of each string written */
+		private final Map<String, Integer> strings;
+
+		BinaryOutput(OutputStream out) throws IOException {
+			super();
+			this.out = new DataOutputStream(new BufferedOutputStream(out));
+			this.strings = new HashMap<>();
+			this.out.writeInt(MAGIC);
+			this.out.writeShort(VERSION);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.writeByte(RECORD_END);
+			out.close();
+		}
+
+		/**
+		 * Answer the index of the given string, writing it first if it
+		 * has not been written before.
+		 */
+		private int indexOf(String string) throws IOException {
+			Integer index = strings.get(string);
+
+			if (index == null) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+				index = Integer.valueOf(strings.size());
+				strings.put(string, index);
+				out.writeByte(RECORD_STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			return index.intValue();
+		}
+
+		@Override
+		public void writeEnumeration(String name, long size, List<String> names, List<Long> values)
+				throws IOException {
+			int[] indices = new int[names.size() + 1];
+
+			// strings must precede the record
+			indices[0] = indexOf(name);
+
+			for (int index = 0; index < names.size(); ++index) {
+				indices[index + 1] = indexOf(names.get(index));
+			}
+
+			out.writeByte(RECORD_ENUMERATION);
+			out.writeInt(indices[0]);
+			out.writeLong(size);
+			out.writeInt(names.size());
+
+			for (int index = 0; index < names.size(); ++index) {
+				out.writeInt(indices[index + 1]);
+				out.writeLong(values.get(index).longValue());
+			}
+		}
+
+		@Override
+		public void writeStructure(int tag, String name, long size, List<Member> members) throws IOException {
+			int[] indices = new int[members.size() * 2 + 1];
+
+			// strings must precede the record
+			indices[0] = indexOf(name);
+
+			for (int index = 0; index < members.size(); ++index) {
+				indices[index * 2 + 1] = indexOf(members.get(index).name);
+				indices[index * 2 + 2] = indexOf(members.get(index).type);
+			}
+
+			out.writeByte(RECORD_STRUCTURE);
+			out.writeShort(tag);
+			out.writeInt(indices[0]);
+			out.writeLong(size);
+			out.writeInt(members.size());
+
+			for (int index = 0; index < members.size(); ++index) {
+				Member member = members.get(index);
+
+				out.writeInt(indices[index * 2 + 1]);
+				out.writeInt(indices[index * 2 + 2]);
+				out.writeLong(member.offset);
+				out.writeInt((int) member.bitSize);
+				out.writeLong(member.bitOffset);
+			}
+		}
+
+		@Override
+		public void writeTypedef(String name, String type) throws IOException {
+			int nameIndex = indexOf(name);
+			int typeIndex = indexOf(type);
+
+			out.writeByte(RECORD_TYPEDEF);
+			out.writeInt(nameIndex);
+			out.writeInt(typeIndex);
+		}
+
+	}
+
+	private static final class JsonOutput implements Output {
+
+		private static void appendString(StringBuilder buffer, String string) {
+			buffer.append('"');
+
+			for (int index = 0; index < string.length(); ++index) {
+				char c = string.charAt(index);
+
+				if (c == '"' || c == '\\') {
+					buffer.append('\\').append(c);
+				} else if (c < 0x20) {
+					buffer.append(String.format("\\u%04x", Integer.valueOf(c)));
+				} else {
+					buffer.append(c);
+				}
+			}
+
+			buffer.append('"');
+		}
+
+		private final StringBuilder buffer;
+
+		private boolean first;
+
+		private final Writer out;
+
+		JsonOutput(OutputStream out) throws IOException {
+			super();
+			this.buffer = new StringBuilder();
+			this.first = true;
+			this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			this.out.write('[');
+		}
+
+		private void beginObject(String kind, String name) {
+			buffer.setLength(0);
+			buffer.append(first ? "\n" : ",\n").append("{\"kind\":\"").append(kind).append("\",\"name\":");
+			appendString(buffer, name);
+			first = false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.write("\n]\n");
+			out.close();
+		}
+
+		private void endObject() throws IOException {
+			buffer.append('}');
+			out.append(buffer);
+		}
+
+		@Override
+		public void writeEnumeration(String name, long size, List<String> names, List<Long> values)
+				throws IOException {
+			beginObject("enum", name);
+			buffer.append(",\"size\":").append(size).append(",\"constants\":[");
+
+			for (int index = 0; index < names.size(); ++index) {
+				buffer.append(index == 0 ? "{\"name\":" : ",{\"name\":");
+				appendString(buffer, names.get(index));
+				buffer.append(",\"value\":").append(values.get(index)).append('}');
+			}
+
+			buffer.append(']');
+			endObject();
+		}
+
+		@Override
+		public void writeStructure(int tag, String name, long size, List<Member> members) throws IOException {
+			String kind;
+
+			switch (tag) {
+			case DwarfTag.DW_TAG_class_type:
+				kind = "class";
+				break;
+			case DwarfTag.DW_TAG_union_type:
+				kind = "union";
+				break;
+			default:
+				kind = "struct";
+				break;
+			}
+
+			beginObject(kind, name);
+			buffer.append(",\"size\":").append(size).append(",\"fields\":[");
+
+			for (int index = 0; index < members.size(); ++index) {
+				Member member = members.get(index);
+
+				buffer.append(index == 0 ? "{\"name\":" : ",{\"name\":");
+				appendString(buffer, member.name);
+				buffer.append(",\"type\":");
+				appendString(buffer, member.type);
+				buffer.append(",\"offset\":").append(member.offset);
+
+				if (member.bitSize != 0) {
+					buffer.append(",\"bitSize\":").append(member.bitSize);
+					buffer.append(",\"bitOffset\":").append(member.bitOffset);
+				}
+
+				buffer.append('}');
+			}
+
+			buffer.append(']');
+			endObject();
+		}
+
+		@Override
+		public void writeTypedef(String name, String type) throws IOException {
+			beginObject("typedef", name);
+			buffer.append(",\"type\":");
+			appendString(buffer, type);
+			endObject();
+		}
+
+	}
+
+	/**
+	 * A member of a structure, as it is written.
+	 */
+	private static final class Member {
+
+		final long bitOffset;
+
+		final long bitSize;
+
+		final String name;
+
+		final long offset;
+
+		final String type;
+
+		Member(String name, String type, long offset, long bitSize, long bitOffset) {
+			super();
+			this.bitOffset = bitOffset;
+			this.bitSize = bitSize;
+			this.name = name;
+			this.offset = offset;
+			this.type = type;
+		}
+
+	}
+
+	/**
+	 * A format of the extracted types.
+	 */
+	private interface Output extends Closeable {
+
+		void writeEnumeration(String name, long size, List<String> names, List<Long> values) throws IOException;
+
+		void writeStructure(int tag, String name, long size, List<Member> members) throws IOException;
+
+		void writeTypedef(String name, String type) throws IOException;
+
+	}
+
+	/**
+	 * Receives the entries of each unit in turn.
+	 */
+	private final class Requestor implements DwarfRequestor {
+
+		/** the entry index of each open entry, or -1 for an entry not kept */
+		private int[] stack;
+
+		private int stackSize;
+
+		private long unitOffset;
+
+		Requestor() {
+			super();
+			this.stack = new int[32];
+			this.stackSize = 0;
+			this.unitOffset = 0;
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			return;
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			acceptBlock(attribute, form, -1, ByteBuffer.wrap(data));
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			if (attribute == DwarfAttribute.DW_AT_data_member_location) {
+				setValue(SLOT_LOCATION, DwarfExpression.getSimpleOperand(data, DwarfOperation.DW_OP_plus_uconst, ABSENT));
+			}
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			switch (attribute) {
+			case DwarfAttribute.DW_AT_bit_offset:
+				setValue(SLOT_BIT_OFFSET, value);
+				break;
+			case DwarfAttribute.DW_AT_bit_size:
+				setValue(SLOT_BIT_SIZE, value);
+				break;
+			case DwarfAttribute.DW_AT_byte_size:
+				setValue(SLOT_BYTE_SIZE, value);
+				break;
+			case DwarfAttribute.DW_AT_const_value:
+				setValue(SLOT_VALUE, value);
+				break;
+			case DwarfAttribute.DW_AT_count:
+				setValue(SLOT_ELEMENT_COUNT, value);
+				break;
+			case DwarfAttribute.DW_AT_data_bit_offset:
+				setValue(SLOT_DATA_BIT_OFFSET, value);
+				break;
+			case DwarfAttribute.DW_AT_data_member_location:
+				setValue(SLOT_LOCATION, value);
+				break;
+			case DwarfAttribute.DW_AT_upper_bound:
+				setValue(SLOT_ELEMENT_COUNT, value + 1);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			acceptBlock(attribute, form, expression);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			acceptBlock(attribute, form, offset, expression);
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			if (attribute == DwarfAttribute.DW_AT_declaration && flag && current() >= 0) {
+				declarations[current()] = true;
+			}
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			int entry = current();
+
+			if (attribute != DwarfAttribute.DW_AT_type || entry < 0) {
+				return;
+			}
+
+			switch (form) {
+			case DwarfForm.DW_FORM_ref1:
+			case DwarfForm.DW_FORM_ref2:
+			case DwarfForm.DW_FORM_ref4:
+			case DwarfForm.DW_FORM_ref8:
+			case DwarfForm.DW_FORM_ref_udata:
+				types[entry] = unitOffset + offset;
+				break;
+			case DwarfForm.DW_FORM_ref_addr:
+				types[entry] = offset;
+				break;
+			default:
+				// a type unit signature, which cannot be followed
+				types[entry] = UNRESOLVED;
+				break;
+			}
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			int entry = current();
+
+			if (attribute == DwarfAttribute.DW_AT_name && entry >= 0) {
+				names[entry] = string;
+			}
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			if (stackSize == 0) {
+				partialUnit = tag == DwarfTag.DW_TAG_partial_unit;
+			}
+
+			int entry = isKept(tag) ? addEntry(tag, offset, stackSize > 0 ? stack[stackSize - 1] : -1) : -1;
+
+			if (stackSize == stack.length) {
+				stack = Arrays.copyOf(stack, stackSize * 2);
+			}
+
+			stack[stackSize++] = entry;
+		}
+
+		private int current() {
+			return stackSize > 0 ? stack[stackSize - 1] : -1;
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			stackSize -= 1;
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			entryCount = 0;
+			stackSize = 0;
+			unitOffset = offset;
+		}
+
+		@Override
+		public boolean enterTag(int tag, long offset, boolean hasChildren) {
+			beginTag(tag, offset, hasChildren);
+
+			// the children of subprograms and other code are not types of interest
+			return isKept(tag) || isUnit(tag);
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			try {
+				writeUnit();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public DwarfInterest getInterest() {
+			return INTEREST;
+		}
+
+		private void setValue(int slot, long value) {
+			int entry = current();
+
+			if (entry >= 0) {
+				values[entry * SLOTS + slot] = value;
+			}
+		}
+
+	}
+
+	public static final int FORMAT_BINARY = 0;
+
+	public static final int FORMAT_JSON = 1;
+
+	/** the first int of the binary format */
+	public static final int MAGIC = 0x44545950;
+
+	public static final int RECORD_END = 0;
+
+	public static final int RECORD_ENUMERATION = 3;
+
+	public static final int RECORD_STRING = 1;
+
+	public static final int RECORD_STRUCTURE = 2;
+
+	public static final int RECORD_TYPEDEF = 4;
+
+	/** the version of the binary format */
+	public static final int VERSION = 2;
+
+	/** the value of a slot whose attribute is absent */
+	private static final long ABSENT = Long.MIN_VALUE;
+
+	private static final DwarfInterest INTEREST = DwarfInterest.of(
+			new int[] { DwarfTag.DW_TAG_array_type, DwarfTag.DW_TAG_atomic_type, DwarfTag.DW_TAG_base_type,
+					DwarfTag.DW_TAG_class_type, DwarfTag.DW_TAG_const_type, DwarfTag.DW_TAG_enumeration_type,
+					DwarfTag.DW_TAG_enumerator, DwarfTag.DW_TAG_inheritance, DwarfTag.DW_TAG_member,
+					DwarfTag.DW_TAG_namespace, DwarfTag.DW_TAG_pointer_type, DwarfTag.DW_TAG_ptr_to_member_type,
+					DwarfTag.DW_TAG_reference_type, DwarfTag.DW_TAG_restrict_type,
+					DwarfTag.DW_TAG_rvalue_reference_type, DwarfTag.DW_TAG_structure_type,
+					DwarfTag.DW_TAG_subrange_type, DwarfTag.DW_TAG_subroutine_type, DwarfTag.DW_TAG_typedef,
+					DwarfTag.DW_TAG_union_type, DwarfTag.DW_TAG_unspecified_type, DwarfTag.DW_TAG_volatile_type },
+			new int[] { DwarfAttribute.DW_AT_bit_offset, DwarfAttribute.DW_AT_bit_size, DwarfAttribute.DW_AT_byte_size,
+					DwarfAttribute.DW_AT_const_value, DwarfAttribute.DW_AT_count,
+					DwarfAttribute.DW_AT_data_bit_offset, DwarfAttribute.DW_AT_data_member_location,
+					DwarfAttribute.DW_AT_declaration, DwarfAttribute.DW_AT_name, DwarfAttribute.DW_AT_type,
+					DwarfAttribute.DW_AT_upper_bound }).withChildrenOfTagsOnly();
+
+	/** the deepest chain of types followed to render a type */
+	private static final int MAX_TYPE_DEPTH = 32;
+
+	private static final int SLOT_BIT_OFFSET = 0;
+
+	private static final int SLOT_BIT_SIZE = 1;
+
+	private static final int SLOT_BYTE_SIZE = 2;
+
+	private static final int SLOT_DATA_BIT_OFFSET = 3;
+
+	/** the number of elements of a subrange */
+	private static final int SLOT_ELEMENT_COUNT = 4;
+
+	private static final int SLOT_LOCATION = 5;
+
+	private static final int SLOT_VALUE = 6;
+
+	/** the number of attribute values held for each entry */
+	private static final int SLOTS = 7;
+
+	/** the type of an entry whose type cannot be found */
+	private static final long UNRESOLVED = -2;
+
+	private static long hash(long hash, long value) {
+		// the finalizer of MurmurHash3
+		long mixed = hash * 0x9E3779B97F4A7C15L + value;
+
+		mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+		return mixed ^ (mixed >>> 33);
+	}
+
+	private static long hash(long hash, String string) {
+		long value = string.length();
+
+		for (int index = 0; index < string.length(); ++index) {
+			value = value * 31 + string.charAt(index);
+		}
+
+		return hash(hash, value);
+	}
+
+	private static boolean isAggregate(int tag) {
+		return tag == DwarfTag.DW_TAG_class_type || tag == DwarfTag.DW_TAG_structure_type
+				|| tag == DwarfTag.DW_TAG_union_type;
+	}
+
+	private static boolean isKept(int tag) {
+		return INTEREST.wantsTag(tag);
+	}
+
+	private static boolean isType(int tag) {
+		switch (tag) {
+		case DwarfTag.DW_TAG_enumerator:
+		case DwarfTag.DW_TAG_inheritance:
+		case DwarfTag.DW_TAG_member:
+		case DwarfTag.DW_TAG_namespace:
+		case DwarfTag.DW_TAG_subrange_type:
+			return false;
+		default:
+			return isKept(tag);
+		}
+	}
+
+	private static boolean isUnit(int tag) {
+		return tag == DwarfTag.DW_TAG_compile_unit || tag == DwarfTag.DW_TAG_partial_unit
+				|| tag == DwarfTag.DW_TAG_type_unit;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int format = FORMAT_BINARY;
+		List<String> includes = null;
+		String outputName = null;
+		int index = 0;
+
+		for (; index + 1 < args.length && args[index].startsWith("-"); index += 2) {
+			switch (args[index]) {
+			case "-f":
+				format = "json".equals(args[index + 1]) ? FORMAT_JSON : FORMAT_BINARY;
+				break;
+			case "-i":
+				includes = Arrays.asList(args[index + 1].split(","));
+				break;
+			case "-o":
+				outputName = args[index + 1];
+				break;
+			default:
+				System.err.println("Usage: DwarfTypeExtractor [-f binary|json] [-i name,...] [-o file] file...");
+				return;
+			}
+		}
+
+		OutputStream out = outputName != null ? new FileOutputStream(outputName) : System.out;
+
+		try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(out, format)) {
+			if (includes != null) {
+				extractor.setIncludes(includes);
+			}
+
+			for (; index < args.length; ++index) {
+				extractor.extract(new DwarfScanner(args[index]));
+			}
+
+			if (extractor.getUnresolvedCount() != 0) {
+				System.err.printf("%d types referred to could not be found%n",
+						Integer.valueOf(extractor.getUnresolvedCount()));
+			}
+		}
+	}
+
+	/**
+	 * Apply a qualifier to a type: after a pointer, before anything else.
+	 */
+	private static String qualify(String qualifier, String type) {
+		return type.endsWith("*") ? type + " " + qualifier : qualifier + " " + type;
+	}
+
+	private boolean bigEndian;
+
+	private boolean[] declarations;
+
+	private int duplicateCount;
+
+	private int entryCount;
+
+	private int[] firstChildren;
+
+	/** the hashes of the types written */
+	private final Set<Long> hashes;
+
+	/** the names of the types to extract, or null to extract all */
+	private Set<String> includes;
+
+	/** the last child of each entry, while the unit is being received */
+	private int[] lastChildren;
+
+	private int largestUnit;
+
+	private String[] names;
+
+	private int[] nextSiblings;
+
+	private long[] offsets;
+
+	private final Output output;
+
+	private int[] parents;
+
+	/** whether the unit being received is a partial unit */
+	private boolean partialUnit;
+
+	/** the rendered names of the types of the partial units of the file, by section offset */
+	private final Map<Long, String> sharedTypes;
+
+	private int[] tags;
+
+	private int typeCount;
+
+	/** the section offset of the type of each entry, -1 for none or UNRESOLVED */
+	private long[] types;
+
+	/** the section offsets of the types referred to that could not be found */
+	private final Set<Long> unresolvedTypes;
+
+	/** the attribute values of each entry, in SLOTS slots */
+	private long[] values;
+
+	/**
+	 * Create an extractor writing to the given stream, which is closed when
+	 * the extractor is closed.
+	 *
+	 * @param out the stream
+	 * @param format FORMAT_BINARY or FORMAT_JSON
+	 */
+	public DwarfTypeExtractor(OutputStream out, int format) throws IOException {
+		super();
+		this.bigEndian = false;
+		this.declarations = new boolean[256];
+		this.duplicateCount = 0;
+		this.entryCount = 0;
+		this.firstChildren = new int[256];
+		this.hashes = new HashSet<>();
+		this.includes = null;
+		this.lastChildren = new int[256];
+		this.largestUnit = 0;
+		this.names = new String[256];
+		this.nextSiblings = new int[256];
+		this.offsets = new long[256];
+		this.output = format == FORMAT_JSON ? new JsonOutput(out) : new BinaryOutput(out);
+		this.parents = new int[256];
+		this.partialUnit = false;
+		this.sharedTypes = new HashMap<>();
+		this.tags = new int[256];
+		this.typeCount = 0;
+		this.types = new long[256];
+		this.unresolvedTypes = new HashSet<>();
+		this.values = new long[256 * SLOTS];
+	}
+
+	private int addEntry(int tag, long offset, int parent) {
+		int entry = entryCount++;
+
+		if (entry == tags.length) {
+			int capacity = entry * 2;
+
+			declarations = Arrays.copyOf(declarations, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			lastChildren = Arrays.copyOf(lastChildren, capacity);
+			names = Arrays.copyOf(names, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			tags = Arrays.copyOf(tags, capacity);
+			types = Arrays.copyOf(types, capacity);
+			values = Arrays.copyOf(values, capacity * SLOTS);
+		}
+
+		declarations[entry] = false;
+		firstChildren[entry] = -1;
+		lastChildren[entry] = -1;
+		names[entry] = null;
+		nextSiblings[entry] = -1;
+		offsets[entry] = offset;
+		parents[entry] = parent;
+		tags[entry] = tag;
+		types[entry] = -1;
+		Arrays.fill(values, entry * SLOTS, (entry + 1) * SLOTS, ABSENT);
+
+		if (parent >= 0) {
+			if (lastChildren[parent] >= 0) {
+				nextSiblings[lastChildren[parent]] = entry;
+			} else {
+				firstChildren[parent] = entry;
+			}
+
+			lastChildren[parent] = entry;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Add the members of the given structure to the given list, flattening
+	 * unnamed members of anonymous structures and unions.
+	 */
+	private void addMembers(int structure, long baseOffset, List<Member> members, int depth) {
+		for (int child = firstChildren[structure]; child >= 0; child = nextSiblings[child]) {
+			int tag = tags[child];
+
+			if (tag != DwarfTag.DW_TAG_member && tag != DwarfTag.DW_TAG_inheritance) {
+				continue;
+			}
+
+			if (declarations[child]) {
+				// a static data member, as described before DWARF 5
+				continue;
+			}
+
+			long location = getValue(child, SLOT_LOCATION);
+			long offset = baseOffset + (location != ABSENT ? location : 0);
+			int type = find(types[child]);
+
+			if (names[child] == null && tag == DwarfTag.DW_TAG_member && type >= 0 && isAggregate(tags[type])
+					&& names[type] == null && depth < MAX_TYPE_DEPTH) {
+				addMembers(type, offset, members, depth + 1);
+				continue;
+			}
+
+			long bitSize = getValue(child, SLOT_BIT_SIZE);
+			long bitOffset = 0;
+
+			if (bitSize == ABSENT) {
+				bitSize = 0;
+			} else if (getValue(child, SLOT_DATA_BIT_OFFSET) != ABSENT) {
+				bitOffset = baseOffset * 8 + getValue(child, SLOT_DATA_BIT_OFFSET);
+				offset = bitOffset / 8;
+			} else if (getValue(child, SLOT_BIT_OFFSET) != ABSENT) {
+				// DW_AT_bit_offset counts from the most significant bit of the storage unit
+				long storageSize = getValue(child, SLOT_BYTE_SIZE);
+				long storageBits = (storageSize != ABSENT ? storageSize : getSize(type)) * 8;
+				long fromTop = getValue(child, SLOT_BIT_OFFSET);
+
+				bitOffset = offset * 8 + (bigEndian ? fromTop : storageBits - fromTop - bitSize);
+				offset = bitOffset / 8;
+			} else {
+				bitOffset = offset * 8;
+			}
+
+			members.add(new Member(names[child] != null ? names[child] : "", getTypeName(types[child], 0), offset,
+					bitSize, bitOffset));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+
+	/**
+	 * Extract the types of all units of the given file.
+	 */
+	public void extract(DwarfScanner scanner) throws IOException {
+		bigEndian = scanner.getByteOrder() == ByteOrder.BIG_ENDIAN;
+
+		try {
+			scanner.scanUnits(new Requestor());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			sharedTypes.clear();
+		}
+	}
+
+	/**
+	 * Answer the entry of the current unit at the given section offset,
+	 * or -1 if it is not a kept entry of the unit.
+	 */
+	private int find(long offset) {
+		int entry = offset >= 0 ? Arrays.binarySearch(offsets, 0, entryCount, offset) : -1;
+
+		return entry >= 0 ? entry : -1;
+	}
+
+	/**
+	 * Answer the number of types not written because an identical type
+	 * had already been written.
+	 */
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Answer the largest number of entries held at once: those kept from
+	 * the largest unit.
+	 */
+	public int getLargestUnit() {
+		return largestUnit;
+	}
+
+	/**
+	 * Answer the name of the given entry, qualified by the names of the
+	 * namespaces and types enclosing it.
+	 */
+	private String getQualifiedName(int entry) {
+		String name = names[entry];
+
+		for (int parent = parents[entry]; parent >= 0 && name != null; parent = parents[parent]) {
+			if (names[parent] != null && (isAggregate(tags[parent]) || tags[parent] == DwarfTag.DW_TAG_namespace)) {
+				name = names[parent] + "::" + name;
+			}
+		}
+
+		return name;
+	}
+
+	/**
+	 * Answer the size, in bytes, of the given type, or zero if unknown.
+	 */
+	private long getSize(int entry) {
+		for (int depth = 0; entry >= 0 && depth < MAX_TYPE_DEPTH; ++depth) {
+			long size = getValue(entry, SLOT_BYTE_SIZE);
+
+			if (size != ABSENT) {
+				return size;
+			}
+
+			entry = find(types[entry]);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Answer the number of types written.
+	 */
+	public int getTypeCount() {
+		return typeCount;
+	}
+
+	/**
+	 * Answer the C declarator of the type at the given section offset.
+	 */
+	private String getTypeName(long offset, int depth) {
+		if (offset == -1) {
+			return "void";
+		}
+
+		int entry = find(offset);
+
+		if (entry < 0) {
+			String shared = sharedTypes.get(Long.valueOf(offset));
+
+			if (shared == null) {
+				unresolvedTypes.add(Long.valueOf(offset));
+				return "?";
+			}
+
+			return shared;
+		}
+
+		if (depth > MAX_TYPE_DEPTH) {
+			return "?";
+		}
+
+		String name = getQualifiedName(entry);
+
+		switch (tags[entry]) {
+		case DwarfTag.DW_TAG_array_type:
+			StringBuilder array = new StringBuilder(getTypeName(types[entry], depth + 1));
+
+			for (int child = firstChildren[entry]; child >= 0; child = nextSiblings[child]) {
+				long count = getValue(child, SLOT_ELEMENT_COUNT);
+
+				array.append('[');
+
+				if (count != ABSENT) {
+					array.append(count);
+				}
+
+				array.append(']');
+			}
+
+			return array.toString();
+		case DwarfTag.DW_TAG_class_type:
+			return "class " + (name != null ? name : "<anonymous>");
+		case DwarfTag.DW_TAG_const_type:
+			return qualify("const", getTypeName(types[entry], depth + 1));
+		case DwarfTag.DW_TAG_enumeration_type:
+			return "enum " + (name != null ? name : "<anonymous>");
+		case DwarfTag.DW_TAG_pointer_type:
+			int target = find(types[entry]);
+
+			if (target >= 0 && tags[target] == DwarfTag.DW_TAG_subroutine_type) {
+				return getTypeName(types[target], depth + 1) + " (*)()";
+			}
+
+			return getTypeName(types[entry], depth + 1) + "*";
+		case DwarfTag.DW_TAG_ptr_to_member_type:
+			return getTypeName(types[entry], depth + 1) + " ::*";
+		case DwarfTag.DW_TAG_reference_type:
+			return getTypeName(types[entry], depth + 1) + "&";
+		case DwarfTag.DW_TAG_rvalue_reference_type:
+			return getTypeName(types[entry], depth + 1) + "&&";
+		case DwarfTag.DW_TAG_structure_type:
+			return "struct " + (name != null ? name : "<anonymous>");
+		case DwarfTag.DW_TAG_subroutine_type:
+			return getTypeName(types[entry], depth + 1) + " ()";
+		case DwarfTag.DW_TAG_union_type:
+			return "union " + (name != null ? name : "<anonymous>");
+		case DwarfTag.DW_TAG_volatile_type:
+			return qualify("volatile", getTypeName(types[entry], depth + 1));
+		case DwarfTag.DW_TAG_atomic_type:
+		case DwarfTag.DW_TAG_restrict_type:
+			return getTypeName(types[entry], depth + 1);
+		default:
+			return name != null ? name : "?";
+		}
+	}
+
+	private long getValue(int entry, int slot) {
+		return values[entry * SLOTS + slot];
+	}
+
+	/**
+	 * Answer the number of distinct entries, referred to as types, that
+	 * could not be found, and whose names were rendered as "?": entries
+	 * of other units, except partial units, and type units (which count
+	 * as one).
+	 */
+	public int getUnresolvedCount() {
+		return unresolvedTypes.size();
+	}
+
+	/**
+	 * Answer whether the type just rendered, with the given hash, is new,
+	 * noting it if so.
+	 */
+	private boolean isNew(long hash) {
+		if (hashes.add(Long.valueOf(hash))) {
+			typeCount += 1;
+			return true;
+		}
+
+		duplicateCount += 1;
+		return false;
+	}
+
+	/**
+	 * Extract only the types, whether structures, unions, classes,
+	 * enumerations or typedefs, with the given qualified names.
+	 */
+	public void setIncludes(Collection<String> typeNames) {
+		includes = new HashSet<>(typeNames);
+	}
+
+	private void writeEnumeration(int entry, String name) throws IOException {
+		List<String> constantNames = new ArrayList<>();
+		List<Long> constantValues = new ArrayList<>();
+		long size = getSize(entry);
+		long hash = hash(hash(DwarfTag.DW_TAG_enumeration_type, name), size);
+
+		for (int child = firstChildren[entry]; child >= 0; child = nextSiblings[child]) {
+			if (tags[child] == DwarfTag.DW_TAG_enumerator && names[child] != null) {
+				long value = getValue(child, SLOT_VALUE);
+
+				constantNames.add(names[child]);
+				constantValues.add(Long.valueOf(value));
+				hash = hash(hash(hash, names[child]), value);
+			}
+		}
+
+		if (isNew(hash)) {
+			output.writeEnumeration(name, size, constantNames, constantValues);
+		}
+	}
+
+	private void writeStructure(int entry, String name) throws IOException {
+		List<Member> members = new ArrayList<>();
+		long size = getSize(entry);
+		long hash = hash(hash(tags[entry], name), size);
+
+		addMembers(entry, 0, members, 0);
+
+		for (Member member : members) {
+			hash = hash(hash(hash, member.name), member.type);
+			hash = hash(hash(hash(hash, member.offset), member.bitSize), member.bitOffset);
+		}
+
+		if (isNew(hash)) {
+			output.writeStructure(tags[entry], name, size, members);
+		}
+	}
+
+	/**
+	 * Write the types of the unit just received, then discard its entries.
+	 */
+	private void writeUnit() throws IOException {
+		largestUnit = Math.max(largestUnit, entryCount);
+
+		for (int entry = 0; entry < entryCount; ++entry) {
+			int tag = tags[entry];
+
+			if (declarations[entry]) {
+				continue;
+			}
+
+			String name = getQualifiedName(entry);
+
+			if (name == null) {
+				// anonymous enumerations are how C programs declare constants
+				if (tag == DwarfTag.DW_TAG_enumeration_type && includes == null) {
+					writeEnumeration(entry, "");
+				}
+			} else if (includes != null && !includes.contains(name)) {
+				continue;
+			} else if (isAggregate(tag)) {
+				writeStructure(entry, name);
+			} else if (tag == DwarfTag.DW_TAG_enumeration_type) {
+				writeEnumeration(entry, name);
+			} else if (tag == DwarfTag.DW_TAG_typedef) {
+				String type = getTypeName(types[entry], 0);
+
+				if (isNew(hash(hash(DwarfTag.DW_TAG_typedef, name), type))) {
+					output.writeTypedef(name, type);
+				}
+			}
+		}
+
+		if (partialUnit) {
+			for (int entry = 0; entry < entryCount; ++entry) {
+				if (isType(tags[entry])) {
+					sharedTypes.put(Long.valueOf(offsets[entry]), getTypeName(offsets[entry], 0));
+				}
+			}
+		}
+
+		Arrays.fill(names, 0, entryCount, null);
+		entryCount = 0;
+	}
+
+}
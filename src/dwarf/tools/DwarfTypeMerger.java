@@ -0,0 +1,651 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Identifies structurally identical types among the units of one or more
+ * files, so that each set of identical types may be represented by a single
+ * canonical entry.
+ * <p>
+ * Every entry with a type tag is a node. The local description of a node
+ * covers its tag and attributes, and those of its descendants that are not
+ * themselves types (members, enumerators, subranges, parameters), but not
+ * the values of references, nor attributes that depend on where a type was
+ * declared (siblings and source coordinates). References to other types,
+ * and nested types, are edges.
+ * <p>
+ * Nodes are first partitioned by a hash of their local description. Each
+ * round then refines the partition by mixing into the hash of each node
+ * the hashes of its edges in order, until the number of classes no longer
+ * changes. The final partition groups types that cannot be told apart by
+ * following references from them, so recursive types (such as a structure
+ * with a pointer to itself) are merged like any other. Each round is
+ * computed in parallel, one task per unit.
+ * <p>
+ * Classes are distinguished by 64-bit hashes, so types are assumed to be
+ * distinct when their hashes differ and identical otherwise.
+ */
+public final class DwarfTypeMerger {
+
+	/** the hash mixed in for an edge to another type */
+	private static final long EDGE = 0x45444745L;
+
+	/** the hash mixed in for a reference to an entry that is not a type */
+	private static final long EXTERNAL = 0x45585445L;
+
+	private static final class Segment {
+
+		int edgeCount;
+
+		/** the index in edges of the first edge of each node, relative to start */
+		int[] edgeStarts;
+
+		/** the nodes referred to, in order */
+		int[] edges;
+
+		final int end;
+
+		final int start;
+
+		Segment(int start, int end) {
+			super();
+			this.edgeCount = 0;
+			this.edgeStarts = new int[end - start + 1];
+			this.edges = new int[16];
+			this.end = end;
+			this.start = start;
+		}
+
+		void addEdge(int node) {
+			int index = edgeCount++;
+
+			if (index >= edges.length) {
+				edges = Arrays.copyOf(edges, index + (index >> 1) + 16);
+			}
+
+			edges[index] = node;
+		}
+
+	}
+
+	private interface SegmentTask {
+
+		void run(Segment segment);
+
+	}
+
+	private static void addSegment(List<Segment> segments, int start, int end) {
+		if (start < end) {
+			segments.add(new Segment(start, end));
+		}
+	}
+
+	private static long hashBlock(ByteBuffer block) {
+		long hash = block.remaining();
+
+		for (int index = block.position(); index < block.limit(); ++index) {
+			hash = hash * 31 + block.get(index);
+		}
+
+		return mix(hash);
+	}
+
+	private static long hashString(String string) {
+		long hash = string.length();
+
+		for (int index = 0; index < string.length(); ++index) {
+			hash = hash * 31 + string.charAt(index);
+		}
+
+		return mix(hash);
+	}
+
+	/**
+	 * Answer the types of the given models, which must hold all attributes,
+	 * merged using at most the given number of threads.
+	 */
+	public static DwarfTypeMerger merge(int parallelism, DwarfModel... models) {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+		try {
+			return new DwarfTypeMerger(models.clone(), pool);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Answer the types of the given scanned files, merged using at most the
+	 * given number of threads. A model of each file is built, concurrently.
+	 */
+	public static DwarfTypeMerger merge(int parallelism, DwarfScanner... scanners) {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+		try {
+			List<Future<DwarfModel>> tasks = new ArrayList<>(scanners.length);
+
+			for (DwarfScanner scanner : scanners) {
+				tasks.add(pool.submit(() -> {
+					DwarfModel model = new DwarfModel(scanner);
+
+					scanner.scanUnits(model);
+					model.trimToSize();
+
+					return model;
+				}));
+			}
+
+			DwarfModel[] models = new DwarfModel[scanners.length];
+
+			for (int file = 0; file < models.length; ++file) {
+				models[file] = DwarfScanner.await(tasks.get(file));
+			}
+
+			return new DwarfTypeMerger(models, pool);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static long mix(long hash) {
+		// the finalizer of MurmurHash3
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+		return hash ^ (hash >>> 33);
+	}
+
+	private static long mix(long hash, long value) {
+		return mix(hash * 0x9E3779B97F4A7C15L + value);
+	}
+
+	/**
+	 * Compute the next hashes of the nodes of a segment from the previous
+	 * hashes of those nodes and of their edges.
+	 */
+	private static void refine(Segment segment, long[] previous, long[] hashes) {
+		int[] edgeStarts = segment.edgeStarts;
+		int[] edges = segment.edges;
+
+		for (int node = segment.start; node < segment.end; ++node) {
+			int index = node - segment.start;
+			long hash = previous[node];
+
+			for (int edge = edgeStarts[index]; edge < edgeStarts[index + 1]; ++edge) {
+				hash = mix(hash, previous[edges[edge]]);
+			}
+
+			hashes[node] = hash;
+		}
+	}
+
+
+	private static void runAll(ForkJoinPool pool, List<Segment> segments, SegmentTask task) {
+		List<Future<?>> tasks = new ArrayList<>(segments.size());
+
+		for (Segment segment : segments) {
+			tasks.add(pool.submit(() -> task.run(segment)));
+		}
+
+		for (Future<?> future : tasks) {
+			DwarfScanner.await(future);
+		}
+	}
+
+	/**
+	 * Give each resolved declaration the hash of its definition.
+	 */
+	private static void shareAliasHashes(long[] hashes, int[] aliases) {
+		for (int node = 0; node < hashes.length; ++node) {
+			if (aliases[node] >= 0) {
+				hashes[node] = hashes[aliases[node]];
+			}
+		}
+	}
+
+	/**
+	 * Sort and remove duplicates from the given hashes in place, answering
+	 * the number of distinct values.
+	 */
+	private static int unique(long[] hashes) {
+		int count = 0;
+
+		Arrays.sort(hashes);
+
+		for (int index = 0; index < hashes.length; ++index) {
+			if (count == 0 || hashes[count - 1] != hashes[index]) {
+				hashes[count++] = hashes[index];
+			}
+		}
+
+		return count;
+	}
+
+	/** the node standing for each class */
+	private final int[] canonicalNodes;
+
+	/** the class of each node */
+	private final int[] classes;
+
+	/** the number of nodes in each class */
+	private final int[] classSizes;
+
+	private final DwarfModel[] models;
+
+	/** the entry of each node */
+	private final int[] nodeEntries;
+
+	/** the file of each node */
+	private final int[] nodeFiles;
+
+	/** the node of each entry of each file, or -1 */
+	private final int[][] nodesOfEntries;
+
+	private int rounds;
+
+	private DwarfTypeMerger(DwarfModel[] models, ForkJoinPool pool) {
+		super();
+		this.models = models;
+		this.nodesOfEntries = new int[models.length][];
+		this.rounds = 0;
+
+		List<Segment> segments = new ArrayList<>();
+		int nodeCount = 0;
+
+		for (int file = 0; file < models.length; ++file) {
+			DwarfModel model = models[file];
+			int[] nodesOfEntry = new int[model.getEntryCount()];
+			int segmentStart = nodeCount;
+			int unit = -1;
+
+			// each unit is a segment
+			for (int entry = 0; entry < nodesOfEntry.length; ++entry) {
+				int entryUnit = model.getUnit(entry);
+
+				if (entryUnit != unit) {
+					addSegment(segments, segmentStart, nodeCount);
+					segmentStart = nodeCount;
+					unit = entryUnit;
+				}
+
+				nodesOfEntry[entry] = DwarfIndexFile.isTypeTag(model.getTag(entry)) ? nodeCount++ : -1;
+			}
+
+			addSegment(segments, segmentStart, nodeCount);
+			nodesOfEntries[file] = nodesOfEntry;
+		}
+
+		this.nodeEntries = new int[nodeCount];
+		this.nodeFiles = new int[nodeCount];
+
+		for (int file = 0; file < models.length; ++file) {
+			int[] nodesOfEntry = nodesOfEntries[file];
+
+			for (int entry = 0; entry < nodesOfEntry.length; ++entry) {
+				int node = nodesOfEntry[entry];
+
+				if (node >= 0) {
+					nodeEntries[node] = entry;
+					nodeFiles[node] = file;
+				}
+			}
+		}
+
+		long[] localHashes = new long[nodeCount];
+
+		runAll(pool, segments, segment -> describe(segment, localHashes));
+
+		int[] aliases = new int[nodeCount];
+		long[] hashes;
+
+		Arrays.fill(aliases, -1);
+
+		do {
+			hashes = partition(pool, segments, localHashes, aliases);
+		} while (resolveDeclarations(hashes, aliases));
+
+		// number the classes in order of their canonical nodes, which are not declarations
+		long[] distinct = hashes.clone();
+		int classCount = unique(distinct);
+		int[] numbers = new int[classCount];
+
+		Arrays.fill(numbers, -1);
+
+		this.canonicalNodes = new int[classCount];
+		this.classes = new int[nodeCount];
+		this.classSizes = new int[classCount];
+
+		int numbered = 0;
+
+		for (int node = 0; node < nodeCount; ++node) {
+			if (aliases[node] < 0) {
+				int index = Arrays.binarySearch(distinct, 0, classCount, hashes[node]);
+
+				if (numbers[index] < 0) {
+					canonicalNodes[numbered] = node;
+					numbers[index] = numbered++;
+				}
+
+				classes[node] = numbers[index];
+			}
+		}
+
+		for (int node = 0; node < nodeCount; ++node) {
+			if (aliases[node] >= 0) {
+				classes[node] = classes[aliases[node]];
+			}
+
+			classSizes[classes[node]] += 1;
+		}
+	}
+
+	/**
+	 * Compute the local hashes and the edges of the nodes of a segment.
+	 */
+	private void describe(Segment segment, long[] hashes) {
+		for (int node = segment.start; node < segment.end; ++node) {
+			segment.edgeStarts[node - segment.start] = segment.edgeCount;
+			hashes[node] = describeEntry(segment, nodeFiles[node], nodeEntries[node]);
+		}
+
+		segment.edgeStarts[segment.end - segment.start] = segment.edgeCount;
+		segment.edges = Arrays.copyOf(segment.edges, segment.edgeCount);
+	}
+
+	/**
+	 * Answer the local hash of an entry and those of its descendants that are
+	 * not types, appending the nodes they refer to, in order, to the edges.
+	 */
+	private long describeEntry(Segment segment, int file, int entry) {
+		DwarfModel model = models[file];
+		int[] nodesOfEntry = nodesOfEntries[file];
+		int attributeCount = model.getAttributeCount(entry);
+		long hash = mix(model.getTag(entry));
+
+		for (int position = 0; position < attributeCount; ++position) {
+			int attribute = model.getAttribute(entry, position);
+			int form = model.getForm(entry, attribute);
+			long value;
+
+			switch (attribute) {
+			case DwarfAttribute.DW_AT_decl_column:
+			case DwarfAttribute.DW_AT_decl_file:
+			case DwarfAttribute.DW_AT_decl_line:
+			case DwarfAttribute.DW_AT_sibling:
+				continue;
+			default:
+				break;
+			}
+
+			switch (form) {
+			case DwarfForm.DW_FORM_block:
+			case DwarfForm.DW_FORM_block1:
+			case DwarfForm.DW_FORM_block2:
+			case DwarfForm.DW_FORM_block4:
+			case DwarfForm.DW_FORM_data16:
+			case DwarfForm.DW_FORM_exprloc:
+				value = hashBlock(model.getBlock(entry, attribute));
+				break;
+			case DwarfForm.DW_FORM_data1:
+			case DwarfForm.DW_FORM_data2:
+			case DwarfForm.DW_FORM_data4:
+			case DwarfForm.DW_FORM_data8:
+			case DwarfForm.DW_FORM_implicit_const:
+			case DwarfForm.DW_FORM_sdata:
+			case DwarfForm.DW_FORM_udata:
+				value = model.getConstant(entry, attribute, 0);
+				break;
+			case DwarfForm.DW_FORM_flag:
+			case DwarfForm.DW_FORM_flag_present:
+				value = model.getFlag(entry, attribute) ? 1 : 0;
+				break;
+			case DwarfForm.DW_FORM_ref1:
+			case DwarfForm.DW_FORM_ref2:
+			case DwarfForm.DW_FORM_ref4:
+			case DwarfForm.DW_FORM_ref8:
+			case DwarfForm.DW_FORM_ref_addr:
+			case DwarfForm.DW_FORM_ref_udata:
+				int target = model.findEntry(model.getReference(entry, attribute));
+
+				if (target >= 0 && nodesOfEntry[target] >= 0) {
+					segment.addEdge(nodesOfEntry[target]);
+					value = EDGE;
+				} else if (target >= 0) {
+					// describe only the kind of thing referred to
+					String name = model.getString(target, DwarfAttribute.DW_AT_name);
+
+					value = mix(EXTERNAL + model.getTag(target), name == null ? 0 : hashString(name));
+				} else {
+					value = EXTERNAL;
+				}
+				break;
+			case DwarfForm.DW_FORM_ref_sig8:
+				value = model.getReference(entry, attribute);
+				break;
+			case DwarfForm.DW_FORM_line_strp:
+			case DwarfForm.DW_FORM_string:
+			case DwarfForm.DW_FORM_strp:
+			case DwarfForm.DW_FORM_strx:
+			case DwarfForm.DW_FORM_strx1:
+			case DwarfForm.DW_FORM_strx2:
+			case DwarfForm.DW_FORM_strx3:
+			case DwarfForm.DW_FORM_strx4:
+				value = hashString(model.getString(entry, attribute));
+				break;
+			default:
+				// addresses and section offsets depend on where a type appears
+				continue;
+			}
+
+			hash = mix(mix(hash, attribute), value);
+		}
+
+		for (int child = model.getFirstChild(entry); child >= 0; child = model.getNextSibling(child)) {
+			if (nodesOfEntry[child] >= 0) {
+				segment.addEdge(nodesOfEntry[child]);
+				hash = mix(hash, EDGE);
+			} else {
+				hash = mix(hash, describeEntry(segment, file, child));
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Answer the entry standing for the given class.
+	 */
+	public int getCanonicalEntry(int typeId) {
+		return nodeEntries[canonicalNodes[typeId]];
+	}
+
+	/**
+	 * Answer the index of the file of the entry standing for the given class.
+	 */
+	public int getCanonicalFile(int typeId) {
+		return nodeFiles[canonicalNodes[typeId]];
+	}
+
+	/**
+	 * Answer the number of classes of identical types.
+	 */
+	public int getClassCount() {
+		return canonicalNodes.length;
+	}
+
+	/**
+	 * Answer the number of types that are identical to a type
+	 * that appears before them.
+	 */
+	public int getDuplicateCount() {
+		return classes.length - canonicalNodes.length;
+	}
+
+	/**
+	 * Answer the number of types in the given class.
+	 */
+	public int getInstanceCount(int typeId) {
+		return classSizes[typeId];
+	}
+
+	/**
+	 * Answer the model of the file with the given index.
+	 */
+	public DwarfModel getModel(int file) {
+		return models[file];
+	}
+
+	/**
+	 * Answer the number of files whose types were merged.
+	 */
+	public int getModelCount() {
+		return models.length;
+	}
+
+	/**
+	 * Answer the models of the files whose types were merged.
+	 */
+	public DwarfModel[] getModels() {
+		return models.clone();
+	}
+
+	/**
+	 * Answer the number of rounds of refinement needed for the partition
+	 * to become stable.
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Answer the number of type entries in all files.
+	 */
+	public int getTypeCount() {
+		return classes.length;
+	}
+
+	/**
+	 * Answer the class of identical types to which an entry of a model
+	 * belongs, or -1 if the entry is not a type. Classes are numbered in
+	 * order of their canonical entries.
+	 */
+	public int getTypeId(int file, int entry) {
+		int node = nodesOfEntries[file][entry];
+
+		return node < 0 ? -1 : classes[node];
+	}
+
+	/**
+	 * Refine a partition of the nodes, starting from their local hashes,
+	 * until it is stable. Declarations that have been resolved to a
+	 * definition always share its hash.
+	 */
+	private long[] partition(ForkJoinPool pool, List<Segment> segments, long[] localHashes, int[] aliases) {
+		long[] hashes = localHashes.clone();
+
+		shareAliasHashes(hashes, aliases);
+
+		int classCount = unique(hashes.clone());
+
+		for (;;) {
+			long[] previous = hashes.clone();
+
+			runAll(pool, segments, segment -> refine(segment, previous, hashes));
+			shareAliasHashes(hashes, aliases);
+			rounds += 1;
+
+			int refinedCount = unique(hashes.clone());
+
+			if (refinedCount == classCount) {
+				return hashes;
+			}
+
+			classCount = refinedCount;
+		}
+	}
+
+	/**
+	 * Resolve each named declaration of a structure, class, union or
+	 * enumeration to a definition of the same kind and name, if all such
+	 * definitions are identical. Answer whether any declarations were
+	 * newly resolved.
+	 */
+	private boolean resolveDeclarations(long[] hashes, int[] aliases) {
+		Map<String, Integer> definitions = new HashMap<>();
+		boolean resolved = false;
+
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int node = 0; node < hashes.length; ++node) {
+				DwarfModel model = models[nodeFiles[node]];
+				int entry = nodeEntries[node];
+				String key;
+
+				switch (model.getTag(entry)) {
+				case DwarfTag.DW_TAG_class_type:
+				case DwarfTag.DW_TAG_enumeration_type:
+				case DwarfTag.DW_TAG_structure_type:
+				case DwarfTag.DW_TAG_union_type:
+					String name = model.getString(entry, DwarfAttribute.DW_AT_name);
+
+					if (name == null) {
+						continue;
+					}
+
+					key = model.getTag(entry) + ":" + name;
+					break;
+				default:
+					continue;
+				}
+
+				boolean declaration = model.getFlag(entry, DwarfAttribute.DW_AT_declaration);
+
+				if (pass == 0 && !declaration) {
+					Integer definition = definitions.putIfAbsent(key, Integer.valueOf(node));
+
+					// definitions that differ are marked ambiguous by -1
+					if (definition != null && definition.intValue() >= 0
+							&& hashes[definition.intValue()] != hashes[node]) {
+						definitions.put(key, Integer.valueOf(-1));
+					}
+				} else if (pass == 1 && declaration && aliases[node] < 0) {
+					Integer definition = definitions.get(key);
+
+					if (definition != null && definition.intValue() >= 0) {
+						aliases[node] = definition.intValue();
+						resolved = true;
+					}
+				}
+			}
+		}
+
+		return resolved;
+	}
+
+}
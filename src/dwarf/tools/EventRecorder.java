@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A requestor that records the events it receives so they can later be
+ * replayed, in the same order, to another requestor.
+ */
+final class EventRecorder implements DwarfRequestor {
+
+	private static final int ACCEPT_ADDRESS = 0;
+
+	private static final int ACCEPT_BLOCK = 1;
+
+	private static final int ACCEPT_CONSTANT = 2;
+
+	private static final int ACCEPT_EXPRESSION = 3;
+
+	private static final int ACCEPT_FLAG = 4;
+
+	private static final int ACCEPT_REFERENCE = 5;
+
+	private static final int ACCEPT_STRING = 6;
+
+	private static final int BEGIN_TAG = 7;
+
+	private static final int END_TAG = 8;
+
+	private static final int ENTER_UNIT = 9;
+
+	private static final int EXIT_UNIT = 10;
+
+	private static final int ACCEPT_BLOCK_VIEW = 11;
+
+	private static final int ACCEPT_EXPRESSION_VIEW = 12;
+
+	private int eventCount;
+
+	/** three entries per event: kind, tag or attribute, form or flag */
+	private int[] events;
+
+	private int objectCount;
+
+	private Object[] objects;
+
+	private int valueCount;
+
+	private long[] values;
+
+	EventRecorder() {
+		super();
+		this.eventCount = 0;
+		this.events = new int[3 * 256];
+		this.objectCount = 0;
+		this.objects = new Object[64];
+		this.valueCount = 0;
+		this.values = new long[256];
+	}
+
+	@Override
+	public void acceptAddress(int attribute, int form, long address) {
+		addEvent(ACCEPT_ADDRESS, attribute, form);
+		addValue(address);
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, byte[] data) {
+		addEvent(ACCEPT_BLOCK, attribute, form);
+		addObject(data);
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+		addEvent(ACCEPT_BLOCK_VIEW, attribute, form);
+		addValue(offset);
+		addObject(data);
+	}
+
+	@Override
+	public void acceptConstant(int attribute, int form, long value) {
+		addEvent(ACCEPT_CONSTANT, attribute, form);
+		addValue(value);
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, byte[] expression) {
+		addEvent(ACCEPT_EXPRESSION, attribute, form);
+		addObject(expression);
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+		addEvent(ACCEPT_EXPRESSION_VIEW, attribute, form);
+		addValue(offset);
+		addObject(expression);
+	}
+
+	@Override
+	public void acceptFlag(int attribute, int form, boolean flag) {
+		addEvent(ACCEPT_FLAG, attribute, form);
+		addValue(flag ? 1 : 0);
+	}
+
+	@Override
+	public void acceptReference(int attribute, int form, long offset) {
+		addEvent(ACCEPT_REFERENCE, attribute, form);
+		addValue(offset);
+	}
+
+	@Override
+	public void acceptString(int attribute, int form, String string) {
+		addEvent(ACCEPT_STRING, attribute, form);
+		addObject(string);
+	}
+
+	private void addEvent(int kind, int a, int b) {
+		int index = eventCount * 3;
+
+		if (index + 3 > events.length) {
+			events = Arrays.copyOf(events, events.length * 2);
+		}
+
+		events[index + 0] = kind;
+		events[index + 1] = a;
+		events[index + 2] = b;
+		eventCount += 1;
+	}
+
+	private void addObject(Object object) {
+		if (objectCount == objects.length) {
+			objects = Arrays.copyOf(objects, objectCount * 2);
+		}
+
+		objects[objectCount++] = object;
+	}
+
+	private void addValue(long value) {
+		if (valueCount == values.length) {
+			values = Arrays.copyOf(values, valueCount * 2);
+		}
+
+		values[valueCount++] = value;
+	}
+
+	@Override
+	public void beginTag(int tag, long offset, boolean hasChildren) {
+		addEvent(BEGIN_TAG, tag, hasChildren ? 1 : 0);
+		addValue(offset);
+	}
+
+	@Override
+	public void endTag(int tag, boolean hasChildren) {
+		addEvent(END_TAG, tag, hasChildren ? 1 : 0);
+	}
+
+	@Override
+	public void enterCompilationUnit(long offset) {
+		addEvent(ENTER_UNIT, 0, 0);
+		addValue(offset);
+	}
+
+	@Override
+	public void exitCompilationUnit(long offset) {
+		addEvent(EXIT_UNIT, 0, 0);
+		addValue(offset);
+	}
+
+	/**
+	 * Deliver the recorded events to the given requestor. If the requestor
+	 * declines the children of a tag, the events for those children are
+	 * not delivered.
+	 */
+	void replay(DwarfRequestor requestor) {
+		int objectIndex = 0;
+		int valueIndex = 0;
+		// the depth of the tag being skipped within a declined tag, or -1
+		int skipDepth = -1;
+
+		for (int index = 0, limit = eventCount * 3; index < limit; index += 3) {
+			int kind = events[index];
+			int a = events[index + 1];
+			int b = events[index + 2];
+
+			if (skipDepth > 0 || (skipDepth == 0 && kind == BEGIN_TAG)) {
+				// this event belongs to a child of a declined tag
+				if (kind == BEGIN_TAG) {
+					skipDepth += 1;
+				} else if (kind == END_TAG) {
+					skipDepth -= 1;
+				}
+
+				if (kind == ACCEPT_BLOCK_VIEW || kind == ACCEPT_EXPRESSION_VIEW) {
+					objectIndex += 1;
+					valueIndex += 1;
+				} else if (kind == ACCEPT_BLOCK || kind == ACCEPT_EXPRESSION || kind == ACCEPT_STRING) {
+					objectIndex += 1;
+				} else if (kind != END_TAG) {
+					valueIndex += 1;
+				}
+
+				continue;
+			}
+
+			switch (kind) {
+			case ACCEPT_ADDRESS:
+				requestor.acceptAddress(a, b, values[valueIndex++]);
+				break;
+			case ACCEPT_BLOCK:
+				requestor.acceptBlock(a, b, (byte[]) objects[objectIndex++]);
+				break;
+			case ACCEPT_BLOCK_VIEW:
+				requestor.acceptBlock(a, b, values[valueIndex++], (ByteBuffer) objects[objectIndex++]);
+				break;
+			case ACCEPT_CONSTANT:
+				requestor.acceptConstant(a, b, values[valueIndex++]);
+				break;
+			case ACCEPT_EXPRESSION:
+				requestor.acceptExpression(a, b, (byte[]) objects[objectIndex++]);
+				break;
+			case ACCEPT_EXPRESSION_VIEW:
+				requestor.acceptExpression(a, b, values[valueIndex++], (ByteBuffer) objects[objectIndex++]);
+				break;
+			case ACCEPT_FLAG:
+				requestor.acceptFlag(a, b, values[valueIndex++] != 0);
+				break;
+			case ACCEPT_REFERENCE:
+				requestor.acceptReference(a, b, values[valueIndex++]);
+				break;
+			case ACCEPT_STRING:
+				requestor.acceptString(a, b, (String) objects[objectIndex++]);
+				break;
+			case BEGIN_TAG:
+				if (!requestor.enterTag(a, values[valueIndex++], b != 0) && b != 0) {
+					skipDepth = 0;
+				}
+				break;
+			case END_TAG:
+				skipDepth = -1;
+				requestor.endTag(a, b != 0);
+				break;
+			case ENTER_UNIT:
+				requestor.enterCompilationUnit(values[valueIndex++]);
+				break;
+			case EXIT_UNIT:
+				requestor.exitCompilationUnit(values[valueIndex++]);
+				break;
+			default:
+				throw new IllegalStateException("event=" + kind);
+			}
+		}
+	}
+
+}
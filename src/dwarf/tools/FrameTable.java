@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The rows of the call frame table described by one frame description
+ * entry: for each range of code addresses, the rule for computing the
+ * canonical frame address (CFA) and the rule for recovering each register
+ * of the caller. Rows are held in parallel primitive arrays sorted by
+ * address, so the row for an address is found by a binary search.
+ *
+ * @see CallFrameInfo#findTable(long)
+ */
+public final class FrameTable {
+
+	/** the register is not described; its treatment is defined by the ABI */
+	public static final int RULE_UNSPECIFIED = 0;
+
+	/** the register has no recoverable value in the caller */
+	public static final int RULE_UNDEFINED = 1;
+
+	/** the register has not been modified from the caller */
+	public static final int RULE_SAME_VALUE = 2;
+
+	/** the register is saved at the CFA plus the rule value */
+	public static final int RULE_OFFSET = 3;
+
+	/** the register's value is the CFA plus the rule value */
+	public static final int RULE_VAL_OFFSET = 4;
+
+	/** the register is saved in the register named by the rule value */
+	public static final int RULE_REGISTER = 5;
+
+	/** the register is saved at the address computed by an expression */
+	public static final int RULE_EXPRESSION = 6;
+
+	/** the register's value is computed by an expression */
+	public static final int RULE_VAL_EXPRESSION = 7;
+
+	private final long[] addresses;
+
+	/** the CFA register of each row, or -1 if the CFA is computed by an expression */
+	private final int[] cfaRegisters;
+
+	/** the CFA offset of each row, or the section offset of its CFA expression */
+	private final long[] cfaValues;
+
+	/** the number of registers described by each row */
+	private final int columns;
+
+	private final long end;
+
+	private final int returnAddressRegister;
+
+	/** the rule values of each row, for each register */
+	private final long[] ruleValues;
+
+	/** the rules of each row, for each register */
+	private final byte[] rules;
+
+	/** the section holding any expressions, at the offsets given by rule values */
+	private final ByteBuffer section;
+
+	FrameTable(long[] addresses, long end, int[] cfaRegisters, long[] cfaValues, int columns, byte[] rules,
+			long[] ruleValues, int returnAddressRegister, ByteBuffer section) {
+		super();
+		this.addresses = addresses;
+		this.cfaRegisters = cfaRegisters;
+		this.cfaValues = cfaValues;
+		this.columns = columns;
+		this.end = end;
+		this.returnAddressRegister = returnAddressRegister;
+		this.ruleValues = ruleValues;
+		this.rules = rules;
+		this.section = section;
+	}
+
+	/**
+	 * Answer the row describing the given address, or -1 if the address
+	 * is outside the code described by this table.
+	 */
+	public int find(long address) {
+		if (addresses.length == 0 || address < addresses[0] || address >= end) {
+			return -1;
+		}
+
+		int low = 0;
+		int high = addresses.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (addresses[middle] <= address) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return high;
+	}
+
+	/**
+	 * Answer the first address described by the given row.
+	 */
+	public long getAddress(int row) {
+		return addresses[row];
+	}
+
+	/**
+	 * Answer the expression that computes the CFA for the given row,
+	 * or null if the CFA is a register plus an offset.
+	 */
+	public ByteBuffer getCfaExpression(int row) {
+		return cfaRegisters[row] < 0 ? getExpression(cfaValues[row]) : null;
+	}
+
+	/**
+	 * Answer the offset added to the CFA register for the given row.
+	 */
+	public long getCfaOffset(int row) {
+		return cfaRegisters[row] < 0 ? 0 : cfaValues[row];
+	}
+
+	/**
+	 * Answer the register whose value, plus an offset, is the CFA for the
+	 * given row, or -1 if the CFA is computed by an expression.
+	 */
+	public int getCfaRegister(int row) {
+		return cfaRegisters[row];
+	}
+
+	/**
+	 * Answer the address following the code described by this table.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	private ByteBuffer getExpression(long offset) {
+		DataSource data = new DataSource(section).duplicate().position(offset);
+
+		return data.getView(AttributeReader.checkUInt(data.getUDATA()));
+	}
+
+	/**
+	 * Answer the expression of a RULE_EXPRESSION or RULE_VAL_EXPRESSION
+	 * rule for the given register, or null for other rules.
+	 */
+	public ByteBuffer getExpression(int row, int register) {
+		switch (getRule(row, register)) {
+		case RULE_EXPRESSION:
+		case RULE_VAL_EXPRESSION:
+			return getExpression(ruleValues[row * columns + register]);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Answer the number of registers for which rows may have rules.
+	 */
+	public int getRegisterCount() {
+		return columns;
+	}
+
+	/**
+	 * Answer the register that holds the return address.
+	 */
+	public int getReturnAddressRegister() {
+		return returnAddressRegister;
+	}
+
+	public int getRowCount() {
+		return addresses.length;
+	}
+
+	/**
+	 * Answer the rule, one of the RULE_ values, for recovering the given
+	 * register of the caller at the given row.
+	 */
+	public int getRule(int row, int register) {
+		return 0 <= register && register < columns ? rules[row * columns + register] : RULE_UNSPECIFIED;
+	}
+
+	/**
+	 * Answer the value of the rule for the given register at the given row:
+	 * the offset from the CFA of a RULE_OFFSET or RULE_VAL_OFFSET rule, the
+	 * register of a RULE_REGISTER rule, or zero.
+	 */
+	public long getRuleValue(int row, int register) {
+		switch (getRule(row, register)) {
+		case RULE_OFFSET:
+		case RULE_VAL_OFFSET:
+		case RULE_REGISTER:
+			return ruleValues[row * columns + register];
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Answer the first address of the code described by this table.
+	 */
+	public long getStart() {
+		return addresses.length != 0 ? addresses[0] : end;
+	}
+
+}
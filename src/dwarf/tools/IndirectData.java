@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The values of one unit that are held outside the .debug_info section:
+ * strings in the .debug_str and .debug_line_str sections and, for DWARF 5
+ * units, the entries of the unit's contributions to the .debug_str_offsets
+ * and .debug_addr tables, which are found by index.
+ */
+final class IndirectData {
+
+	private static int checkPosition(ByteBuffer section, long position, int size) {
+		if (0 <= position && position <= section.limit() - size) {
+			return (int) position;
+		}
+
+		throw new IllegalArgumentException("position=" + position);
+	}
+
+	private final long addrBase;
+
+	private final ByteBuffer addresses;
+
+	private final int addressSize;
+
+	private final StringTable lineStrings;
+
+	private final int offsetSize;
+
+	private final boolean splitObject;
+
+	private final ByteBuffer stringOffsets;
+
+	private final long strOffsetsBase;
+
+	private final StringTable strings;
+
+	IndirectData(StringTable strings, StringTable lineStrings, ByteBuffer stringOffsets, ByteBuffer addresses,
+			boolean splitObject, UnitHeader unit) {
+		super();
+		this.addrBase = unit.hasBases() ? unit.getAddrBase() : 0;
+		this.addresses = addresses;
+		this.addressSize = unit.addressSize;
+		this.lineStrings = lineStrings;
+		this.offsetSize = unit.offsetSize;
+		this.splitObject = splitObject;
+		this.stringOffsets = stringOffsets;
+		this.strOffsetsBase = unit.hasBases() ? unit.getStrOffsetsBase() : 0;
+		this.strings = strings;
+	}
+
+	/**
+	 * Answer the address at the given index in the unit's part of .debug_addr.
+	 * The addresses of a split DWARF object are held by the executable rather
+	 * than the object itself, so for such an object the index is answered
+	 * unchanged. Any other file without a .debug_addr section is malformed.
+	 */
+	long getAddress(long index) {
+		if (addresses.limit() == 0) {
+			if (splitObject) {
+				return index;
+			}
+
+			throw new IllegalArgumentException("no .debug_addr for index=" + index);
+		}
+
+		int position = checkPosition(addresses, addrBase + index * addressSize, addressSize);
+
+		if (addressSize == 8) {
+			return addresses.getLong(position);
+		} else if (addressSize == 4) {
+			return addresses.getInt(position) & ((1L << 32) - 1);
+		} else {
+			throw new IllegalStateException("address size=" + addressSize);
+		}
+	}
+
+	/**
+	 * Answer the string at the given offset in .debug_line_str.
+	 */
+	String getLineString(long offset) {
+		return lineStrings.get(offset);
+	}
+
+	/**
+	 * Answer the string at the given offset in .debug_str.
+	 */
+	String getString(long offset) {
+		return strings.get(offset);
+	}
+
+	/**
+	 * Answer the .debug_str offset at the given index in the unit's part
+	 * of .debug_str_offsets.
+	 */
+	long getStringOffset(long index) {
+		int position = checkPosition(stringOffsets, strOffsetsBase + index * offsetSize, offsetSize);
+
+		if (offsetSize == 8) {
+			return stringOffsets.getLong(position);
+		} else {
+			return stringOffsets.getInt(position) & ((1L << 32) - 1);
+		}
+	}
+
+}
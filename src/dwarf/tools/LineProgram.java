@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state machine of a line number program in the .debug_line section,
+ * versions 2 to 5. The header is decoded first, delivering the paths of
+ * its files, then the program is run, delivering each row as it is
+ * appended to the matrix.
+ */
+final class LineProgram {
+
+	static final int DW_LNCT_directory_index = 0x2;
+
+	static final int DW_LNCT_path = 0x1;
+
+	static final int DW_LNE_define_file = 0x03;
+
+	static final int DW_LNE_end_sequence = 0x01;
+
+	static final int DW_LNE_set_address = 0x02;
+
+	static final int DW_LNE_set_discriminator = 0x04;
+
+	static final int DW_LNS_advance_line = 0x03;
+
+	static final int DW_LNS_advance_pc = 0x02;
+
+	static final int DW_LNS_const_add_pc = 0x08;
+
+	static final int DW_LNS_copy = 0x01;
+
+	static final int DW_LNS_fixed_advance_pc = 0x09;
+
+	static final int DW_LNS_negate_stmt = 0x06;
+
+	static final int DW_LNS_set_basic_block = 0x07;
+
+	static final int DW_LNS_set_column = 0x05;
+
+	static final int DW_LNS_set_epilogue_begin = 0x0b;
+
+	static final int DW_LNS_set_file = 0x04;
+
+	static final int DW_LNS_set_isa = 0x0c;
+
+	static final int DW_LNS_set_prologue_end = 0x0a;
+
+	private static boolean isAbsolute(String path) {
+		return path.startsWith("/") || (path.length() > 2 && path.charAt(1) == ':');
+	}
+
+	private static String join(String directory, String path) {
+		if (directory == null || directory.isEmpty() || isAbsolute(path)) {
+			return path;
+		}
+
+		return directory.endsWith("/") ? directory + path : directory + '/' + path;
+	}
+
+	/**
+	 * Read the directory or file entries of a DWARF 5 header, answering the
+	 * path and directory index of each.
+	 */
+	private static List<Object[]> readEntries(DataSource data) {
+		int formatCount = data.getU1();
+		int[] contents = new int[formatCount];
+		int[] forms = new int[formatCount];
+
+		for (int index = 0; index < formatCount; ++index) {
+			contents[index] = AttributeReader.checkUInt(data.getUDATA());
+			forms[index] = AttributeReader.checkUInt(data.getUDATA());
+		}
+
+		long count = data.getUDATA();
+		List<Object[]> entries = new ArrayList<>();
+
+		for (long entry = 0; entry < count; ++entry) {
+			String path = "";
+			long directory = 0;
+
+			for (int index = 0; index < formatCount; ++index) {
+				int form = forms[index];
+
+				if (contents[index] == DW_LNCT_path) {
+					path = readString(form, data);
+				} else if (contents[index] == DW_LNCT_directory_index) {
+					directory = readUnsigned(form, data);
+				} else {
+					DecodingPlan.skip(form, data);
+				}
+			}
+
+			entries.add(new Object[] { path, Long.valueOf(directory) });
+		}
+
+		return entries;
+	}
+
+	private static String readString(int form, DataSource data) {
+		switch (form) {
+		case DwarfForm.DW_FORM_line_strp:
+			return data.lookupLineString(data.getOffset());
+		case DwarfForm.DW_FORM_string:
+			return data.getString();
+		case DwarfForm.DW_FORM_strp:
+			return data.lookupString(data.getOffset());
+		case DwarfForm.DW_FORM_strx:
+		case DwarfForm.DW_FORM_strx1:
+		case DwarfForm.DW_FORM_strx2:
+		case DwarfForm.DW_FORM_strx3:
+		case DwarfForm.DW_FORM_strx4:
+			return data.lookupString(data.lookupStringOffset(AttributeReader.readIndex(form, data)));
+		default:
+			throw new IllegalArgumentException("form=" + form);
+		}
+	}
+
+	private static long readUnsigned(int form, DataSource data) {
+		switch (form) {
+		case DwarfForm.DW_FORM_data1:
+			return data.getU1();
+		case DwarfForm.DW_FORM_data2:
+			return data.getU2();
+		case DwarfForm.DW_FORM_data4:
+			return data.getU4();
+		case DwarfForm.DW_FORM_data8:
+			return data.getU8();
+		case DwarfForm.DW_FORM_udata:
+			return data.getUDATA();
+		default:
+			throw new IllegalArgumentException("form=" + form);
+		}
+	}
+
+	/**
+	 * Run the line number program at the position of the given data, a view
+	 * of the .debug_line section that decodes values as the referring unit
+	 * does, delivering its files and rows to the requestor.
+	 *
+	 * @param compDir the compilation directory of the unit, or null
+	 */
+	static void run(DataSource data, String compDir, DwarfLineRequestor requestor) {
+		long unitLength = data.getU4();
+		int offsetSize = 4;
+
+		if (unitLength == 0xFFFFFFFFL) {
+			unitLength = data.getU8();
+			offsetSize = 8;
+		}
+
+		long end = data.position() + unitLength;
+		int version = data.getU2();
+
+		if (version < 2 || version > 5) {
+			throw new IllegalArgumentException("line program version=" + version);
+		}
+
+		if (version >= 5) {
+			data.getU1(); // address_size
+			data.getU1(); // segment_selector_size
+		}
+
+		long headerLength = offsetSize == 8 ? data.getU8() : data.getU4();
+		long programStart = data.position() + headerLength;
+		int minimumInstructionLength = data.getU1();
+		int maximumOperations = version >= 4 ? Math.max(1, data.getU1()) : 1;
+		boolean defaultIsStmt = data.getU1() != 0;
+		int lineBase = (byte) data.getU1();
+		int lineRange = data.getU1();
+		int opcodeBase = data.getU1();
+		int[] argumentCounts = new int[opcodeBase];
+
+		for (int opcode = 1; opcode < opcodeBase; ++opcode) {
+			argumentCounts[opcode] = data.getU1();
+		}
+
+		List<String> directories = new ArrayList<>();
+		int fileCount = 0;
+
+		if (version >= 5) {
+			for (Object[] entry : readEntries(data)) {
+				directories.add(join(compDir, (String) entry[0]));
+			}
+
+			for (Object[] entry : readEntries(data)) {
+				int directory = (int) ((Long) entry[1]).longValue();
+				String path = (String) entry[0];
+
+				if (directory < directories.size()) {
+					path = join(directories.get(directory), path);
+				}
+
+				requestor.acceptFile(fileCount++, join(compDir, path));
+			}
+		} else {
+			directories.add(compDir);
+
+			for (String directory; !(directory = data.getString()).isEmpty();) {
+				directories.add(join(compDir, directory));
+			}
+
+			fileCount = 1;
+
+			for (String path; !(path = data.getString()).isEmpty();) {
+				requestor.acceptFile(fileCount++, resolve(directories, path, data, compDir));
+			}
+		}
+
+		data.position(programStart);
+
+		int initialFlags = defaultIsStmt ? DwarfLineRequestor.ROW_IS_STMT : 0;
+		long address = 0;
+		int opIndex = 0;
+		int file = 1;
+		int line = 1;
+		int column = 0;
+		int flags = initialFlags;
+
+		while (data.position() < end) {
+			int opcode = data.getU1();
+
+			if (opcode >= opcodeBase) {
+				int adjusted = opcode - opcodeBase;
+				int advance = opIndex + adjusted / lineRange;
+
+				address += (long) minimumInstructionLength * (advance / maximumOperations);
+				opIndex = advance % maximumOperations;
+				line += lineBase + adjusted % lineRange;
+				requestor.acceptRow(address, file, line, column, flags);
+				flags &= DwarfLineRequestor.ROW_IS_STMT;
+				continue;
+			}
+
+			switch (opcode) {
+			case 0:
+				long length = data.getUDATA();
+				long next = data.position() + length;
+
+				if (length == 0) {
+					break;
+				}
+
+				switch (data.getU1()) {
+				case DW_LNE_end_sequence:
+					requestor.acceptRow(address, file, line, column, flags | DwarfLineRequestor.ROW_END_SEQUENCE);
+					address = 0;
+					opIndex = 0;
+					file = 1;
+					line = 1;
+					column = 0;
+					flags = initialFlags;
+					break;
+				case DW_LNE_set_address:
+					address = length - 1 == 8 ? data.getU8() : data.getU4();
+					opIndex = 0;
+					break;
+				case DW_LNE_define_file:
+					requestor.acceptFile(fileCount++, resolve(directories, data.getString(), data, compDir));
+					break;
+				default:
+					// DW_LNE_set_discriminator and vendor extensions
+					break;
+				}
+
+				data.position(next);
+				break;
+			case DW_LNS_copy:
+				requestor.acceptRow(address, file, line, column, flags);
+				flags &= DwarfLineRequestor.ROW_IS_STMT;
+				break;
+			case DW_LNS_advance_pc:
+				long advance = opIndex + data.getUDATA();
+
+				address += minimumInstructionLength * (advance / maximumOperations);
+				opIndex = (int) (advance % maximumOperations);
+				break;
+			case DW_LNS_advance_line:
+				line += (int) data.getSDATA();
+				break;
+			case DW_LNS_set_file:
+				file = AttributeReader.checkUInt(data.getUDATA());
+				break;
+			case DW_LNS_set_column:
+				column = AttributeReader.checkUInt(data.getUDATA());
+				break;
+			case DW_LNS_negate_stmt:
+				flags ^= DwarfLineRequestor.ROW_IS_STMT;
+				break;
+			case DW_LNS_set_basic_block:
+				flags |= DwarfLineRequestor.ROW_BASIC_BLOCK;
+				break;
+			case DW_LNS_const_add_pc:
+				int constant = opIndex + (255 - opcodeBase) / lineRange;
+
+				address += (long) minimumInstructionLength * (constant / maximumOperations);
+				opIndex = constant % maximumOperations;
+				break;
+			case DW_LNS_fixed_advance_pc:
+				address += data.getU2();
+				opIndex = 0;
+				break;
+			case DW_LNS_set_prologue_end:
+				flags |= DwarfLineRequestor.ROW_PROLOGUE_END;
+				break;
+			case DW_LNS_set_epilogue_begin:
+				flags |= DwarfLineRequestor.ROW_EPILOGUE_BEGIN;
+				break;
+			default:
+				// DW_LNS_set_isa and opcodes unknown to this version
+				for (int argument = 0; argument < argumentCounts[opcode]; ++argument) {
+					data.getUDATA();
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Answer the path of a file entry of a header before DWARF 5, whose name
+	 * has been read and whose directory index, modification time and length
+	 * follow.
+	 */
+	private static String resolve(List<String> directories, String name, DataSource data, String compDir) {
+		long directory = data.getUDATA();
+
+		data.getUDATA(); // modification time
+		data.getUDATA(); // length
+
+		if (0 < directory && directory < directories.size()) {
+			return join(directories.get((int) directory), name);
+		}
+
+		return join(compDir, name);
+	}
+
+	private LineProgram() {
+		super();
+	}
+
+}
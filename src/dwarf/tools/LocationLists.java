@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * Decoding of the location lists referenced by DW_AT_location and similar
+ * attributes: those of the .debug_loc section, used before DWARF 5, and
+ * those of the .debug_loclists section.
+ */
+final class LocationLists {
+
+	static final int DW_LLE_base_address = 0x06;
+
+	static final int DW_LLE_base_addressx = 0x01;
+
+	static final int DW_LLE_default_location = 0x05;
+
+	static final int DW_LLE_end_of_list = 0x00;
+
+	static final int DW_LLE_offset_pair = 0x04;
+
+	static final int DW_LLE_start_end = 0x07;
+
+	static final int DW_LLE_start_length = 0x08;
+
+	static final int DW_LLE_startx_endx = 0x02;
+
+	static final int DW_LLE_startx_length = 0x03;
+
+	/**
+	 * Answer the .debug_loclists list at the position of the given data,
+	 * which must be able to look up addresses by index in the referring
+	 * unit's part of .debug_addr.
+	 *
+	 * @param baseAddress the low_pc of the referring unit, or zero
+	 */
+	static DwarfLocationList readLocationList(DataSource data, long baseAddress) {
+		DwarfLocationList.Builder builder = new DwarfLocationList.Builder();
+		long base = baseAddress;
+
+		for (;;) {
+			int kind = data.getU1();
+			long start;
+			long end;
+
+			switch (kind) {
+			case DW_LLE_end_of_list:
+				return builder.build(data);
+			case DW_LLE_base_addressx:
+				base = data.lookupAddress(data.getUDATA());
+				continue;
+			case DW_LLE_base_address:
+				base = data.getAddress();
+				continue;
+			case DW_LLE_default_location:
+				int length = AttributeReader.checkUInt(data.getUDATA());
+
+				builder.setDefault(data.position(), length);
+				data.skip(length);
+				continue;
+			case DW_LLE_startx_endx:
+				start = data.lookupAddress(data.getUDATA());
+				end = data.lookupAddress(data.getUDATA());
+				break;
+			case DW_LLE_startx_length:
+				start = data.lookupAddress(data.getUDATA());
+				end = start + data.getUDATA();
+				break;
+			case DW_LLE_offset_pair:
+				start = base + data.getUDATA();
+				end = base + data.getUDATA();
+				break;
+			case DW_LLE_start_end:
+				start = data.getAddress();
+				end = data.getAddress();
+				break;
+			case DW_LLE_start_length:
+				start = data.getAddress();
+				end = start + data.getUDATA();
+				break;
+			default:
+				throw new IllegalArgumentException("location list entry=" + kind);
+			}
+
+			int length = AttributeReader.checkUInt(data.getUDATA());
+
+			builder.add(start, end, data.position(), length);
+			data.skip(length);
+		}
+	}
+
+	/**
+	 * Answer the .debug_loc list at the position of the given data, whose
+	 * address size is that of the referring unit.
+	 *
+	 * @param baseAddress the low_pc of the referring unit, or zero
+	 */
+	static DwarfLocationList readLocations(DataSource data, long baseAddress) {
+		DwarfLocationList.Builder builder = new DwarfLocationList.Builder();
+		int addressSize = data.addressSize();
+		long largest = addressSize == 8 ? -1L : (1L << (addressSize * 8)) - 1;
+		long base = baseAddress;
+
+		while (data.hasRemaining()) {
+			long start = data.getAddress();
+			long end = data.getAddress();
+
+			if (start == 0 && end == 0) {
+				break;
+			} else if (start == largest) {
+				base = end;
+			} else {
+				int length = data.getU2();
+
+				builder.add(base + start, base + end, data.position(), length);
+				data.skip(length);
+			}
+		}
+
+		return builder.build(data);
+	}
+
+	private LocationLists() {
+		super();
+	}
+
+}
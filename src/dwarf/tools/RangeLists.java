@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+import java.util.Arrays;
+
+/**
+ * Decoding of the address range lists referenced by DW_AT_ranges: those
+ * of the .debug_ranges section, used before DWARF 5, and those of the
+ * .debug_rnglists section. Ranges are answered as pairs of start and
+ * (exclusive) end addresses; empty ranges are dropped.
+ */
+final class RangeLists {
+
+	static final int DW_RLE_base_address = 0x05;
+
+	static final int DW_RLE_base_addressx = 0x01;
+
+	static final int DW_RLE_end_of_list = 0x00;
+
+	static final int DW_RLE_offset_pair = 0x04;
+
+	static final int DW_RLE_start_end = 0x06;
+
+	static final int DW_RLE_start_length = 0x07;
+
+	static final int DW_RLE_startx_endx = 0x02;
+
+	static final int DW_RLE_startx_length = 0x03;
+
+	static final long[] NO_RANGES = new long[0];
+
+	private static long[] grow(long[] ranges, int count) {
+		return count < ranges.length ? ranges : Arrays.copyOf(ranges, Math.max(8, count * 2));
+	}
+
+	/**
+	 * Answer the ranges of the .debug_ranges list at the position of the
+	 * given data, whose address size is that of the referring unit.
+	 *
+	 * @param baseAddress the low_pc of the referring unit, or zero
+	 */
+	static long[] readRanges(DataSource data, long baseAddress) {
+		int addressSize = data.addressSize();
+		long largest = addressSize == 8 ? -1L : (1L << (addressSize * 8)) - 1;
+		long base = baseAddress;
+		long[] ranges = NO_RANGES;
+		int count = 0;
+
+		while (data.hasRemaining()) {
+			long start = data.getAddress();
+			long end = data.getAddress();
+
+			if (start == 0 && end == 0) {
+				break;
+			} else if (start == largest) {
+				base = end;
+			} else if (Long.compareUnsigned(start, end) < 0) {
+				ranges = grow(ranges, count);
+				ranges[count++] = base + start;
+				ranges[count++] = base + end;
+			}
+		}
+
+		return trim(ranges, count);
+	}
+
+	/**
+	 * Answer the ranges of the .debug_rnglists list at the position of the
+	 * given data, which must be able to look up addresses by index in the
+	 * referring unit's part of .debug_addr.
+	 *
+	 * @param baseAddress the low_pc of the referring unit, or zero
+	 */
+	static long[] readRangeList(DataSource data, long baseAddress) {
+		long base = baseAddress;
+		long[] ranges = NO_RANGES;
+		int count = 0;
+
+		for (;;) {
+			int kind = data.getU1();
+			long start;
+			long end;
+
+			switch (kind) {
+			case DW_RLE_end_of_list:
+				return trim(ranges, count);
+			case DW_RLE_base_addressx:
+				base = data.lookupAddress(data.getUDATA());
+				continue;
+			case DW_RLE_base_address:
+				base = data.getAddress();
+				continue;
+			case DW_RLE_startx_endx:
+				start = data.lookupAddress(data.getUDATA());
+				end = data.lookupAddress(data.getUDATA());
+				break;
+			case DW_RLE_startx_length:
+				start = data.lookupAddress(data.getUDATA());
+				end = start + data.getUDATA();
+				break;
+			case DW_RLE_offset_pair:
+				start = base + data.getUDATA();
+				end = base + data.getUDATA();
+				break;
+			case DW_RLE_start_end:
+				start = data.getAddress();
+				end = data.getAddress();
+				break;
+			case DW_RLE_start_length:
+				start = data.getAddress();
+				end = start + data.getUDATA();
+				break;
+			default:
+				throw new IllegalArgumentException("range list entry=" + kind);
+			}
+
+			if (Long.compareUnsigned(start, end) < 0) {
+				ranges = grow(ranges, count);
+				ranges[count++] = start;
+				ranges[count++] = end;
+			}
+		}
+	}
+
+	private static long[] trim(long[] ranges, int count) {
+		return count == ranges.length ? ranges : Arrays.copyOf(ranges, count);
+	}
+
+	private RangeLists() {
+		super();
+	}
+
+}
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * A cache of the strings of the .debug_str section, keyed by section offset.
+ * <p>
+ * Entries are kept in open-addressing tables of primitive offsets so that
+ * keys are not boxed. The table may optionally be bounded by a number of
+ * entries: once full, entries are evicted using the CLOCK (second chance)
+ * policy so that strings in frequent use are retained.
+ * <p>
+ * The table is safe for use by concurrent scans: it is divided into segments,
+ * each guarded by its own lock, and strings are decoded outside of any lock.
+ */
+final class StringTable {
+
+	private static final class Segment {
+
+		private static int capacityFor(int entries) {
+			int capacity = INITIAL_CAPACITY;
+
+			// keep the load factor at or below 1/2
+			while (capacity < entries * 2L) {
+				capacity <<= 1;
+			}
+
+			return capacity;
+		}
+
+		/** the position of the CLOCK hand when evicting */
+		private int clockHand;
+
+		long evictions;
+
+		long hits;
+
+		/** section offsets plus one; zero marks an empty slot */
+		private long[] keys;
+
+		/** the maximum number of entries, or zero if unbounded */
+		private final int maximumEntries;
+
+		long misses;
+
+		/** whether each entry has been used since the CLOCK hand last passed */
+		private boolean[] referenced;
+
+		int size;
+
+		private String[] values;
+
+		Segment(int maximumEntries) {
+			super();
+
+			int capacity = capacityFor(maximumEntries);
+
+			this.clockHand = 0;
+			this.evictions = 0;
+			this.hits = 0;
+			this.keys = new long[capacity];
+			this.maximumEntries = maximumEntries;
+			this.misses = 0;
+			this.referenced = new boolean[capacity];
+			this.size = 0;
+			this.values = new String[capacity];
+		}
+
+		/**
+		 * Add an entry for the given key, which must not be present.
+		 */
+		void add(long key, int hash, String value) {
+			if (maximumEntries != 0) {
+				if (size >= maximumEntries) {
+					evict();
+				}
+			} else if (size * 2 >= keys.length) {
+				grow();
+			}
+
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+
+			keys[slot] = key;
+			referenced[slot] = false;
+			values[slot] = value;
+			size += 1;
+		}
+
+		private void evict() {
+			int mask = keys.length - 1;
+
+			for (;;) {
+				int slot = clockHand;
+
+				clockHand = (slot + 1) & mask;
+
+				if (keys[slot] != 0) {
+					if (referenced[slot]) {
+						// give it a second chance
+						referenced[slot] = false;
+					} else {
+						remove(slot);
+						evictions += 1;
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Answer the value for the given key, or null if it is not present.
+		 */
+		String find(long key, int hash) {
+			int mask = keys.length - 1;
+
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				long candidate = keys[slot];
+
+				if (candidate == key) {
+					referenced[slot] = true;
+					return values[slot];
+				} else if (candidate == 0) {
+					return null;
+				}
+			}
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			String[] oldValues = values;
+			boolean[] oldReferenced = referenced;
+			int capacity = oldKeys.length * 2;
+			int mask = capacity - 1;
+
+			keys = new long[capacity];
+			referenced = new boolean[capacity];
+			values = new String[capacity];
+			clockHand = 0;
+
+			for (int index = 0; index < oldKeys.length; ++index) {
+				long key = oldKeys[index];
+
+				if (key != 0) {
+					int slot = hash(key) & mask;
+
+					while (keys[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+
+					keys[slot] = key;
+					referenced[slot] = oldReferenced[index];
+					values[slot] = oldValues[index];
+				}
+			}
+		}
+
+		boolean isFull() {
+			return maximumEntries != 0 && size >= maximumEntries;
+		}
+
+		/**
+		 * Remove the entry in the given slot, shifting later entries of
+		 * the same probe sequence back so no tombstone is needed.
+		 */
+		private void remove(int slot) {
+			int mask = keys.length - 1;
+			int hole = slot;
+
+			for (int next = (hole + 1) & mask;; next = (next + 1) & mask) {
+				long key = keys[next];
+
+				if (key == 0) {
+					break;
+				}
+
+				int home = hash(key) & mask;
+
+				// move the entry if its home is not cyclically within (hole, next]
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					keys[hole] = key;
+					referenced[hole] = referenced[next];
+					values[hole] = values[next];
+					hole = next;
+				}
+			}
+
+			keys[hole] = 0;
+			referenced[hole] = false;
+			values[hole] = null;
+			size -= 1;
+		}
+
+	}
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final int MAXIMUM_SEGMENTS = 16;
+
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	private final DataSource section;
+
+	private final Segment[] segments;
+
+	/** the number of bits of the hash used to select the segment */
+	private final int segmentShift;
+
+	StringTable(DataSource section, int maximumEntries) {
+		super();
+
+		int segmentCount = MAXIMUM_SEGMENTS;
+		int segmentEntries = 0;
+
+		if (maximumEntries > 0) {
+			// each segment must be able to hold at least one entry
+			segmentCount = Math.min(segmentCount, Integer.highestOneBit(maximumEntries));
+			segmentEntries = maximumEntries / segmentCount;
+		}
+
+		this.section = section;
+		this.segments = new Segment[segmentCount];
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+
+		for (int index = 0; index < segmentCount; ++index) {
+			segments[index] = new Segment(segmentEntries);
+		}
+	}
+
+	/**
+	 * Answer the string at the given offset of the section.
+	 */
+	String get(long offset) {
+		long key = offset + 1;
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+
+		synchronized (segment) {
+			String value = segment.find(key, hash);
+
+			if (value != null) {
+				segment.hits += 1;
+				return value;
+			}
+		}
+
+		String value = read(offset);
+
+		synchronized (segment) {
+			String existing = segment.find(key, hash);
+
+			segment.misses += 1;
+
+			if (existing != null) {
+				// another thread decoded it first
+				return existing;
+			}
+
+			segment.add(key, hash, value);
+		}
+
+		return value;
+	}
+
+	long getEvictions() {
+		long total = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				total += segment.evictions;
+			}
+		}
+
+		return total;
+	}
+
+	long getHits() {
+		long total = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				total += segment.hits;
+			}
+		}
+
+		return total;
+	}
+
+	long getMisses() {
+		long total = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				total += segment.misses;
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Decode the section eagerly, in one sequential pass, adding the string
+	 * starting at each offset that follows a terminating NUL (or the start of
+	 * the section). Offsets into the middle of a string (possible when strings
+	 * share a common suffix) are still decoded on demand. For a bounded table,
+	 * no entries are evicted to make room for preloaded strings.
+	 */
+	void loadAll() {
+		DataSource data = section.duplicate().position(0);
+
+		while (data.hasRemaining()) {
+			long key = data.position() + 1;
+			String value = data.getString();
+			int hash = hash(key);
+			Segment segment = segmentFor(hash);
+
+			synchronized (segment) {
+				if (!segment.isFull() && segment.find(key, hash) == null) {
+					segment.add(key, hash, value);
+				}
+			}
+		}
+	}
+
+	private String read(long offset) {
+		return section.duplicate().position(offset).getString();
+	}
+
+	private Segment segmentFor(int hash) {
+		// the low bits select the slot within the segment; use the high bits here
+		return segments[segmentShift == 32 ? 0 : hash >>> segmentShift];
+	}
+
+	int size() {
+		int total = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				total += segment.size;
+			}
+		}
+
+		return total;
+	}
+
+}
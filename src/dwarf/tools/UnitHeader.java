@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools;
+
+/**
+ * The header of a unit in the .debug_info section.
+ */
+final class UnitHeader {
+
+	static final int DW_UT_compile = 0x01;
+
+	static final int DW_UT_partial = 0x03;
+
+	static final int DW_UT_skeleton = 0x04;
+
+	static final int DW_UT_split_compile = 0x05;
+
+	static final int DW_UT_split_type = 0x06;
+
+	static final int DW_UT_type = 0x02;
+
+	static UnitHeader readFrom(DataSource data, int versionMinimum, int versionMaximum) {
+		long unitOffset = data.position();
+		long unitLength = data.getU4();
+		int offsetSize = 4;
+		int unitType = DW_UT_compile;
+		long abbrevOffset;
+		int addressSize;
+
+		if (unitLength == 0 || unitLength == 0xFFFFFFFFL) {
+			unitLength = data.getU8();
+			offsetSize = 8;
+		}
+
+		long nextUnit = data.position() + unitLength;
+		int version = data.getU2();
+
+		if (version < versionMinimum || version > versionMaximum) {
+			throw new IllegalArgumentException("version=" + version);
+		}
+
+		if (version >= 5) {
+			unitType = data.getU1();
+			addressSize = data.getU1();
+			abbrevOffset = offsetSize == 8 ? data.getU8() : data.getU4();
+
+			switch (unitType) {
+			case DW_UT_compile:
+			case DW_UT_partial:
+				break;
+			case DW_UT_skeleton:
+			case DW_UT_split_compile:
+				// dwo_id
+				data.skip(8);
+				break;
+			case DW_UT_type:
+			case DW_UT_split_type:
+				// type_signature and type_offset
+				data.skip(8 + offsetSize);
+				break;
+			default:
+				throw new IllegalArgumentException("unit type=" + unitType);
+			}
+		} else {
+			abbrevOffset = offsetSize == 8 ? data.getU8() : data.getU4();
+			addressSize = data.getU1();
+		}
+
+		long dieOffset = data.position();
+
+		data.position(nextUnit);
+
+		return new UnitHeader(unitOffset, nextUnit, version, unitType, abbrevOffset, addressSize, offsetSize,
+				dieOffset);
+	}
+
+	final long abbrevOffset;
+
+	final int addressSize;
+
+	/** the low_pc of the unit entry, once baseAddressKnown is set */
+	private long baseAddress;
+
+	private volatile boolean baseAddressKnown;
+
+	/**
+	 * the offsets of the unit's contributions to .debug_addr,
+	 * .debug_str_offsets, .debug_rnglists and .debug_loclists,
+	 * or null until they have been read
+	 */
+	private volatile long[] bases;
+
+	/** section offset of the first debugging information entry */
+	final long dieOffset;
+
+	/** section offset of the next unit */
+	final long end;
+
+	final long offset;
+
+	final int offsetSize;
+
+	/** one of the DW_UT_ values; DW_UT_compile for units before version 5 */
+	final int unitType;
+
+	final int version;
+
+	UnitHeader(long offset, long end, int version, int unitType, long abbrevOffset, int addressSize,
+			int offsetSize, long dieOffset) {
+		super();
+		this.abbrevOffset = abbrevOffset;
+		this.addressSize = addressSize;
+		this.baseAddress = 0;
+		this.baseAddressKnown = false;
+		this.bases = null;
+		this.dieOffset = dieOffset;
+		this.end = end;
+		this.offset = offset;
+		this.offsetSize = offsetSize;
+		this.unitType = unitType;
+		this.version = version;
+	}
+
+	/**
+	 * Answer the offset of the first entry of this unit in .debug_addr.
+	 */
+	long getAddrBase() {
+		return bases[0];
+	}
+
+	/**
+	 * Answer the base address of the range and location lists of this unit,
+	 * the low_pc of its unit entry; only valid once it has been recorded.
+	 */
+	long getBaseAddress() {
+		return baseAddress;
+	}
+
+	/**
+	 * Answer the offset of the offset table of this unit in .debug_loclists.
+	 */
+	long getLoclistsBase() {
+		return bases[3];
+	}
+
+	/**
+	 * Answer the offset of the offset table of this unit in .debug_rnglists.
+	 */
+	long getRnglistsBase() {
+		return bases[2];
+	}
+
+	/**
+	 * Answer the offset of the first entry of this unit in .debug_str_offsets.
+	 */
+	long getStrOffsetsBase() {
+		return bases[1];
+	}
+
+	/**
+	 * Answer whether the base address of this unit has been recorded.
+	 */
+	boolean hasBaseAddress() {
+		return baseAddressKnown;
+	}
+
+	/**
+	 * Answer whether the bases of this unit have been recorded.
+	 */
+	boolean hasBases() {
+		return bases != null;
+	}
+
+	/**
+	 * Record the base address of this unit. Racing threads record
+	 * identical values.
+	 */
+	void setBaseAddress(long address) {
+		baseAddress = address;
+		baseAddressKnown = true;
+	}
+
+	/**
+	 * Record the bases of this unit, as given by the attributes of its
+	 * first entry. Racing threads record identical values.
+	 */
+	void setBases(long addrBase, long strOffsetsBase, long rnglistsBase, long loclistsBase) {
+		bases = new long[] { addrBase, strOffsetsBase, rnglistsBase, loclistsBase };
+	}
+
+	@Override
+	public String toString() {
+		return "unit(0x" + Long.toHexString(offset) + ") version=" + version;
+	}
+
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import dwarf.tools.AddressIndex;
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTag;
+
+/**
+ * Checks the innermost entry that {@link AddressIndex} finds for sampled
+ * addresses of each given file against a search of the ranges of all
+ * subprograms and inlined subroutines, and reports the time for single
+ * and batch lookups. Addresses are sampled at the bounds and midpoints of
+ * each range and at random within the span of all ranges.
+ */
+public class DwarfAddressTest {
+
+	private static final int BATCH_SIZE = 10000;
+
+	private static final int ITERATIONS = 20;
+
+	private static final int RANDOM_SAMPLES = 2000;
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		Ranges ranges = new Ranges();
+		long[] unitOffsets = scanner.getUnitOffsets();
+
+		if (scanner.isSplitObject()) {
+			// the addresses of a split object are held by the executable
+			int unitRanges = scanner.getAddressIndex().getUnitRangeCount();
+
+			System.out.printf("%s: split object, %d unit ranges%n", fileName, Integer.valueOf(unitRanges));
+			return unitRanges == 0;
+		}
+
+		if (unitOffsets.length != 0) {
+			try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+				for (long unitOffset : unitOffsets) {
+					long baseAddress = 0;
+
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						int tag = cursor.tag();
+
+						if (cursor.depth() == 0) {
+							baseAddress = cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0);
+						} else if (tag == DwarfTag.DW_TAG_subprogram || tag == DwarfTag.DW_TAG_inlined_subroutine) {
+							long[] pairs = cursor.getRanges(baseAddress);
+
+							for (int index = 0; index < pairs.length; index += 2) {
+								ranges.add(pairs[index], pairs[index + 1], cursor.offset(), cursor.depth(), unitOffset);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		if (ranges.count == 0) {
+			System.out.printf("%s: no code ranges%n", fileName);
+			return true;
+		}
+
+		long start = System.nanoTime();
+		AddressIndex index = scanner.getAddressIndex();
+		long buildTime = System.nanoTime() - start;
+		long[] samples = ranges.sample(new Random(fileName.hashCode()));
+
+		long scanTime = 0;
+
+		for (long address : samples) {
+			long scanStart = System.nanoTime();
+			int expected = ranges.findInnermost(address);
+
+			scanTime += System.nanoTime() - scanStart;
+			long[] entries = index.findEntries(address);
+
+			if (expected < 0) {
+				if (entries.length != 0) {
+					System.out.printf("%s: 0x%x: unexpected entry 0x%x%n", fileName, Long.valueOf(address),
+							Long.valueOf(entries[0]));
+					return false;
+				}
+			} else if (entries.length == 0 || entries[0] != ranges.offsets[expected]) {
+				System.out.printf("%s: 0x%x: expected entry 0x%x, found %s%n", fileName, Long.valueOf(address),
+						Long.valueOf(ranges.offsets[expected]), Arrays.toString(entries));
+				return false;
+			} else if (index.findUnit(address) != ranges.units[expected]) {
+				System.out.printf("%s: 0x%x: expected unit 0x%x, found 0x%x%n", fileName, Long.valueOf(address),
+						Long.valueOf(ranges.units[expected]), Long.valueOf(index.findUnit(address)));
+				return false;
+			}
+		}
+
+		Random random = new Random(1);
+		long[] batch = new long[BATCH_SIZE];
+
+		for (int sample = 0; sample < batch.length; ++sample) {
+			batch[sample] = samples[random.nextInt(samples.length)];
+		}
+
+		long singleTime = Long.MAX_VALUE;
+		long batchTime = Long.MAX_VALUE;
+		long found = 0;
+		long[][] batchEntries = null;
+
+		for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+			start = System.nanoTime();
+			found = 0;
+
+			for (long address : batch) {
+				found += index.findEntries(address).length;
+			}
+
+			singleTime = Math.min(singleTime, System.nanoTime() - start);
+			start = System.nanoTime();
+			batchEntries = index.findEntries(batch);
+			batchTime = Math.min(batchTime, System.nanoTime() - start);
+		}
+
+		for (int sample = 0; sample < batch.length; ++sample) {
+			if (!Arrays.equals(batchEntries[sample], index.findEntries(batch[sample]))) {
+				System.out.printf("%s: 0x%x: batch lookup differs%n", fileName, Long.valueOf(batch[sample]));
+				return false;
+			}
+		}
+
+		System.out.printf("%s: %d ranges, %d unit ranges%s, %d addresses: match%n", fileName,
+				Integer.valueOf(ranges.count), Integer.valueOf(index.getUnitRangeCount()),
+				index.isFromAranges() ? " from .debug_aranges" : "", Integer.valueOf(samples.length));
+		System.out.printf("  %.1f ms to index units, %.2f us per lookup, %.2f us per batched lookup (%d entries)%n",
+				Double.valueOf(buildTime / 1e6), Double.valueOf(singleTime / 1e3 / batch.length),
+				Double.valueOf(batchTime / 1e3 / batch.length), Long.valueOf(found));
+		System.out.printf("  %.2f us per search of all ranges%n", Double.valueOf(scanTime / 1e3 / samples.length));
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+	/**
+	 * The ranges of all subprograms and inlined subroutines, searched
+	 * without an index.
+	 */
+	private static final class Ranges {
+
+		int count;
+
+		int[] depths = new int[64];
+
+		long[] ends = new long[64];
+
+		long[] offsets = new long[64];
+
+		long[] starts = new long[64];
+
+		long[] units = new long[64];
+
+		Ranges() {
+			super();
+		}
+
+		void add(long start, long end, long offset, int depth, long unit) {
+			if (count == starts.length) {
+				depths = Arrays.copyOf(depths, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				offsets = Arrays.copyOf(offsets, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				units = Arrays.copyOf(units, count * 2);
+			}
+
+			depths[count] = depth;
+			ends[count] = end;
+			offsets[count] = offset;
+			starts[count] = start;
+			units[count] = unit;
+			count += 1;
+		}
+
+		/**
+		 * Answer the deepest range containing the given address, preferring
+		 * the later entry among those equally deep, or -1.
+		 */
+		int findInnermost(long address) {
+			int innermost = -1;
+
+			for (int index = 0; index < count; ++index) {
+				if (starts[index] <= address && address < ends[index]
+						&& (innermost < 0 || depths[index] > depths[innermost]
+								|| (depths[index] == depths[innermost] && offsets[index] > offsets[innermost]))) {
+					innermost = index;
+				}
+			}
+
+			return innermost;
+		}
+
+		long[] sample(Random random) {
+			long low = Long.MAX_VALUE;
+			long high = Long.MIN_VALUE;
+
+			for (int index = 0; index < count; ++index) {
+				low = Math.min(low, starts[index]);
+				high = Math.max(high, ends[index]);
+			}
+
+			int stride = Math.max(1, count / 1000);
+			long[] samples = new long[(count / stride + 1) * 4 + RANDOM_SAMPLES];
+			int sampleCount = 0;
+
+			for (int index = 0; index < count; index += stride) {
+				samples[sampleCount++] = starts[index];
+				samples[sampleCount++] = starts[index] + (ends[index] - starts[index]) / 2;
+				samples[sampleCount++] = ends[index] - 1;
+				samples[sampleCount++] = ends[index];
+			}
+
+			while (sampleCount < samples.length) {
+				samples[sampleCount++] = low + (long) (random.nextDouble() * (high - low));
+			}
+
+			return samples;
+		}
+
+	}
+
+}
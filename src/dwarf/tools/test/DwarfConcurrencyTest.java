@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfInterest;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTag;
+
+/**
+ * Hammers a single scanner from many threads, checking that each scan
+ * delivers the same events as a single-threaded scan.
+ */
+public class DwarfConcurrencyTest {
+
+	/** structures and their members, but nothing nested in code */
+	private static final DwarfInterest INTEREST = DwarfInterest.of(
+			new int[] { DwarfTag.DW_TAG_member, DwarfTag.DW_TAG_structure_type },
+			new int[] { DwarfAttribute.DW_AT_name }).withChildrenOfTagsOnly();
+
+	private static final int ITERATIONS = 8;
+
+	private static final int THREADS = 8;
+
+	private static boolean check(String fileName) throws IOException, InterruptedException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		DwarfDigest reference = new DwarfDigest();
+
+		scanner.scanUnits(reference);
+
+		// start with a small bound so threads contend on evictions
+		scanner.setStringCacheLimit(64);
+
+		long expected = reference.getDigest();
+		AtomicInteger failures = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int index = 0; index < THREADS; ++index) {
+			int threadIndex = index;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+
+					for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+						DwarfDigest digest = new DwarfDigest();
+
+						switch ((threadIndex + iteration) % 4) {
+						case 0:
+							scanner.scanUnits(digest);
+							break;
+						case 1:
+							scanner.scanUnits(digest, 3);
+							break;
+						case 2:
+							scanner.setCompiledDecoding(iteration % 2 == 0);
+							scanner.scanUnits(digest);
+							break;
+						default:
+							scanner.setStringCacheLimit(iteration % 2 == 0 ? 0 : 64);
+							scanner.scanUnits(digest);
+							break;
+						}
+
+						if (digest.getDigest() != expected) {
+							failures.incrementAndGet();
+						}
+					}
+				} catch (RuntimeException | InterruptedException e) {
+					e.printStackTrace();
+					failures.incrementAndGet();
+				}
+			});
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		start.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		System.out.printf("%s: %d of %d concurrent scans differed%n", fileName, Integer.valueOf(failures.get()),
+				Integer.valueOf(THREADS * ITERATIONS));
+
+		return failures.get() == 0 && checkInterest(fileName, scanner);
+	}
+
+	/*
+	 * A parallel scan skips the children its requestor's interest does not
+	 * want while recording, and must deliver what a sequential scan does.
+	 */
+	private static boolean checkInterest(String fileName, DwarfScanner scanner) {
+		DwarfDigest sequential = new DwarfDigest(INTEREST);
+		DwarfDigest parallel = new DwarfDigest(INTEREST);
+
+		scanner.scanUnits(sequential);
+		scanner.scanUnits(parallel, 3);
+
+		if (sequential.getDigest() != parallel.getDigest()) {
+			System.out.printf("%s: parallel scan of selected children differed%n", fileName);
+			return false;
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			try {
+				passed &= check(fileName);
+			} catch (IOException e) {
+				e.printStackTrace();
+				passed = false;
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfForm;
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTag;
+
+/**
+ * Checks that walking units with a cursor visits the same entries,
+ * at the same depths and with the same names, types and sizes, as
+ * a scan, both when descending into every entry and when skipping
+ * the children of subprograms.
+ */
+public class DwarfCursorTest {
+
+	/**
+	 * Folds a summary of each entry delivered by a scan.
+	 */
+	private static final class ScanSummary implements DwarfRequestor {
+
+		private int depth;
+
+		long digest;
+
+		long entries;
+
+		private long entryHash;
+
+		private final boolean skipSubprograms;
+
+		private long unitOffset;
+
+		ScanSummary(boolean skipSubprograms) {
+			super();
+			this.depth = 0;
+			this.digest = 17;
+			this.entries = 0;
+			this.entryHash = 0;
+			this.skipSubprograms = skipSubprograms;
+			this.unitOffset = 0;
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			return;
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			return;
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			return;
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			if (attribute == DwarfAttribute.DW_AT_byte_size) {
+				entryHash += sizeHash(value);
+			}
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			return;
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			return;
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			return;
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			if (attribute == DwarfAttribute.DW_AT_type) {
+				entryHash += typeHash(form == DwarfForm.DW_FORM_ref_addr ? offset : unitOffset + offset);
+			}
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			if (attribute == DwarfAttribute.DW_AT_name) {
+				entryHash += nameHash(string);
+			}
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			flush();
+			entryHash = entryHash(tag, offset, depth);
+
+			if (hasChildren) {
+				depth += 1;
+			}
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			if (hasChildren) {
+				depth -= 1;
+			}
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			unitOffset = offset;
+		}
+
+		@Override
+		public boolean enterTag(int tag, long offset, boolean hasChildren) {
+			beginTag(tag, offset, hasChildren);
+
+			return !(skipSubprograms && tag == DwarfTag.DW_TAG_subprogram);
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			flush();
+		}
+
+		private void flush() {
+			if (entryHash != 0) {
+				digest = digest * 31 + entryHash;
+				entries += 1;
+				entryHash = 0;
+			}
+		}
+
+	}
+
+	private static long entryHash(int tag, long offset, int depth) {
+		return ((offset * 31 + tag) * 31 + depth) | 1;
+	}
+
+	private static long nameHash(String name) {
+		return name.hashCode() * 7L;
+	}
+
+	private static long sizeHash(long size) {
+		return size * 11;
+	}
+
+	private static long typeHash(long offset) {
+		return offset * 13;
+	}
+
+	private static boolean check(String fileName, boolean skipSubprograms) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		ScanSummary expected = new ScanSummary(skipSubprograms);
+		long[] unitOffsets = scanner.getUnitOffsets();
+		long digest = 17;
+		long entries = 0;
+
+		scanner.scanUnits(expected);
+
+		if (unitOffsets.length != 0) {
+			// one cursor is reused for every unit
+			try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+				for (long unitOffset : unitOffsets) {
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						long hash = entryHash(cursor.tag(), cursor.offset(), cursor.depth());
+						String name = cursor.getString(DwarfAttribute.DW_AT_name);
+						long type = cursor.getReference(DwarfAttribute.DW_AT_type);
+
+						if (name != null) {
+							hash += nameHash(name);
+						}
+
+						if (type >= 0) {
+							hash += typeHash(type);
+						}
+
+						if (cursor.hasAttribute(DwarfAttribute.DW_AT_byte_size)) {
+							hash += sizeHash(cursor.getConstant(DwarfAttribute.DW_AT_byte_size, 0));
+						}
+
+						if (skipSubprograms && cursor.tag() == DwarfTag.DW_TAG_subprogram) {
+							cursor.skipChildren();
+						}
+
+						digest = digest * 31 + hash;
+						entries += 1;
+					}
+				}
+			}
+		}
+
+		boolean passed = digest == expected.digest && entries == expected.entries;
+
+		System.out.printf("%s%s: %d entries %s%n", fileName, skipSubprograms ? " (skipping subprograms)" : "",
+				Long.valueOf(entries), passed ? "match" : "DIFFER");
+
+		return passed;
+	}
+
+	public static void main(String[] args) {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			try {
+				passed &= check(fileName, false);
+				passed &= check(fileName, true);
+			} catch (IOException e) {
+				e.printStackTrace();
+				passed = false;
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfInterest;
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Times scans dominated by the primitive readers: LEB128 abbreviation codes
+ * and attribute values, addresses, section offsets and strings.
+ */
+public class DwarfDataBenchmark {
+
+	private static final class Workload implements DwarfRequestor {
+
+		/** folds the decoded values so they cannot be optimized away */
+		long checksum;
+
+		private final DwarfInterest interest;
+
+		final String name;
+
+		Workload(String name, DwarfInterest interest) {
+			super();
+			this.interest = interest;
+			this.name = name;
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			checksum += address;
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			return;
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			checksum += offset;
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			checksum += value;
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			return;
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			checksum += offset;
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			return;
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			checksum += offset;
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			checksum += string.length();
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			checksum += tag;
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			return;
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			return;
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			return;
+		}
+
+		@Override
+		public DwarfInterest getInterest() {
+			return interest;
+		}
+
+	}
+
+	private static final int ITERATIONS = 20;
+
+	private static final int WARMUP_ITERATIONS = 10;
+
+	public static void main(String[] args) {
+		List<DwarfScanner> scanners = new ArrayList<>();
+
+		for (String fileName : args) {
+			try {
+				DwarfScanner scanner = new DwarfScanner(fileName);
+
+				scanner.setCompiledDecoding(true);
+				scanners.add(scanner);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		Workload[] workloads = {
+				// only abbreviation codes and skipped attributes
+				new Workload("structure", DwarfInterest.attributes()),
+				// mostly unsigned and signed LEB128 constants
+				new Workload("constants", DwarfInterest.attributes(
+						DwarfAttribute.DW_AT_byte_size,
+						DwarfAttribute.DW_AT_data_member_location,
+						DwarfAttribute.DW_AT_decl_file,
+						DwarfAttribute.DW_AT_decl_line,
+						DwarfAttribute.DW_AT_const_value)),
+				// fixed-size references, addresses and offsets
+				new Workload("references", DwarfInterest.attributes(
+						DwarfAttribute.DW_AT_sibling,
+						DwarfAttribute.DW_AT_type,
+						DwarfAttribute.DW_AT_low_pc,
+						DwarfAttribute.DW_AT_high_pc,
+						DwarfAttribute.DW_AT_stmt_list)),
+				// inline and .debug_str strings
+				new Workload("strings", DwarfInterest.attributes(
+						DwarfAttribute.DW_AT_name,
+						DwarfAttribute.DW_AT_producer,
+						DwarfAttribute.DW_AT_comp_dir)),
+				new Workload("all", DwarfInterest.ALL) };
+
+		for (int round = 0; round < 2; ++round) {
+			for (Workload workload : workloads) {
+				long best = Long.MAX_VALUE;
+
+				for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; ++iteration) {
+					long start = System.nanoTime();
+
+					for (DwarfScanner scanner : scanners) {
+						scanner.scanUnits(workload);
+					}
+
+					if (iteration >= WARMUP_ITERATIONS) {
+						best = Math.min(best, System.nanoTime() - start);
+					}
+				}
+
+				if (round != 0) {
+					System.out.printf("%-10s %.3f ms (checksum %x)%n", workload.name, Double.valueOf(best / 1e6),
+							Long.valueOf(workload.checksum));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Compares the interpreted and compiled attribute decoders.
+ */
+public class DwarfDecodingBenchmark {
+
+	private static final int ITERATIONS = 20;
+
+	private static final int WARMUP_ITERATIONS = 10;
+
+	private static long digest(DwarfScanner scanner, boolean compiled) {
+		DwarfDigest digest = new DwarfDigest();
+
+		scanner.setCompiledDecoding(compiled);
+		scanner.scanUnits(digest);
+
+		return digest.getDigest();
+	}
+
+	public static void main(String[] args) {
+		List<DwarfScanner> scanners = new ArrayList<>();
+
+		for (String fileName : args) {
+			try {
+				DwarfScanner scanner = new DwarfScanner(fileName);
+
+				if (digest(scanner, false) != digest(scanner, true)) {
+					System.out.printf("Compiled decoding delivers different events for %s%n", fileName);
+				}
+
+				scanners.add(scanner);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		for (int round = 0; round < 2; ++round) {
+			for (boolean compiled : new boolean[] { false, true }) {
+				long best = Long.MAX_VALUE;
+
+				for (DwarfScanner scanner : scanners) {
+					scanner.setCompiledDecoding(compiled);
+				}
+
+				for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; ++iteration) {
+					long start = System.nanoTime();
+
+					for (DwarfScanner scanner : scanners) {
+						scanner.scanUnits(DwarfRequestor.NULL);
+					}
+
+					if (iteration >= WARMUP_ITERATIONS) {
+						best = Math.min(best, System.nanoTime() - start);
+					}
+				}
+
+				if (round != 0) {
+					System.out.printf("%-11s %.3f ms%n", compiled ? "compiled" : "interpreted",
+							Double.valueOf(best / 1e6));
+				}
+			}
+		}
+	}
+
+}
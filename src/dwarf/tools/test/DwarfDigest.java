@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.nio.ByteBuffer;
+
+import dwarf.tools.DwarfInterest;
+import dwarf.tools.DwarfRequestor;
+
+/**
+ * Folds every event into a running hash so that event streams
+ * can be compared cheaply.
+ */
+public final class DwarfDigest implements DwarfRequestor {
+
+	private static long hash(byte[] data) {
+		return hash(ByteBuffer.wrap(data));
+	}
+
+	private static long hash(ByteBuffer data) {
+		long hash = data.remaining();
+
+		for (int index = data.position(); index < data.limit(); ++index) {
+			hash = hash * 31 + data.get(index);
+		}
+
+		return hash;
+	}
+
+	private long digest;
+
+	private final DwarfInterest interest;
+
+	public DwarfDigest() {
+		this(DwarfInterest.ALL);
+	}
+
+	public DwarfDigest(DwarfInterest interest) {
+		super();
+		this.digest = 17;
+		this.interest = interest;
+	}
+
+	@Override
+	public void acceptAddress(int attribute, int form, long address) {
+		update(1, attribute, form, address);
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, byte[] data) {
+		update(2, attribute, form, hash(data));
+	}
+
+	@Override
+	public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+		update(2, attribute, form, hash(data));
+	}
+
+	@Override
+	public void acceptConstant(int attribute, int form, long value) {
+		update(3, attribute, form, value);
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, byte[] expression) {
+		update(4, attribute, form, hash(expression));
+	}
+
+	@Override
+	public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+		update(4, attribute, form, hash(expression));
+	}
+
+	@Override
+	public void acceptFlag(int attribute, int form, boolean flag) {
+		update(5, attribute, form, flag ? 1 : 0);
+	}
+
+	@Override
+	public void acceptReference(int attribute, int form, long offset) {
+		update(6, attribute, form, offset);
+	}
+
+	@Override
+	public void acceptString(int attribute, int form, String string) {
+		update(7, attribute, form, string.hashCode());
+	}
+
+	@Override
+	public void beginTag(int tag, long offset, boolean hasChildren) {
+		update(8, tag, hasChildren ? 1 : 0, offset);
+	}
+
+	@Override
+	public void endTag(int tag, boolean hasChildren) {
+		update(9, tag, hasChildren ? 1 : 0, 0);
+	}
+
+	@Override
+	public void enterCompilationUnit(long offset) {
+		update(10, 0, 0, offset);
+	}
+
+	@Override
+	public void exitCompilationUnit(long offset) {
+		update(11, 0, 0, offset);
+	}
+
+	public long getDigest() {
+		return digest;
+	}
+
+	@Override
+	public DwarfInterest getInterest() {
+		return interest;
+	}
+
+	private void update(int kind, int a, int b, long value) {
+		long hash = digest;
+
+		hash = hash * 31 + kind;
+		hash = hash * 31 + a;
+		hash = hash * 31 + b;
+		hash = hash * 31 + value;
+
+		digest = hash;
+	}
+
+}
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfExpression;
+import dwarf.tools.DwarfForm;
+import dwarf.tools.DwarfLocation;
+import dwarf.tools.DwarfOperation;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks the evaluation of a few hand-written expressions, then checks,
+ * for the member offsets and variable locations of the given files, that
+ * the in-place fast path agrees with evaluation of the decoded expression,
+ * that decoded expressions are cached, and that every location expression
+ * can be evaluated; reports the cost of each way of evaluating an offset.
+ */
+public class DwarfExpressionTest {
+
+	private static final DwarfExpression.Context CONTEXT = new DwarfExpression.Context() {
+
+		@Override
+		public long getCallFrameAddress() {
+			return 0x7000;
+		}
+
+		@Override
+		public long getEntryValue(DwarfExpression location) {
+			return 0x5000 + location.getSimpleOperand(DwarfOperation.DW_OP_regx, -1);
+		}
+
+		@Override
+		public long getFrameBase() {
+			return 0x8000;
+		}
+
+		@Override
+		public long getRegister(int register) {
+			return 0x1000 * (register + 1);
+		}
+
+		@Override
+		public long getThreadLocalAddress(long offset) {
+			return 0x9000 + offset;
+		}
+
+		@Override
+		public long readMemory(long address, int size) {
+			return address + size;
+		}
+
+	};
+
+	private static final int ITERATIONS = 20;
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		long[] unitOffsets = scanner.getUnitOffsets();
+		int expressions = 0;
+		int members = 0;
+		int simpleFrameOffsets = 0;
+		int unsupported = 0;
+
+		if (unitOffsets.length == 0) {
+			System.out.printf("%s: no units%n", fileName);
+			return true;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				cursor.reset(unitOffset);
+
+				while (cursor.next()) {
+					if (isExpression(cursor, DwarfAttribute.DW_AT_data_member_location)) {
+						DwarfExpression expression = cursor.getExpression(DwarfAttribute.DW_AT_data_member_location);
+						long offset = cursor.getMemberOffset(-1);
+
+						if (expression != cursor.getExpression(DwarfAttribute.DW_AT_data_member_location)) {
+							System.out.printf("%s: 0x%x: expression not cached%n", fileName,
+									Long.valueOf(cursor.offset()));
+							return false;
+						}
+
+						if (offset != expression.evaluate(CONTEXT, 0)) {
+							System.out.printf("%s: 0x%x: member offset %d, evaluated %d%n", fileName,
+									Long.valueOf(cursor.offset()), Long.valueOf(offset),
+									Long.valueOf(expression.evaluate(CONTEXT, 0)));
+							return false;
+						}
+
+						members += 1;
+						expressions += 1;
+					}
+
+					for (int attribute : new int[] { DwarfAttribute.DW_AT_location, DwarfAttribute.DW_AT_frame_base }) {
+						if (!isExpression(cursor, attribute)) {
+							continue;
+						}
+
+						DwarfExpression expression = cursor.getExpression(attribute);
+						long inPlace = cursor.getSimpleOperand(attribute, DwarfOperation.DW_OP_fbreg, Long.MIN_VALUE);
+						long decoded = expression.getSimpleOperand(DwarfOperation.DW_OP_fbreg, Long.MIN_VALUE);
+
+						if (inPlace != decoded) {
+							System.out.printf("%s: 0x%x: frame offset %d, decoded %d%n", fileName,
+									Long.valueOf(cursor.offset()), Long.valueOf(inPlace), Long.valueOf(decoded));
+							return false;
+						}
+
+						if (inPlace != Long.MIN_VALUE) {
+							if (expression.evaluate(CONTEXT) != CONTEXT.getFrameBase() + inPlace) {
+								System.out.printf("%s: 0x%x: fbreg %d evaluated wrongly%n", fileName,
+										Long.valueOf(cursor.offset()), Long.valueOf(inPlace));
+								return false;
+							}
+
+							simpleFrameOffsets += 1;
+						}
+
+						try {
+							expression.evaluateLocation(CONTEXT);
+						} catch (UnsupportedOperationException e) {
+							unsupported += 1;
+						}
+
+						expressions += 1;
+					}
+				}
+			}
+
+			long inPlaceTime = Long.MAX_VALUE;
+			long cachedTime = Long.MAX_VALUE;
+			long sum = 0;
+
+			for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+				long start = System.nanoTime();
+
+				for (long unitOffset : unitOffsets) {
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						sum += cursor.getMemberOffset(0);
+					}
+				}
+
+				inPlaceTime = Math.min(inPlaceTime, System.nanoTime() - start);
+				start = System.nanoTime();
+
+				for (long unitOffset : unitOffsets) {
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						if (isExpression(cursor, DwarfAttribute.DW_AT_data_member_location)) {
+							sum -= cursor.getExpression(DwarfAttribute.DW_AT_data_member_location).evaluate(CONTEXT, 0);
+						} else {
+							sum -= cursor.getConstant(DwarfAttribute.DW_AT_data_member_location, 0);
+						}
+					}
+				}
+
+				cachedTime = Math.min(cachedTime, System.nanoTime() - start);
+			}
+
+			if (sum != 0) {
+				System.out.printf("%s: member offsets differ%n", fileName);
+				return false;
+			}
+
+			System.out.printf("%s: %d expressions, %d member offsets, %d frame offsets, %d unsupported: match%n",
+					fileName, Integer.valueOf(expressions), Integer.valueOf(members),
+					Integer.valueOf(simpleFrameOffsets), Integer.valueOf(unsupported));
+			System.out.printf("  %.1f ms to walk member offsets in place, %.1f ms through cached expressions%n",
+					Double.valueOf(inPlaceTime / 1e6), Double.valueOf(cachedTime / 1e6));
+		}
+
+		return true;
+	}
+
+	private static boolean checkEvaluation() {
+		boolean passed = true;
+
+		// 1 2 + 3 * => 9
+		passed &= expect(evaluate(0x31, 0x32, DwarfOperation.DW_OP_plus, 0x33, DwarfOperation.DW_OP_mul), 9);
+		// -8 abs 5 - => 3
+		passed &= expect(evaluate(DwarfOperation.DW_OP_const1s, 0xf8, DwarfOperation.DW_OP_abs, 0x35,
+				DwarfOperation.DW_OP_minus), 3);
+		// 0 bra +1 (not taken), lit1, skip +1, lit2 => 1
+		passed &= expect(evaluate(0x30, DwarfOperation.DW_OP_bra, 1, 0, 0x31, DwarfOperation.DW_OP_skip, 1, 0, 0x32),
+				1);
+		// 1 bra +1 (taken) over lit1, lit2 => 2
+		passed &= expect(evaluate(0x31, DwarfOperation.DW_OP_bra, 1, 0, 0x31, 0x32), 2);
+		// breg6 -16 => rbp - 16
+		passed &= expect(evaluate(0x76, 0x70), 0x7000 - 16);
+		// fbreg -24
+		passed &= expect(evaluate(DwarfOperation.DW_OP_fbreg, 0x68), 0x8000 - 24);
+		// addr 0x1234 deref
+		passed &= expect(evaluate(DwarfOperation.DW_OP_addr, 0x34, 0x12, 0, 0, 0, 0, 0, 0, DwarfOperation.DW_OP_deref),
+				0x1234 + 8);
+		// call_frame_cfa 4 +
+		passed &= expect(evaluate(DwarfOperation.DW_OP_call_frame_cfa, DwarfOperation.DW_OP_plus_uconst, 4), 0x7004);
+		// 5 6 swap -  => 1; 1 2 3 rot => 3 1 2, drop drop => 3
+		passed &= expect(evaluate(0x35, 0x36, DwarfOperation.DW_OP_swap, DwarfOperation.DW_OP_minus), 1);
+		passed &= expect(evaluate(0x31, 0x32, 0x33, DwarfOperation.DW_OP_rot, DwarfOperation.DW_OP_drop,
+				DwarfOperation.DW_OP_drop), 3);
+		// shift counts are unsigned: 1 shl -1 => 0, 1 shr -1 => 0, -16 shra -1 => -1
+		passed &= expect(evaluate(0x31, DwarfOperation.DW_OP_const1s, 0xff, DwarfOperation.DW_OP_shl), 0);
+		passed &= expect(evaluate(0x31, DwarfOperation.DW_OP_const1s, 0xff, DwarfOperation.DW_OP_shr), 0);
+		passed &= expect(evaluate(DwarfOperation.DW_OP_const1s, 0xf0, DwarfOperation.DW_OP_const1s, 0xff,
+				DwarfOperation.DW_OP_shra), -1);
+		// 5 GNU_uninit => 5
+		passed &= expect(evaluate(0x35, DwarfOperation.DW_OP_GNU_uninit), 5);
+		// entry_value(reg5) 8 + => the entry value of register 5, plus 8
+		passed &= expect(evaluate(DwarfOperation.DW_OP_entry_value, 1, 0x55, DwarfOperation.DW_OP_plus_uconst, 8),
+				0x5005 + 8);
+
+		// reg0 piece 4, fbreg -8 piece 4, piece 2 (optimized out)
+		DwarfLocation location = DwarfExpression.decode(bytes(0x50, DwarfOperation.DW_OP_piece, 4,
+				DwarfOperation.DW_OP_fbreg, 0x78, DwarfOperation.DW_OP_piece, 4, DwarfOperation.DW_OP_piece, 2), 8)
+				.evaluateLocation(CONTEXT);
+
+		passed &= expect(location.getPieceCount(), 3);
+		passed &= expect(location.getKind(0), DwarfLocation.KIND_REGISTER);
+		passed &= expect(location.getValue(1), 0x8000 - 8);
+		passed &= expect(location.getBitSize(1), 32);
+		passed &= expect(location.getKind(2), DwarfLocation.KIND_EMPTY);
+
+		location = DwarfExpression.decode(bytes(0x37, DwarfOperation.DW_OP_stack_value), 8).evaluateLocation(CONTEXT);
+
+		passed &= expect(location.isComposite() ? 1 : 0, 0);
+		passed &= expect(location.getKind(0), DwarfLocation.KIND_VALUE);
+		passed &= expect(location.getValue(0), 7);
+
+		// implicit_pointer <0x1234> 8 piece 8, reg3 piece 8
+		location = DwarfExpression.decode(bytes(DwarfOperation.DW_OP_implicit_pointer, 0x34, 0x12, 0, 0, 8,
+				DwarfOperation.DW_OP_piece, 8, 0x53, DwarfOperation.DW_OP_piece, 8), 8).evaluateLocation(CONTEXT);
+
+		passed &= expect(location.getPieceCount(), 2);
+		passed &= expect(location.getKind(0), DwarfLocation.KIND_IMPLICIT_POINTER);
+		passed &= expect(location.getValue(0), 0x1234);
+		passed &= expect(location.getPointerOffset(0), 8);
+		passed &= expect(location.getKind(1), DwarfLocation.KIND_REGISTER);
+		passed &= expect(location.getPointerOffset(1), 0);
+
+		location = DwarfExpression.decode(bytes(DwarfOperation.DW_OP_implicit_pointer, 0x34, 0x12, 0, 0, 0x7c), 8)
+				.evaluateLocation(CONTEXT);
+
+		passed &= expect(location.isComposite() ? 1 : 0, 0);
+		passed &= expect(location.getKind(0), DwarfLocation.KIND_IMPLICIT_POINTER);
+		passed &= expect(location.getPointerOffset(0), -4);
+
+		ByteBuffer member = bytes(DwarfOperation.DW_OP_plus_uconst, 0x90, 0x01);
+
+		passed &= expect(DwarfExpression.getSimpleOperand(member, DwarfOperation.DW_OP_plus_uconst, -1), 144);
+		passed &= expect(DwarfExpression.getSimpleOperand(member, DwarfOperation.DW_OP_fbreg, -1), -1);
+		passed &= expect(member.position(), 0);
+
+		if (!passed) {
+			System.out.println("hand-written expressions: mismatch");
+		}
+
+		return passed;
+	}
+
+	private static ByteBuffer bytes(int... values) {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length).order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int value : values) {
+			buffer.put((byte) value);
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static long evaluate(int... values) {
+		return DwarfExpression.decode(bytes(values), 8).evaluate(CONTEXT);
+	}
+
+	private static boolean expect(long actual, long expected) {
+		if (actual != expected) {
+			System.out.printf("expected %d, got %d%n", Long.valueOf(expected), Long.valueOf(actual));
+			return false;
+		}
+
+		return true;
+	}
+
+	private static boolean isExpression(DieCursor cursor, int attribute) {
+		switch (cursor.getForm(attribute)) {
+		case DwarfForm.DW_FORM_block:
+		case DwarfForm.DW_FORM_block1:
+		case DwarfForm.DW_FORM_block2:
+		case DwarfForm.DW_FORM_block4:
+		case DwarfForm.DW_FORM_exprloc:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = checkEvaluation();
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+
+import dwarf.tools.CallFrameInfo;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.FrameTable;
+
+/**
+ * Checks that the call frame information of the given files describes
+ * each FDE by rows in ascending address order within its code, and that
+ * looking up the first, a middle and the last address of each FDE finds
+ * the same rows; reports the time to look up every FDE's addresses before
+ * and after their rows are cached.
+ */
+public class DwarfFrameTest {
+
+	private static final int ITERATIONS = 20;
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		CallFrameInfo info = scanner.getCallFrameInfo();
+		long start = System.nanoTime();
+		int count = info.getDescriptionCount();
+		long indexTime = System.nanoTime() - start;
+		long[] pcs = new long[count * 3];
+		int rows = 0;
+
+		for (int index = 0; index < count; ++index) {
+			FrameTable table = info.getTable(index);
+
+			if (table == null || table.getRowCount() == 0) {
+				System.out.printf("%s: no rows for description %d%n", fileName, Integer.valueOf(index));
+				return false;
+			}
+
+			long end = table.getEnd();
+
+			for (int row = 0; row < table.getRowCount(); ++row) {
+				long address = table.getAddress(row);
+
+				if (row == 0 ? address != table.getStart() : address <= table.getAddress(row - 1)) {
+					System.out.printf("%s: rows out of order at 0x%x%n", fileName, Long.valueOf(address));
+					return false;
+				}
+
+				if (address >= end) {
+					System.out.printf("%s: row 0x%x beyond end 0x%x%n", fileName, Long.valueOf(address),
+							Long.valueOf(end));
+					return false;
+				}
+			}
+
+			rows += table.getRowCount();
+			pcs[index * 3] = table.getStart();
+			pcs[index * 3 + 1] = table.getStart() + (end - table.getStart()) / 2;
+			pcs[index * 3 + 2] = end - 1;
+		}
+
+		// a fresh instance looks up every address before any rows are cached
+		CallFrameInfo cold = new DwarfScanner(fileName).getCallFrameInfo();
+
+		start = System.nanoTime();
+
+		FrameTable[] found = cold.findTables(pcs);
+		long coldTime = System.nanoTime() - start;
+
+		for (int index = 0; index < pcs.length; ++index) {
+			FrameTable table = found[index];
+			long pc = pcs[index];
+
+			if (table == null || pc < table.getStart() || pc >= table.getEnd() || table.find(pc) < 0) {
+				System.out.printf("%s: 0x%x: not found%n", fileName, Long.valueOf(pc));
+				return false;
+			}
+
+			FrameTable expected = info.getTable(index / 3);
+
+			if (table.getStart() != expected.getStart() || table.getRowCount() != expected.getRowCount()) {
+				System.out.printf("%s: 0x%x: found the FDE at 0x%x, expected 0x%x%n", fileName, Long.valueOf(pc),
+						Long.valueOf(table.getStart()), Long.valueOf(expected.getStart()));
+				return false;
+			}
+		}
+
+		long warmTime = Long.MAX_VALUE;
+
+		for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+			start = System.nanoTime();
+
+			for (long pc : pcs) {
+				cold.findTable(pc);
+			}
+
+			warmTime = Math.min(warmTime, System.nanoTime() - start);
+		}
+
+		System.out.printf("%s: %d descriptions, %d rows, %d addresses: match%n", fileName, Integer.valueOf(count),
+				Integer.valueOf(rows), Integer.valueOf(pcs.length));
+		System.out.printf("  %.1f ms to index, %.3f us per cold lookup, %.3f us per cached lookup%n",
+				Double.valueOf(indexTime / 1e6), Double.valueOf(coldTime / 1e3 / Math.max(1, pcs.length)),
+				Double.valueOf(warmTime / 1e3 / Math.max(1, pcs.length)));
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
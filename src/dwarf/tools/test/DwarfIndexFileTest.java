@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import dwarf.tools.DieIndex;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfIndexFile;
+import dwarf.tools.DwarfModel;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks that index files answer queries as a scan would, that they are
+ * reused when up to date and rebuilt otherwise, and times cold and warm
+ * starts.
+ */
+public class DwarfIndexFileTest {
+
+	private static boolean check(String fileName, String otherFileName, Path directory) throws IOException {
+		Path indexPath = directory.resolve("index.dwx");
+		boolean passed = true;
+
+		Files.deleteIfExists(indexPath);
+
+		long start = System.nanoTime();
+		DwarfIndexFile built = new DwarfScanner(fileName).openIndexFile(indexPath);
+		long buildTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		DwarfIndexFile index = scanner.openIndexFile(indexPath);
+		long loadTime = System.nanoTime() - start;
+
+		if (!built.wasBuilt() || index.wasBuilt()) {
+			System.out.printf("%s: index not built once then reused%n", fileName);
+			passed = false;
+		}
+
+		passed &= compare(fileName, scanner, index);
+
+		// the index of another file must be replaced
+		if (otherFileName != null) {
+			DwarfScanner other = new DwarfScanner(otherFileName);
+			DwarfIndexFile otherIndex = other.openIndexFile(indexPath);
+
+			if (!otherIndex.wasBuilt()) {
+				System.out.printf("%s: stale index reused for %s%n", fileName, otherFileName);
+				passed = false;
+			}
+
+			passed &= compare(otherFileName, other, otherIndex);
+		}
+
+		// the index of a copy must survive the copy being touched
+		Path copy = directory.resolve("copy.dbg");
+		Path copyIndexPath = directory.resolve("copy.dwx");
+
+		Files.copy(Paths.get(fileName), copy, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(copyIndexPath);
+		new DwarfScanner(copy.toString()).openIndexFile(copyIndexPath);
+		Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 1000));
+
+		for (int attempt = 0; attempt < 2; ++attempt) {
+			if (new DwarfScanner(copy.toString()).openIndexFile(copyIndexPath).wasBuilt()) {
+				System.out.printf("%s: index rebuilt for a touched copy%n", fileName);
+				passed = false;
+			}
+		}
+
+		// a truncated index must be replaced
+		try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() / 2);
+		}
+
+		if (!new DwarfScanner(fileName).openIndexFile(indexPath).wasBuilt()) {
+			System.out.printf("%s: truncated index reused%n", fileName);
+			passed = false;
+		}
+
+		System.out.printf("%s: built in %.1f ms, reopened in %.1f ms: %s%n", fileName,
+				Double.valueOf(buildTime / 1e6), Double.valueOf(loadTime / 1e6), passed ? "match" : "DIFFER");
+
+		return passed;
+	}
+
+	private static boolean compare(String fileName, DwarfScanner scanner, DwarfIndexFile index) throws IOException {
+		DwarfScanner reference = new DwarfScanner(fileName);
+		DwarfModel model = new DwarfModel(reference);
+		DwarfDigest expected = new DwarfDigest();
+		DwarfDigest observed = new DwarfDigest();
+
+		reference.scanUnits(model);
+		reference.scanUnits(expected);
+
+		if (index.getEntryCount() != model.getEntryCount()
+				|| !Arrays.equals(index.getUnitOffsets(), reference.getUnitOffsets())) {
+			System.out.printf("%s: entries or units differ%n", fileName);
+			return false;
+		}
+
+		for (int entry = 0; entry < model.getEntryCount(); ++entry) {
+			long offset = model.getOffset(entry);
+			String name = model.getString(entry, DwarfAttribute.DW_AT_name);
+			long byteSize = index.getByteSize(offset);
+			long type = index.getType(offset);
+
+			if (index.getEntryOffset(entry) != offset || index.getTag(offset) != model.getTag(entry)
+					|| index.getUnitOffset(offset) != model.getUnitOffset(model.getUnit(entry))
+					|| (name != null && Arrays.binarySearch(index.findEntries(name), offset) < 0)
+					|| (byteSize >= 0 && byteSize != model.getConstant(entry, DwarfAttribute.DW_AT_byte_size, -1))
+					|| (type >= 0 && type != model.getReference(entry, DwarfAttribute.DW_AT_type))) {
+				System.out.printf("%s: entry at 0x%x differs%n", fileName, Long.valueOf(offset));
+				return false;
+			}
+		}
+
+		// decode every unit on demand through the index
+		DieIndex entries = index.toDieIndex();
+
+		for (int unit = 0; unit < model.getUnitCount(); ++unit) {
+			int root = model.getUnitRoot(unit);
+
+			observed.enterCompilationUnit(model.getUnitOffset(unit));
+
+			if (root >= 0) {
+				entries.decode(model.getOffset(root), observed, true);
+			}
+
+			observed.exitCompilationUnit(model.getUnitOffset(unit));
+		}
+
+		if (observed.getDigest() != expected.getDigest()) {
+			System.out.printf("%s: entries decoded through the index differ%n", fileName);
+			return false;
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Files.createTempDirectory("dwarf-index");
+		boolean passed = true;
+
+		try {
+			for (int index = 0; index < args.length; ++index) {
+				passed &= check(args[index], index + 1 < args.length ? args[index + 1] : null, directory);
+			}
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+
+			Files.delete(directory);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
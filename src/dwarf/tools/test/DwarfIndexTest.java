@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DieIndex;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks that entries decoded on demand through an index deliver the
+ * same events as a scan, and follows every DW_AT_type chain through
+ * the index.
+ */
+public class DwarfIndexTest {
+
+	/**
+	 * Computes a digest of the events of each entry, excluding its children.
+	 */
+	private static final class EntryDigests implements DwarfRequestor {
+
+		private DwarfDigest current;
+
+		private boolean currentHasChildren;
+
+		private int currentTag;
+
+		int count;
+
+		long[] digests;
+
+		EntryDigests() {
+			super();
+			this.current = null;
+			this.count = 0;
+			this.digests = new long[1024];
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			current.acceptAddress(attribute, form, address);
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			current.acceptBlock(attribute, form, data);
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			current.acceptBlock(attribute, form, offset, data);
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			current.acceptConstant(attribute, form, value);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			current.acceptExpression(attribute, form, expression);
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			current.acceptExpression(attribute, form, offset, expression);
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			current.acceptFlag(attribute, form, flag);
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			current.acceptReference(attribute, form, offset);
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			current.acceptString(attribute, form, string);
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			finish();
+			current = new DwarfDigest();
+			current.beginTag(tag, offset, hasChildren);
+			currentHasChildren = hasChildren;
+			currentTag = tag;
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			finish();
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			return;
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			finish();
+		}
+
+		private void finish() {
+			if (current != null) {
+				current.endTag(currentTag, currentHasChildren);
+
+				if (count == digests.length) {
+					digests = Arrays.copyOf(digests, count * 2);
+				}
+
+				digests[count++] = current.getDigest();
+				current = null;
+			}
+		}
+
+	}
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		DwarfDigest expected = new DwarfDigest();
+		DwarfDigest observed = new DwarfDigest();
+		EntryDigests entries = new EntryDigests();
+		DieIndex.Builder builder = new DieIndex.Builder(scanner, observed);
+		boolean passed = true;
+
+		scanner.scanUnits(expected);
+		scanner.scanUnits(builder);
+		scanner.scanUnits(entries);
+
+		DieIndex index = builder.build();
+
+		if (observed.getDigest() != expected.getDigest()) {
+			System.out.printf("%s: the builder changed the events%n", fileName);
+			passed = false;
+		}
+
+		if (index.size() != entries.count || index.size() != scanner.buildIndex().size()) {
+			System.out.printf("%s: %d entries indexed, %d scanned%n", fileName, Integer.valueOf(index.size()),
+					Integer.valueOf(entries.count));
+			passed = false;
+		}
+
+		// decode each entry on its own
+		for (int entry = 0; entry < index.size(); ++entry) {
+			DwarfDigest digest = new DwarfDigest();
+
+			index.decode(index.getOffset(entry), digest, false);
+
+			if (digest.getDigest() != entries.digests[entry]) {
+				System.out.printf("%s: entry at 0x%x differs%n", fileName, Long.valueOf(index.getOffset(entry)));
+				passed = false;
+				break;
+			}
+		}
+
+		// decode each unit as the subtree of its first entry
+		DwarfDigest subtrees = new DwarfDigest();
+
+		for (long unitOffset : scanner.getUnitOffsets()) {
+			try (DieCursor cursor = scanner.openCursor(unitOffset)) {
+				subtrees.enterCompilationUnit(unitOffset);
+
+				if (cursor.next()) {
+					index.decode(cursor.offset(), subtrees, true);
+				}
+
+				subtrees.exitCompilationUnit(unitOffset);
+			}
+		}
+
+		if (subtrees.getDigest() != expected.getDigest()) {
+			System.out.printf("%s: subtrees differ%n", fileName);
+			passed = false;
+		}
+
+		// follow every type chain
+		long chains = 0;
+		long links = 0;
+
+		for (long unitOffset : scanner.getUnitOffsets()) {
+			try (DieCursor cursor = scanner.openCursor(unitOffset);
+					DieCursor target = scanner.openCursor(unitOffset)) {
+				while (cursor.next()) {
+					long type = cursor.getReference(DwarfAttribute.DW_AT_type);
+
+					if (type < 0) {
+						continue;
+					}
+
+					chains += 1;
+
+					// bound the walk in case of a cycle
+					for (int length = 0; type >= 0 && length < 100; ++length) {
+						if (!index.contains(type)) {
+							System.out.printf("%s: no entry at 0x%x%n", fileName, Long.valueOf(type));
+							passed = false;
+							break;
+						}
+
+						index.seek(target, type);
+						target.next();
+						links += 1;
+						type = target.getReference(DwarfAttribute.DW_AT_type);
+					}
+				}
+			}
+		}
+
+		System.out.printf("%s: %d entries, %d type chains of %d links: %s%n", fileName,
+				Integer.valueOf(index.size()), Long.valueOf(chains), Long.valueOf(links),
+				passed ? "match" : "DIFFER");
+
+		return passed;
+	}
+
+	public static void main(String[] args) {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			try {
+				passed &= check(fileName);
+			} catch (IOException e) {
+				e.printStackTrace();
+				passed = false;
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
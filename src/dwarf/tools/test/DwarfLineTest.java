@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import dwarf.tools.DwarfLineRequestor;
+import dwarf.tools.DwarfLineTable;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks that the line number table of each unit of the given files finds,
+ * for the address of every row that ends a run of rows at one address, the
+ * file and line of that row as streamed from the line number program, and
+ * reports the time to build tables and to look up addresses.
+ */
+public class DwarfLineTest {
+
+	private static final class Row {
+
+		final long address;
+
+		final String file;
+
+		final int line;
+
+		Row(long address, String file, int line) {
+			super();
+			this.address = address;
+			this.file = file;
+			this.line = line;
+		}
+
+	}
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		long[] unitOffsets = scanner.getUnitOffsets();
+		List<Row> expected = new ArrayList<>();
+		long start = System.nanoTime();
+		int programs = 0;
+
+		for (long unitOffset : unitOffsets) {
+			Map<Integer, String> files = new HashMap<>();
+			List<Row> rows = new ArrayList<>();
+			int[] lastFlags = new int[1];
+
+			boolean found = scanner.scanLines(unitOffset, new DwarfLineRequestor() {
+
+				@Override
+				public void acceptFile(int index, String path) {
+					files.put(Integer.valueOf(index), path);
+				}
+
+				@Override
+				public void acceptRow(long address, int file, int line, int column, int flags) {
+					if (!rows.isEmpty() && (lastFlags[0] & ROW_END_SEQUENCE) == 0
+							&& rows.get(rows.size() - 1).address == address) {
+						// only the last of the rows at one address describes it
+						rows.remove(rows.size() - 1);
+					}
+
+					if ((flags & ROW_END_SEQUENCE) == 0) {
+						rows.add(new Row(address, files.get(Integer.valueOf(file)), line));
+					}
+
+					lastFlags[0] = flags;
+				}
+
+			});
+
+			if (found) {
+				programs += 1;
+				expected.addAll(rows);
+			}
+		}
+
+		long streamTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+
+		long firstTableTime = 0;
+		int rowCount = 0;
+
+		for (long unitOffset : unitOffsets) {
+			DwarfLineTable table = scanner.getLineTable(unitOffset);
+
+			if (table != null) {
+				rowCount += table.getRowCount();
+			}
+
+			if (firstTableTime == 0) {
+				firstTableTime = System.nanoTime() - start;
+			}
+		}
+
+		long tableTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+
+		int checked = 0;
+		int described = 0;
+
+		for (long unitOffset : unitOffsets) {
+			DwarfLineTable table = scanner.getLineTable(unitOffset);
+
+			if (table == null) {
+				continue;
+			}
+
+			for (int row = 0; row < table.getRowCount(); ++row) {
+				if (table.find(table.getAddress(row)) >= 0) {
+					described += 1;
+				}
+
+				checked += 1;
+			}
+		}
+
+		long lookupTime = System.nanoTime() - start;
+
+		for (Row row : expected) {
+			DwarfLineTable table = null;
+			int found = -1;
+
+			for (int index = 0; index < unitOffsets.length && found < 0; ++index) {
+				table = scanner.getLineTable(unitOffsets[index]);
+				found = table != null ? table.find(row.address) : -1;
+			}
+
+			if (found < 0 || table.getLine(found) != row.line || !Objects.equals(table.getFileName(found), row.file)) {
+				System.out.printf("%s: 0x%x: expected %s:%d%n", fileName, Long.valueOf(row.address), row.file,
+						Integer.valueOf(row.line));
+				return false;
+			}
+		}
+
+		System.out.printf("%s: %d line programs, %d rows, %d of them described, %d addresses: match%n", fileName,
+				Integer.valueOf(programs), Integer.valueOf(rowCount), Integer.valueOf(described),
+				Integer.valueOf(expected.size()));
+		System.out.printf("  %.1f ms to stream all rows, %.1f ms to build all tables, %.2f ms for the first,"
+				+ " %.3f us per lookup%n", Double.valueOf(streamTime / 1e6), Double.valueOf(tableTime / 1e6),
+				Double.valueOf(firstTableTime / 1e6), Double.valueOf(lookupTime / 1e3 / Math.max(1, checked)));
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfExpression;
+import dwarf.tools.DwarfLocationList;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks, for the variables and parameters with location lists in the
+ * given files, that lists are cached, that their entries are sorted, that
+ * the binary search finds the same entry as a linear scan, and that the
+ * code ranges of entries answer the same before and after they are
+ * cached; reports the cost of decoding lists and of looking up locations.
+ * A file with a .debug_addr section that is not a split object must fail
+ * to answer its ranges once that section is hidden.
+ */
+public class DwarfLocationTest {
+
+	private static final int ITERATIONS = 20;
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		long[] unitOffsets = scanner.getUnitOffsets();
+		DwarfScanner fresh = new DwarfScanner(fileName);
+		int entries = 0;
+		int lists = 0;
+		int probes = 0;
+		int ranges = 0;
+		long decodeTime = System.nanoTime();
+
+		if (unitOffsets.length == 0) {
+			System.out.printf("%s: no units%n", fileName);
+			return true;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0]);
+				DieCursor freshCursor = fresh.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				long baseAddress = 0;
+
+				cursor.reset(unitOffset);
+				freshCursor.reset(unitOffset);
+
+				while (cursor.next() && freshCursor.next()) {
+					if (cursor.depth() == 0) {
+						baseAddress = cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0);
+					}
+
+					if (cursor.hasAttribute(DwarfAttribute.DW_AT_ranges)) {
+						long[] cached = cursor.getRanges(baseAddress);
+
+						if (!Arrays.equals(cached, cursor.getRanges(baseAddress))
+								|| !Arrays.equals(cached, freshCursor.getRanges(baseAddress))) {
+							System.out.printf("%s: 0x%x: ranges differ%n", fileName, Long.valueOf(cursor.offset()));
+							return false;
+						}
+
+						ranges += 1;
+					}
+
+					DwarfLocationList list = cursor.getLocationList(DwarfAttribute.DW_AT_location);
+
+					if (list == null) {
+						continue;
+					}
+
+					if (list != cursor.getLocationList(DwarfAttribute.DW_AT_location)) {
+						System.out.printf("%s: 0x%x: list not cached%n", fileName, Long.valueOf(cursor.offset()));
+						return false;
+					}
+
+					int count = list.getEntryCount();
+
+					if (scanner.isSplitObject()) {
+						// the entries of a split object are bounded by indices into the executable's .debug_addr
+						entries += count;
+						lists += 1;
+						continue;
+					}
+
+					for (int entry = 0; entry < count; ++entry) {
+						long start = list.getStart(entry);
+						long end = list.getEnd(entry);
+
+						if (start >= end || (entry > 0 && list.getStart(entry - 1) > start)) {
+							System.out.printf("%s: 0x%x: entry %d unordered%n", fileName,
+									Long.valueOf(cursor.offset()), Integer.valueOf(entry));
+							return false;
+						}
+
+						for (long address : new long[] { start - 1, start, start + (end - start) / 2, end - 1, end }) {
+							int found = list.find(address);
+							int expected = findLinear(list, address);
+
+							if (found != expected && !(found >= 0 && expected >= 0
+									&& list.getStart(found) <= address && address < list.getEnd(found))) {
+								System.out.printf("%s: 0x%x: at 0x%x found entry %d, expected %d%n", fileName,
+										Long.valueOf(cursor.offset()), Long.valueOf(address), Integer.valueOf(found),
+										Integer.valueOf(expected));
+								return false;
+							}
+
+							DwarfExpression location = cursor.getLocation(DwarfAttribute.DW_AT_location, address);
+							DwarfExpression expectedLocation = found >= 0 ? list.getExpression(found) : list.getDefault();
+
+							if (location != expectedLocation) {
+								System.out.printf("%s: 0x%x: wrong location at 0x%x%n", fileName,
+										Long.valueOf(cursor.offset()), Long.valueOf(address));
+								return false;
+							}
+
+							probes += 1;
+						}
+					}
+
+					entries += count;
+					lists += 1;
+				}
+			}
+
+			decodeTime = System.nanoTime() - decodeTime;
+
+			long lookupTime = Long.MAX_VALUE;
+			long found = 0;
+
+			for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+				long start = System.nanoTime();
+
+				for (long unitOffset : unitOffsets) {
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						DwarfLocationList list = cursor.getLocationList(DwarfAttribute.DW_AT_location);
+
+						if (list != null && list.getEntryCount() > 0) {
+							found += list.find(list.getStart(list.getEntryCount() / 2));
+						}
+					}
+				}
+
+				lookupTime = Math.min(lookupTime, System.nanoTime() - start);
+			}
+
+			System.out.printf("%s: %d location lists, %d entries, %d probes, %d range lists: match%n", fileName,
+					Integer.valueOf(lists), Integer.valueOf(entries), Integer.valueOf(probes), Integer.valueOf(ranges));
+			System.out.printf("  %.1f ms to decode and check, %.1f ms to walk cached lists (%d)%n",
+					Double.valueOf(decodeTime / 1e6), Double.valueOf(lookupTime / 1e6), Long.valueOf(found));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check that a copy of the given file whose .debug_addr section has been
+	 * renamed fails to answer the ranges of its units and entries, rather
+	 * than answering indices into that section as addresses.
+	 */
+	private static boolean checkMissingAddresses(String fileName, Path directory) throws IOException {
+		byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+		byte[] name = ".debug_addr\0".getBytes(StandardCharsets.US_ASCII);
+		int position = indexOf(bytes, name);
+
+		if (position < 0 || new DwarfScanner(fileName).isSplitObject()) {
+			return true;
+		}
+
+		Path copy = directory.resolve("no-addr.dbg");
+
+		bytes[position + 7] = 'x';
+		Files.write(copy, bytes);
+
+		try {
+			DwarfScanner scanner = new DwarfScanner(copy.toString());
+			long[] unitOffsets = scanner.getUnitOffsets();
+
+			try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+				for (long unitOffset : unitOffsets) {
+					long baseAddress = 0;
+
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						if (cursor.depth() == 0) {
+							baseAddress = cursor.getAddress(DwarfAttribute.DW_AT_low_pc, 0);
+						}
+
+						cursor.getRanges(baseAddress);
+					}
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.printf("%s: without .debug_addr: %s%n", fileName, e.getMessage());
+			return true;
+		} finally {
+			Files.delete(copy);
+		}
+
+		System.out.printf("%s: addresses answered without .debug_addr%n", fileName);
+		return false;
+	}
+
+	private static int findLinear(DwarfLocationList list, long address) {
+		for (int entry = 0, count = list.getEntryCount(); entry < count; ++entry) {
+			if (list.getStart(entry) <= address && address < list.getEnd(entry)) {
+				return entry;
+			}
+		}
+
+		return -1;
+	}
+
+	private static int indexOf(byte[] bytes, byte[] pattern) {
+		for (int start = 0; start <= bytes.length - pattern.length; ++start) {
+			int index = 0;
+
+			while (index < pattern.length && bytes[start + index] == pattern[index]) {
+				index += 1;
+			}
+
+			if (index == pattern.length) {
+				return start;
+			}
+		}
+
+		return -1;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Files.createTempDirectory("dwarf-location");
+		boolean passed = true;
+
+		try {
+			for (String fileName : args) {
+				passed &= check(fileName);
+				passed &= checkMissingAddresses(fileName, directory);
+			}
+		} finally {
+			Files.delete(directory);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfNameLookup;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Compares the latency of finding the entries with one name through
+ * {@link DwarfNameLookup} against walking all units, and checks that
+ * entries are found for each name and that the units answered for the
+ * name are those holding them; {@link DwarfLookupTest} checks the entries
+ * themselves. The names are sampled from those of the top-level entries
+ * of each file that are not declarations.
+ */
+public class DwarfLookupBenchmark {
+
+	private static final int ITERATIONS = 5;
+
+	/** the number of names looked up with a walk of all units */
+	private static final int SCAN_SAMPLES = 3;
+
+	private static final int SAMPLES = 50;
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		Set<String> topLevelNames = new LinkedHashSet<>();
+
+		walk(scanner, null, (name, depth, declaration) -> {
+			if (depth == 1 && !declaration) {
+				topLevelNames.add(name);
+			}
+		});
+
+		String[] samples = sample(new ArrayList<>(topLevelNames));
+
+		if (samples.length == 0) {
+			System.out.printf("%s: no names%n", fileName);
+			return true;
+		}
+
+		// a scan that stops at nothing: the cost of a lookup without an index
+		long start = System.nanoTime();
+
+		for (int index = 0; index < SCAN_SAMPLES; ++index) {
+			walk(scanner, samples[index % samples.length], (name, depth, declaration) -> {
+				return;
+			});
+		}
+
+		double scanTime = (System.nanoTime() - start) / 1e6 / SCAN_SAMPLES;
+
+		// a fresh scanner, so opening the lookup is measured from a cold start
+		DwarfScanner lookupScanner = new DwarfScanner(fileName);
+
+		start = System.nanoTime();
+
+		DwarfNameLookup lookup = lookupScanner.getNameLookup();
+
+		// the first pass includes reading the tables and building any fallback index
+		for (String name : samples) {
+			lookup.findEntries(name);
+		}
+
+		double firstTime = (System.nanoTime() - start) / 1e6;
+
+		start = System.nanoTime();
+
+		for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+			for (String name : samples) {
+				lookup.findEntries(name);
+			}
+		}
+
+		double lookupTime = (System.nanoTime() - start) / 1e3 / (ITERATIONS * samples.length);
+
+		System.out.printf("%s: using %s%n", fileName,
+				lookup.hasAccelerators() ? String.join(", ", lookup.getSources()) : "a scanned index");
+		System.out.printf("  first %d lookups %.2f ms, then %.2f us per lookup%n", Integer.valueOf(samples.length),
+				Double.valueOf(firstTime), Double.valueOf(lookupTime));
+		System.out.printf("  walking all units %.2f ms per lookup (%.0f times slower)%n", Double.valueOf(scanTime),
+				Double.valueOf(scanTime * 1e3 / Math.max(lookupTime, 1e-3)));
+
+		long[] unitOffsets = scanner.getUnitOffsets();
+
+		for (String name : samples) {
+			long[] found = lookup.findEntries(name);
+
+			if (found.length == 0) {
+				System.out.printf("%s: no entries found for '%s'%n", fileName, name);
+				return false;
+			}
+
+			// the units holding the entries found, in ascending order
+			long[] expected = Arrays.stream(found) //
+					.map(offset -> unitOf(unitOffsets, offset)) //
+					.distinct() //
+					.toArray();
+
+			if (!Arrays.equals(lookup.findUnits(name), expected)) {
+				System.out.printf("%s: wrong units for '%s'%n", fileName, name);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+	private static String[] sample(List<String> names) {
+		int count = Math.min(SAMPLES, names.size());
+		String[] samples = new String[count];
+
+		for (int index = 0; index < count; ++index) {
+			samples[index] = names.get((int) ((long) index * names.size() / count));
+		}
+
+		return samples;
+	}
+
+	/**
+	/**
+	 * Answer the offset of the unit holding the entry at the given offset.
+	 */
+	private static long unitOf(long[] unitOffsets, long offset) {
+		int index = Arrays.binarySearch(unitOffsets, offset);
+
+		return unitOffsets[index >= 0 ? index : -index - 2];
+	}
+
+	/**
+	 * Walk all units, delivering the entries with the given name,
+	 * or all named entries if the name is null.
+	 */
+	private static void walk(DwarfScanner scanner, String wanted, NameVisitor visitor) {
+		long[] unitOffsets = scanner.getUnitOffsets();
+
+		if (unitOffsets.length == 0) {
+			return;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				cursor.reset(unitOffset);
+
+				while (cursor.next()) {
+					String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+					if (name != null && (wanted == null || wanted.equals(name))) {
+						visitor.visit(name, cursor.depth(), cursor.getFlag(DwarfAttribute.DW_AT_declaration));
+					}
+				}
+			}
+		}
+	}
+
+	private interface NameVisitor {
+
+		void visit(String name, int depth, boolean declaration);
+
+	}
+
+}
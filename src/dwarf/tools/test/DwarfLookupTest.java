@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfIndexFile;
+import dwarf.tools.DwarfNameLookup;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTag;
+
+/**
+ * Checks that {@link DwarfNameLookup} answers, for every name of every
+ * entry of each given file, exactly the entries a walk of all units finds:
+ * those at file or namespace scope that are not declarations, including
+ * definitions named by the declarations they complete. Files without
+ * accelerator tables are checked both with and without an index file.
+ */
+public class DwarfLookupTest {
+
+	private static boolean check(String fileName, Path directory) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		Map<String, long[]> expected = new HashMap<>();
+		TreeSet<String> allNames = new TreeSet<>();
+
+		walk(scanner, expected, allNames);
+
+		DwarfNameLookup lookup = new DwarfNameLookup(scanner, null);
+		String sources = lookup.hasAccelerators() ? String.join(", ", lookup.getSources()) : "a scanned index";
+
+		if (!check(fileName, lookup, expected, allNames)) {
+			return false;
+		}
+
+		if (!lookup.hasAccelerators()) {
+			Path indexPath = directory.resolve(Paths.get(fileName).getFileName() + ".idx");
+
+			if (!check(fileName, new DwarfNameLookup(scanner, DwarfIndexFile.open(scanner, indexPath)), expected,
+					allNames)) {
+				return false;
+			}
+
+			sources += " and an index file";
+		}
+
+		System.out.printf("%s: %d names, %d found, using %s: match%n", fileName, Integer.valueOf(allNames.size()),
+				Integer.valueOf(expected.size()), sources);
+
+		return true;
+	}
+
+	private static boolean check(String fileName, DwarfNameLookup lookup, Map<String, long[]> expected,
+			TreeSet<String> allNames) {
+		for (String name : allNames) {
+			long[] found = lookup.findEntries(name);
+			long[] wanted = expected.getOrDefault(name, new long[0]);
+
+			if (!Arrays.equals(found, wanted)) {
+				System.out.printf("%s: '%s' found %s, expected %s%n", fileName, name, Arrays.toString(found),
+						Arrays.toString(wanted));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Files.createTempDirectory("dwarf-lookup");
+		boolean passed = true;
+
+		try {
+			for (String fileName : args) {
+				passed &= check(fileName, directory);
+			}
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+
+			Files.delete(directory);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+	/**
+	 * Walk all units, adding the entries that should be found to the given
+	 * map, in ascending order, and every name to the given set.
+	 */
+	private static void walk(DwarfScanner scanner, Map<String, long[]> expected, TreeSet<String> allNames) {
+		long[] unitOffsets = scanner.getUnitOffsets();
+		Map<String, List<Long>> found = new HashMap<>();
+
+		if (unitOffsets.length == 0) {
+			return;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				// the depth of the innermost namespace enclosing the entry, or of the unit
+				List<Integer> scopes = new ArrayList<>();
+				Map<Long, String> declarations = new HashMap<>();
+
+				cursor.reset(unitOffset);
+
+				while (cursor.next()) {
+					int depth = cursor.depth();
+					int tag = cursor.tag();
+					String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+					while (!scopes.isEmpty() && scopes.get(scopes.size() - 1).intValue() >= depth) {
+						scopes.remove(scopes.size() - 1);
+					}
+
+					boolean visible = depth > 0 && scopes.size() == depth;
+
+					if (depth == 0 || (visible && tag == DwarfTag.DW_TAG_namespace)) {
+						scopes.add(Integer.valueOf(depth));
+					}
+
+					if (name != null) {
+						allNames.add(name);
+					}
+
+					if (!visible) {
+						continue;
+					}
+
+					if (name == null) {
+						name = declarations.get(Long.valueOf(cursor.getReference(DwarfAttribute.DW_AT_specification)));
+					}
+
+					if (name != null && cursor.getFlag(DwarfAttribute.DW_AT_declaration)) {
+						declarations.put(Long.valueOf(cursor.offset()), name);
+					} else if (name != null) {
+						found.computeIfAbsent(name, key -> new ArrayList<>()).add(Long.valueOf(cursor.offset()));
+					}
+				}
+			}
+		}
+
+		for (Map.Entry<String, List<Long>> entry : found.entrySet()) {
+			expected.put(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray());
+		}
+	}
+
+}
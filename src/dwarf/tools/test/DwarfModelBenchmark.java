@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfModel;
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Compares the heap used by a {@link DwarfModel} with that of a tree of
+ * objects, one per entry, as our tools have typically built.
+ */
+public class DwarfModelBenchmark {
+
+	private static final class Attribute {
+
+		final int attribute;
+
+		final int form;
+
+		final Object value;
+
+		Attribute(int attribute, int form, Object value) {
+			super();
+			this.attribute = attribute;
+			this.form = form;
+			this.value = value;
+		}
+
+	}
+
+	private static final class Node {
+
+		final List<Attribute> attributes;
+
+		final List<Node> children;
+
+		final long offset;
+
+		final Node parent;
+
+		final int tag;
+
+		Node(Node parent, int tag, long offset) {
+			super();
+			this.attributes = new ArrayList<>();
+			this.children = new ArrayList<>();
+			this.offset = offset;
+			this.parent = parent;
+			this.tag = tag;
+		}
+
+		String getName() {
+			for (Attribute attribute : attributes) {
+				if (attribute.attribute == DwarfAttribute.DW_AT_name) {
+					return (String) attribute.value;
+				}
+			}
+
+			return null;
+		}
+
+	}
+
+	private static final class TreeBuilder implements DwarfRequestor {
+
+		private Node current;
+
+		final List<Node> nodes;
+
+		private final Deque<Node> open;
+
+		final List<Node> roots;
+
+		TreeBuilder() {
+			super();
+			this.current = null;
+			this.nodes = new ArrayList<>();
+			this.open = new ArrayDeque<>();
+			this.roots = new ArrayList<>();
+		}
+
+		@Override
+		public void acceptAddress(int attribute, int form, long address) {
+			current.attributes.add(new Attribute(attribute, form, Long.valueOf(address)));
+		}
+
+		@Override
+		public void acceptBlock(int attribute, int form, byte[] data) {
+			current.attributes.add(new Attribute(attribute, form, data));
+		}
+
+		@Override
+		public void acceptConstant(int attribute, int form, long value) {
+			current.attributes.add(new Attribute(attribute, form, Long.valueOf(value)));
+		}
+
+		@Override
+		public void acceptExpression(int attribute, int form, byte[] expression) {
+			current.attributes.add(new Attribute(attribute, form, expression));
+		}
+
+		@Override
+		public void acceptFlag(int attribute, int form, boolean flag) {
+			current.attributes.add(new Attribute(attribute, form, Boolean.valueOf(flag)));
+		}
+
+		@Override
+		public void acceptReference(int attribute, int form, long offset) {
+			current.attributes.add(new Attribute(attribute, form, Long.valueOf(offset)));
+		}
+
+		@Override
+		public void acceptString(int attribute, int form, String string) {
+			current.attributes.add(new Attribute(attribute, form, string));
+		}
+
+		@Override
+		public void beginTag(int tag, long offset, boolean hasChildren) {
+			Node parent = open.peek();
+
+			current = new Node(parent, tag, offset);
+			nodes.add(current);
+
+			if (parent != null) {
+				parent.children.add(current);
+			} else {
+				roots.add(current);
+			}
+
+			if (hasChildren) {
+				open.push(current);
+			}
+		}
+
+		@Override
+		public void endTag(int tag, boolean hasChildren) {
+			if (hasChildren) {
+				open.pop();
+			}
+		}
+
+		@Override
+		public void enterCompilationUnit(long offset) {
+			return;
+		}
+
+		@Override
+		public void exitCompilationUnit(long offset) {
+			return;
+		}
+
+	}
+
+	private static boolean compare(DwarfModel model, List<Node> nodes) {
+		if (model.getEntryCount() != nodes.size()) {
+			return false;
+		}
+
+		for (int entry = 0; entry < nodes.size(); ++entry) {
+			Node node = nodes.get(entry);
+			String name = model.getString(entry, DwarfAttribute.DW_AT_name);
+
+			if (model.getTag(entry) != node.tag || model.getOffset(entry) != node.offset) {
+				return false;
+			}
+
+			if (name == null ? node.getName() != null : !name.equals(node.getName())) {
+				return false;
+			}
+
+			int parent = model.getParent(entry);
+
+			if (parent < 0 ? node.parent != null : nodes.get(parent) != node.parent) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int round = 0; round < 4; ++round) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String fileName = args.length != 0 ? args[0] : "data/libj9prt29.so.dbg";
+		DwarfScanner scanner = new DwarfScanner(fileName);
+
+		// settle caches shared by both representations
+		scanner.scanUnits(DwarfRequestor.NULL);
+
+		long base = usedHeap();
+		DwarfModel model = new DwarfModel(scanner);
+
+		scanner.scanUnits(model);
+		model.trimToSize();
+
+		long modelBytes = usedHeap() - base;
+
+		base = usedHeap();
+
+		TreeBuilder tree = new TreeBuilder();
+
+		scanner.scanUnits(tree);
+
+		long treeBytes = usedHeap() - base;
+		double entries = model.getEntryCount();
+
+		System.out.printf("%s: %d entries%n", fileName, Integer.valueOf(model.getEntryCount()));
+		System.out.printf("model       %,12d bytes, %6.1f bytes/entry%n", Long.valueOf(modelBytes),
+				Double.valueOf(modelBytes / entries));
+		System.out.printf("object tree %,12d bytes, %6.1f bytes/entry%n", Long.valueOf(treeBytes),
+				Double.valueOf(treeBytes / entries));
+		System.out.println(compare(model, tree.nodes) ? "model matches tree" : "model DIFFERS from tree");
+	}
+
+}
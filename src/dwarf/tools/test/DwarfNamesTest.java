@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfNames;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Checks that every entry found through the .debug_names section of each
+ * given file has the name and tag it was found under, by comparison with
+ * a walk of all units, and reports the time for lookups against the time
+ * for the walk. A file without a .debug_names section fails the check,
+ * so the test must be given only files that have one.
+ */
+public class DwarfNamesTest {
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		DwarfNames index = scanner.getNameIndex();
+
+		if (index == null) {
+			System.out.printf("%s: no .debug_names section%n", fileName);
+			return false;
+		}
+
+		Map<String, Set<Long>> offsetsByName = new HashMap<>();
+		Map<Long, Integer> tagsByOffset = new HashMap<>();
+		long start = System.nanoTime();
+		long[] unitOffsets = scanner.getUnitOffsets();
+
+		if (unitOffsets.length != 0) {
+			try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+				for (long unitOffset : unitOffsets) {
+					cursor.reset(unitOffset);
+
+					while (cursor.next()) {
+						String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+						if (name != null) {
+							Long offset = Long.valueOf(cursor.offset());
+
+							offsetsByName.computeIfAbsent(name, key -> new HashSet<>()).add(offset);
+							tagsByOffset.put(offset, Integer.valueOf(cursor.tag()));
+						}
+					}
+				}
+			}
+		}
+
+		long walkTime = System.nanoTime() - start;
+		String[] names = index.getNames();
+		long found = 0;
+
+		start = System.nanoTime();
+
+		for (String name : names) {
+			found += index.findEntries(name).length;
+		}
+
+		long lookupTime = System.nanoTime() - start;
+
+		for (String name : names) {
+			Set<Long> expected = offsetsByName.getOrDefault(name, new HashSet<>());
+			long[] offsets = index.findEntries(name);
+
+			if (offsets.length == 0) {
+				System.out.printf("%s: no entries found for '%s'%n", fileName, name);
+				return false;
+			}
+
+			for (long offset : offsets) {
+				Integer tag = tagsByOffset.get(Long.valueOf(offset));
+
+				if (!expected.contains(Long.valueOf(offset))) {
+					System.out.printf("%s: entry at 0x%x is not named '%s'%n", fileName, Long.valueOf(offset), name);
+					return false;
+				}
+
+				for (long tagged : index.findEntries(name, tag.intValue())) {
+					if (!tag.equals(tagsByOffset.get(Long.valueOf(tagged)))) {
+						System.out.printf("%s: entry at 0x%x does not have tag 0x%x%n", fileName,
+								Long.valueOf(tagged), tag);
+						return false;
+					}
+				}
+			}
+		}
+
+		System.out.printf("%s: %d tables, %d names, %d entries found: match%n", fileName,
+				Integer.valueOf(index.getTableCount()), Integer.valueOf(names.length), Long.valueOf(found));
+		System.out.printf("  %.2f us per lookup, %.1f ms to walk all units%n",
+				Double.valueOf(lookupTime / 1e3 / Math.max(1, names.length)), Double.valueOf(walkTime / 1e6));
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import dwarf.tools.DwarfRequestor;
+import dwarf.tools.DwarfScanner;
+
+/**
+ * Measures how unit-parallel scanning scales with the number of threads.
+ */
+public class DwarfScanBenchmark {
+
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	private static final int ITERATIONS = 5;
+
+	private static long digest(DwarfScanner scanner, int threads) {
+		DwarfDigest digest = new DwarfDigest();
+
+		scanner.scanUnits(digest, threads);
+
+		return digest.getDigest();
+	}
+
+	public static void main(String[] args) {
+		List<DwarfScanner> scanners = new ArrayList<>();
+
+		for (String fileName : args) {
+			try {
+				scanners.add(new DwarfScanner(fileName));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		// verify that ordered delivery matches a sequential scan
+		for (int index = 0; index < scanners.size(); ++index) {
+			DwarfScanner scanner = scanners.get(index);
+			DwarfDigest expected = new DwarfDigest();
+
+			scanner.scanUnits(expected);
+
+			for (int threads : THREAD_COUNTS) {
+				if (digest(scanner, threads) != expected.getDigest()) {
+					System.out.printf("Ordered events differ for %s with %d threads%n", args[index],
+							Integer.valueOf(threads));
+				}
+			}
+		}
+
+		double baseline = 0;
+
+		for (int threads : THREAD_COUNTS) {
+			long best = Long.MAX_VALUE;
+
+			for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+				long start = System.nanoTime();
+
+				for (DwarfScanner scanner : scanners) {
+					scanner.scanUnits(offset -> DwarfRequestor.NULL, threads);
+				}
+
+				best = Math.min(best, System.nanoTime() - start);
+			}
+
+			double seconds = best / 1e9;
+
+			if (threads == 1) {
+				baseline = seconds;
+			}
+
+			System.out.printf("%d thread(s): %.6f seconds (speedup %.2f)%n", Integer.valueOf(threads),
+					Double.valueOf(seconds), Double.valueOf(baseline / seconds));
+		}
+	}
+
+}
@@ -20,8 +20,13 @@
  *******************************************************************************/
 package dwarf.tools.test;
 
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
+import dwarf.tools.DwarfBatch;
 import dwarf.tools.DwarfRequestor;
 import dwarf.tools.DwarfScanner;
 
@@ -58,6 +63,11 @@ public class DwarfScanTest {
 			attributeCount += 1;
 		}
 
+		@Override
+		public void acceptBlock(int attribute, int form, long offset, ByteBuffer data) {
+			attributeCount += 1;
+		}
+
 		@Override
 		public void acceptConstant(int attribute, int form, long value) {
 			attributeCount += 1;
@@ -68,6 +78,11 @@ public class DwarfScanTest {
 			attributeCount += 1;
 		}
 
+		@Override
+		public void acceptExpression(int attribute, int form, long offset, ByteBuffer expression) {
+			attributeCount += 1;
+		}
+
 		@Override
 		public void acceptFlag(int attribute, int form, boolean flag) {
 			attributeCount += 1;
@@ -104,40 +119,86 @@ public class DwarfScanTest {
 		}
 
 		@SuppressWarnings("boxing")
-		void printStatistics() {
-			System.out.printf("  %d compilation units", unitBeginCount);
+		void printStatistics(PrintStream out) {
+			out.printf("  %d compilation units", unitBeginCount);
 			if (unitEndCount != unitBeginCount) {
-				System.out.printf(" (exited %d)", unitEndCount);
+				out.printf(" (exited %d)", unitEndCount);
 			}
-			System.out.println();
-			System.out.printf("  %d tags", tagBeginCount);
+			out.println();
+			out.printf("  %d tags", tagBeginCount);
 			if (tagEndCount != tagBeginCount) {
-				System.out.printf(" (exited %d)", tagEndCount);
+				out.printf(" (exited %d)", tagEndCount);
 			}
-			System.out.println();
-			System.out.printf("  %d attributes%n", attributeCount);
+			out.println();
+			out.printf("  %d attributes%n", attributeCount);
 		}
 
 	}
 
 	public static void main(String[] args) {
-		for (String fileName : args) {
-			DwarfCounter counter = new DwarfCounter();
-			long start = System.nanoTime();
+		int parallelism = 1;
+		long memoryBudget = 0;
+		int index = 0;
+
+		for (; index + 1 < args.length && args[index].startsWith("-"); index += 2) {
+			switch (args[index]) {
+			case "-j":
+				parallelism = Integer.parseInt(args[index + 1]);
+				break;
+			case "-m":
+				memoryBudget = Long.parseLong(args[index + 1]) << 20;
+				break;
+			default:
+				System.err.println("Usage: DwarfScanTest [-j threads] [-m megabytes] file...");
+				return;
+			}
+		}
+
+		List<String> fileNames = Arrays.asList(args).subList(index, args.length);
+		DwarfBatch batch = new DwarfBatch(parallelism, memoryBudget);
+		long[] totals = new long[3];
+		long start = System.nanoTime();
 
-			try {
-				DwarfScanner dumper = new DwarfScanner(fileName);
+		batch.scanAll(fileNames, DwarfScanTest::scan, result -> {
+			System.out.printf("Scanned %s in %.6f seconds%n", result.getFileName(),
+					Double.valueOf(result.getTime() / 1e9));
 
-				dumper.scanUnits(counter);
-			} catch (IOException e) {
-				e.printStackTrace();
+			if (result.isSuccess()) {
+				System.out.print(result.getValue());
+			} else {
+				result.getFailure().printStackTrace(System.out);
+				totals[1] += 1;
 			}
 
+			totals[0] += 1;
+			totals[2] += result.getTime();
+		});
+
+		if (fileNames.size() > 1) {
 			long duration = System.nanoTime() - start;
 
-			System.out.printf("Scanned %s in %.6f seconds%n", fileName, Double.valueOf(duration / 1e9));
-			counter.printStatistics();
+			System.out.printf("Scanned %d files (%d failed) in %.6f seconds using %d threads (%.6f seconds of scanning)%n",
+					Long.valueOf(totals[0]), Long.valueOf(totals[1]), Double.valueOf(duration / 1e9),
+					Integer.valueOf(parallelism), Double.valueOf(totals[2] / 1e9));
 		}
 	}
 
+	private static String scan(DwarfScanner scanner) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer);
+		DwarfCounter counter = new DwarfCounter();
+
+		scanner.scanUnits(counter);
+		counter.printStatistics(out);
+		out.printf("  %d abbreviation tables parsed, %d reused%n", //
+				Long.valueOf(scanner.getAbbreviationCacheMisses()),
+				Long.valueOf(scanner.getAbbreviationCacheHits()));
+		out.printf("  %d strings decoded, %d reused%n", //
+				Long.valueOf(scanner.getStringCacheMisses()),
+				Long.valueOf(scanner.getStringCacheHits()));
+		out.flush();
+
+		return buffer.toString();
+	}
+
 }
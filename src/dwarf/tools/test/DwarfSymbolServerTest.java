@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import dwarf.tools.AddressIndex;
+import dwarf.tools.DwarfLineTable;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfSymbolServer;
+import dwarf.tools.DwarfSymbolizer;
+
+/**
+ * Starts a {@link DwarfSymbolServer} whose memory budget holds only the
+ * largest of the given files and, acting as its client, symbolizes the
+ * addresses of line table rows of each file twice, checking the answers
+ * against a symbolizer used directly and the innermost positions against
+ * the line tables; reports the latency of first and repeated requests and
+ * the latency percentiles kept by the server. Finally checks that closing
+ * the server ends the idle connection.
+ */
+public class DwarfSymbolServerTest {
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final int MAX_SAMPLES = 5000;
+
+	/**
+	 * Answer addresses of rows of the line tables of the given file,
+	 * spread over all its units.
+	 */
+	private static long[] sample(DwarfScanner scanner) {
+		List<DwarfLineTable> tables = new ArrayList<>();
+		int rows = 0;
+
+		for (long unitOffset : scanner.getUnitOffsets()) {
+			DwarfLineTable table = scanner.getLineTable(unitOffset);
+
+			if (table != null) {
+				tables.add(table);
+				rows += table.getRowCount();
+			}
+		}
+
+		int stride = Math.max(1, rows / MAX_SAMPLES);
+		long[] samples = new long[Math.min(rows, (rows + stride - 1) / stride)];
+		int count = 0;
+		int row = 0;
+
+		for (DwarfLineTable table : tables) {
+			for (int index = 0; index < table.getRowCount(); ++index, ++row) {
+				if (row % stride == 0 && count < samples.length) {
+					samples[count++] = table.getAddress(index);
+				}
+			}
+		}
+
+		return samples;
+	}
+
+	private static List<String> request(BufferedReader in, Writer out, String request) throws IOException {
+		List<String> lines = new ArrayList<>();
+
+		out.write(request);
+		out.write('\n');
+		out.flush();
+
+		for (String line; (line = in.readLine()) != null && !line.isEmpty();) {
+			lines.add(line);
+		}
+
+		return lines;
+	}
+
+	private static boolean check(String fileName, BufferedReader in, Writer out) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		DwarfSymbolizer direct = new DwarfSymbolizer(0);
+		AddressIndex index = scanner.getAddressIndex();
+		long[] samples = sample(scanner);
+		long firstTime = 0;
+		long repeatTime = 0;
+		int frames = 0;
+		int inlined = 0;
+
+		for (int start = 0; start < samples.length; start += BATCH_SIZE) {
+			int end = Math.min(samples.length, start + BATCH_SIZE);
+			StringBuilder request = new StringBuilder("symbolize\t").append(fileName);
+			List<String> expected = new ArrayList<>();
+			long[] batch = new long[end - start];
+
+			for (int sample = start; sample < end; ++sample) {
+				batch[sample - start] = samples[sample];
+				request.append("\t0x").append(Long.toHexString(samples[sample]));
+			}
+
+			DwarfSymbolizer.Frame[][] directFrames = direct.symbolize(fileName, batch);
+
+			for (int sample = 0; sample < batch.length; ++sample) {
+				long address = batch[sample];
+				DwarfSymbolizer.Frame[] chain = directFrames[sample];
+				long unitOffset = index.findUnit(address);
+
+				if (unitOffset >= 0) {
+					DwarfLineTable table = scanner.getLineTable(unitOffset);
+					int row = table != null ? table.find(address) : -1;
+					int entries = index.findEntries(address).length;
+
+					if (chain.length != Math.max(1, entries)
+							|| (row >= 0 && chain[0].getLine() != table.getLine(row))) {
+						System.out.printf("%s: 0x%x: wrong innermost frame%n", fileName, Long.valueOf(address));
+						return false;
+					}
+				}
+
+				for (DwarfSymbolizer.Frame frame : chain) {
+					expected.add(String.format("0x%x\t%s\t%s\t%d\t%s", Long.valueOf(address),
+							frame.getFunction() != null ? frame.getFunction() : "??",
+							frame.getFileName() != null ? frame.getFileName() : "??",
+							Integer.valueOf(frame.getLine()), frame.isInlined() ? "inlined" : ""));
+					inlined += frame.isInlined() ? 1 : 0;
+				}
+
+				if (chain.length == 0) {
+					expected.add(String.format("0x%x\t??\t??\t0\t", Long.valueOf(address)));
+				}
+
+				frames += Math.max(1, chain.length);
+			}
+
+			for (int pass = 0; pass < 2; ++pass) {
+				long time = System.nanoTime();
+				List<String> answer = request(in, out, request.toString());
+
+				time = System.nanoTime() - time;
+
+				if (start == 0 && pass == 0) {
+					firstTime = time;
+				} else if (pass == 1) {
+					repeatTime = Math.max(repeatTime, time);
+				}
+
+				if (!answer.equals(expected)) {
+					System.out.printf("%s: answer differs: %s%n", fileName,
+							answer.isEmpty() ? "(empty)" : answer.get(0));
+					return false;
+				}
+			}
+		}
+
+		System.out.printf("%s: %d addresses, %d frames, %d inlined: match%n", fileName,
+				Integer.valueOf(samples.length), Integer.valueOf(frames), Integer.valueOf(inlined));
+		System.out.printf("  %.1f ms for the first batch, at most %.1f ms for a repeated batch%n",
+				Double.valueOf(firstTime / 1e6), Double.valueOf(repeatTime / 1e6));
+
+		return true;
+	}
+
+	/**
+	 * Check that closing a server ends a connection waiting for a request.
+	 */
+	private static boolean checkClose() throws IOException {
+		DwarfSymbolServer server = new DwarfSymbolServer(0, 1, 0);
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			server.start();
+			socket.setSoTimeout(5000);
+			// once answered, the connection is being served
+			request(in, out, "stats");
+			server.close();
+
+			if (in.readLine() != null) {
+				System.out.println("connection answered after close");
+				return false;
+			}
+		} catch (SocketTimeoutException e) {
+			System.out.println("connection not ended by close");
+			return false;
+		} catch (SocketException e) {
+			// reset by the server: ended
+		} finally {
+			server.close();
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long budget = 1;
+		boolean passed = true;
+
+		for (String fileName : args) {
+			budget = Math.max(budget, Files.size(Paths.get(fileName)));
+		}
+
+		try (DwarfSymbolServer server = new DwarfSymbolServer(0, 2, budget);
+				Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			server.start();
+			socket.setTcpNoDelay(true);
+
+			for (String fileName : args) {
+				passed &= check(fileName, in, out);
+			}
+
+			DwarfSymbolizer symbolizer = server.getSymbolizer();
+
+			if (symbolizer.getCharge() > budget && symbolizer.getLibraryCount() > 1) {
+				System.out.printf("budget %d exceeded: %d%n", Long.valueOf(budget), Long.valueOf(symbolizer.getCharge()));
+				passed = false;
+			}
+
+			if (!request(in, out, "symbolize\tno-such-file\t0x0").get(0).startsWith("error\t")) {
+				System.out.println("missing file not reported");
+				passed = false;
+			}
+
+			for (String line : request(in, out, "stats")) {
+				System.out.printf("  %s%n", line.replace('\t', ' '));
+			}
+		}
+
+		passed &= checkClose();
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
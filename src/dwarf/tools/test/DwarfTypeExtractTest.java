@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dwarf.tools.DieCursor;
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfForm;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTag;
+import dwarf.tools.DwarfTypeExtractor;
+
+/**
+ * Extracts the types of each given file into a binary blob, reads the blob
+ * back, and checks that the structures found by walking each file's top
+ * level entries with a cursor, with their sizes and the offsets of their
+ * named members, are all in it; then checks that extracting a file again
+ * writes nothing new, that an include list selects only the named types,
+ * that the JSON form holds as many types, and that types referred to from
+ * other units are resolved if they are in partial units and are counted
+ * otherwise. Files whose names differ only by "dwarf4" and "dwarf5" must
+ * give the same types. Reports the time taken, the size of the output and
+ * the largest number of entries held at once.
+ */
+public class DwarfTypeExtractTest {
+
+	/**
+	 * The types read back from a blob.
+	 */
+	private static final class Blob {
+
+		/** "name/size" of each structure, to the members as {@link #member} gives them */
+		final Map<String, Set<String>> members;
+
+		/** the name of each record */
+		final List<String> names;
+
+		int records;
+
+		Blob(byte[] bytes) throws IOException {
+			super();
+			this.members = new HashMap<>();
+			this.names = new ArrayList<>();
+			this.records = 0;
+
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+				if (in.readInt() != DwarfTypeExtractor.MAGIC || in.readShort() != DwarfTypeExtractor.VERSION) {
+					throw new IOException("bad header");
+				}
+
+				List<String> strings = new ArrayList<>();
+
+				for (;;) {
+					int record = in.readByte();
+
+					switch (record) {
+					case DwarfTypeExtractor.RECORD_END:
+						if (in.read() != -1) {
+							throw new IOException("data after end");
+						}
+						return;
+					case DwarfTypeExtractor.RECORD_STRING:
+						byte[] string = new byte[in.readInt()];
+
+						in.readFully(string);
+						strings.add(new String(string, StandardCharsets.UTF_8));
+						break;
+					case DwarfTypeExtractor.RECORD_STRUCTURE:
+						in.readShort();
+
+						String name = strings.get(in.readInt());
+						Set<String> fields = new HashSet<>();
+
+						members.put(name + "/" + in.readLong(), fields);
+						names.add(name);
+
+						for (int count = in.readInt(); count > 0; --count) {
+							String field = strings.get(in.readInt());
+
+							strings.get(in.readInt());
+
+							long offset = in.readLong();
+							long bitSize = in.readInt();
+							long bitOffset = in.readLong();
+
+							fields.add(member(field, offset, bitSize, bitOffset));
+						}
+
+						records += 1;
+						break;
+					case DwarfTypeExtractor.RECORD_ENUMERATION:
+						names.add(strings.get(in.readInt()));
+						in.readLong();
+
+						for (int count = in.readInt(); count > 0; --count) {
+							strings.get(in.readInt());
+							in.readLong();
+						}
+
+						records += 1;
+						break;
+					case DwarfTypeExtractor.RECORD_TYPEDEF:
+						names.add(strings.get(in.readInt()));
+						strings.get(in.readInt());
+						records += 1;
+						break;
+					default:
+						throw new IOException("record=" + record);
+					}
+				}
+			} catch (EOFException | IndexOutOfBoundsException e) {
+				throw new IOException("malformed blob", e);
+			}
+		}
+
+	}
+
+	private static boolean check(String fileName) throws IOException {
+		DwarfScanner scanner = new DwarfScanner(fileName);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long time = System.nanoTime();
+		int duplicateCount;
+		int largestUnit;
+		int typeCount;
+		int unresolvedCount;
+
+		try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(bytes, DwarfTypeExtractor.FORMAT_BINARY)) {
+			extractor.extract(scanner);
+			time = System.nanoTime() - time;
+			duplicateCount = extractor.getDuplicateCount();
+			largestUnit = extractor.getLargestUnit();
+			typeCount = extractor.getTypeCount();
+			unresolvedCount = extractor.getUnresolvedCount();
+
+			extractor.extract(scanner);
+
+			if (extractor.getTypeCount() != typeCount) {
+				System.out.printf("%s: %d types written again%n", fileName,
+						Integer.valueOf(extractor.getTypeCount() - typeCount));
+				return false;
+			}
+		}
+
+		Blob blob = new Blob(bytes.toByteArray());
+
+		if (blob.records != typeCount) {
+			System.out.printf("%s: %d types written, %d read%n", fileName, Integer.valueOf(typeCount),
+					Integer.valueOf(blob.records));
+			return false;
+		}
+
+		int foreignCount = countForeignTypes(scanner);
+
+		if (unresolvedCount != foreignCount) {
+			System.out.printf("%s: %d types unresolved, expected %d%n", fileName, Integer.valueOf(unresolvedCount),
+					Integer.valueOf(foreignCount));
+			return false;
+		}
+
+		Map<String, Set<String>> expected = readStructures(scanner);
+
+		for (Map.Entry<String, Set<String>> structure : expected.entrySet()) {
+			Set<String> found = blob.members.get(structure.getKey());
+
+			if (found == null || !found.containsAll(structure.getValue())) {
+				System.out.printf("%s: structure %s %s%n", fileName, structure.getKey(),
+						found == null ? "missing" : "has wrong members");
+				return false;
+			}
+		}
+
+		List<String> includes = new ArrayList<>();
+
+		for (String key : expected.keySet()) {
+			if (includes.size() < 3) {
+				includes.add(key.substring(0, key.lastIndexOf('/')));
+			}
+		}
+
+		ByteArrayOutputStream selected = new ByteArrayOutputStream();
+
+		try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(selected, DwarfTypeExtractor.FORMAT_BINARY)) {
+			extractor.setIncludes(includes);
+			extractor.extract(scanner);
+		}
+
+		Set<String> selectedNames = new HashSet<>(new Blob(selected.toByteArray()).names);
+
+		if (!selectedNames.equals(new HashSet<>(includes))) {
+			System.out.printf("%s: included %s, extracted %s%n", fileName, includes, selectedNames);
+			return false;
+		}
+
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+		try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(json, DwarfTypeExtractor.FORMAT_JSON)) {
+			extractor.extract(scanner);
+		}
+
+		String text = new String(json.toByteArray(), StandardCharsets.UTF_8);
+		int objects = text.split("\n\\{\"kind\":", -1).length - 1;
+
+		if (!text.startsWith("[") || !text.endsWith("]\n") || objects != typeCount) {
+			System.out.printf("%s: JSON holds %d types, expected %d%n", fileName, Integer.valueOf(objects),
+					Integer.valueOf(typeCount));
+			return false;
+		}
+
+		System.out.printf("%s: %d types, %d structures checked, %d duplicates skipped: match%n", fileName,
+				Integer.valueOf(typeCount), Integer.valueOf(expected.size()),
+				Integer.valueOf(duplicateCount));
+		System.out.printf("  %.1f ms to extract, %d bytes of blob, %d bytes of JSON, at most %d entries held%n",
+				Double.valueOf(time / 1e6), Integer.valueOf(bytes.size()), Integer.valueOf(json.size()),
+				Integer.valueOf(largestUnit));
+
+		return true;
+	}
+
+	/**
+	 * Check that the types of two builds of the same source, described by
+	 * DWARF 4 and DWARF 5, are written the same way, so that extracting
+	 * the second after the first writes nothing new.
+	 */
+	private static boolean checkVersions(String fileName4, String fileName5) throws IOException {
+		String[] texts = new String[2];
+		int typeCount = 0;
+
+		for (int index = 0; index < texts.length; ++index) {
+			ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+			try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(json, DwarfTypeExtractor.FORMAT_JSON)) {
+				extractor.extract(new DwarfScanner(index == 0 ? fileName4 : fileName5));
+				typeCount = extractor.getTypeCount();
+			}
+
+			texts[index] = new String(json.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		if (!texts[0].equals(texts[1])) {
+			System.out.printf("%s, %s: types differ%n", fileName4, fileName5);
+			return false;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (DwarfTypeExtractor extractor = new DwarfTypeExtractor(bytes, DwarfTypeExtractor.FORMAT_BINARY)) {
+			extractor.extract(new DwarfScanner(fileName4));
+			extractor.extract(new DwarfScanner(fileName5));
+
+			if (extractor.getTypeCount() != typeCount) {
+				System.out.printf("%s: %d types written again%n", fileName5,
+						Integer.valueOf(extractor.getTypeCount() - typeCount));
+				return false;
+			}
+		}
+
+		System.out.printf("%s, %s: %d types: match%n", fileName4, fileName5, Integer.valueOf(typeCount));
+
+		return true;
+	}
+
+	/**
+	 * Answer the number of distinct entries, outside subprograms, referred
+	 * to as types by entries of other units, other than partial units.
+	 */
+	private static int countForeignTypes(DwarfScanner scanner) {
+		long[] unitOffsets = scanner.getUnitOffsets();
+		Set<Long> partialUnits = new HashSet<>();
+		Set<Long> foreign = new HashSet<>();
+
+		if (unitOffsets.length == 0) {
+			return 0;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				cursor.reset(unitOffset);
+
+				if (cursor.next() && cursor.tag() == DwarfTag.DW_TAG_partial_unit) {
+					partialUnits.add(Long.valueOf(unitOffset));
+				}
+			}
+
+			for (int unit = 0; unit < unitOffsets.length; ++unit) {
+				long unitEnd = unit + 1 < unitOffsets.length ? unitOffsets[unit + 1] : Long.MAX_VALUE;
+
+				cursor.reset(unitOffsets[unit]);
+
+				while (cursor.next()) {
+					if (cursor.tag() == DwarfTag.DW_TAG_subprogram) {
+						cursor.skipChildren();
+					}
+
+					if (cursor.getForm(DwarfAttribute.DW_AT_type) == DwarfForm.DW_FORM_ref_sig8) {
+						// type units count as one
+						foreign.add(Long.valueOf(-2));
+						continue;
+					}
+
+					long type = cursor.getReference(DwarfAttribute.DW_AT_type);
+
+					if (type < 0 || (type >= unitOffsets[unit] && type < unitEnd)) {
+						continue;
+					}
+
+					int index = Arrays.binarySearch(unitOffsets, type);
+					long typeUnit = unitOffsets[index >= 0 ? index : Math.max(0, -index - 2)];
+
+					if (!partialUnits.contains(Long.valueOf(typeUnit))) {
+						foreign.add(Long.valueOf(type));
+					}
+				}
+			}
+		}
+
+		return foreign.size();
+	}
+
+	/**
+	 * Answer the description of a member: "name@offset", with the size and
+	 * bit offset of a bitfield following as ":size:offset".
+	 */
+	static String member(String name, long offset, long bitSize, long bitOffset) {
+		return bitSize == 0 ? name + "@" + offset : name + "@" + offset + ":" + bitSize + ":" + bitOffset;
+	}
+
+	/**
+	 * Answer the description of the member at the cursor, as the extractor
+	 * should write it: the byte offset of a bitfield is that of the byte
+	 * holding its first bit, given the bit offset from the start of the
+	 * structure (as DW_AT_data_bit_offset gives it directly, and as it is
+	 * derived from DW_AT_bit_offset, for the little-endian files given).
+	 */
+	private static String readMember(DieCursor cursor, String name) {
+		long offset = cursor.getMemberOffset(0);
+		long bitSize = cursor.getConstant(DwarfAttribute.DW_AT_bit_size, 0);
+		long bitOffset = 0;
+
+		if (bitSize == 0) {
+			return member(name, offset, 0, 0);
+		} else if (cursor.hasAttribute(DwarfAttribute.DW_AT_data_bit_offset)) {
+			bitOffset = cursor.getConstant(DwarfAttribute.DW_AT_data_bit_offset, 0);
+		} else {
+			long storageBits = cursor.getConstant(DwarfAttribute.DW_AT_byte_size, 0) * 8;
+
+			bitOffset = offset * 8 + storageBits - cursor.getConstant(DwarfAttribute.DW_AT_bit_offset, 0) - bitSize;
+		}
+
+		return member(name, bitOffset / 8, bitSize, bitOffset);
+	}
+
+	/**
+	 * Answer the named, complete structures at the top level of the units
+	 * of the given file, as "name/size", with their named members as
+	 * {@link #readMember} gives them.
+	 */
+	private static Map<String, Set<String>> readStructures(DwarfScanner scanner) {
+		Map<String, Set<String>> structures = new HashMap<>();
+		long[] unitOffsets = scanner.getUnitOffsets();
+
+		if (unitOffsets.length == 0) {
+			return structures;
+		}
+
+		try (DieCursor cursor = scanner.openCursor(unitOffsets[0])) {
+			for (long unitOffset : unitOffsets) {
+				Set<String> members = null;
+
+				cursor.reset(unitOffset);
+
+				while (cursor.next()) {
+					int depth = cursor.depth();
+					int tag = cursor.tag();
+
+					if (depth == 1) {
+						members = null;
+
+						String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+						if (tag == DwarfTag.DW_TAG_structure_type && name != null
+								&& !cursor.getFlag(DwarfAttribute.DW_AT_declaration)) {
+							members = new HashSet<>();
+							structures.put(name + "/" + cursor.getConstant(DwarfAttribute.DW_AT_byte_size, 0),
+									members);
+						} else {
+							cursor.skipChildren();
+						}
+					} else if (depth == 2 && members != null && tag == DwarfTag.DW_TAG_member
+							&& !cursor.getFlag(DwarfAttribute.DW_AT_declaration)) {
+						// a declared member is a static data member of DWARF 4 or earlier
+						String name = cursor.getString(DwarfAttribute.DW_AT_name);
+
+						if (name != null) {
+							members.add(readMember(cursor, name));
+						}
+					} else if (depth > 1) {
+						cursor.skipChildren();
+					}
+				}
+			}
+		}
+
+		return structures;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean passed = true;
+
+		for (String fileName : args) {
+			passed &= check(fileName);
+		}
+
+		for (String fileName : args) {
+			String other = fileName.replace("dwarf4", "dwarf5");
+
+			if (!other.equals(fileName) && Arrays.asList(args).contains(other)) {
+				passed &= checkVersions(fileName, other);
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 IBM Corp. and others
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which accompanies this
+ * distribution and is available at http://eclipse.org/legal/epl-2.0
+ * or the Apache License, Version 2.0 which accompanies this distribution
+ * and is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License, v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception [1] and GNU General Public
+ * License, version 2 with the OpenJDK Assembly Exception [2].
+ *
+ * [1] https://www.gnu.org/software/classpath/license.html
+ * [2] http://openjdk.java.net/legal/assembly-exception.html
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0 OR GPL-2.0 WITH Classpath-exception-2.0 OR LicenseRef-GPL-2.0 WITH Assembly-exception
+ *******************************************************************************/
+package dwarf.tools.test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import dwarf.tools.DwarfAttribute;
+import dwarf.tools.DwarfModel;
+import dwarf.tools.DwarfScanner;
+import dwarf.tools.DwarfTypeMerger;
+
+/**
+ * Merges the types of the given files, each alone and then all together,
+ * reporting how many duplicates are eliminated. Checks that merged types
+ * agree in tag, name and size, and that the result does not depend on the
+ * number of threads.
+ */
+public class DwarfTypeMergeTest {
+
+	private static boolean check(DwarfTypeMerger merger) {
+		for (int file = 0; file < merger.getModelCount(); ++file) {
+			DwarfModel model = merger.getModel(file);
+
+			for (int entry = 0; entry < model.getEntryCount(); ++entry) {
+				int typeId = merger.getTypeId(file, entry);
+
+				if (typeId < 0) {
+					continue;
+				}
+
+				DwarfModel canonicalModel = merger.getModel(merger.getCanonicalFile(typeId));
+				int canonical = merger.getCanonicalEntry(typeId);
+
+				if (model.getTag(entry) != canonicalModel.getTag(canonical)
+						|| !Objects.equals(getName(model, entry), getName(canonicalModel, canonical))
+						|| (getSize(model, entry) != getSize(canonicalModel, canonical)
+								&& !model.getFlag(entry, DwarfAttribute.DW_AT_declaration))) {
+					System.out.printf("file %d: entry at 0x%x merged with unlike type%n", Integer.valueOf(file),
+							Long.valueOf(model.getOffset(entry)));
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static String getName(DwarfModel model, int entry) {
+		return model.getString(entry, DwarfAttribute.DW_AT_name);
+	}
+
+	private static long getSize(DwarfModel model, int entry) {
+		return model.hasAttribute(entry, DwarfAttribute.DW_AT_byte_size)
+				? model.getConstant(entry, DwarfAttribute.DW_AT_byte_size, -1)
+				: -1;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		DwarfScanner[] scanners = new DwarfScanner[args.length];
+		boolean passed = true;
+		int separateClasses = 0;
+
+		for (int file = 0; file < args.length; ++file) {
+			scanners[file] = new DwarfScanner(args[file]);
+
+			DwarfTypeMerger merger = DwarfTypeMerger.merge(parallelism, scanners[file]);
+
+			report(args[file], merger, 0);
+			separateClasses += merger.getClassCount();
+			passed &= check(merger);
+		}
+
+		long start = System.nanoTime();
+		DwarfTypeMerger merger = DwarfTypeMerger.merge(parallelism, scanners);
+		long time = System.nanoTime() - start;
+
+		report("all files", merger, time);
+		System.out.printf("  %d types shared between files%n",
+				Integer.valueOf(separateClasses - merger.getClassCount()));
+		passed &= check(merger);
+
+		DwarfTypeMerger serial = DwarfTypeMerger.merge(1, merger.getModels());
+
+		for (int file = 0; passed && file < args.length; ++file) {
+			for (int entry = 0; entry < merger.getModel(file).getEntryCount(); ++entry) {
+				if (serial.getTypeId(file, entry) != merger.getTypeId(file, entry)) {
+					System.out.printf("%s: result depends on the number of threads%n", args[file]);
+					passed = false;
+					break;
+				}
+			}
+		}
+
+		// the most repeated named types
+		IntStream.range(0, merger.getClassCount()) //
+				.boxed() //
+				.filter(typeId -> getName(merger.getModel(merger.getCanonicalFile(typeId.intValue())),
+						merger.getCanonicalEntry(typeId.intValue())) != null) //
+				.sorted(Comparator.comparingInt((Integer typeId) -> merger.getInstanceCount(typeId.intValue()))
+						.reversed()) //
+				.limit(10) //
+				.forEach(typeId -> {
+					int id = typeId.intValue();
+					DwarfModel model = merger.getModel(merger.getCanonicalFile(id));
+
+					System.out.printf("  %6d x %s%n", Integer.valueOf(merger.getInstanceCount(id)),
+							getName(model, merger.getCanonicalEntry(id)));
+				});
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+	}
+
+	private static void report(String title, DwarfTypeMerger merger, long time) {
+		System.out.printf("%s: %d types, %d distinct, %d duplicates (%.1f%%) after %d rounds", title,
+				Integer.valueOf(merger.getTypeCount()), Integer.valueOf(merger.getClassCount()),
+				Integer.valueOf(merger.getDuplicateCount()),
+				Double.valueOf(100.0 * merger.getDuplicateCount() / Math.max(1, merger.getTypeCount())),
+				Integer.valueOf(merger.getRounds()));
+
+		if (time != 0) {
+			System.out.printf(" in %.1f ms", Double.valueOf(time / 1e6));
+		}
+
+		System.out.println();
+	}
+
+}